@@ -0,0 +1,14 @@
+package com.logparser;
+
+/**
+ * Extra per-key results written next to the overall output, e.g. {@code apm_by_host.json}.
+ */
+public enum Breakdown {
+    NONE,
+    HOST,
+    FILE;
+
+    String fileName(String outputFile) {
+        return outputFile.replace(".json", "_by_" + name().toLowerCase() + ".json");
+    }
+}
@@ -0,0 +1,175 @@
+package com.logparser;
+
+import com.logparser.io.StateIO;
+import com.logparser.stats.DistributionFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Objects;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Remembers how far into an input file a run got, together with the aggregator state at
+ * that point, so the next run over the same file only has to parse what was appended.
+ * <p>
+ * The input is identified by its file key (the inode on Unix) and a CRC of its first
+ * bytes, so a rotated, replaced or rewritten file is detected and processed from the
+ * start instead. The state is stored in the aggregators' own compact binary encoding and
+ * protected by a trailing CRC.
+ */
+public class Checkpoint {
+    private static final int MAGIC = 0x4C50434B; // "LPCK"
+    private static final int VERSION = 1;
+    private static final int HEAD_BYTES = 64 * 1024;
+
+    private final Path checkpointFile;
+
+    public Checkpoint(Path checkpointFile) {
+        this.checkpointFile = checkpointFile;
+    }
+
+    /**
+     * Loads the saved state into {@code processor} and returns the offset to continue
+     * from, or returns 0 and leaves the processor empty when there is no usable checkpoint
+     * for this input. The whole checkpoint is checked against its CRC before any of it is
+     * decoded, so a corrupt or truncated one is ignored rather than read into the state.
+     */
+    public long restore(Path inputFile, ProcessingConfig config, LogProcessor processor) throws IOException {
+        byte[] bytes;
+        try {
+            bytes = Files.readAllBytes(checkpointFile);
+        } catch (NoSuchFileException e) {
+            return 0;
+        }
+        if (bytes.length >= Integer.BYTES && ByteBuffer.wrap(bytes).getInt() != MAGIC) {
+            throw new IOException(checkpointFile + " is not a checkpoint file");
+        }
+        int payload = bytes.length - Integer.BYTES;
+        CRC32 crc = new CRC32();
+        if (payload > Integer.BYTES) {
+            crc.update(bytes, 0, payload);
+        }
+        if (payload <= Integer.BYTES
+                || (ByteBuffer.wrap(bytes, payload, Integer.BYTES).getInt() & 0xFFFFFFFFL) != crc.getValue()) {
+            System.err.println("Ignoring checkpoint " + checkpointFile + " (corrupt); processing from the start");
+            return 0;
+        }
+
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes, 0, payload))) {
+            in.readInt();
+            int version = in.readUnsignedByte();
+            if (version != VERSION) {
+                throw new IOException("Unsupported checkpoint version " + version + " in " + checkpointFile);
+            }
+            String fileKey = StateIO.readString(in);
+            long offset = StateIO.readVarLong(in);
+            int headLength = StateIO.readVarInt(in);
+            long headCrc = in.readInt() & 0xFFFFFFFFL;
+            String settings = StateIO.readString(in);
+
+            String reason = null;
+            if (!settings.equals(settingsOf(config))) {
+                reason = "percentile, --where, route, --group-by or template settings changed";
+            } else if (!Objects.equals(fileKey, fileKeyOf(inputFile))) {
+                reason = "input is a different file";
+            } else if (Files.size(inputFile) < offset) {
+                reason = "input was truncated";
+            } else if (headLength != headLength(offset) || headCrc != headCrc(inputFile, headLength)) {
+                reason = "input was rewritten";
+            }
+            if (reason != null) {
+                System.err.println("Ignoring checkpoint " + checkpointFile + " (" + reason + "); processing from the start");
+                return 0;
+            }
+
+            processor.readState(in);
+            return offset;
+        }
+    }
+
+    /**
+     * Records that everything before {@code offset} has been aggregated into
+     * {@code processor}. The checkpoint is written to a temp file and renamed into place,
+     * so an interrupted save leaves the previous checkpoint intact.
+     */
+    public void save(Path inputFile, long offset, ProcessingConfig config, LogProcessor processor) throws IOException {
+        Path parent = checkpointFile.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+        Path temp = Files.createTempFile(parent, checkpointFile.getFileName().toString(), ".tmp");
+        try {
+            CRC32 crc = new CRC32();
+            try (DataOutputStream out = new DataOutputStream(new CheckedOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(temp)), crc))) {
+                out.writeInt(MAGIC);
+                out.writeByte(VERSION);
+                StateIO.writeString(out, fileKeyOf(inputFile));
+                StateIO.writeVarLong(out, offset);
+                int headLength = headLength(offset);
+                StateIO.writeVarInt(out, headLength);
+                out.writeInt((int) headCrc(inputFile, headLength));
+                StateIO.writeString(out, settingsOf(config));
+                processor.writeState(out);
+                out.flush();
+                out.writeInt((int) crc.getValue());
+            }
+            Files.move(temp, checkpointFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    // Only settings that change what the saved state means; threads and mmap do not
+    private static String settingsOf(ProcessingConfig config) {
+        DistributionFactory distributions = config.getDistributions();
+        String settings = distributions.getMode() + ":" + distributions.getRelativeError();
+        if (config.getFilter() != null) {
+            settings += ":" + config.getFilter();
+        }
+        if (config.getUrlNormalizer() != null || config.getMaxRoutes() > 0) {
+            settings += ":routes=" + config.getUrlNormalizer() + ":" + config.getMaxRoutes();
+        }
+        if (!config.getGroupBys().isEmpty()) {
+            settings += ":groups=" + config.getGroupBys();
+        }
+        if (config.getMaxTemplates() > 0) {
+            settings += ":templates=" + config.getMaxTemplates();
+        }
+        return settings;
+    }
+
+    private static String fileKeyOf(Path file) throws IOException {
+        Object key = Files.readAttributes(file, BasicFileAttributes.class).fileKey();
+        return key == null ? null : key.toString();
+    }
+
+    private static int headLength(long offset) {
+        return (int) Math.min(offset, HEAD_BYTES);
+    }
+
+    private static long headCrc(Path file, int length) throws IOException {
+        ByteBuffer head = ByteBuffer.allocate(length);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            while (head.hasRemaining()) {
+                if (channel.read(head, head.position()) < 0) {
+                    break;
+                }
+            }
+        }
+        head.flip();
+        CRC32 crc = new CRC32();
+        crc.update(head);
+        return crc.getValue();
+    }
+}
@@ -0,0 +1,88 @@
+package com.logparser;
+
+import java.io.IOException;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Expands the input arguments into a list of files. An argument can be a file, a
+ * directory (every regular file below it) or a glob such as {@code logs/*.log.gz} or
+ * {@code logs/**}{@code /app.log}. Matches are sorted by path, and a file named twice is
+ * read once, at its first position.
+ */
+public final class InputFiles {
+    private InputFiles() {
+    }
+
+    public static List<Path> expand(List<String> arguments) throws IOException {
+        Set<Path> files = new LinkedHashSet<>();
+        for (String argument : arguments) {
+            if (isGlob(argument)) {
+                List<Path> matches = glob(argument);
+                if (matches.isEmpty()) {
+                    throw new IOException("No files match " + argument);
+                }
+                files.addAll(matches);
+            } else {
+                Path path = Paths.get(argument);
+                if (Files.isDirectory(path)) {
+                    files.addAll(walk(path, Integer.MAX_VALUE, null));
+                } else {
+                    // A missing file is reported when it is opened, as for a single --file
+                    files.add(path.normalize());
+                }
+            }
+        }
+        return new ArrayList<>(files);
+    }
+
+    private static boolean isGlob(String argument) {
+        for (int i = 0; i < argument.length(); i++) {
+            char c = argument.charAt(i);
+            if (c == '*' || c == '?' || c == '[' || c == '{') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Walks from the longest leading part of the pattern without wildcards
+    private static List<Path> glob(String pattern) throws IOException {
+        Path path = Paths.get(pattern);
+        Path base = path.isAbsolute() ? path.getRoot() : Paths.get("");
+        int first = 0;
+        while (first < path.getNameCount() - 1 && !isGlob(path.getName(first).toString())) {
+            base = base.resolve(path.getName(first));
+            first++;
+        }
+        if (!Files.isDirectory(base.toString().isEmpty() ? Paths.get(".") : base)) {
+            return new ArrayList<>();
+        }
+        Path relative = path.subpath(first, path.getNameCount());
+        int depth = relative.toString().contains("**") ? Integer.MAX_VALUE : relative.getNameCount();
+        FileSystem fileSystem = FileSystems.getDefault();
+        PathMatcher matcher = fileSystem.getPathMatcher("glob:" + relative);
+        return walk(base, depth, matcher);
+    }
+
+    private static List<Path> walk(Path base, int depth, PathMatcher matcher) throws IOException {
+        Path start = base.toString().isEmpty() ? Paths.get(".") : base;
+        try (Stream<Path> paths = Files.walk(start, depth)) {
+            return paths.filter(Files::isRegularFile)
+                    .filter(file -> matcher == null || matcher.matches(start.relativize(file)))
+                    .map(file -> base.toString().isEmpty() ? start.relativize(file) : file.normalize())
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+}
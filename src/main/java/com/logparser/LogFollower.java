@@ -0,0 +1,106 @@
+package com.logparser;
+
+import com.logparser.io.FileTailer;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tails a growing log file, aggregates new lines as they arrive and rewrites the output
+ * files every {@code snapshotIntervalMillis} or every {@code snapshotLines} lines,
+ * whichever comes first.
+ */
+public class LogFollower {
+    private static final long POLL_INTERVAL_MILLIS = 200;
+
+    private final Path inputFile;
+    private final Path outputPath;
+    private final LogProcessor processor;
+    private final long snapshotIntervalMillis;
+    private final long snapshotLines;
+    private final CountDownLatch stopped = new CountDownLatch(1);
+    private Path metricsOutput;
+    private volatile boolean running = true;
+
+    public LogFollower(ProcessingConfig config, Path inputFile, Path outputPath,
+                       long snapshotIntervalMillis, long snapshotLines) {
+        this.inputFile = inputFile;
+        this.outputPath = outputPath;
+        this.processor = new LogProcessor(config);
+        this.snapshotIntervalMillis = snapshotIntervalMillis;
+        this.snapshotLines = snapshotLines;
+    }
+
+    // Rewritten with every snapshot when set
+    public void setMetricsOutput(Path metricsOutput) {
+        this.metricsOutput = metricsOutput;
+    }
+
+    public void run() throws IOException {
+        long started = System.nanoTime();
+        try (FileTailer tailer = new FileTailer(inputFile)) {
+            long bytesRead = 0;
+            long linesSinceSnapshot = 0;
+            long lastSnapshot = System.currentTimeMillis();
+            boolean dirty = true;
+            while (running) {
+                long pollStarted = System.nanoTime();
+                int lines = tailer.poll(processor::processSkippingErrors);
+                processor.getMetrics().addBytes(tailer.getBytesRead() - bytesRead);
+                bytesRead = tailer.getBytesRead();
+                processor.getMetrics().addProcessingNanos(System.nanoTime() - pollStarted);
+                linesSinceSnapshot += lines;
+                dirty |= lines > 0;
+
+                long now = System.currentTimeMillis();
+                boolean dueByLines = snapshotLines > 0 && linesSinceSnapshot >= snapshotLines;
+                boolean dueByTime = snapshotIntervalMillis > 0 && now - lastSnapshot >= snapshotIntervalMillis;
+                if (dirty && (dueByLines || dueByTime)) {
+                    snapshot(started);
+                    linesSinceSnapshot = 0;
+                    lastSnapshot = now;
+                    dirty = false;
+                }
+                if (lines == 0) {
+                    sleep();
+                }
+            }
+            // Final snapshot so nothing read before stopping is lost
+            tailer.poll(processor::processSkippingErrors);
+            processor.getMetrics().addBytes(tailer.getBytesRead() - bytesRead);
+            snapshot(started);
+        } finally {
+            stopped.countDown();
+        }
+    }
+
+    private void snapshot(long started) throws IOException {
+        processor.writeResults(outputPath);
+        if (metricsOutput != null) {
+            Main.writeMetrics(metricsOutput, processor, System.nanoTime() - started, 1);
+        }
+    }
+
+    public void stop() {
+        running = false;
+    }
+
+    public boolean awaitStopped(long timeout, TimeUnit unit) throws InterruptedException {
+        return stopped.await(timeout, unit);
+    }
+
+    public LogProcessor getProcessor() {
+        return processor;
+    }
+
+    private void sleep() {
+        try {
+            Thread.sleep(POLL_INTERVAL_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            running = false;
+        }
+    }
+}
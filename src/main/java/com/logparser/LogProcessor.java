@@ -0,0 +1,536 @@
+package com.logparser;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.logparser.aggregator.ApmLogAggregator;
+import com.logparser.aggregator.ApplicationLogAggregator;
+import com.logparser.aggregator.GroupBy;
+import com.logparser.aggregator.GroupByAggregator;
+import com.logparser.aggregator.LogAggregator;
+import com.logparser.aggregator.RequestLogAggregator;
+import com.logparser.aggregator.TemplateAggregator;
+import com.logparser.aggregator.Watermark;
+import com.logparser.aggregator.WindowedAggregator;
+import com.logparser.columnar.ColumnarFormat;
+import com.logparser.columnar.ColumnarReader;
+import com.logparser.columnar.ColumnarWriter;
+import com.logparser.filter.LineFilter;
+import com.logparser.io.Compression;
+import com.logparser.io.CountingInputStream;
+import com.logparser.io.FileRangeInputStream;
+import com.logparser.io.MappedLineReader;
+import com.logparser.io.ReadAheadInputStream;
+import com.logparser.model.LogEntry;
+import com.logparser.parser.ApmLogParser;
+import com.logparser.parser.ApplicationLogParser;
+import com.logparser.parser.LineFields;
+import com.logparser.parser.LogParser;
+import com.logparser.parser.LogTypeClassifier;
+import com.logparser.parser.RequestLogParser;
+import com.logparser.parser.TimestampFormat;
+import com.logparser.parser.DictionaryMap;
+import com.logparser.parser.FieldValue;
+
+import java.io.BufferedReader;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Parses log lines and feeds each entry straight into its aggregator, so memory use
+ * does not grow with the number of lines read.
+ */
+public class LogProcessor {
+    private static final Logger LOG = Logger.getLogger(LogProcessor.class.getName());
+    static final Map<String, String> OUTPUT_FILES = new LinkedHashMap<>();
+    private static final String UNKNOWN_HOST = "unknown";
+    static final String TEMPLATES_FILE = "templates.json";
+
+    static {
+        OUTPUT_FILES.put("APM", "apm.json");
+        OUTPUT_FILES.put("APPLICATION", "application.json");
+        OUTPUT_FILES.put("REQUEST", "request.json");
+    }
+
+    private final List<LogParser> parsers;
+    private final String[] parserTypes;
+    private final LogTypeClassifier classifier;
+    private final LineFilter filter;
+    private final TimestampFormat filterTimestamps;
+    private final Map<String, LogAggregator> aggregators = new LinkedHashMap<>();
+    private final LineFields fields = new LineFields();
+    private final Watermark watermark = new Watermark();
+    private final ProcessingConfig config;
+    private final ProcessingMetrics metrics = new ProcessingMetrics(OUTPUT_FILES.keySet());
+    private final Map<String, Supplier<LogAggregator>> factories = new LinkedHashMap<>();
+    // Aggregators with an output file of their own, such as --group-by's, by file name
+    private final Map<String, LogAggregator> extraOutputs = new LinkedHashMap<>();
+    // The same, for the per-line path
+    private final LogAggregator[] extraAggregators;
+    private final DictionaryMap<Map<String, LogAggregator>> hostAggregators = new DictionaryMap<>(host -> newAggregators());
+    private final FieldValue host = new FieldValue();
+    private ColumnarWriter columnOutput;
+
+    public LogProcessor() {
+        this(new ProcessingConfig());
+    }
+
+    public LogProcessor(ProcessingConfig config) {
+        this(config, null);
+    }
+
+    /**
+     * With a window configured, closed windows are streamed to {@code windowOutput}
+     * instead of being kept until {@link #writeResults(Path)}.
+     */
+    public LogProcessor(ProcessingConfig config, WindowedResultWriter windowOutput) {
+        this.config = config;
+        this.parsers = Arrays.asList(
+                new ApmLogParser(config.getTimestampFormats()),
+                new ApplicationLogParser(config.getTimestampFormats()),
+                new RequestLogParser(config.getTimestampFormats())
+        );
+        this.parserTypes = OUTPUT_FILES.keySet().toArray(new String[0]);
+        this.classifier = new LogTypeClassifier(parsers);
+        this.filter = config.getFilter();
+        this.filterTimestamps = filter == null ? null : config.getTimestampFormats().get();
+        addAggregator("APM", () -> new ApmLogAggregator(config.getDistributions()), windowOutput);
+        addAggregator("APPLICATION", ApplicationLogAggregator::new, windowOutput);
+        addAggregator("REQUEST", () -> new RequestLogAggregator(config.getDistributions(),
+                config.getUrlNormalizer(), config.getMaxRoutes()), windowOutput);
+        for (GroupBy groupBy : config.getGroupBys()) {
+            if (extraOutputs.putIfAbsent(groupBy.fileName(),
+                    new GroupByAggregator(groupBy, config.getDistributions())) != null) {
+                throw new IllegalArgumentException("More than one group-by writes " + groupBy.fileName());
+            }
+        }
+        if (config.getMaxTemplates() > 0) {
+            extraOutputs.put(TEMPLATES_FILE, new TemplateAggregator(config.getMaxTemplates(), config.getTopTemplates()));
+        }
+        this.extraAggregators = extraOutputs.values().toArray(new LogAggregator[0]);
+        if (config.getProgress() != null) {
+            config.getProgress().register(metrics);
+        }
+    }
+
+    private void addAggregator(String type, Supplier<LogAggregator> factory, WindowedResultWriter windowOutput) {
+        factories.put(type, factory);
+        if (config.getWindow() == null) {
+            aggregators.put(type, factory.get());
+            return;
+        }
+        WindowedAggregator windowed = new WindowedAggregator(config.getWindow(), watermark, factory);
+        if (windowOutput != null) {
+            windowed.setListener(windowOutput.listenerFor(type));
+        }
+        aggregators.put(type, windowed);
+    }
+
+    /**
+     * Also writes every parsed entry to {@code output}, for later runs to aggregate again
+     * from there. The caller closes it.
+     */
+    public void setColumnOutput(ColumnarWriter output) {
+        this.columnOutput = output;
+    }
+
+    public void processFile(Path inputFile) throws IOException {
+        long started = System.nanoTime();
+        try {
+            if (ColumnarFormat.isColumnar(inputFile)) {
+                processColumns(inputFile);
+                return;
+            }
+            Compression compression = Compression.detect(inputFile);
+            if (compression != Compression.NONE) {
+                processCompressed(inputFile, compression);
+                return;
+            }
+            if (config.isMemoryMapped()) {
+                new MappedLineReader().readLines(inputFile, this::process, metrics::addBytes);
+                return;
+            }
+            // Decodes like Files.newBufferedReader, failing on malformed input, but counts the bytes
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                    counting(Files.newInputStream(inputFile)), StandardCharsets.UTF_8.newDecoder()))) {
+                processLines(reader);
+            }
+        } finally {
+            metrics.addProcessingNanos(System.nanoTime() - started);
+        }
+    }
+
+    public void processRange(Path inputFile, long start, long end) throws IOException {
+        long started = System.nanoTime();
+        try {
+            if (config.isMemoryMapped()) {
+                new MappedLineReader().readLines(inputFile, start, end, this::process, metrics::addBytes);
+                return;
+            }
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                    counting(new FileRangeInputStream(inputFile, start, end)), StandardCharsets.UTF_8))) {
+                processLines(reader);
+            }
+        } finally {
+            metrics.addProcessingNanos(System.nanoTime() - started);
+        }
+    }
+
+    // Decompression runs on its own thread, a few buffers ahead of parsing
+    private void processCompressed(Path inputFile, Compression compression) throws IOException {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(counting(new ReadAheadInputStream(
+                compression.decompress(Files.newInputStream(inputFile)), "decompress")), StandardCharsets.UTF_8))) {
+            processLines(reader);
+        }
+    }
+
+    // Lines are decoded to chars, so the bytes they came from are counted as they are read
+    private InputStream counting(InputStream in) {
+        return new CountingInputStream(in, metrics::addBytes);
+    }
+
+    // Entries come back already parsed, and only with the fields the aggregators read
+    private void processColumns(Path inputFile) throws IOException {
+        Map<String, Set<String>> fieldsByType = new LinkedHashMap<>();
+        for (Map.Entry<String, LogAggregator> aggregator : aggregators.entrySet()) {
+            Set<String> fields = aggregator.getValue().getFields();
+            if (fields != null && config.getBreakdown() == Breakdown.HOST) {
+                fields = new HashSet<>(fields);
+                fields.add("host");
+            }
+            fieldsByType.put(aggregator.getKey(), fields);
+        }
+        // Each type also reads what any other aggregator reads; fields it does not have are skipped
+        for (LogAggregator extra : extraAggregators) {
+            for (Map.Entry<String, Set<String>> fields : fieldsByType.entrySet()) {
+                if (fields.getValue() != null) {
+                    Set<String> withExtra = new HashSet<>(fields.getValue());
+                    withExtra.addAll(extra.getFields());
+                    fields.setValue(withExtra);
+                }
+            }
+        }
+        // Windows share one watermark and hosts are listed in first-seen order, so both need
+        // the entries in their original order across types
+        boolean inOrder = config.getWindow() != null || config.getBreakdown() == Breakdown.HOST;
+        try (ColumnarReader reader = new ColumnarReader(inputFile)) {
+            reader.read(fieldsByType, inOrder, entry -> {
+                boolean timed = metrics.countLine();
+                long started = timed ? System.nanoTime() : 0;
+                aggregate(entry, config.getBreakdown() == Breakdown.HOST ? host.set(entry.getHost()) : null);
+                if (timed) {
+                    metrics.recordSample(0, System.nanoTime() - started);
+                }
+            });
+        }
+        metrics.addBytes(Files.size(inputFile));
+    }
+
+    private void processLines(BufferedReader reader) throws IOException {
+        String line;
+        while ((line = reader.readLine()) != null) {
+            process(line);
+        }
+    }
+
+    public void process(CharSequence line) {
+        if (LOG.isLoggable(Level.FINEST)) {
+            LOG.finest("Processing line: " + line);
+        }
+        boolean timed = metrics.countLine();
+        long started = timed ? System.nanoTime() : 0;
+        if (filter != null && !filter.matchesFields(line, filterTimestamps)) {
+            filtered(timed, started);
+            return;
+        }
+        LogParser logParser = classifier.classify(fields.reset(line));
+        if (logParser == null) {
+            metrics.countUnparseable();
+            if (LOG.isLoggable(Level.FINE)) {
+                LOG.fine("Unparseable line: " + line);
+            }
+            if (timed) {
+                metrics.recordSample(System.nanoTime() - started, 0);
+            }
+            return;
+        }
+        if (filter != null && !filter.matchesType(typeOf(logParser))) {
+            filtered(timed, started);
+            return;
+        }
+        LogEntry entry = logParser.parse(fields);
+        long parsed = timed ? System.nanoTime() : 0;
+        if (LOG.isLoggable(Level.FINEST)) {
+            LOG.finest("Parsed entry type: " + entry.getType());
+        }
+        FieldValue entryHost = config.getBreakdown() == Breakdown.HOST || columnOutput != null
+                ? fields.getValue("host", host) : null;
+        if (columnOutput != null) {
+            try {
+                columnOutput.add(entry, entryHost);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        aggregate(entry, entryHost);
+        if (timed) {
+            metrics.recordSample(parsed - started, System.nanoTime() - parsed);
+        }
+    }
+
+    /**
+     * Like {@link #process(CharSequence)}, but a line that fails to parse, such as one with a
+     * status that is not a number, is counted as unparseable instead of ending the run. For
+     * the modes that keep running until they are stopped.
+     */
+    public void processSkippingErrors(CharSequence line) {
+        try {
+            process(line);
+        } catch (UncheckedIOException e) {
+            throw e;
+        } catch (RuntimeException e) {
+            metrics.countUnparseable();
+            if (LOG.isLoggable(Level.FINE)) {
+                LOG.log(Level.FINE, "Unparseable line: " + line, e);
+            }
+        }
+    }
+
+    private void filtered(boolean timed, long started) {
+        metrics.countFiltered();
+        if (timed) {
+            metrics.recordSample(System.nanoTime() - started, 0);
+        }
+    }
+
+    // Parsers are registered in the same order as the output types
+    private String typeOf(LogParser logParser) {
+        for (int i = 0; i < parserTypes.length; i++) {
+            if (parsers.get(i) == logParser) {
+                return parserTypes[i];
+            }
+        }
+        return null;
+    }
+
+    // entryHost is only used with a host breakdown
+    private void aggregate(LogEntry entry, FieldValue entryHost) {
+        metrics.countEntry(entry.getType());
+        LogAggregator aggregator = aggregators.get(entry.getType());
+        if (aggregator != null) {
+            if (LOG.isLoggable(Level.FINEST)) {
+                LOG.finest("Aggregating entry of type: " + entry.getType());
+            }
+            aggregator.aggregate(entry);
+        }
+        for (LogAggregator extra : extraAggregators) {
+            extra.aggregate(entry);
+        }
+        if (config.getBreakdown() == Breakdown.HOST) {
+            LogAggregator hostAggregator = hostAggregators.getOrCreate(entryHost).get(entry.getType());
+            if (hostAggregator != null) {
+                hostAggregator.aggregate(entry);
+            }
+        }
+    }
+
+    private Map<String, LogAggregator> newAggregators() {
+        Map<String, LogAggregator> byType = new LinkedHashMap<>();
+        for (Map.Entry<String, Supplier<LogAggregator>> factory : factories.entrySet()) {
+            byType.put(factory.getKey(), factory.getValue().get());
+        }
+        return byType;
+    }
+
+    public void merge(LogProcessor other) {
+        for (Map.Entry<String, LogAggregator> entry : aggregators.entrySet()) {
+            entry.getValue().merge(other.aggregators.get(entry.getKey()));
+        }
+        for (int i = 0; i < extraAggregators.length; i++) {
+            extraAggregators[i].merge(other.extraAggregators[i]);
+        }
+        for (Map.Entry<String, Map<String, LogAggregator>> otherHost : other.hostAggregators.asMap().entrySet()) {
+            Map<String, LogAggregator> byType = hostAggregators.getOrCreate(otherHost.getKey());
+            for (Map.Entry<String, LogAggregator> entry : otherHost.getValue().entrySet()) {
+                byType.get(entry.getKey()).merge(entry.getValue());
+            }
+        }
+        metrics.merge(other.metrics);
+    }
+
+    public ProcessingMetrics getMetrics() {
+        return metrics;
+    }
+
+    public void writeState(DataOutput out) throws IOException {
+        for (LogAggregator aggregator : aggregators.values()) {
+            aggregator.writeState(out);
+        }
+        for (LogAggregator extra : extraAggregators) {
+            extra.writeState(out);
+        }
+    }
+
+    public void readState(DataInput in) throws IOException {
+        for (LogAggregator aggregator : aggregators.values()) {
+            aggregator.readState(in);
+        }
+        for (LogAggregator extra : extraAggregators) {
+            extra.readState(in);
+        }
+    }
+
+    public void flushWindows() {
+        for (LogAggregator aggregator : aggregators.values()) {
+            if (aggregator instanceof WindowedAggregator) {
+                ((WindowedAggregator) aggregator).flush();
+            }
+        }
+    }
+
+    // Entries skipped because every window they belong to had already closed
+    public long getLateEntries() {
+        long late = 0;
+        for (LogAggregator aggregator : aggregators.values()) {
+            if (aggregator instanceof WindowedAggregator) {
+                late += ((WindowedAggregator) aggregator).getLateEntries();
+            }
+        }
+        return late;
+    }
+
+    // Entries left out of every window because they have no timestamp
+    public long getUntimedEntries() {
+        long untimed = 0;
+        for (LogAggregator aggregator : aggregators.values()) {
+            if (aggregator instanceof WindowedAggregator) {
+                untimed += ((WindowedAggregator) aggregator).getUntimedEntries();
+            }
+        }
+        return untimed;
+    }
+
+    public boolean isWindowed() {
+        return config.getWindow() != null;
+    }
+
+    public LogAggregator getAggregator(String type) {
+        return aggregators.get(type);
+    }
+
+    public void writeResults(Path outputPath) throws IOException {
+        long started = System.nanoTime();
+        Files.createDirectories(outputPath);
+
+        // The aggregators stream their results, and each file is written on its own thread
+        Map<String, LogAggregator> byFile = new LinkedHashMap<>();
+        for (Map.Entry<String, String> file : OUTPUT_FILES.entrySet()) {
+            byFile.put(file.getValue(), aggregators.get(file.getKey()));
+        }
+        byFile.putAll(extraOutputs);
+        OutputFormat format = config.getOutputFormat();
+        ExecutorService writers = Executors.newFixedThreadPool(byFile.size());
+        try {
+            List<Future<Void>> writes = new ArrayList<>();
+            for (Map.Entry<String, LogAggregator> file : byFile.entrySet()) {
+                LogAggregator aggregator = file.getValue();
+                Path target = outputPath.resolve(format.fileName(file.getKey()));
+                writes.add(writers.submit(() -> {
+                    writeAtomically(target, out -> format.write(aggregator, out, config.isCompactOutput()));
+                    return null;
+                }));
+            }
+            for (Future<Void> write : writes) {
+                ParallelFileProcessor.await(write);
+            }
+        } finally {
+            writers.shutdown();
+        }
+        if (config.getBreakdown() == Breakdown.HOST) {
+            Map<String, Map<String, Object>> byHost = new LinkedHashMap<>();
+            for (Map.Entry<String, Map<String, LogAggregator>> byType : hostAggregators.asMap().entrySet()) {
+                String name = byType.getKey() == null ? UNKNOWN_HOST : byType.getKey();
+                byHost.put(name, resultsOf(byType.getValue()));
+            }
+            writeBreakdown(outputPath, Breakdown.HOST, byHost, config.isCompactOutput());
+        }
+        metrics.addWriteNanos(System.nanoTime() - started);
+    }
+
+    /** The result of each aggregator by log type, as written to the output files. */
+    public Map<String, Object> getResults() {
+        return resultsOf(aggregators);
+    }
+
+    /** The result of each --group-by and of the message templates, by output file name. */
+    public Map<String, Object> getExtraResults() {
+        return resultsOf(extraOutputs);
+    }
+
+    private static Map<String, Object> resultsOf(Map<String, LogAggregator> byType) {
+        Map<String, Object> results = new LinkedHashMap<>();
+        for (Map.Entry<String, LogAggregator> entry : byType.entrySet()) {
+            results.put(entry.getKey(), entry.getValue().getResult());
+        }
+        return results;
+    }
+
+    // Writes e.g. apm_by_host.json, mapping each key to the result it would have on its own
+    static void writeBreakdown(Path outputPath, Breakdown breakdown, Map<String, Map<String, Object>> resultsByKey,
+                               boolean compact) throws IOException {
+        ObjectMapper objectMapper = new ObjectMapper();
+        for (Map.Entry<String, String> file : OUTPUT_FILES.entrySet()) {
+            Map<String, Object> byKey = new LinkedHashMap<>();
+            for (Map.Entry<String, Map<String, Object>> results : resultsByKey.entrySet()) {
+                byKey.put(results.getKey(), results.getValue().get(file.getKey()));
+            }
+            Path target = outputPath.resolve(breakdown.fileName(file.getValue()));
+            if (compact) {
+                writeAtomically(target, out -> objectMapper.writeValue(out, byKey));
+            } else {
+                writeAtomically(objectMapper, target, byKey);
+            }
+        }
+    }
+
+    static void writeAtomically(ObjectMapper objectMapper, Path target, Object value) throws IOException {
+        writeAtomically(target, out -> objectMapper.writerWithDefaultPrettyPrinter().writeValue(out, value));
+    }
+
+    interface OutputWriter {
+        void writeTo(OutputStream out) throws IOException;
+    }
+
+    // Readers of the output (e.g. dashboards polling a --follow run) never see a half-written file
+    static void writeAtomically(Path target, OutputWriter writer) throws IOException {
+        Path temp = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".tmp");
+        try {
+            try (OutputStream out = Files.newOutputStream(temp)) {
+                writer.writeTo(out);
+            }
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+}
@@ -0,0 +1,344 @@
+package com.logparser;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.logparser.io.LineSplitter;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Keeps one warm {@link LogProcessor} running, fed with newline-delimited log lines sent
+ * over TCP connections and queried over HTTP. Each connection is read on its own thread
+ * (a virtual thread on Java 21 and later) that cuts the stream into batches of complete
+ * lines; a single aggregation thread parses and aggregates the batches in arrival order.
+ * <p>
+ * Queries are {@code GET /apm}, {@code /application} and {@code /request} for the current
+ * content of the matching output file, {@code /results} for all three and {@code /metrics}
+ * for the {@code --metrics-out} report.
+ */
+public class LogServer implements Closeable {
+    private static final Logger LOG = Logger.getLogger(LogServer.class.getName());
+    static final int BATCH_BYTES = 64 * 1024;
+    // Longer lines are dropped, so a client that never sends a newline cannot fill the heap
+    static final int MAX_LINE_BYTES = 1024 * 1024;
+    private static final int QUEUED_BATCHES = 64;
+    private static final long CLOSE_GRACE_MILLIS = 1000;
+
+    private final LogProcessor processor;
+    private final ServerSocket ingest;
+    private final HttpServer http;
+    private final ExecutorService connections = newConnectionExecutor();
+    private final Set<Socket> openSockets = ConcurrentHashMap.newKeySet();
+    // A full queue blocks the connection threads, which in turn stops reading their sockets
+    private final BlockingQueue<Batch> batches = new ArrayBlockingQueue<>(QUEUED_BATCHES);
+    private final Thread aggregation;
+    private final Thread acceptor;
+    private final CountDownLatch stopped = new CountDownLatch(1);
+    private final AtomicLong connectionCount = new AtomicLong();
+    private final AtomicLong oversizedLines = new AtomicLong();
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final long started = System.nanoTime();
+    private volatile boolean running = true;
+
+    /** Complete lines from one read of a connection, or the marker that stops aggregation. */
+    private static final class Batch {
+        static final Batch END = new Batch(new byte[0], 0);
+
+        final byte[] data;
+        final int length;
+
+        Batch(byte[] data, int length) {
+            this.data = data;
+            this.length = length;
+        }
+    }
+
+    public LogServer(ProcessingConfig config, InetSocketAddress ingestAddress, InetSocketAddress httpAddress)
+            throws IOException {
+        this.processor = new LogProcessor(config);
+        this.ingest = new ServerSocket();
+        try {
+            ingest.bind(ingestAddress);
+            this.http = HttpServer.create(httpAddress, 0);
+        } catch (IOException e) {
+            ingest.close();
+            throw e;
+        }
+        http.setExecutor(connections);
+        http.createContext("/", this::query);
+        this.aggregation = new Thread(this::aggregate, "aggregate");
+        this.acceptor = new Thread(this::accept, "accept");
+        acceptor.setDaemon(true);
+    }
+
+    // Virtual threads are looked up reflectively so the build can keep targeting Java 11
+    static ExecutorService newConnectionExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool(runnable -> {
+                Thread thread = new Thread(runnable, "connection");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    public void start() {
+        aggregation.start();
+        acceptor.start();
+        http.start();
+    }
+
+    public int getIngestPort() {
+        return ingest.getLocalPort();
+    }
+
+    public int getHttpPort() {
+        return http.getAddress().getPort();
+    }
+
+    private void accept() {
+        while (running) {
+            try {
+                Socket socket = ingest.accept();
+                openSockets.add(socket);
+                connectionCount.incrementAndGet();
+                connections.execute(() -> read(socket));
+            } catch (IOException e) {
+                if (running) {
+                    LOG.log(Level.WARNING, "Could not accept a connection", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads one connection until it closes. Whatever has arrived is handed off once the
+     * socket has nothing more buffered or the batch is full, cut after its last newline;
+     * the rest starts the next batch. An unterminated last line counts when the
+     * connection closes. A line longer than {@value #MAX_LINE_BYTES} bytes is skipped up
+     * to its newline and counted as oversized.
+     */
+    private void read(Socket socket) {
+        try (Socket connection = socket) {
+            InputStream in = connection.getInputStream();
+            byte[] buffer = new byte[BATCH_BYTES];
+            int length = 0;
+            boolean skipping = false;
+            while (true) {
+                // A full buffer holds no newline, as batches are cut after the last one
+                if (length == buffer.length) {
+                    if (buffer.length >= MAX_LINE_BYTES) {
+                        oversizedLines.incrementAndGet();
+                        skipping = true;
+                        length = 0;
+                    } else {
+                        buffer = Arrays.copyOf(buffer, Math.min(buffer.length * 2, MAX_LINE_BYTES));
+                    }
+                }
+                int read = in.read(buffer, length, buffer.length - length);
+                if (read < 0) {
+                    break;
+                }
+                if (skipping) {
+                    int newline = indexOf(buffer, (byte) '\n', length, length + read);
+                    if (newline < 0) {
+                        continue;
+                    }
+                    skipping = false;
+                    int kept = length + read - newline - 1;
+                    System.arraycopy(buffer, newline + 1, buffer, length, kept);
+                    read = kept;
+                }
+                length += read;
+                if (length < BATCH_BYTES && in.available() > 0) {
+                    continue;
+                }
+                int end = length;
+                while (end > 0 && buffer[end - 1] != '\n') {
+                    end--;
+                }
+                if (end == 0) {
+                    continue;
+                }
+                // Small batches, from clients writing a line at a time, are copied out so the
+                // buffer can be reused; large ones are handed off whole
+                if (end < BATCH_BYTES / 4) {
+                    batches.put(new Batch(Arrays.copyOf(buffer, end), end));
+                    System.arraycopy(buffer, end, buffer, 0, length - end);
+                } else {
+                    byte[] next = new byte[Math.max(BATCH_BYTES, length - end)];
+                    System.arraycopy(buffer, end, next, 0, length - end);
+                    batches.put(new Batch(buffer, end));
+                    buffer = next;
+                }
+                length -= end;
+            }
+            if (length > 0) {
+                buffer = Arrays.copyOf(buffer, length + 1);
+                buffer[length] = '\n';
+                batches.put(new Batch(buffer, length + 1));
+            }
+        } catch (SocketException e) {
+            // Closed by close() or reset by the client
+        } catch (IOException e) {
+            LOG.log(Level.WARNING, "Lost a connection", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            openSockets.remove(socket);
+        }
+    }
+
+    private static int indexOf(byte[] buffer, byte value, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (buffer[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void aggregate() {
+        // Every batch ends with a newline, so the splitter never carries bytes between batches.
+        // A line that fails to parse is counted and skipped; it must not stop aggregation
+        LineSplitter lines = new LineSplitter(processor::processSkippingErrors);
+        try {
+            while (true) {
+                Batch batch = batches.take();
+                if (batch == Batch.END) {
+                    return;
+                }
+                long batchStarted = System.nanoTime();
+                synchronized (processor) {
+                    lines.feed(batch.data, 0, batch.length);
+                    processor.getMetrics().addBytes(batch.length);
+                    processor.getMetrics().addProcessingNanos(System.nanoTime() - batchStarted);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            stopped.countDown();
+        }
+    }
+
+    private void query(HttpExchange exchange) throws IOException {
+        try {
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            String path = exchange.getRequestURI().getPath();
+            Object body = snapshot(path.startsWith("/") ? path.substring(1) : path);
+            if (body == null) {
+                exchange.sendResponseHeaders(404, -1);
+                return;
+            }
+            byte[] json = objectMapper.writeValueAsBytes(body);
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, json.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(json);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * The current result for a query name, taken between two batches so it reflects whole
+     * batches only; null if there is no such query.
+     */
+    Object snapshot(String name) {
+        synchronized (processor) {
+            if (name.equals("metrics")) {
+                Map<String, Object> report = processor.getMetrics().toReport(System.nanoTime() - started, 1);
+                report.put("connections", connectionCount.get());
+                report.put("open_connections", openSockets.size());
+                report.put("oversized_lines", oversizedLines.get());
+                return report;
+            }
+            Map<String, Object> results = processor.getResults();
+            if (name.equals("results")) {
+                Map<String, Object> byName = new LinkedHashMap<>();
+                results.forEach((type, result) -> byName.put(type.toLowerCase(Locale.ROOT), result));
+                return byName;
+            }
+            return results.get(name.toUpperCase(Locale.ROOT));
+        }
+    }
+
+    /** Writes the output files as they would be for all lines received so far. */
+    public void writeResults(Path outputPath) throws IOException {
+        synchronized (processor) {
+            processor.writeResults(outputPath);
+        }
+    }
+
+    public void writeMetrics(Path metricsOut) throws IOException {
+        synchronized (processor) {
+            Main.writeMetrics(metricsOut, processor, System.nanoTime() - started, 1);
+        }
+    }
+
+    /** Blocks until {@link #close()} has stopped the aggregation thread. */
+    public void awaitStopped() throws InterruptedException {
+        stopped.await();
+    }
+
+    /**
+     * Stops accepting connections and queries, closes connections still open after a
+     * second and waits for the lines already received to be aggregated.
+     */
+    @Override
+    public void close() throws IOException {
+        if (!running) {
+            return;
+        }
+        running = false;
+        ingest.close();
+        http.stop(0);
+        connections.shutdown();
+        try {
+            // Clients that are done sending get to finish; the rest are cut off
+            if (!connections.awaitTermination(CLOSE_GRACE_MILLIS, TimeUnit.MILLISECONDS)) {
+                for (Socket socket : openSockets) {
+                    socket.close();
+                }
+                connections.awaitTermination(10, TimeUnit.SECONDS);
+            }
+            if (aggregation.isAlive()) {
+                batches.put(Batch.END);
+                aggregation.join();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
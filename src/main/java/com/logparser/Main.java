@@ -1,53 +1,263 @@
 package com.logparser;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.logparser.aggregator.ApmLogAggregator;
-import com.logparser.aggregator.ApplicationLogAggregator;
-import com.logparser.aggregator.LogAggregator;
-import com.logparser.aggregator.RequestLogAggregator;
-import com.logparser.model.LogEntry;
-import com.logparser.parser.ApmLogParser;
-import com.logparser.parser.ApplicationLogParser;
-import com.logparser.parser.LogParser;
-import com.logparser.parser.RequestLogParser;
+import com.logparser.aggregator.GroupBy;
+import com.logparser.aggregator.TimeWindows;
+import com.logparser.aggregator.UrlNormalizer;
+import com.logparser.columnar.ColumnarFormat;
+import com.logparser.columnar.ColumnarWriter;
+import com.logparser.filter.LineFilter;
+import com.logparser.io.Compression;
+import com.logparser.io.FileRangeInputStream;
+import com.logparser.parser.TimestampFormat;
+import com.logparser.stats.DistributionFactory;
+import com.logparser.stats.MemoryBudget;
+import com.logparser.stats.PercentileMode;
 import org.apache.commons.cli.*;
 
-import java.io.*;
-import java.nio.file.*;
-import java.util.*;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.DateTimeException;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.logging.ConsoleHandler;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 public class Main {
-    private static final List<LogParser> parsers = Arrays.asList(
-            new ApmLogParser(),
-            new ApplicationLogParser(),
-            new RequestLogParser()
-    );
-
-    private static final Map<String, LogAggregator> aggregators = Map.of(
-            "APM", new ApmLogAggregator(),
-            "APPLICATION", new ApplicationLogAggregator(),
-            "REQUEST", new RequestLogAggregator()
-    );
+    // Held here so the level set from the command line is not lost if the logger is collected
+    private static final Logger APP_LOGGER = Logger.getLogger("com.logparser");
+    private static Handler logHandler;
 
     public static void main(String[] args) {
         Options options = new Options();
-        options.addOption("f", "file", true, "Input log file path");
+        options.addOption(Option.builder("f").longOpt("file").hasArgs()
+                .desc("Input log files, directories or globs (plain, gzip or zstd); more can follow as arguments")
+                .build());
         options.addOption("o", "output-dir", true, "Output directory path (optional)");
+        options.addOption("t", "threads", true, "Number of worker threads (optional, default 1)");
+        options.addOption(null, "mmap", false, "Memory-map the input and tokenize lines without decoding them");
+        options.addOption(null, "percentiles", true, "Percentile mode: exact (default) or sketch");
+        options.addOption(null, "percentile-error", true,
+                "Relative error bound for --percentiles=sketch (optional, default 0.01)");
+        options.addOption(null, "memory-budget", true,
+                "Memory for exact percentile samples, e.g. 512m or 2g; past it samples are spilled to disk "
+                        + "in sorted runs and merged for the results, which stay exact");
+        options.addOption(null, "spill-dir", true,
+                "Directory for --memory-budget spill files (optional, default: the system temp directory)");
+        options.addOption(null, "follow", false, "Keep tailing the input file and rewrite the output periodically");
+        options.addOption(null, "snapshot-interval", true, "Seconds between --follow snapshots (optional, default 10)");
+        options.addOption(null, "snapshot-lines", true, "Also snapshot after this many new lines in --follow mode");
+        options.addOption(null, "checkpoint", true,
+                "Checkpoint file; a rerun over the same input only processes lines appended since the last run");
+        options.addOption(null, "window", true, "Aggregate per time window of this size, e.g. 1m, 5m or 1h");
+        options.addOption(null, "window-slide", true,
+                "Start a new --window this often for overlapping sliding windows (default: tumbling windows)");
+        options.addOption(null, "allowed-lateness", true,
+                "How far behind the newest timestamp a line may be and still count towards its window (default 0s)");
+        options.addOption(null, "log-level", true,
+                "Log level written to stderr: off (default), severe, warning, info, fine, finer or finest");
+        options.addOption(null, "progress", false, "Print a progress line to stderr while processing");
+        options.addOption(null, "progress-interval", true, "Seconds between --progress lines (optional, default 5)");
+        options.addOption(null, "metrics-out", true,
+                "Write run metrics (throughput, counts per type, phase timings) to this JSON file");
+        options.addOption(null, "timestamp-format", true,
+                "Format of the timestamp field: iso (default), epoch, epoch_millis or a java.time pattern");
+        options.addOption(null, "timestamp-zone", true,
+                "Time zone for --timestamp-format patterns without an offset (optional, default UTC)");
+        options.addOption(Option.builder().longOpt("where").hasArg()
+                .desc("Only count lines matching all of these comma-separated conditions, e.g. "
+                        + "type=request,status=5xx,url^=/api/ or time>=2024-02-24T16:00:00Z; may be repeated")
+                .build());
+        options.addOption(null, "normalize-urls", false,
+                "Count request URLs by route: drop query strings and replace numeric, UUID and long hex "
+                        + "path segments with {id}, {uuid} and {hex}");
+        options.addOption(Option.builder().longOpt("route-template").hasArg()
+                .desc("Count request URLs whose path matches this template under it, e.g. /api/users/{id}/orders "
+                        + "or /static/*; may be repeated and is tried before --normalize-urls")
+                .build());
+        options.addOption(null, "max-routes", true,
+                "Keep stats for at most this many routes, the busiest, and count the rest under {other}");
+        options.addOption(Option.builder().longOpt("group-by").hasArg()
+                .desc("Also aggregate entries of one type by these fields, e.g. request:host,request_url, "
+                        + "into request_by_host_request_url.json; may be repeated")
+                .build());
+        options.addOption(Option.builder().longOpt("stats").hasArg()
+                .desc("Stats for --group-by: count, sum, min, max, avg and p1 to p100, e.g. p50,p99,count "
+                        + "(optional, default count); give it once for all group-bys or once for each")
+                .build());
+        options.addOption(null, "templates", false,
+                "Also cluster application messages into templates per level and write the most frequent, "
+                        + "with counts and sample messages, to templates.json");
+        options.addOption(null, "max-templates", true,
+                "Templates --templates keeps per level; the least frequent make way (optional, default 1000)");
+        options.addOption(null, "top-templates", true,
+                "Templates --templates reports per level (optional, default 10)");
+        options.addOption(null, "save-columns", true,
+                "Also save the parsed entries to this columnar file; a later run given it as --file "
+                        + "aggregates them again without parsing the text");
+        options.addOption(null, "serve", false,
+                "Run as a daemon: read log lines sent over TCP and answer queries for the results over HTTP");
+        options.addOption(null, "ingest-port", true, "TCP port --serve reads log lines from (optional, default 9400)");
+        options.addOption(null, "http-port", true, "HTTP port --serve answers queries on (optional, default 9401)");
+        options.addOption(null, "bind", true, "Address --serve listens on (optional, default 127.0.0.1)");
+        options.addOption(null, "compact", false, "Write the JSON output without line breaks and indentation");
+        options.addOption(null, "format", true,
+                "Format of the output files: json (default), or ndjson or csv with one row per key for bulk loading");
+        options.addOption(null, "breakdown", true,
+                "Also write results per host or per input file: host or file (e.g. apm_by_host.json)");
 
         CommandLineParser parser = new DefaultParser();
         HelpFormatter formatter = new HelpFormatter();
 
         try {
             CommandLine cmd = parser.parse(options, args);
-            String inputFile = cmd.getOptionValue("file");
+            List<String> inputs = new ArrayList<>();
+            if (cmd.getOptionValues("file") != null) {
+                inputs.addAll(Arrays.asList(cmd.getOptionValues("file")));
+            }
+            inputs.addAll(cmd.getArgList());
             String outputDir = cmd.getOptionValue("output-dir");
+            ProcessingConfig config = new ProcessingConfig();
+            config.setThreads(parseThreads(cmd.getOptionValue("threads", "1")));
+            config.setMemoryMapped(cmd.hasOption("mmap"));
+            MemoryBudget memoryBudget = parseMemoryBudget(cmd);
+            config.setDistributions(parseDistributions(cmd).withMemoryBudget(memoryBudget));
+            if (memoryBudget != null && config.getDistributions().getMode() != PercentileMode.EXACT) {
+                throw new ParseException("--memory-budget only applies to --percentiles exact");
+            }
+            config.setWindow(parseWindow(cmd));
+            if (config.getWindow() != null
+                    && (config.getThreads() > 1 || cmd.hasOption("checkpoint") || cmd.hasOption("follow"))) {
+                // --follow would keep every closed window until it stops, to rewrite the whole series
+                throw new ParseException("--window cannot be combined with --threads, --checkpoint or --follow");
+            }
+            config.setTimestampFormats(parseTimestampFormat(cmd));
+            config.setFilter(parseFilter(cmd));
+            config.setUrlNormalizer(parseUrlNormalizer(cmd));
+            long maxRoutes = parseNonNegative(cmd, "max-routes", "0");
+            if (maxRoutes > 1_000_000) {
+                throw new ParseException("--max-routes must be at most 1000000: " + maxRoutes);
+            }
+            config.setMaxRoutes((int) maxRoutes);
+            config.setGroupBys(parseGroupBys(cmd));
+            if (!config.getGroupBys().isEmpty() && config.getWindow() != null) {
+                throw new ParseException("--group-by cannot be combined with --window");
+            }
+            if (cmd.hasOption("templates")) {
+                config.setMaxTemplates(parseCount(cmd, "max-templates", "1000"));
+                config.setTopTemplates(parseCount(cmd, "top-templates", "10"));
+                if (config.getWindow() != null) {
+                    throw new ParseException("--templates cannot be combined with --window");
+                }
+            } else if (cmd.hasOption("max-templates") || cmd.hasOption("top-templates")) {
+                throw new ParseException("--max-templates and --top-templates need --templates");
+            }
+            config.setBreakdown(parseBreakdown(cmd.getOptionValue("breakdown", "none")));
+            config.setCompactOutput(cmd.hasOption("compact"));
+            config.setOutputFormat(parseOutputFormat(cmd.getOptionValue("format", "json")));
+            if (config.getOutputFormat() != OutputFormat.JSON
+                    && (config.getWindow() != null || config.getBreakdown() != Breakdown.NONE)) {
+                throw new ParseException("--window and --breakdown only write JSON; leave out --format");
+            }
+            if (config.getBreakdown() != Breakdown.NONE
+                    && (config.getWindow() != null || cmd.hasOption("checkpoint"))) {
+                throw new ParseException("--breakdown cannot be combined with --window or --checkpoint");
+            }
+
+            configureLogging(cmd.getOptionValue("log-level", "off"));
+            ProgressReporter progress = null;
+            if (cmd.hasOption("progress")) {
+                long interval = parseNonNegative(cmd, "progress-interval", "5");
+                if (interval == 0) {
+                    throw new ParseException("--progress-interval must be at least 1 second");
+                }
+                progress = new ProgressReporter(interval * 1000);
+                config.setProgress(progress);
+            }
+            Path metricsOut = cmd.hasOption("metrics-out") ? Paths.get(cmd.getOptionValue("metrics-out")) : null;
 
-            if (inputFile == null) {
+            if (cmd.hasOption("serve")) {
+                if (!inputs.isEmpty() || config.getThreads() > 1 || config.getWindow() != null
+                        || config.getBreakdown() != Breakdown.NONE || cmd.hasOption("follow")
+                        || cmd.hasOption("checkpoint") || cmd.hasOption("save-columns")) {
+                    throw new ParseException("--serve reads its input from the network and cannot be combined with "
+                            + "--file, --threads, --window, --breakdown, --follow, --checkpoint or --save-columns");
+                }
+                serve(cmd, outputDir, config, progress, metricsOut);
+                return;
+            }
+            if (inputs.isEmpty()) {
                 formatter.printHelp("log-parser", options);
                 System.exit(1);
             }
+            List<Path> inputFiles = InputFiles.expand(inputs);
+            boolean singleFile = inputFiles.size() == 1 && config.getBreakdown() != Breakdown.FILE;
+            if (!singleFile && (cmd.hasOption("follow") || cmd.hasOption("checkpoint") || config.getWindow() != null)) {
+                throw new ParseException("--follow, --checkpoint and --window need a single input file");
+            }
+            String inputFile = inputFiles.get(0).toString();
+            Path saveColumns = cmd.hasOption("save-columns") ? Paths.get(cmd.getOptionValue("save-columns")) : null;
+            if (saveColumns != null && (!singleFile || config.getThreads() > 1
+                    || cmd.hasOption("follow") || cmd.hasOption("checkpoint"))) {
+                throw new ParseException("--save-columns needs a single input file and cannot be combined with "
+                        + "--threads, --follow or --checkpoint");
+            }
+            for (Path input : inputFiles) {
+                if (ColumnarFormat.isColumnar(input) && (saveColumns != null || config.getFilter() != null
+                        || cmd.hasOption("follow") || cmd.hasOption("checkpoint"))) {
+                    throw new ParseException("Columnar input cannot be combined with --save-columns, --where, "
+                            + "--follow or --checkpoint: " + input);
+                }
+            }
+            if ((cmd.hasOption("follow") || cmd.hasOption("checkpoint")) && Files.isRegularFile(Paths.get(inputFile))
+                    && Compression.detect(Paths.get(inputFile)) != Compression.NONE) {
+                throw new ParseException("--follow and --checkpoint need an uncompressed input file");
+            }
 
-            processLogFile(inputFile, outputDir);
+            long started = System.nanoTime();
+            if (progress != null) {
+                progress.start();
+            }
+            try {
+                LogProcessor processor;
+                if (!singleFile) {
+                    processor = processLogFiles(inputFiles, outputDir, config);
+                } else if (cmd.hasOption("follow")) {
+                    followLogFile(inputFile, outputDir, config,
+                            parseNonNegative(cmd, "snapshot-interval", "10") * 1000,
+                            parseNonNegative(cmd, "snapshot-lines", "0"), metricsOut);
+                    processor = null;
+                } else if (cmd.hasOption("checkpoint")) {
+                    processor = processFromCheckpoint(inputFile, outputDir, config,
+                            Paths.get(cmd.getOptionValue("checkpoint")));
+                } else {
+                    processor = processLogFile(inputFile, outputDir, config, saveColumns);
+                }
+                if (metricsOut != null && processor != null) {
+                    writeMetrics(metricsOut, processor, System.nanoTime() - started, config.getThreads());
+                }
+            } finally {
+                if (progress != null) {
+                    progress.stop();
+                }
+                if (memoryBudget != null) {
+                    memoryBudget.close();
+                }
+            }
         } catch (ParseException e) {
             System.err.println("Error parsing command line arguments: " + e.getMessage());
             formatter.printHelp("log-parser", options);
@@ -55,51 +265,356 @@ public class Main {
         } catch (IOException e) {
             System.err.println("Error processing log file: " + e.getMessage());
             System.exit(1);
+        } catch (UncheckedIOException e) {
+            System.err.println("Error processing log file: " + e.getMessage() + ": " + e.getCause().getMessage());
+            System.exit(1);
         }
     }
 
-    private static void processLogFile(String inputFile, String outputDir) throws IOException {
-        // Read and parse log file
-        List<LogEntry> entries = new ArrayList<>();
-        try (BufferedReader reader = Files.newBufferedReader(Paths.get(inputFile))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                System.out.println("Processing line: " + line);
-                for (LogParser logParser : parsers) {
-                    if (logParser.canParse(line)) {
-                        LogEntry entry = logParser.parse(line);
-                        System.out.println("Parsed entry type: " + entry.getType());
-                        entries.add(entry);
-                        break;
-                    }
-                }
+    private static MemoryBudget parseMemoryBudget(CommandLine cmd) throws ParseException {
+        if (!cmd.hasOption("memory-budget")) {
+            if (cmd.hasOption("spill-dir")) {
+                throw new ParseException("--spill-dir needs --memory-budget");
             }
+            return null;
+        }
+        try {
+            return new MemoryBudget(MemoryBudget.parseSize(cmd.getOptionValue("memory-budget")),
+                    Paths.get(cmd.getOptionValue("spill-dir", System.getProperty("java.io.tmpdir"))));
+        } catch (IllegalArgumentException e) {
+            throw new ParseException("Invalid --memory-budget: " + e.getMessage());
+        }
+    }
+
+    private static Supplier<TimestampFormat> parseTimestampFormat(CommandLine cmd) throws ParseException {
+        String format = cmd.getOptionValue("timestamp-format", "iso");
+        try {
+            return TimestampFormat.factory(format, ZoneId.of(cmd.getOptionValue("timestamp-zone", "UTC")));
+        } catch (DateTimeException | IllegalArgumentException e) {
+            throw new ParseException("Invalid --timestamp-format or --timestamp-zone: " + e.getMessage());
         }
+    }
 
-        // Aggregate logs
-        for (LogEntry entry : entries) {
-            LogAggregator aggregator = aggregators.get(entry.getType());
-            if (aggregator != null) {
-                System.out.println("Aggregating entry of type: " + entry.getType());
-                aggregator.aggregate(entry);
+    private static LineFilter parseFilter(CommandLine cmd) throws ParseException {
+        if (!cmd.hasOption("where")) {
+            return null;
+        }
+        try {
+            return LineFilter.parse(Arrays.asList(cmd.getOptionValues("where")), LogProcessor.OUTPUT_FILES.keySet());
+        } catch (IllegalArgumentException e) {
+            throw new ParseException("Invalid --where: " + e.getMessage());
+        }
+    }
+
+    private static UrlNormalizer parseUrlNormalizer(CommandLine cmd) throws ParseException {
+        if (!cmd.hasOption("normalize-urls") && !cmd.hasOption("route-template")) {
+            return null;
+        }
+        String[] templates = cmd.getOptionValues("route-template");
+        try {
+            return UrlNormalizer.of(cmd.hasOption("normalize-urls"),
+                    templates == null ? List.of() : Arrays.asList(templates));
+        } catch (IllegalArgumentException e) {
+            throw new ParseException("Invalid --route-template: " + e.getMessage());
+        }
+    }
+
+    private static List<GroupBy> parseGroupBys(CommandLine cmd) throws ParseException {
+        String[] groupBys = cmd.getOptionValues("group-by");
+        String[] stats = cmd.getOptionValues("stats");
+        if (groupBys == null) {
+            if (stats != null) {
+                throw new ParseException("--stats needs --group-by");
+            }
+            return List.of();
+        }
+        if (stats != null && stats.length != 1 && stats.length != groupBys.length) {
+            throw new ParseException("Give --stats once, or once for each --group-by");
+        }
+        Map<String, GroupBy> parsed = new LinkedHashMap<>();
+        for (int i = 0; i < groupBys.length; i++) {
+            String groupStats = stats == null ? "count" : stats[stats.length == 1 ? 0 : i];
+            GroupBy groupBy;
+            try {
+                groupBy = GroupBy.parse(groupBys[i], groupStats);
+            } catch (IllegalArgumentException e) {
+                throw new ParseException("Invalid --group-by or --stats: " + e.getMessage());
+            }
+            GroupBy previous = parsed.putIfAbsent(groupBy.fileName(), groupBy);
+            if (previous != null) {
+                throw new ParseException("--group-by " + previous + " and " + groupBy + " would both write "
+                        + groupBy.fileName() + "; give each output its own fields");
             }
         }
+        return new ArrayList<>(parsed.values());
+    }
 
-        // Create output directory if it doesn't exist
-        Path outputPath = Paths.get(outputDir != null ? outputDir : "output");
-        Files.createDirectories(outputPath);
+    private static OutputFormat parseOutputFormat(String value) throws ParseException {
+        try {
+            return OutputFormat.valueOf(value.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new ParseException("--format must be json, ndjson or csv: " + value);
+        }
+    }
+
+    private static Breakdown parseBreakdown(String value) throws ParseException {
+        try {
+            return Breakdown.valueOf(value.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new ParseException("--breakdown must be host or file: " + value);
+        }
+    }
+
+    private static int parseThreads(String value) throws ParseException {
+        try {
+            int threads = Integer.parseInt(value);
+            if (threads < 1) {
+                throw new ParseException("--threads must be at least 1: " + value);
+            }
+            return threads;
+        } catch (NumberFormatException e) {
+            throw new ParseException("--threads must be a number: " + value);
+        }
+    }
+
+    private static long parseNonNegative(CommandLine cmd, String option, String defaultValue) throws ParseException {
+        String value = cmd.getOptionValue(option, defaultValue);
+        try {
+            long number = Long.parseLong(value);
+            if (number < 0) {
+                throw new ParseException("--" + option + " must not be negative: " + value);
+            }
+            return number;
+        } catch (NumberFormatException e) {
+            throw new ParseException("--" + option + " must be a number: " + value);
+        }
+    }
+
+    private static int parseCount(CommandLine cmd, String option, String defaultValue) throws ParseException {
+        long count = parseNonNegative(cmd, option, defaultValue);
+        if (count < 1 || count > 1_000_000) {
+            throw new ParseException("--" + option + " must be between 1 and 1000000: " + count);
+        }
+        return (int) count;
+    }
+
+    private static DistributionFactory parseDistributions(CommandLine cmd) throws ParseException {
+        String mode = cmd.getOptionValue("percentiles", "exact");
+        String error = cmd.getOptionValue("percentile-error", String.valueOf(DistributionFactory.DEFAULT_RELATIVE_ERROR));
+        try {
+            return new DistributionFactory(PercentileMode.valueOf(mode.toUpperCase()), Double.parseDouble(error));
+        } catch (IllegalArgumentException e) {
+            throw new ParseException("Invalid percentile settings: --percentiles " + mode
+                    + " --percentile-error " + error);
+        }
+    }
+
+    private static void configureLogging(String level) throws ParseException {
+        Level parsed;
+        try {
+            parsed = Level.parse(level.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new ParseException("Invalid --log-level: " + level);
+        }
+        if (logHandler == null) {
+            logHandler = new ConsoleHandler();
+            APP_LOGGER.addHandler(logHandler);
+            APP_LOGGER.setUseParentHandlers(false);
+        }
+        APP_LOGGER.setLevel(parsed);
+        logHandler.setLevel(parsed);
+    }
+
+    static void writeMetrics(Path metricsOut, LogProcessor processor, long elapsedNanos, int threads)
+            throws IOException {
+        Path parent = metricsOut.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+        Map<String, Object> report = processor.getMetrics().toReport(elapsedNanos, threads);
+        if (processor.isWindowed()) {
+            report.put("late_lines", processor.getLateEntries());
+            report.put("untimed_lines", processor.getUntimedEntries());
+        }
+        LogProcessor.writeAtomically(new ObjectMapper(), metricsOut.toAbsolutePath(), report);
+    }
+
+    private static TimeWindows parseWindow(CommandLine cmd) throws ParseException {
+        if (!cmd.hasOption("window")) {
+            if (cmd.hasOption("window-slide") || cmd.hasOption("allowed-lateness")) {
+                throw new ParseException("--window-slide and --allowed-lateness need --window");
+            }
+            return null;
+        }
+        try {
+            long size = TimeWindows.parseDuration(cmd.getOptionValue("window"));
+            long slide = cmd.hasOption("window-slide") ? TimeWindows.parseDuration(cmd.getOptionValue("window-slide")) : size;
+            long lateness = TimeWindows.parseDuration(cmd.getOptionValue("allowed-lateness", "0s"));
+            return new TimeWindows(size, slide, lateness);
+        } catch (IllegalArgumentException e) {
+            throw new ParseException(e.getMessage());
+        }
+    }
+
+    private static LogProcessor processLogFile(String inputFile, String outputDir, ProcessingConfig config,
+                                               Path saveColumns) throws IOException {
+        if (config.getWindow() != null) {
+            return processWindowed(inputFile, outputDir, config, saveColumns);
+        }
+        // Parse and aggregate line by line so the whole file is never held in memory
+        LogProcessor processor;
+        if (config.getThreads() > 1) {
+            processor = new ParallelFileProcessor(config).processFile(Paths.get(inputFile));
+        } else {
+            processor = new LogProcessor(config);
+            processWithColumnOutput(processor, Paths.get(inputFile), saveColumns);
+        }
 
         // Write results to JSON files
-        ObjectMapper objectMapper = new ObjectMapper();
-        
-        Map<String, Object> apmResults = (Map<String, Object>) aggregators.get("APM").getResult();
-        System.out.println("APM results: " + apmResults);
-        objectMapper.writerWithDefaultPrettyPrinter().writeValue(
-                outputPath.resolve("apm.json").toFile(), apmResults);
-        
-        objectMapper.writerWithDefaultPrettyPrinter().writeValue(
-                outputPath.resolve("application.json").toFile(), aggregators.get("APPLICATION").getResult());
-        objectMapper.writerWithDefaultPrettyPrinter().writeValue(
-                outputPath.resolve("request.json").toFile(), aggregators.get("REQUEST").getResult());
-    }
-} 
\ No newline at end of file
+        Path outputPath = Paths.get(outputDir != null ? outputDir : "output");
+        processor.writeResults(outputPath);
+        return processor;
+    }
+
+    private static LogProcessor processLogFiles(List<Path> inputFiles, String outputDir, ProcessingConfig config)
+            throws IOException {
+        Map<String, Map<String, Object>> fileResults =
+                config.getBreakdown() == Breakdown.FILE ? new LinkedHashMap<>() : null;
+        LogProcessor processor = new MultiFileProcessor(config).process(inputFiles, fileResults);
+
+        Path outputPath = Paths.get(outputDir != null ? outputDir : "output");
+        processor.writeResults(outputPath);
+        if (fileResults != null) {
+            LogProcessor.writeBreakdown(outputPath, Breakdown.FILE, fileResults, config.isCompactOutput());
+        }
+        return processor;
+    }
+
+    private static void processWithColumnOutput(LogProcessor processor, Path inputFile, Path saveColumns)
+            throws IOException {
+        if (saveColumns == null) {
+            processor.processFile(inputFile);
+            return;
+        }
+        try (ColumnarWriter columns = new ColumnarWriter(saveColumns)) {
+            processor.setColumnOutput(columns);
+            processor.processFile(inputFile);
+            columns.commit();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static LogProcessor processWindowed(String inputFile, String outputDir, ProcessingConfig config,
+                                                Path saveColumns) throws IOException {
+        Path outputPath = Paths.get(outputDir != null ? outputDir : "output");
+        try (WindowedResultWriter output = new WindowedResultWriter(outputPath, config.isCompactOutput())) {
+            LogProcessor processor = new LogProcessor(config, output);
+            processWithColumnOutput(processor, Paths.get(inputFile), saveColumns);
+            long writeStarted = System.nanoTime();
+            processor.flushWindows();
+            output.commit();
+            processor.getMetrics().addWriteNanos(System.nanoTime() - writeStarted);
+            if (processor.getLateEntries() > 0) {
+                System.err.println("Skipped " + processor.getLateEntries()
+                        + " lines that arrived after their window closed; consider a larger --allowed-lateness");
+            }
+            if (processor.getUntimedEntries() > 0) {
+                System.err.println("Skipped " + processor.getUntimedEntries() + " lines without a timestamp");
+            }
+            return processor;
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static LogProcessor processFromCheckpoint(String inputFile, String outputDir, ProcessingConfig config,
+                                              Path checkpointFile) throws IOException {
+        Path input = Paths.get(inputFile);
+        Checkpoint checkpoint = new Checkpoint(checkpointFile);
+        LogProcessor processor = new LogProcessor(config);
+        long start = checkpoint.restore(input, config, processor);
+
+        // Only complete lines go into the checkpoint; a line still being written is
+        // included in this run's output and parsed again once it is finished
+        long size = Files.size(input);
+        long end = FileRangeInputStream.completeLinesEnd(input);
+        if (end < start) {
+            end = start;
+        }
+        if (config.getThreads() > 1) {
+            processor.merge(new ParallelFileProcessor(config).processRange(input, start, end));
+        } else {
+            processor.processRange(input, start, end);
+        }
+        checkpoint.save(input, end, config, processor);
+        if (size > end) {
+            processor.processRange(input, end, size);
+        }
+
+        Path outputPath = Paths.get(outputDir != null ? outputDir : "output");
+        processor.writeResults(outputPath);
+        return processor;
+    }
+
+    private static void serve(CommandLine cmd, String outputDir, ProcessingConfig config, ProgressReporter progress,
+                              Path metricsOut) throws ParseException, IOException {
+        String bind = cmd.getOptionValue("bind", "127.0.0.1");
+        LogServer server = new LogServer(config,
+                new InetSocketAddress(bind, parsePort(cmd, "ingest-port", "9400")),
+                new InetSocketAddress(bind, parsePort(cmd, "http-port", "9401")));
+        Path outputPath = Paths.get(outputDir != null ? outputDir : "output");
+        // On Ctrl-C, aggregate what has been received and write it out like a file run would
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                server.close();
+                server.writeResults(outputPath);
+                if (metricsOut != null) {
+                    server.writeMetrics(metricsOut);
+                }
+            } catch (IOException e) {
+                System.err.println("Error writing results: " + e.getMessage());
+            } finally {
+                if (progress != null) {
+                    progress.stop();
+                }
+            }
+        }));
+        if (progress != null) {
+            progress.start();
+        }
+        server.start();
+        System.err.println("Reading log lines on " + bind + ":" + server.getIngestPort()
+                + ", answering queries on http://" + bind + ":" + server.getHttpPort() + "/");
+        try {
+            server.awaitStopped();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static int parsePort(CommandLine cmd, String option, String defaultValue) throws ParseException {
+        long port = parseNonNegative(cmd, option, defaultValue);
+        if (port > 65535) {
+            throw new ParseException("--" + option + " must be at most 65535: " + port);
+        }
+        return (int) port;
+    }
+
+    private static void followLogFile(String inputFile, String outputDir, ProcessingConfig config,
+                                      long snapshotIntervalMillis, long snapshotLines, Path metricsOut)
+            throws IOException {
+        Path outputPath = Paths.get(outputDir != null ? outputDir : "output");
+        LogFollower follower = new LogFollower(config, Paths.get(inputFile), outputPath,
+                snapshotIntervalMillis, snapshotLines);
+        follower.setMetricsOutput(metricsOut);
+        // Stop cleanly on Ctrl-C so the last snapshot includes everything read
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            follower.stop();
+            try {
+                follower.awaitStopped(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }));
+        follower.run();
+    }
+}
@@ -0,0 +1,161 @@
+package com.logparser;
+
+import com.logparser.columnar.ColumnarFormat;
+import com.logparser.io.Compression;
+import com.logparser.io.FileRangeInputStream;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Processes many input files on one worker pool. Every file, and every line-aligned
+ * slice of a large uncompressed file, becomes a work unit; units are queued largest
+ * first, so an idle worker always takes the biggest piece left and one huge file does
+ * not leave the others waiting at the end. Results are merged in argument order, which
+ * makes the output the same as for the files concatenated into one.
+ * <p>
+ * Only {@value #UNMERGED_PER_THREAD} units per thread are queued or held unmerged at a
+ * time, so memory stays at a few units' state however many files there are. The unit
+ * next in argument order is always let in, even out of its size turn, so merging never
+ * waits on a unit that is not queued.
+ */
+public class MultiFileProcessor {
+    private static final long MIN_SLICE = 64L * 1024 * 1024;
+    private static final int UNMERGED_PER_THREAD = 2;
+
+    private final ProcessingConfig config;
+
+    public MultiFileProcessor(ProcessingConfig config) {
+        this.config = config;
+    }
+
+    private static final class WorkUnit {
+        final Path file;
+        final long start;
+        final long end;
+        final boolean wholeFile;
+        boolean submitted;
+        Future<LogProcessor> result;
+
+        WorkUnit(Path file, long start, long end, boolean wholeFile) {
+            this.file = file;
+            this.start = start;
+            this.end = end;
+            this.wholeFile = wholeFile;
+        }
+
+        LogProcessor process(ProcessingConfig config) throws IOException {
+            LogProcessor processor = new LogProcessor(config);
+            if (wholeFile) {
+                processor.processFile(file);
+            } else {
+                processor.processRange(file, start, end);
+            }
+            return processor;
+        }
+    }
+
+    /**
+     * Returns the merged processor. With {@link Breakdown#FILE}, {@code fileResults} receives
+     * each file's own results, keyed by its path.
+     */
+    public LogProcessor process(List<Path> files, Map<String, Map<String, Object>> fileResults)
+            throws IOException {
+        List<List<WorkUnit>> unitsByFile = plan(files);
+        List<WorkUnit> queue = new ArrayList<>();
+        for (List<WorkUnit> units : unitsByFile) {
+            queue.addAll(units);
+        }
+        queue.sort(Comparator.comparingLong((WorkUnit unit) -> unit.end - unit.start).reversed());
+
+        int maxUnmerged = config.getThreads() * UNMERGED_PER_THREAD;
+        ExecutorService executor = Executors.newFixedThreadPool(config.getThreads());
+        try {
+            int next = 0;
+            int unmerged = 0;
+            LogProcessor result = null;
+            for (int i = 0; i < files.size(); i++) {
+                LogProcessor fileProcessor = null;
+                for (WorkUnit unit : unitsByFile.get(i)) {
+                    for (; next < queue.size() && unmerged < maxUnmerged; next++) {
+                        if (!queue.get(next).submitted) {
+                            submit(executor, queue.get(next));
+                            unmerged++;
+                        }
+                    }
+                    if (!unit.submitted) {
+                        submit(executor, unit);
+                        unmerged++;
+                    }
+                    LogProcessor processor = ParallelFileProcessor.await(unit.result);
+                    unit.result = null;
+                    unmerged--;
+                    if (fileProcessor == null) {
+                        fileProcessor = processor;
+                    } else {
+                        fileProcessor.merge(processor);
+                    }
+                }
+                if (fileResults != null) {
+                    fileResults.put(files.get(i).toString(), fileProcessor.getResults());
+                }
+                if (result == null) {
+                    result = fileProcessor;
+                } else {
+                    result.merge(fileProcessor);
+                }
+            }
+            return result;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private void submit(ExecutorService executor, WorkUnit unit) {
+        unit.submitted = true;
+        unit.result = executor.submit(() -> unit.process(config));
+    }
+
+    public LogProcessor process(List<Path> files) throws IOException {
+        return process(files, config.getBreakdown() == Breakdown.FILE ? new LinkedHashMap<>() : null);
+    }
+
+    // Slices big plain files so that no unit is much larger than an even share of the work
+    private List<List<WorkUnit>> plan(List<Path> files) throws IOException {
+        long total = 0;
+        long[] sizes = new long[files.size()];
+        for (int i = 0; i < files.size(); i++) {
+            sizes[i] = Files.size(files.get(i));
+            total += sizes[i];
+        }
+        long sliceSize = Math.max(MIN_SLICE, total / (config.getThreads() * 4L));
+
+        List<List<WorkUnit>> unitsByFile = new ArrayList<>();
+        for (int i = 0; i < files.size(); i++) {
+            Path file = files.get(i);
+            List<WorkUnit> units = new ArrayList<>();
+            if (config.getThreads() > 1 && sizes[i] > sliceSize && Compression.detect(file) == Compression.NONE
+                    && !ColumnarFormat.isColumnar(file)) {
+                int parts = (int) Math.min(config.getThreads() * 4L, (sizes[i] + sliceSize - 1) / sliceSize);
+                long[] boundaries = FileRangeInputStream.splitAtLines(file, parts);
+                for (int part = 0; part + 1 < boundaries.length; part++) {
+                    units.add(new WorkUnit(file, boundaries[part], boundaries[part + 1], false));
+                }
+            } else {
+                units.add(new WorkUnit(file, 0, sizes[i], true));
+            }
+            unitsByFile.add(units);
+        }
+        return unitsByFile;
+    }
+}
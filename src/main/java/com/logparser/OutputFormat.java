@@ -0,0 +1,172 @@
+package com.logparser;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.logparser.aggregator.LogAggregator;
+import com.logparser.aggregator.ResultRows;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * How the result files are written. {@code json} is the nested object of keys the output
+ * files have always held, streamed from the aggregator; {@code ndjson} and {@code csv}
+ * have one flat row per key, for tools that bulk-load lines.
+ */
+public enum OutputFormat {
+    JSON("json"),
+    NDJSON("ndjson"),
+    CSV("csv");
+
+    // Has a codec, for aggregators that write their result as an object
+    private static final JsonFactory JSON_FACTORY = new ObjectMapper().getFactory();
+
+    private final String extension;
+
+    OutputFormat(String extension) {
+        this.extension = extension;
+    }
+
+    /** The file name for this format, e.g. {@code apm.csv} for {@code apm.json}. */
+    public String fileName(String jsonFileName) {
+        return jsonFileName.substring(0, jsonFileName.lastIndexOf('.') + 1) + extension;
+    }
+
+    /** @param compact leave out the line breaks and indentation of {@code json} */
+    void write(LogAggregator aggregator, OutputStream out, boolean compact) throws IOException {
+        if (this == CSV) {
+            Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+            aggregator.writeRows(new CsvRows(writer));
+            writer.flush();
+            return;
+        }
+        try (JsonGenerator generator = JSON_FACTORY.createGenerator(out, JsonEncoding.UTF8)) {
+            if (this == JSON) {
+                if (!compact) {
+                    generator.useDefaultPrettyPrinter();
+                }
+                aggregator.writeResult(generator);
+            } else {
+                generator.setRootValueSeparator(null);
+                aggregator.writeRows(new JsonRows(generator));
+            }
+        }
+    }
+
+    // One object per line, named by the header
+    private static final class JsonRows implements ResultRows {
+        private final JsonGenerator generator;
+        private String keyColumn;
+        private String[] columns;
+        private int column;
+
+        JsonRows(JsonGenerator generator) {
+            this.generator = generator;
+        }
+
+        @Override
+        public void header(String keyColumn, List<String> columns) {
+            this.keyColumn = keyColumn;
+            this.columns = columns.toArray(new String[0]);
+        }
+
+        @Override
+        public void startRow(String key) throws IOException {
+            generator.writeStartObject();
+            generator.writeStringField(keyColumn, key);
+            column = 0;
+        }
+
+        @Override
+        public void value(long value) throws IOException {
+            generator.writeNumberField(columns[column++], value);
+        }
+
+        @Override
+        public void value(double value) throws IOException {
+            generator.writeNumberField(columns[column++], value);
+        }
+
+        @Override
+        public void empty() throws IOException {
+            generator.writeNullField(columns[column++]);
+        }
+
+        @Override
+        public void endRow() throws IOException {
+            generator.writeEndObject();
+            generator.writeRaw('\n');
+        }
+    }
+
+    // RFC 4180, with a header line and \n line ends
+    private static final class CsvRows implements ResultRows {
+        private final Writer writer;
+
+        CsvRows(Writer writer) {
+            this.writer = writer;
+        }
+
+        @Override
+        public void header(String keyColumn, List<String> columns) throws IOException {
+            writeText(keyColumn);
+            for (String column : columns) {
+                writer.write(',');
+                writeText(column);
+            }
+            writer.write('\n');
+        }
+
+        @Override
+        public void startRow(String key) throws IOException {
+            writeText(key);
+        }
+
+        @Override
+        public void value(long value) throws IOException {
+            writer.write(',');
+            writer.write(Long.toString(value));
+        }
+
+        @Override
+        public void value(double value) throws IOException {
+            writer.write(',');
+            writer.write(Double.toString(value));
+        }
+
+        @Override
+        public void empty() throws IOException {
+            writer.write(',');
+        }
+
+        @Override
+        public void endRow() throws IOException {
+            writer.write('\n');
+        }
+
+        private void writeText(String text) throws IOException {
+            if (text == null) {
+                return;
+            }
+            boolean quote = false;
+            for (int i = 0; i < text.length() && !quote; i++) {
+                char c = text.charAt(i);
+                quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+            }
+            if (!quote) {
+                writer.write(text);
+                return;
+            }
+            writer.write('"');
+            writer.write(text.replace("\"", "\"\""));
+            writer.write('"');
+        }
+    }
+}
@@ -0,0 +1,212 @@
+package com.logparser;
+
+import com.logparser.columnar.ColumnarFormat;
+import com.logparser.io.ByteSlice;
+import com.logparser.io.Compression;
+import com.logparser.io.FileRangeInputStream;
+import com.logparser.io.GzipMembers;
+import com.logparser.io.LineSplitter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipException;
+
+/**
+ * Splits a file into line-aligned byte ranges, processes each range on its own worker
+ * with its own aggregators, and merges the workers' results in file order.
+ * <p>
+ * Compressed input cannot be split at arbitrary lines. A multi-member gzip file is split
+ * at member boundaries instead and the lines cut in two by a boundary are stitched back
+ * together while merging; other compressed input is processed on a single worker.
+ */
+public class ParallelFileProcessor {
+    private static final Logger LOG = Logger.getLogger(ParallelFileProcessor.class.getName());
+    private static final int CHUNK_SIZE = 256 * 1024;
+
+    private final ProcessingConfig config;
+
+    public ParallelFileProcessor(ProcessingConfig config) {
+        this.config = config;
+    }
+
+    public LogProcessor processFile(Path inputFile) throws IOException {
+        if (ColumnarFormat.isColumnar(inputFile)) {
+            return processSequentially(inputFile);
+        }
+        Compression compression = Compression.detect(inputFile);
+        if (compression == Compression.GZIP) {
+            return processGzipMembers(inputFile);
+        }
+        if (compression != Compression.NONE) {
+            return processSequentially(inputFile);
+        }
+        return processRange(inputFile, 0, Files.size(inputFile));
+    }
+
+    private LogProcessor processSequentially(Path inputFile) throws IOException {
+        LogProcessor processor = new LogProcessor(config);
+        processor.processFile(inputFile);
+        return processor;
+    }
+
+    // start must be the beginning of a line
+    public LogProcessor processRange(Path inputFile, long from, long to) throws IOException {
+        int threads = config.getThreads();
+        long[] boundaries = FileRangeInputStream.splitAtLines(inputFile, from, to, threads);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<LogProcessor>> futures = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                long start = boundaries[i];
+                long end = boundaries[i + 1];
+                futures.add(executor.submit(() -> {
+                    LogProcessor processor = new LogProcessor(config);
+                    processor.processRange(inputFile, start, end);
+                    return processor;
+                }));
+            }
+
+            // Merge in range order so the result matches a single-threaded run
+            LogProcessor result = null;
+            for (Future<LogProcessor> future : futures) {
+                LogProcessor processor = await(future);
+                if (result == null) {
+                    result = processor;
+                } else {
+                    result.merge(processor);
+                }
+            }
+            return result;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private LogProcessor processGzipMembers(Path inputFile) throws IOException {
+        long[] boundaries = GzipMembers.splitAtMembers(inputFile, config.getThreads());
+        int ranges = boundaries.length - 1;
+        if (ranges < 2) {
+            return processSequentially(inputFile);
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(ranges);
+        try {
+            List<Future<MemberRange>> futures = new ArrayList<>();
+            for (int i = 0; i < ranges; i++) {
+                MemberRange range = new MemberRange(new LogProcessor(config));
+                long start = boundaries[i];
+                long end = boundaries[i + 1];
+                futures.add(executor.submit(() -> {
+                    range.process(inputFile, start, end);
+                    return range;
+                }));
+            }
+
+            // Each range holds back its first partial line and the bytes after its last
+            // newline; together with its neighbours' they form the lines cut by a boundary
+            LogProcessor result = new LogProcessor(config);
+            ByteArrayOutputStream carry = new ByteArrayOutputStream();
+            for (Future<MemberRange> future : futures) {
+                MemberRange range;
+                try {
+                    range = await(future);
+                } catch (EOFException | ZipException e) {
+                    // A header found by chance inside compressed data splits a member in two
+                    LOG.fine("Could not decompress gzip members in parallel, falling back: " + e);
+                    return processSequentially(inputFile);
+                }
+                if (range.head == null) {
+                    carry.write(range.tail);
+                    continue;
+                }
+                carry.write(range.head);
+                processStitched(result, carry);
+                result.merge(range.processor);
+                carry.write(range.tail);
+            }
+            if (carry.size() > 0) {
+                processStitched(result, carry);
+            }
+            return result;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static void processStitched(LogProcessor processor, ByteArrayOutputStream carry) {
+        byte[] line = carry.toByteArray();
+        int length = line.length;
+        if (length > 0 && line[length - 1] == '\r') {
+            length--;
+        }
+        processor.process(new ByteSlice(ByteBuffer.wrap(line), 0, length));
+        carry.reset();
+    }
+
+    private static final class MemberRange implements Consumer<CharSequence> {
+        final LogProcessor processor;
+        byte[] head;
+        byte[] tail;
+
+        MemberRange(LogProcessor processor) {
+            this.processor = processor;
+        }
+
+        void process(Path inputFile, long start, long end) throws IOException {
+            LineSplitter splitter = new LineSplitter(this);
+            byte[] chunk = new byte[CHUNK_SIZE];
+            try (InputStream in = new GZIPInputStream(new FileRangeInputStream(inputFile, start, end), CHUNK_SIZE)) {
+                int read;
+                while ((read = in.read(chunk)) > 0) {
+                    processor.getMetrics().addBytes(read);
+                    splitter.feed(chunk, 0, read);
+                }
+            }
+            tail = splitter.remaining();
+        }
+
+        @Override
+        public void accept(CharSequence line) {
+            if (head != null) {
+                processor.process(line);
+                return;
+            }
+            ByteSlice slice = (ByteSlice) line;
+            head = new byte[slice.length()];
+            for (int i = 0; i < head.length; i++) {
+                head[i] = slice.byteAt(i);
+            }
+        }
+    }
+
+    static <T> T await(Future<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while processing log file", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+}
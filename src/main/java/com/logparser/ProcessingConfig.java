@@ -0,0 +1,169 @@
+package com.logparser;
+
+import com.logparser.aggregator.GroupBy;
+import com.logparser.aggregator.TimeWindows;
+import com.logparser.aggregator.UrlNormalizer;
+import com.logparser.filter.LineFilter;
+import com.logparser.parser.IsoTimestampFormat;
+import com.logparser.parser.TimestampFormat;
+import com.logparser.stats.DistributionFactory;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Settings shared by every {@link LogProcessor} taking part in a run.
+ */
+public class ProcessingConfig {
+    private int threads = 1;
+    private boolean memoryMapped;
+    private DistributionFactory distributions = DistributionFactory.exact();
+    private TimeWindows window;
+    private ProgressReporter progress;
+    private Breakdown breakdown = Breakdown.NONE;
+    private Supplier<TimestampFormat> timestampFormats = IsoTimestampFormat::new;
+    private LineFilter filter;
+    private UrlNormalizer urlNormalizer;
+    private int maxRoutes;
+    private OutputFormat outputFormat = OutputFormat.JSON;
+    private boolean compactOutput;
+    private List<GroupBy> groupBys = Collections.emptyList();
+    private int maxTemplates;
+    private int topTemplates = 10;
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public void setThreads(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Thread count must be at least 1: " + threads);
+        }
+        this.threads = threads;
+    }
+
+    public boolean isMemoryMapped() {
+        return memoryMapped;
+    }
+
+    public void setMemoryMapped(boolean memoryMapped) {
+        this.memoryMapped = memoryMapped;
+    }
+
+    public DistributionFactory getDistributions() {
+        return distributions;
+    }
+
+    public void setDistributions(DistributionFactory distributions) {
+        this.distributions = distributions;
+    }
+
+    // Null aggregates the whole input into a single result
+    public TimeWindows getWindow() {
+        return window;
+    }
+
+    public void setWindow(TimeWindows window) {
+        this.window = window;
+    }
+
+    // Every processor created with this config reports to it; null for no progress output
+    public ProgressReporter getProgress() {
+        return progress;
+    }
+
+    public void setProgress(ProgressReporter progress) {
+        this.progress = progress;
+    }
+
+    // Timestamps are only parsed for features that need them, such as --window
+    public Supplier<TimestampFormat> getTimestampFormats() {
+        return timestampFormats;
+    }
+
+    public void setTimestampFormats(Supplier<TimestampFormat> timestampFormats) {
+        this.timestampFormats = timestampFormats;
+    }
+
+    public Breakdown getBreakdown() {
+        return breakdown;
+    }
+
+    public void setBreakdown(Breakdown breakdown) {
+        this.breakdown = breakdown;
+    }
+
+    // Null keeps every line
+    public LineFilter getFilter() {
+        return filter;
+    }
+
+    public void setFilter(LineFilter filter) {
+        this.filter = filter == null || filter.isEmpty() ? null : filter;
+    }
+
+    // Null counts request URLs as they are
+    public UrlNormalizer getUrlNormalizer() {
+        return urlNormalizer;
+    }
+
+    public void setUrlNormalizer(UrlNormalizer urlNormalizer) {
+        this.urlNormalizer = urlNormalizer;
+    }
+
+    // 0 keeps every route
+    public int getMaxRoutes() {
+        return maxRoutes;
+    }
+
+    public void setMaxRoutes(int maxRoutes) {
+        if (maxRoutes < 0) {
+            throw new IllegalArgumentException("Route limit must not be negative: " + maxRoutes);
+        }
+        this.maxRoutes = maxRoutes;
+    }
+
+    public OutputFormat getOutputFormat() {
+        return outputFormat;
+    }
+
+    public void setOutputFormat(OutputFormat outputFormat) {
+        this.outputFormat = outputFormat;
+    }
+
+    // JSON results without line breaks and indentation
+    public boolean isCompactOutput() {
+        return compactOutput;
+    }
+
+    public void setCompactOutput(boolean compactOutput) {
+        this.compactOutput = compactOutput;
+    }
+
+    // Each is aggregated next to the per-type results and written to its own file
+    public List<GroupBy> getGroupBys() {
+        return groupBys;
+    }
+
+    public void setGroupBys(List<GroupBy> groupBys) {
+        this.groupBys = groupBys;
+    }
+
+    // Message templates kept per level; 0 does not cluster messages
+    public int getMaxTemplates() {
+        return maxTemplates;
+    }
+
+    public void setMaxTemplates(int maxTemplates) {
+        this.maxTemplates = maxTemplates;
+    }
+
+    public int getTopTemplates() {
+        return topTemplates;
+    }
+
+    public void setTopTemplates(int topTemplates) {
+        this.topTemplates = topTemplates;
+    }
+}
@@ -0,0 +1,196 @@
+package com.logparser;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Counters and phase timings for one {@link LogProcessor}. The counters are exact; parse
+ * and aggregate times are measured on every {@value #TIMING_SAMPLE}th line and scaled up,
+ * which keeps {@code System.nanoTime()} out of the per-line cost. Read time is whatever
+ * the processing wall time leaves after parsing and aggregating.
+ * <p>
+ * All counters belong to the processing thread. The lines and bytes this processor read
+ * itself (not those merged in from others) are additionally published every
+ * {@value #PUBLISH_EVERY} lines for {@link ProgressReporter}.
+ */
+public class ProcessingMetrics {
+    static final int TIMING_SAMPLE = 64;
+    static final int PUBLISH_EVERY = 4096;
+
+    private long lines;
+    private long bytes;
+    private long unparseable;
+    private long filtered;
+    private final Map<String, long[]> entries = new LinkedHashMap<>();
+    private long sampledLines;
+    private long sampledParseNanos;
+    private long sampledAggregateNanos;
+    private long processingNanos;
+    private long writeNanos;
+    private long mergedLines;
+    private long mergedBytes;
+    private volatile long publishedLines;
+    private volatile long publishedBytes;
+
+    public ProcessingMetrics(Iterable<String> types) {
+        for (String type : types) {
+            entries.put(type, new long[1]);
+        }
+    }
+
+    /**
+     * Counts a line, or an entry read back from a columnar file, and returns whether it
+     * should be timed. Its bytes are added separately by whatever read them.
+     */
+    boolean countLine() {
+        lines++;
+        if ((lines & (PUBLISH_EVERY - 1)) == 0) {
+            publish();
+        }
+        return (lines & (TIMING_SAMPLE - 1)) == 0;
+    }
+
+    void addBytes(long size) {
+        bytes += size;
+    }
+
+    void countUnparseable() {
+        unparseable++;
+    }
+
+    void countFiltered() {
+        filtered++;
+    }
+
+    void countEntry(String type) {
+        countEntries(type, 1);
+    }
+
+    void recordSample(long parseNanos, long aggregateNanos) {
+        sampledLines++;
+        sampledParseNanos += parseNanos;
+        sampledAggregateNanos += aggregateNanos;
+    }
+
+    void addProcessingNanos(long nanos) {
+        processingNanos += nanos;
+        publish();
+    }
+
+    void addWriteNanos(long nanos) {
+        writeNanos += nanos;
+    }
+
+    private void publish() {
+        publishedLines = lines - mergedLines;
+        publishedBytes = bytes - mergedBytes;
+    }
+
+    long getPublishedLines() {
+        return publishedLines;
+    }
+
+    long getPublishedBytes() {
+        return publishedBytes;
+    }
+
+    public long getLines() {
+        return lines;
+    }
+
+    public long getBytes() {
+        return bytes;
+    }
+
+    public long getUnparseable() {
+        return unparseable;
+    }
+
+    // Lines rejected by --where before they were parsed
+    public long getFiltered() {
+        return filtered;
+    }
+
+    public long getEntries(String type) {
+        long[] count = entries.get(type);
+        return count == null ? 0 : count[0];
+    }
+
+    public long getParseNanos() {
+        return scaled(sampledParseNanos);
+    }
+
+    public long getAggregateNanos() {
+        return scaled(sampledAggregateNanos);
+    }
+
+    public long getReadNanos() {
+        return Math.max(0, processingNanos - getParseNanos() - getAggregateNanos());
+    }
+
+    public long getWriteNanos() {
+        return writeNanos;
+    }
+
+    private long scaled(long sampledNanos) {
+        return sampledLines == 0 ? 0 : (long) ((double) sampledNanos * lines / sampledLines);
+    }
+
+    public void merge(ProcessingMetrics other) {
+        lines += other.lines;
+        bytes += other.bytes;
+        mergedLines += other.lines;
+        mergedBytes += other.bytes;
+        unparseable += other.unparseable;
+        filtered += other.filtered;
+        for (Map.Entry<String, long[]> entry : other.entries.entrySet()) {
+            countEntries(entry.getKey(), entry.getValue()[0]);
+        }
+        // Keep the scaled estimates of both sides, each with its own sampling ratio
+        long parseNanos = getParseNanos() + other.getParseNanos();
+        long aggregateNanos = getAggregateNanos() + other.getAggregateNanos();
+        sampledLines = lines;
+        sampledParseNanos = parseNanos;
+        sampledAggregateNanos = aggregateNanos;
+        processingNanos += other.processingNanos;
+        writeNanos += other.writeNanos;
+    }
+
+    private void countEntries(String type, long count) {
+        long[] counter = entries.get(type);
+        if (counter == null) {
+            entries.put(type, new long[]{count});
+        } else {
+            counter[0] += count;
+        }
+    }
+
+    /**
+     * Builds the {@code --metrics-out} report. Phase times are summed over worker threads,
+     * so with several threads they can add up to more than the elapsed time.
+     */
+    public Map<String, Object> toReport(long elapsedNanos, int threads) {
+        double seconds = Math.max(elapsedNanos, 1) / 1e9;
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("elapsed_ms", elapsedNanos / 1_000_000);
+        report.put("threads", threads);
+        report.put("lines", lines);
+        report.put("bytes", bytes);
+        report.put("lines_per_second", Math.round(lines / seconds));
+        report.put("bytes_per_second", Math.round(bytes / seconds));
+        Map<String, Long> byType = new LinkedHashMap<>();
+        for (Map.Entry<String, long[]> entry : entries.entrySet()) {
+            byType.put(entry.getKey(), entry.getValue()[0]);
+        }
+        report.put("entries", byType);
+        report.put("unparseable_lines", unparseable);
+        report.put("filtered_lines", filtered);
+        Map<String, Long> phases = new LinkedHashMap<>();
+        phases.put("read", getReadNanos() / 1_000_000);
+        phases.put("parse", getParseNanos() / 1_000_000);
+        phases.put("aggregate", getAggregateNanos() / 1_000_000);
+        phases.put("write", writeNanos / 1_000_000);
+        report.put("phase_ms", phases);
+        return report;
+    }
+}
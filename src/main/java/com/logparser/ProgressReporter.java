@@ -0,0 +1,80 @@
+package com.logparser;
+
+import java.io.PrintStream;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Prints a progress line to stderr at a fixed interval, summing the published counts of
+ * every processor taking part in the run.
+ */
+public class ProgressReporter {
+    private final long intervalMillis;
+    private final PrintStream out;
+    private final List<ProcessingMetrics> metrics = new CopyOnWriteArrayList<>();
+    private ScheduledExecutorService scheduler;
+    private long startNanos;
+    private long lastNanos;
+    private long lastLines;
+    private long lastBytes;
+
+    public ProgressReporter(long intervalMillis) {
+        this(intervalMillis, System.err);
+    }
+
+    ProgressReporter(long intervalMillis, PrintStream out) {
+        if (intervalMillis <= 0) {
+            throw new IllegalArgumentException("Progress interval must be positive: " + intervalMillis);
+        }
+        this.intervalMillis = intervalMillis;
+        this.out = out;
+    }
+
+    public void register(ProcessingMetrics processorMetrics) {
+        metrics.add(processorMetrics);
+    }
+
+    public synchronized void start() {
+        startNanos = System.nanoTime();
+        lastNanos = startNanos;
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "progress");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleAtFixedRate(this::report, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    // Prints a last line with the totals and the average rate over the whole run
+    public synchronized void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+            lastNanos = startNanos;
+            lastLines = 0;
+            lastBytes = 0;
+            report();
+        }
+    }
+
+    synchronized void report() {
+        long lines = 0;
+        long bytes = 0;
+        for (ProcessingMetrics processorMetrics : metrics) {
+            lines += processorMetrics.getPublishedLines();
+            bytes += processorMetrics.getPublishedBytes();
+        }
+        long now = System.nanoTime();
+        double seconds = Math.max(now - lastNanos, 1) / 1e9;
+        out.println(String.format(Locale.ROOT, "[%ds] %,d lines, %.1f MB read; %,.0f lines/s, %.1f MB/s",
+                TimeUnit.NANOSECONDS.toSeconds(now - startNanos), lines, bytes / 1e6,
+                (lines - lastLines) / seconds, (bytes - lastBytes) / 1e6 / seconds));
+        lastNanos = now;
+        lastLines = lines;
+        lastBytes = bytes;
+    }
+}
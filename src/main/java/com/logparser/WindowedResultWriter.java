@@ -0,0 +1,108 @@
+package com.logparser;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.logparser.aggregator.WindowListener;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Streams each output file as a JSON array of windows, appending a window as soon as it
+ * closes. The arrays are written to temp files that only replace the real output files on
+ * {@link #commit()}, so a failed run leaves the previous output in place.
+ */
+public class WindowedResultWriter implements Closeable {
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Map<String, Series> series = new LinkedHashMap<>();
+    private final boolean compact;
+    private boolean committed;
+
+    public WindowedResultWriter(Path outputPath) throws IOException {
+        this(outputPath, false);
+    }
+
+    /** @param compact leave out line breaks and indentation */
+    public WindowedResultWriter(Path outputPath, boolean compact) throws IOException {
+        this.compact = compact;
+        Files.createDirectories(outputPath);
+        try {
+            for (Map.Entry<String, String> file : LogProcessor.OUTPUT_FILES.entrySet()) {
+                series.put(file.getKey(), new Series(outputPath.resolve(file.getValue())));
+            }
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+    }
+
+    public WindowListener listenerFor(String type) {
+        Series target = series.get(type);
+        return (start, end, result) -> {
+            try {
+                target.write(start.toString(), end.toString(), result);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        };
+    }
+
+    public void commit() throws IOException {
+        for (Series output : series.values()) {
+            output.finish();
+        }
+        committed = true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (committed) {
+            return;
+        }
+        for (Series output : series.values()) {
+            output.discard();
+        }
+    }
+
+    private class Series {
+        private final Path target;
+        private final Path temp;
+        private final JsonGenerator generator;
+
+        Series(Path target) throws IOException {
+            this.target = target;
+            this.temp = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".tmp");
+            this.generator = objectMapper.getFactory().createGenerator(Files.newOutputStream(temp));
+            if (!compact) {
+                generator.useDefaultPrettyPrinter();
+            }
+            generator.writeStartArray();
+        }
+
+        void write(String start, String end, Object result) throws IOException {
+            generator.writeStartObject();
+            generator.writeStringField("start", start);
+            generator.writeStringField("end", end);
+            generator.writeFieldName("stats");
+            objectMapper.writeValue(generator, result);
+            generator.writeEndObject();
+        }
+
+        void finish() throws IOException {
+            generator.writeEndArray();
+            generator.close();
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+
+        void discard() throws IOException {
+            generator.close();
+            Files.deleteIfExists(temp);
+        }
+    }
+}
@@ -1,52 +1,140 @@
 package com.logparser.aggregator;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.logparser.io.StateIO;
 import com.logparser.model.ApmLogEntry;
 import com.logparser.model.LogEntry;
+import com.logparser.parser.DictionaryMap;
 
+import com.logparser.stats.DistributionFactory;
+import com.logparser.stats.DoubleDistribution;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.*;
 
 public class ApmLogAggregator implements LogAggregator {
-    private Map<String, List<Double>> metricValues = new HashMap<>();
+    private static final List<String> STATS = Arrays.asList("minimum", "max", "average", "median");
+    // The order statsOf's HashMap has them in
+    private static final String[] RESULT_STATS = ResultOrder.hashOrder(STATS.toArray(new String[0]));
+
+    private final DistributionFactory distributions;
+    private final DictionaryMap<DoubleDistribution> metricValues;
+
+    public ApmLogAggregator() {
+        this(DistributionFactory.exact());
+    }
+
+    public ApmLogAggregator(DistributionFactory distributions) {
+        this.distributions = distributions;
+        this.metricValues = new DictionaryMap<>(metric -> distributions.newDoubleDistribution());
+    }
 
     @Override
     public void aggregate(LogEntry entry) {
         if (entry instanceof ApmLogEntry) {
             ApmLogEntry apmEntry = (ApmLogEntry) entry;
-            metricValues.computeIfAbsent(apmEntry.getMetric(), k -> new ArrayList<>())
-                    .add(apmEntry.getValue());
+            metricValues.getOrCreate(apmEntry.getMetricField()).add(apmEntry.getValue());
         }
     }
 
+    @Override
+    public Set<String> getFields() {
+        return Set.of("metric", "value");
+    }
+
     @Override
     public Object getResult() {
         Map<String, Map<String, Double>> result = new HashMap<>();
         
-        for (Map.Entry<String, List<Double>> entry : metricValues.entrySet()) {
-            List<Double> values = entry.getValue();
-            Collections.sort(values);
-            
-            Map<String, Double> stats = new HashMap<>();
-            stats.put("minimum", values.get(0));
-            stats.put("max", values.get(values.size() - 1));
-            
-            double sum = values.stream().mapToDouble(Double::doubleValue).sum();
-            stats.put("average", sum / values.size());
-            
-            int middle = values.size() / 2;
-            if (values.size() % 2 == 0) {
-                stats.put("median", (values.get(middle - 1) + values.get(middle)) / 2.0);
-            } else {
-                stats.put("median", values.get(middle));
-            }
-            
-            result.put(entry.getKey(), stats);
+        for (Map.Entry<String, DoubleDistribution> entry : ResultOrder.of(metricValues.asMap()).entrySet()) {
+            result.put(entry.getKey(), statsOf(entry.getValue()));
         }
         
         return result;
     }
 
+    @Override
+    public void writeResult(JsonGenerator generator) throws IOException {
+        generator.writeStartObject();
+        for (Map.Entry<String, DoubleDistribution> entry : ResultOrder.of(metricValues.asMap()).entrySet()) {
+            generator.writeFieldName(entry.getKey());
+            generator.writeStartObject();
+            for (String stat : RESULT_STATS) {
+                generator.writeNumberField(stat, stat(entry.getValue(), stat));
+            }
+            generator.writeEndObject();
+        }
+        generator.writeEndObject();
+    }
+
+    @Override
+    public void writeRows(ResultRows rows) throws IOException {
+        rows.header("metric", STATS);
+        for (Map.Entry<String, DoubleDistribution> entry : metricValues.asMap().entrySet()) {
+            rows.startRow(entry.getKey());
+            for (String stat : STATS) {
+                rows.value(stat(entry.getValue(), stat));
+            }
+            rows.endRow();
+        }
+    }
+
+    private static double stat(DoubleDistribution values, String stat) {
+        switch (stat) {
+            case "minimum":
+                return values.min();
+            case "max":
+                return values.max();
+            case "average":
+                return values.average();
+            default:
+                return values.median();
+        }
+    }
+
+    // One metric's entry in apm.json
+    static Map<String, Double> statsOf(DoubleDistribution values) {
+        Map<String, Double> stats = new HashMap<>();
+        stats.put("minimum", values.min());
+        stats.put("max", values.max());
+        stats.put("average", values.average());
+        stats.put("median", values.median());
+        return stats;
+    }
+
     @Override
     public void reset() {
         metricValues.clear();
     }
-} 
\ No newline at end of file
+
+    @Override
+    public void merge(LogAggregator other) {
+        if (!(other instanceof ApmLogAggregator)) {
+            throw new IllegalArgumentException("Cannot merge " + other.getClass().getSimpleName()
+                    + " into ApmLogAggregator");
+        }
+        for (Map.Entry<String, DoubleDistribution> entry : ((ApmLogAggregator) other).metricValues.asMap().entrySet()) {
+            metricValues.getOrCreate(entry.getKey()).merge(entry.getValue());
+        }
+    }
+
+    @Override
+    public void writeState(DataOutput out) throws IOException {
+        StateIO.writeVarInt(out, metricValues.size());
+        for (Map.Entry<String, DoubleDistribution> entry : metricValues.asMap().entrySet()) {
+            StateIO.writeString(out, entry.getKey());
+            entry.getValue().writeState(out);
+        }
+    }
+
+    @Override
+    public void readState(DataInput in) throws IOException {
+        reset();
+        int metrics = StateIO.readVarInt(in);
+        for (int i = 0; i < metrics; i++) {
+            metricValues.getOrCreate(StateIO.readString(in)).readState(in);
+        }
+    }
+}
@@ -1,29 +1,83 @@
 package com.logparser.aggregator;
 
+import com.logparser.io.StateIO;
 import com.logparser.model.ApplicationLogEntry;
 import com.logparser.model.LogEntry;
+import com.logparser.parser.DictionaryMap;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.Set;
 
 public class ApplicationLogAggregator implements LogAggregator {
-    private Map<String, Integer> levelCounts = new HashMap<>();
+    private final DictionaryMap<int[]> levelCounts = new DictionaryMap<>(level -> new int[1]);
 
     @Override
     public void aggregate(LogEntry entry) {
         if (entry instanceof ApplicationLogEntry) {
             ApplicationLogEntry appEntry = (ApplicationLogEntry) entry;
-            levelCounts.merge(appEntry.getLevel(), 1, Integer::sum);
+            levelCounts.getOrCreate(appEntry.getLevelField())[0]++;
         }
     }
 
+    @Override
+    public Set<String> getFields() {
+        return Set.of("level");
+    }
+
     @Override
     public Object getResult() {
-        return new HashMap<>(levelCounts);
+        Map<String, Integer> counts = new LinkedHashMap<>();
+        levelCounts.asMap().forEach((level, count) -> counts.put(level, count[0]));
+        return new HashMap<>(ResultOrder.of(counts));
+    }
+
+    @Override
+    public void writeRows(ResultRows rows) throws IOException {
+        rows.header("level", Collections.singletonList("count"));
+        for (Map.Entry<String, int[]> entry : levelCounts.asMap().entrySet()) {
+            rows.startRow(entry.getKey());
+            rows.value(entry.getValue()[0]);
+            rows.endRow();
+        }
     }
 
     @Override
     public void reset() {
         levelCounts.clear();
     }
-} 
\ No newline at end of file
+
+    @Override
+    public void merge(LogAggregator other) {
+        if (!(other instanceof ApplicationLogAggregator)) {
+            throw new IllegalArgumentException("Cannot merge " + other.getClass().getSimpleName()
+                    + " into ApplicationLogAggregator");
+        }
+        ((ApplicationLogAggregator) other).levelCounts.asMap().forEach(
+                (level, count) -> levelCounts.getOrCreate(level)[0] += count[0]);
+    }
+
+    @Override
+    public void writeState(DataOutput out) throws IOException {
+        StateIO.writeVarInt(out, levelCounts.size());
+        for (Map.Entry<String, int[]> entry : levelCounts.asMap().entrySet()) {
+            StateIO.writeString(out, entry.getKey());
+            StateIO.writeVarInt(out, entry.getValue()[0]);
+        }
+    }
+
+    @Override
+    public void readState(DataInput in) throws IOException {
+        reset();
+        int levels = StateIO.readVarInt(in);
+        for (int i = 0; i < levels; i++) {
+            String level = StateIO.readString(in);
+            levelCounts.getOrCreate(level)[0] += StateIO.readVarInt(in);
+        }
+    }
+}
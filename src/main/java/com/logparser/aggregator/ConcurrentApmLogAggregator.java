@@ -0,0 +1,113 @@
+package com.logparser.aggregator;
+
+import com.logparser.io.StateIO;
+import com.logparser.model.ApmLogEntry;
+import com.logparser.model.LogEntry;
+import com.logparser.stats.DistributionFactory;
+import com.logparser.stats.DoubleDistribution;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An {@link ApmLogAggregator} that any number of threads can update at once. Each metric
+ * keeps its values in {@link Stripes}, one distribution per cell, which a result combines
+ * into one. Results are the same as the single-threaded aggregator's for the same entries,
+ * except that averages may differ in the last digits as the values are summed per cell.
+ */
+public class ConcurrentApmLogAggregator implements LogAggregator {
+    private final DistributionFactory distributions;
+    private final SharedKeys<Stripes<DoubleDistribution>> metricValues;
+
+    public ConcurrentApmLogAggregator() {
+        this(DistributionFactory.exact());
+    }
+
+    public ConcurrentApmLogAggregator(DistributionFactory distributions) {
+        this.distributions = distributions;
+        this.metricValues = new SharedKeys<>(metric -> new Stripes<>(distributions::newDoubleDistribution));
+    }
+
+    @Override
+    public void aggregate(LogEntry entry) {
+        if (entry instanceof ApmLogEntry) {
+            ApmLogEntry apmEntry = (ApmLogEntry) entry;
+            DoubleDistribution values = metricValues.getOrCreate(apmEntry.getMetricField()).current();
+            synchronized (values) {
+                values.add(apmEntry.getValue());
+            }
+        }
+    }
+
+    @Override
+    public Set<String> getFields() {
+        return Set.of("metric", "value");
+    }
+
+    // Each cell is copied while locked, so values added meanwhile are either in or out
+    private DoubleDistribution snapshot(Stripes<DoubleDistribution> stripes) {
+        DoubleDistribution total = distributions.newDoubleDistribution();
+        stripes.forEach(cell -> {
+            synchronized (cell) {
+                total.merge(cell);
+            }
+        });
+        return total;
+    }
+
+    @Override
+    public Object getResult() {
+        Map<String, Map<String, Double>> result = new HashMap<>();
+        for (Map.Entry<String, Stripes<DoubleDistribution>> entry : ResultOrder.of(metricValues.asMap()).entrySet()) {
+            result.put(entry.getKey(), ApmLogAggregator.statsOf(snapshot(entry.getValue())));
+        }
+        return result;
+    }
+
+    @Override
+    public void reset() {
+        metricValues.clear();
+    }
+
+    @Override
+    public void merge(LogAggregator other) {
+        if (!(other instanceof ConcurrentApmLogAggregator)) {
+            throw new IllegalArgumentException("Cannot merge " + other.getClass().getSimpleName()
+                    + " into ConcurrentApmLogAggregator");
+        }
+        ConcurrentApmLogAggregator from = (ConcurrentApmLogAggregator) other;
+        for (Map.Entry<String, Stripes<DoubleDistribution>> entry : from.metricValues.asMap().entrySet()) {
+            DoubleDistribution values = from.snapshot(entry.getValue());
+            DoubleDistribution cell = metricValues.getOrCreate(entry.getKey()).current();
+            synchronized (cell) {
+                cell.merge(values);
+            }
+        }
+    }
+
+    @Override
+    public void writeState(DataOutput out) throws IOException {
+        Map<String, Stripes<DoubleDistribution>> metrics = metricValues.asMap();
+        StateIO.writeVarInt(out, metrics.size());
+        for (Map.Entry<String, Stripes<DoubleDistribution>> entry : metrics.entrySet()) {
+            StateIO.writeString(out, entry.getKey());
+            snapshot(entry.getValue()).writeState(out);
+        }
+    }
+
+    @Override
+    public void readState(DataInput in) throws IOException {
+        reset();
+        int metrics = StateIO.readVarInt(in);
+        for (int i = 0; i < metrics; i++) {
+            DoubleDistribution cell = metricValues.getOrCreate(StateIO.readString(in)).current();
+            synchronized (cell) {
+                cell.readState(in);
+            }
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package com.logparser.aggregator;
+
+import com.logparser.io.StateIO;
+import com.logparser.model.ApplicationLogEntry;
+import com.logparser.model.LogEntry;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * An {@link ApplicationLogAggregator} that any number of threads can update at once,
+ * counting each level in a {@link LongAdder}. Results and state are the same as the
+ * single-threaded aggregator's for the same entries.
+ */
+public class ConcurrentApplicationLogAggregator implements LogAggregator {
+    private final SharedKeys<LongAdder> levelCounts = new SharedKeys<>(level -> new LongAdder());
+
+    @Override
+    public void aggregate(LogEntry entry) {
+        if (entry instanceof ApplicationLogEntry) {
+            levelCounts.getOrCreate(((ApplicationLogEntry) entry).getLevelField()).increment();
+        }
+    }
+
+    @Override
+    public Set<String> getFields() {
+        return Set.of("level");
+    }
+
+    @Override
+    public Object getResult() {
+        Map<String, Integer> counts = new LinkedHashMap<>();
+        levelCounts.asMap().forEach((level, count) -> counts.put(level, (int) count.sum()));
+        return new HashMap<>(ResultOrder.of(counts));
+    }
+
+    @Override
+    public void reset() {
+        levelCounts.clear();
+    }
+
+    @Override
+    public void merge(LogAggregator other) {
+        if (!(other instanceof ConcurrentApplicationLogAggregator)) {
+            throw new IllegalArgumentException("Cannot merge " + other.getClass().getSimpleName()
+                    + " into ConcurrentApplicationLogAggregator");
+        }
+        ((ConcurrentApplicationLogAggregator) other).levelCounts.asMap().forEach(
+                (level, count) -> levelCounts.getOrCreate(level).add(count.sum()));
+    }
+
+    @Override
+    public void writeState(DataOutput out) throws IOException {
+        Map<String, LongAdder> counts = levelCounts.asMap();
+        StateIO.writeVarInt(out, counts.size());
+        for (Map.Entry<String, LongAdder> entry : counts.entrySet()) {
+            StateIO.writeString(out, entry.getKey());
+            StateIO.writeVarInt(out, (int) entry.getValue().sum());
+        }
+    }
+
+    @Override
+    public void readState(DataInput in) throws IOException {
+        reset();
+        int levels = StateIO.readVarInt(in);
+        for (int i = 0; i < levels; i++) {
+            String level = StateIO.readString(in);
+            levelCounts.getOrCreate(level).add(StateIO.readVarInt(in));
+        }
+    }
+}
@@ -0,0 +1,290 @@
+package com.logparser.aggregator;
+
+import com.logparser.io.StateIO;
+import com.logparser.model.LogEntry;
+import com.logparser.model.RequestLogEntry;
+import com.logparser.parser.FieldValue;
+import com.logparser.stats.DistributionFactory;
+import com.logparser.stats.IntDistribution;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A {@link RequestLogAggregator} that any number of threads can update at once. Each
+ * route keeps its response times and status counts in {@link Stripes}; a cell holds both,
+ * so a result, which combines the cells one at a time, counts every entry either fully or
+ * not at all. Results and state are the same as the single-threaded aggregator's for the
+ * same entries and settings.
+ * <p>
+ * URLs are normalized into routes by each thread on its own. With a route cap, each cell
+ * is a capped {@link RequestLogAggregator} of its own, so a thread still only locks its
+ * cell, and results merge the cells the way the workers of a {@code --threads} run are
+ * merged: one thread gets exactly the single-threaded result, several the busiest routes
+ * across their cells. Memory is then bounded by the cap times {@link Stripes#CELLS}.
+ */
+public class ConcurrentRequestLogAggregator implements LogAggregator {
+    private static final List<String> CATEGORY_NAMES = Arrays.asList(RequestLogAggregator.STATUS_CATEGORIES);
+
+    private final DistributionFactory distributions;
+    private final UrlNormalizer urls;
+    private final SharedKeys<Stripes<RouteCell>> routeStats;
+    private final int maxRoutes;
+    // Holds the routes instead of routeStats when they are capped
+    private final Stripes<RequestLogAggregator> capped;
+    private final ThreadLocal<RouteKey> routeKeys = ThreadLocal.withInitial(RouteKey::new);
+    // Orders the status categories as first seen across cells
+    private final AtomicLong categoriesSeen = new AtomicLong();
+
+    public ConcurrentRequestLogAggregator() {
+        this(DistributionFactory.exact());
+    }
+
+    public ConcurrentRequestLogAggregator(DistributionFactory distributions) {
+        this(distributions, null, 0);
+    }
+
+    /**
+     * @param urls      null counts each URL as it is
+     * @param maxRoutes 0 keeps every route
+     */
+    public ConcurrentRequestLogAggregator(DistributionFactory distributions, UrlNormalizer urls, int maxRoutes) {
+        if (maxRoutes < 0) {
+            throw new IllegalArgumentException("Route limit must not be negative: " + maxRoutes);
+        }
+        this.distributions = distributions;
+        this.urls = urls;
+        this.routeStats = new SharedKeys<>(route -> new Stripes<>(this::newCell));
+        this.maxRoutes = maxRoutes;
+        this.capped = maxRoutes == 0 ? null
+                : new Stripes<>(() -> new RequestLogAggregator(distributions, urls, maxRoutes));
+    }
+
+    // One thread's buffer for normalized routes
+    private static final class RouteKey {
+        final StringBuilder normalized = new StringBuilder();
+        final FieldValue key = new FieldValue();
+    }
+
+    private static final class RouteCell {
+        final IntDistribution responseTimes;
+        final long[] statusCodes = new long[RequestLogAggregator.STATUS_CATEGORIES.length];
+        // When each category was first counted, from categoriesSeen; 0 if never
+        final long[] firstSeen = new long[RequestLogAggregator.STATUS_CATEGORIES.length];
+
+        RouteCell(IntDistribution responseTimes) {
+            this.responseTimes = responseTimes;
+        }
+    }
+
+    private RouteCell newCell() {
+        return new RouteCell(distributions.newIntDistribution());
+    }
+
+    @Override
+    public void aggregate(LogEntry entry) {
+        if (capped != null) {
+            RequestLogAggregator cell = capped.current();
+            synchronized (cell) {
+                cell.aggregate(entry);
+            }
+            return;
+        }
+        if (entry instanceof RequestLogEntry) {
+            RequestLogEntry requestEntry = (RequestLogEntry) entry;
+            RouteCell cell = routeStats.getOrCreate(routeOf(requestEntry.getRequestUrlField())).current();
+            int category = RequestLogAggregator.statusCategory(requestEntry.getResponseStatus());
+            synchronized (cell) {
+                cell.responseTimes.add(requestEntry.getResponseTimeMs());
+                addStatusCodes(cell, category, 1);
+            }
+        }
+    }
+
+    private FieldValue routeOf(FieldValue url) {
+        if (urls == null) {
+            return url;
+        }
+        RouteKey routeKey = routeKeys.get();
+        CharSequence route = urls.routeOf(url.getSource(), url.getStart(), url.getEnd(), routeKey.normalized);
+        return route == null ? url : routeKey.key.set(route, 0, route.length());
+    }
+
+    // Called with the cell locked
+    private void addStatusCodes(RouteCell cell, int category, long count) {
+        if (cell.firstSeen[category] == 0) {
+            cell.firstSeen[category] = categoriesSeen.incrementAndGet();
+        }
+        cell.statusCodes[category] += count;
+    }
+
+    @Override
+    public Set<String> getFields() {
+        return Set.of("request_url", "response_status", "response_time_ms");
+    }
+
+    private RouteCell snapshot(Stripes<RouteCell> stripes) {
+        RouteCell total = newCell();
+        stripes.forEach(cell -> {
+            synchronized (cell) {
+                total.responseTimes.merge(cell.responseTimes);
+                for (int category = 0; category < cell.statusCodes.length; category++) {
+                    if (cell.firstSeen[category] != 0 && (total.firstSeen[category] == 0
+                            || cell.firstSeen[category] < total.firstSeen[category])) {
+                        total.firstSeen[category] = cell.firstSeen[category];
+                    }
+                    total.statusCodes[category] += cell.statusCodes[category];
+                }
+            }
+        });
+        return total;
+    }
+
+    // The capped cells merged into one, as the workers of a --threads run are
+    private RequestLogAggregator cappedSnapshot() {
+        RequestLogAggregator total = new RequestLogAggregator(distributions, urls, maxRoutes);
+        capped.forEach(cell -> {
+            synchronized (cell) {
+                total.merge(cell);
+            }
+        });
+        return total;
+    }
+
+    // The categories counted in a snapshot, in first-seen order
+    private static Map<String, Integer> statusCodesOf(RouteCell total) {
+        Integer[] categories = new Integer[total.statusCodes.length];
+        for (int i = 0; i < categories.length; i++) {
+            categories[i] = i;
+        }
+        Arrays.sort(categories, Comparator.comparingLong(category -> total.firstSeen[category]));
+        Map<String, Integer> counts = new LinkedHashMap<>();
+        for (int category : categories) {
+            if (total.firstSeen[category] != 0) {
+                counts.put(RequestLogAggregator.STATUS_CATEGORIES[category], (int) total.statusCodes[category]);
+            }
+        }
+        return counts;
+    }
+
+    @Override
+    public Object getResult() {
+        if (capped != null) {
+            return cappedSnapshot().getResult();
+        }
+        Map<String, Map<String, Object>> result = new HashMap<>();
+        for (Map.Entry<String, Stripes<RouteCell>> entry : ResultOrder.of(routeStats.asMap()).entrySet()) {
+            RouteCell total = snapshot(entry.getValue());
+            // A route another thread has just added may not have its first entry yet
+            if (total.responseTimes.count() == 0) {
+                continue;
+            }
+            result.put(entry.getKey(), RequestLogAggregator.statsOf(total.responseTimes, statusCodesOf(total)));
+        }
+        return result;
+    }
+
+    @Override
+    public void reset() {
+        if (capped != null) {
+            capped.forEach(cell -> {
+                synchronized (cell) {
+                    cell.reset();
+                }
+            });
+            return;
+        }
+        routeStats.clear();
+    }
+
+    @Override
+    public void merge(LogAggregator other) {
+        if (!(other instanceof ConcurrentRequestLogAggregator)) {
+            throw new IllegalArgumentException("Cannot merge " + other.getClass().getSimpleName()
+                    + " into ConcurrentRequestLogAggregator");
+        }
+        ConcurrentRequestLogAggregator from = (ConcurrentRequestLogAggregator) other;
+        if ((capped == null) != (from.capped == null)) {
+            throw new IllegalArgumentException("Cannot merge capped and uncapped routes");
+        }
+        if (capped != null) {
+            RequestLogAggregator total = from.cappedSnapshot();
+            RequestLogAggregator cell = capped.current();
+            synchronized (cell) {
+                cell.merge(total);
+            }
+            return;
+        }
+        // Routes are normalized already
+        for (Map.Entry<String, Stripes<RouteCell>> entry : from.routeStats.asMap().entrySet()) {
+            RouteCell total = from.snapshot(entry.getValue());
+            RouteCell cell = routeStats.getOrCreate(entry.getKey()).current();
+            synchronized (cell) {
+                cell.responseTimes.merge(total.responseTimes);
+                for (String category : statusCodesOf(total).keySet()) {
+                    int index = CATEGORY_NAMES.indexOf(category);
+                    addStatusCodes(cell, index, total.statusCodes[index]);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void writeState(DataOutput out) throws IOException {
+        if (capped != null) {
+            cappedSnapshot().writeState(out);
+            return;
+        }
+        Map<String, Stripes<RouteCell>> routes = routeStats.asMap();
+        StateIO.writeVarInt(out, routes.size());
+        for (Map.Entry<String, Stripes<RouteCell>> entry : routes.entrySet()) {
+            StateIO.writeString(out, entry.getKey());
+            RouteCell total = snapshot(entry.getValue());
+            total.responseTimes.writeState(out);
+            Map<String, Integer> statusCodes = statusCodesOf(total);
+            StateIO.writeVarInt(out, statusCodes.size());
+            for (Map.Entry<String, Integer> status : statusCodes.entrySet()) {
+                StateIO.writeString(out, status.getKey());
+                StateIO.writeVarInt(out, status.getValue());
+            }
+        }
+    }
+
+    @Override
+    public void readState(DataInput in) throws IOException {
+        if (capped != null) {
+            reset();
+            RequestLogAggregator cell = capped.current();
+            synchronized (cell) {
+                cell.readState(in);
+            }
+            return;
+        }
+        reset();
+        int routes = StateIO.readVarInt(in);
+        for (int i = 0; i < routes; i++) {
+            RouteCell cell = routeStats.getOrCreate(StateIO.readString(in)).current();
+            synchronized (cell) {
+                cell.responseTimes.readState(in);
+                int categories = StateIO.readVarInt(in);
+                for (int j = 0; j < categories; j++) {
+                    String category = StateIO.readString(in);
+                    int index = CATEGORY_NAMES.indexOf(category);
+                    if (index < 0) {
+                        throw new IOException("Unknown status category in state: " + category);
+                    }
+                    addStatusCodes(cell, index, StateIO.readVarInt(in));
+                }
+            }
+        }
+    }
+}
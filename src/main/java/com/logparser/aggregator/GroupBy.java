@@ -0,0 +1,161 @@
+package com.logparser.aggregator;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * A group-by declared on the command line, such as {@code request:host,request_url} with
+ * the stats {@code p50,p99,count}: entries of one log type are grouped by the values of
+ * the named fields, and each group gets the stats asked for. Request entries measure
+ * {@code response_time_ms} and APM entries {@code value}; application entries have no
+ * value, so only {@code count} applies to them. Immutable.
+ */
+public final class GroupBy {
+    private static final Pattern FIELD_NAME = Pattern.compile("[A-Za-z0-9_.-]+");
+    private static final Pattern PERCENTILE = Pattern.compile("p([1-9][0-9]?|100)");
+    private static final String[] TYPES = {"APM", "APPLICATION", "REQUEST"};
+
+    /** What a stat reports about the values of a group. */
+    public enum Kind {
+        COUNT, SUM, MIN, MAX, AVG, PERCENTILE
+    }
+
+    /** One requested stat, named as given, e.g. {@code p99}. */
+    public static final class Stat {
+        private final String name;
+        private final Kind kind;
+        private final int percentile;
+
+        private Stat(String name, Kind kind, int percentile) {
+            this.name = name;
+            this.kind = kind;
+            this.percentile = percentile;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public Kind getKind() {
+            return kind;
+        }
+
+        // Only for PERCENTILE
+        public int getPercentile() {
+            return percentile;
+        }
+    }
+
+    private final String type;
+    private final List<String> fields;
+    private final List<Stat> stats;
+
+    private GroupBy(String type, List<String> fields, List<Stat> stats) {
+        this.type = type;
+        this.fields = fields;
+        this.stats = stats;
+    }
+
+    /**
+     * Parses {@code type:field,...} and the comma-separated stats: {@code count},
+     * {@code sum}, {@code min}, {@code max}, {@code avg} and {@code p1} to {@code p100}.
+     *
+     * @throws IllegalArgumentException if either is malformed
+     */
+    public static GroupBy parse(String groupBy, String stats) {
+        int colon = groupBy.indexOf(':');
+        if (colon < 0) {
+            throw new IllegalArgumentException("Expected type:field,... such as request:host,request_url: " + groupBy);
+        }
+        String type = groupBy.substring(0, colon).trim().toUpperCase(Locale.ROOT);
+        boolean known = false;
+        for (String candidate : TYPES) {
+            known |= candidate.equals(type);
+        }
+        if (!known) {
+            throw new IllegalArgumentException("Type must be apm, application or request: " + groupBy);
+        }
+        List<String> fields = new ArrayList<>();
+        for (String field : groupBy.substring(colon + 1).split(",", -1)) {
+            field = field.trim();
+            if (!FIELD_NAME.matcher(field).matches()) {
+                throw new IllegalArgumentException("Invalid field name '" + field + "' in " + groupBy);
+            }
+            fields.add(field);
+        }
+        List<Stat> parsed = new ArrayList<>();
+        for (String stat : stats.split(",", -1)) {
+            parsed.add(parseStat(stat.trim().toLowerCase(Locale.ROOT)));
+        }
+        if (type.equals("APPLICATION")) {
+            for (Stat stat : parsed) {
+                if (stat.kind != Kind.COUNT) {
+                    throw new IllegalArgumentException("Application entries have no value, so only count applies: "
+                            + stat.name);
+                }
+            }
+        }
+        return new GroupBy(type, Collections.unmodifiableList(fields), Collections.unmodifiableList(parsed));
+    }
+
+    private static Stat parseStat(String stat) {
+        switch (stat) {
+            case "count":
+                return new Stat(stat, Kind.COUNT, 0);
+            case "sum":
+                return new Stat(stat, Kind.SUM, 0);
+            case "min":
+                return new Stat(stat, Kind.MIN, 0);
+            case "max":
+                return new Stat(stat, Kind.MAX, 0);
+            case "avg":
+                return new Stat(stat, Kind.AVG, 0);
+            default:
+                if (!PERCENTILE.matcher(stat).matches()) {
+                    throw new IllegalArgumentException("Unknown stat '" + stat
+                            + "'; expected count, sum, min, max, avg or p1 to p100");
+                }
+                return new Stat(stat, Kind.PERCENTILE, Integer.parseInt(stat.substring(1)));
+        }
+    }
+
+    /** The log type, e.g. {@code REQUEST}. */
+    public String getType() {
+        return type;
+    }
+
+    public List<String> getFields() {
+        return fields;
+    }
+
+    public List<Stat> getStats() {
+        return stats;
+    }
+
+    boolean needsPercentiles() {
+        for (Stat stat : stats) {
+            if (stat.kind == Kind.PERCENTILE) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** The output file, e.g. {@code request_by_host_request_url.json}. */
+    public String fileName() {
+        return type.toLowerCase(Locale.ROOT) + "_by_" + String.join("_", fields) + ".json";
+    }
+
+    // Also what checkpoints compare, so it names everything that shapes the state
+    @Override
+    public String toString() {
+        List<String> names = new ArrayList<>();
+        for (Stat stat : stats) {
+            names.add(stat.name);
+        }
+        return type.toLowerCase(Locale.ROOT) + ":" + String.join(",", fields) + "=" + String.join(",", names);
+    }
+}
@@ -0,0 +1,544 @@
+package com.logparser.aggregator;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.logparser.io.StateIO;
+import com.logparser.model.ApmLogEntry;
+import com.logparser.model.ApplicationLogEntry;
+import com.logparser.model.LogEntry;
+import com.logparser.model.RequestLogEntry;
+import com.logparser.parser.DictionaryMap;
+import com.logparser.parser.FieldValue;
+import com.logparser.stats.DistributionFactory;
+import com.logparser.stats.DoubleDistribution;
+import com.logparser.stats.IntDistribution;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The stats of a {@link GroupBy} per group. A composite key is never built per line:
+ * each field is looked up in a {@link DictionaryMap} nested in the one of the field
+ * before, so a line resolves its group through one id lookup per field. How each field
+ * is read and which accumulator a group gets are decided once, up front: a group only
+ * keeps samples when percentiles are asked for, and only counts when nothing else is.
+ * <p>
+ * The result maps each group to its stats in the order they were asked for, like
+ * {@code request.json} maps each route. A group's key is its field values joined by
+ * {@value #KEY_SEPARATOR}, with {@value #MISSING} for a field a line does not have.
+ */
+public class GroupByAggregator implements LogAggregator {
+    static final String KEY_SEPARATOR = "|";
+    static final String MISSING = "unknown";
+
+    private final GroupBy groupBy;
+    private final DistributionFactory distributions;
+    private final FieldReader[] readers;
+    private final FieldValue[] keys;
+    private final StatsFactory statsFactory;
+    private final boolean wholeValues;
+    private final DictionaryMap<Object> groups;
+
+    private interface FieldReader {
+        FieldValue read(LogEntry entry, FieldValue target);
+    }
+
+    private interface StatsFactory {
+        GroupStats newStats();
+    }
+
+    public GroupByAggregator(GroupBy groupBy, DistributionFactory distributions) {
+        this.groupBy = groupBy;
+        this.distributions = distributions;
+        List<String> fields = groupBy.getFields();
+        this.readers = new FieldReader[fields.size()];
+        this.keys = new FieldValue[fields.size()];
+        for (int i = 0; i < readers.length; i++) {
+            readers[i] = readerFor(groupBy.getType(), fields.get(i));
+            keys[i] = new FieldValue();
+        }
+        this.wholeValues = !groupBy.getType().equals("APM");
+        this.statsFactory = statsFactoryFor(groupBy);
+        this.groups = newLevel(0);
+    }
+
+    // The fields entries keep of their own are read straight from them
+    private static FieldReader readerFor(String type, String field) {
+        if (type.equals("REQUEST") && field.equals("request_url")) {
+            return (entry, target) -> ((RequestLogEntry) entry).getRequestUrlField();
+        }
+        if (type.equals("APPLICATION") && field.equals("level")) {
+            return (entry, target) -> ((ApplicationLogEntry) entry).getLevelField();
+        }
+        if (type.equals("APM") && field.equals("metric")) {
+            return (entry, target) -> ((ApmLogEntry) entry).getMetricField();
+        }
+        return (entry, target) -> entry.getField(field, target);
+    }
+
+    private StatsFactory statsFactoryFor(GroupBy groupBy) {
+        boolean countOnly = true;
+        for (GroupBy.Stat stat : groupBy.getStats()) {
+            countOnly &= stat.getKind() == GroupBy.Kind.COUNT;
+        }
+        if (countOnly) {
+            return Counts::new;
+        }
+        if (groupBy.getType().equals("REQUEST")) {
+            return groupBy.needsPercentiles() ? () -> new ResponseTimeSamples(distributions.newIntDistribution())
+                    : ResponseTimeMoments::new;
+        }
+        return groupBy.needsPercentiles() ? () -> new ValueSamples(distributions.newDoubleDistribution())
+                : ValueMoments::new;
+    }
+
+    private DictionaryMap<Object> newLevel(int depth) {
+        if (depth == readers.length - 1) {
+            return new DictionaryMap<>(key -> statsFactory.newStats());
+        }
+        return new DictionaryMap<>(key -> newLevel(depth + 1));
+    }
+
+    public GroupBy getGroupBy() {
+        return groupBy;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void aggregate(LogEntry entry) {
+        if (!groupBy.getType().equals(entry.getType())) {
+            return;
+        }
+        Object node = groups;
+        for (int i = 0; i < readers.length; i++) {
+            node = ((DictionaryMap<Object>) node).getOrCreate(readers[i].read(entry, keys[i]));
+        }
+        ((GroupStats) node).add(entry);
+    }
+
+    @Override
+    public Set<String> getFields() {
+        Set<String> fields = new HashSet<>(groupBy.getFields());
+        fields.add(groupBy.getType().equals("REQUEST") ? "response_time_ms" : "value");
+        return fields;
+    }
+
+    // Every group by its joined key; groups sharing a first field are listed together
+    // and each field's values are in first-seen order
+    private Map<String, GroupStats> groups() {
+        Map<String, GroupStats> byKey = new LinkedHashMap<>();
+        collect(groups, 0, new StringBuilder(), byKey);
+        return byKey;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void collect(DictionaryMap<Object> level, int depth, StringBuilder key, Map<String, GroupStats> byKey) {
+        int length = key.length();
+        for (Map.Entry<String, Object> entry : level.asMap().entrySet()) {
+            if (depth > 0) {
+                key.append(KEY_SEPARATOR);
+            }
+            key.append(entry.getKey() == null ? MISSING : entry.getKey());
+            if (depth == readers.length - 1) {
+                byKey.put(key.toString(), (GroupStats) entry.getValue());
+            } else {
+                collect((DictionaryMap<Object>) entry.getValue(), depth + 1, key, byKey);
+            }
+            key.setLength(length);
+        }
+    }
+
+    private boolean isWhole(GroupBy.Stat stat) {
+        return stat.getKind() == GroupBy.Kind.COUNT || wholeValues && stat.getKind() != GroupBy.Kind.AVG;
+    }
+
+    @Override
+    public Object getResult() {
+        Map<String, Map<String, Object>> result = new LinkedHashMap<>();
+        for (Map.Entry<String, GroupStats> group : groups().entrySet()) {
+            Map<String, Object> stats = new LinkedHashMap<>();
+            for (GroupBy.Stat stat : groupBy.getStats()) {
+                double value = group.getValue().stat(stat);
+                stats.put(stat.getName(), isWhole(stat) ? (Object) (long) value : (Object) value);
+            }
+            result.put(group.getKey(), stats);
+        }
+        return result;
+    }
+
+    @Override
+    public void writeResult(JsonGenerator generator) throws IOException {
+        generator.writeStartObject();
+        for (Map.Entry<String, GroupStats> group : groups().entrySet()) {
+            generator.writeObjectFieldStart(group.getKey());
+            for (GroupBy.Stat stat : groupBy.getStats()) {
+                double value = group.getValue().stat(stat);
+                generator.writeFieldName(stat.getName());
+                if (isWhole(stat)) {
+                    generator.writeNumber((long) value);
+                } else {
+                    generator.writeNumber(value);
+                }
+            }
+            generator.writeEndObject();
+        }
+        generator.writeEndObject();
+    }
+
+    @Override
+    public void writeRows(ResultRows rows) throws IOException {
+        List<String> columns = new ArrayList<>();
+        for (GroupBy.Stat stat : groupBy.getStats()) {
+            columns.add(stat.getName());
+        }
+        rows.header(String.join(KEY_SEPARATOR, groupBy.getFields()), columns);
+        for (Map.Entry<String, GroupStats> group : groups().entrySet()) {
+            rows.startRow(group.getKey());
+            for (GroupBy.Stat stat : groupBy.getStats()) {
+                double value = group.getValue().stat(stat);
+                if (isWhole(stat)) {
+                    rows.value((long) value);
+                } else {
+                    rows.value(value);
+                }
+            }
+            rows.endRow();
+        }
+    }
+
+    @Override
+    public void reset() {
+        groups.clear();
+    }
+
+    @Override
+    public void merge(LogAggregator other) {
+        if (!(other instanceof GroupByAggregator)
+                || !groupBy.toString().equals(((GroupByAggregator) other).groupBy.toString())) {
+            throw new IllegalArgumentException("Cannot merge " + other.getClass().getSimpleName()
+                    + " into GroupByAggregator for " + groupBy);
+        }
+        merge(groups, ((GroupByAggregator) other).groups, 0);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void merge(DictionaryMap<Object> level, DictionaryMap<Object> other, int depth) {
+        for (Map.Entry<String, Object> entry : other.asMap().entrySet()) {
+            Object node = level.getOrCreate(entry.getKey());
+            if (depth == readers.length - 1) {
+                ((GroupStats) node).merge((GroupStats) entry.getValue());
+            } else {
+                merge((DictionaryMap<Object>) node, (DictionaryMap<Object>) entry.getValue(), depth + 1);
+            }
+        }
+    }
+
+    @Override
+    public void writeState(DataOutput out) throws IOException {
+        writeState(groups, 0, out);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void writeState(DictionaryMap<Object> level, int depth, DataOutput out) throws IOException {
+        StateIO.writeVarInt(out, level.size());
+        for (Map.Entry<String, Object> entry : level.asMap().entrySet()) {
+            StateIO.writeString(out, entry.getKey());
+            if (depth == readers.length - 1) {
+                ((GroupStats) entry.getValue()).writeState(out);
+            } else {
+                writeState((DictionaryMap<Object>) entry.getValue(), depth + 1, out);
+            }
+        }
+    }
+
+    @Override
+    public void readState(DataInput in) throws IOException {
+        reset();
+        readState(groups, 0, in);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void readState(DictionaryMap<Object> level, int depth, DataInput in) throws IOException {
+        int size = StateIO.readVarInt(in);
+        for (int i = 0; i < size; i++) {
+            Object node = level.getOrCreate(StateIO.readString(in));
+            if (depth == readers.length - 1) {
+                ((GroupStats) node).readState(in);
+            } else {
+                readState((DictionaryMap<Object>) node, depth + 1, in);
+            }
+        }
+    }
+
+    /** What one group accumulates; each kind only reads the entry type it was made for. */
+    private abstract static class GroupStats {
+        abstract void add(LogEntry entry);
+
+        abstract void merge(GroupStats other);
+
+        abstract double stat(GroupBy.Stat stat);
+
+        abstract void writeState(DataOutput out) throws IOException;
+
+        // Adds the counts from a state written by writeState
+        abstract void readState(DataInput in) throws IOException;
+    }
+
+    private static final class Counts extends GroupStats {
+        long count;
+
+        @Override
+        void add(LogEntry entry) {
+            count++;
+        }
+
+        @Override
+        void merge(GroupStats other) {
+            count += ((Counts) other).count;
+        }
+
+        @Override
+        double stat(GroupBy.Stat stat) {
+            return count;
+        }
+
+        @Override
+        void writeState(DataOutput out) throws IOException {
+            StateIO.writeVarLong(out, count);
+        }
+
+        @Override
+        void readState(DataInput in) throws IOException {
+            count += StateIO.readVarLong(in);
+        }
+    }
+
+    private static final class ResponseTimeMoments extends GroupStats {
+        long count;
+        long sum;
+        int min = Integer.MAX_VALUE;
+        int max = Integer.MIN_VALUE;
+
+        @Override
+        void add(LogEntry entry) {
+            add(((RequestLogEntry) entry).getResponseTimeMs());
+        }
+
+        private void add(int time) {
+            count++;
+            sum += time;
+            min = Math.min(min, time);
+            max = Math.max(max, time);
+        }
+
+        @Override
+        void merge(GroupStats other) {
+            ResponseTimeMoments from = (ResponseTimeMoments) other;
+            count += from.count;
+            sum += from.sum;
+            min = Math.min(min, from.min);
+            max = Math.max(max, from.max);
+        }
+
+        @Override
+        double stat(GroupBy.Stat stat) {
+            switch (stat.getKind()) {
+                case COUNT:
+                    return count;
+                case SUM:
+                    return sum;
+                case MIN:
+                    return min;
+                case MAX:
+                    return max;
+                default:
+                    return (double) sum / count;
+            }
+        }
+
+        @Override
+        void writeState(DataOutput out) throws IOException {
+            StateIO.writeVarLong(out, count);
+            out.writeLong(sum);
+            out.writeInt(min);
+            out.writeInt(max);
+        }
+
+        @Override
+        void readState(DataInput in) throws IOException {
+            count += StateIO.readVarLong(in);
+            sum += in.readLong();
+            min = Math.min(min, in.readInt());
+            max = Math.max(max, in.readInt());
+        }
+    }
+
+    private static final class ResponseTimeSamples extends GroupStats {
+        final IntDistribution times;
+        long sum;
+
+        ResponseTimeSamples(IntDistribution times) {
+            this.times = times;
+        }
+
+        @Override
+        void add(LogEntry entry) {
+            int time = ((RequestLogEntry) entry).getResponseTimeMs();
+            times.add(time);
+            sum += time;
+        }
+
+        @Override
+        void merge(GroupStats other) {
+            ResponseTimeSamples from = (ResponseTimeSamples) other;
+            times.merge(from.times);
+            sum += from.sum;
+        }
+
+        @Override
+        double stat(GroupBy.Stat stat) {
+            switch (stat.getKind()) {
+                case COUNT:
+                    return times.count();
+                case SUM:
+                    return sum;
+                case MIN:
+                    return times.min();
+                case MAX:
+                    return times.max();
+                case AVG:
+                    return (double) sum / times.count();
+                default:
+                    return times.percentile(stat.getPercentile());
+            }
+        }
+
+        @Override
+        void writeState(DataOutput out) throws IOException {
+            out.writeLong(sum);
+            times.writeState(out);
+        }
+
+        @Override
+        void readState(DataInput in) throws IOException {
+            sum += in.readLong();
+            times.readState(in);
+        }
+    }
+
+    private static final class ValueMoments extends GroupStats {
+        long count;
+        double sum;
+        double min = Double.POSITIVE_INFINITY;
+        double max = Double.NEGATIVE_INFINITY;
+
+        @Override
+        void add(LogEntry entry) {
+            double value = ((ApmLogEntry) entry).getValue();
+            count++;
+            sum += value;
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+        }
+
+        @Override
+        void merge(GroupStats other) {
+            ValueMoments from = (ValueMoments) other;
+            count += from.count;
+            sum += from.sum;
+            min = Math.min(min, from.min);
+            max = Math.max(max, from.max);
+        }
+
+        @Override
+        double stat(GroupBy.Stat stat) {
+            switch (stat.getKind()) {
+                case COUNT:
+                    return count;
+                case SUM:
+                    return sum;
+                case MIN:
+                    return min;
+                case MAX:
+                    return max;
+                default:
+                    return sum / count;
+            }
+        }
+
+        @Override
+        void writeState(DataOutput out) throws IOException {
+            StateIO.writeVarLong(out, count);
+            out.writeDouble(sum);
+            out.writeDouble(min);
+            out.writeDouble(max);
+        }
+
+        @Override
+        void readState(DataInput in) throws IOException {
+            count += StateIO.readVarLong(in);
+            sum += in.readDouble();
+            min = Math.min(min, in.readDouble());
+            max = Math.max(max, in.readDouble());
+        }
+    }
+
+    private static final class ValueSamples extends GroupStats {
+        final DoubleDistribution values;
+        double sum;
+
+        ValueSamples(DoubleDistribution values) {
+            this.values = values;
+        }
+
+        @Override
+        void add(LogEntry entry) {
+            double value = ((ApmLogEntry) entry).getValue();
+            values.add(value);
+            sum += value;
+        }
+
+        @Override
+        void merge(GroupStats other) {
+            ValueSamples from = (ValueSamples) other;
+            values.merge(from.values);
+            sum += from.sum;
+        }
+
+        @Override
+        double stat(GroupBy.Stat stat) {
+            switch (stat.getKind()) {
+                case COUNT:
+                    return values.count();
+                case SUM:
+                    return sum;
+                case MIN:
+                    return values.min();
+                case MAX:
+                    return values.max();
+                case AVG:
+                    return values.average();
+                default:
+                    return values.percentile(stat.getPercentile());
+            }
+        }
+
+        @Override
+        void writeState(DataOutput out) throws IOException {
+            out.writeDouble(sum);
+            values.writeState(out);
+        }
+
+        @Override
+        void readState(DataInput in) throws IOException {
+            sum += in.readDouble();
+            values.readState(in);
+        }
+    }
+}
@@ -0,0 +1,196 @@
+package com.logparser.aggregator;
+
+import com.logparser.parser.DictionaryMap;
+import com.logparser.parser.FieldDictionary;
+import com.logparser.parser.FieldValue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * A String-keyed map holding at most {@code capacity} keys, chosen by Space-Saving: every
+ * lookup counts towards its key, and once the map is full a new key takes over the slot
+ * of the least counted one and starts from that count. Any key looked up more than
+ * total/capacity times is sure to be kept, so the busiest keys stay however many distinct
+ * ones go by. An evicted value is handed to {@code evicted} rather than dropped.
+ * <p>
+ * Like {@link DictionaryMap}, lookups by {@link FieldValue} go through a bounded
+ * {@link FieldDictionary}, so a kept key is not decoded or hashed as a String. Not
+ * thread-safe.
+ */
+final class HeavyHitters<V> {
+    private final int capacity;
+    private final Function<String, V> factory;
+    private final BiConsumer<String, V> evicted;
+    private final FieldDictionary dictionary;
+    private final Map<String, Slot<V>> slots = new HashMap<>();
+    // A min-heap on count, so the key to evict next is at the root
+    private final Slot<V>[] heap;
+    private int size;
+    private Slot<V>[] byId = newSlots(16);
+    private long admitted;
+
+    private static final class Slot<V> {
+        final String key;
+        final V value;
+        final long order;
+        long count;
+        int index;
+        int id = FieldDictionary.NO_ID;
+
+        Slot(String key, V value, long order) {
+            this.key = key;
+            this.value = value;
+            this.order = order;
+        }
+    }
+
+    HeavyHitters(int capacity, Function<String, V> factory, BiConsumer<String, V> evicted) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be at least 1: " + capacity);
+        }
+        this.capacity = capacity;
+        this.factory = factory;
+        this.evicted = evicted;
+        // Keys that come and go keep their ids, so leave room for several per slot
+        this.dictionary = new FieldDictionary((int) Math.min(1 << 16, Math.max(1024, 4L * capacity)));
+        this.heap = newSlots(capacity);
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static <V> Slot<V>[] newSlots(int length) {
+        return (Slot<V>[]) new Slot[length];
+    }
+
+    V getOrCreate(FieldValue key) {
+        CharSequence source = key.getSource();
+        if (source instanceof String && key.getStart() == 0 && key.getEnd() == source.length()) {
+            return add((String) source, 1);
+        }
+        int id = key.isPresent() ? dictionary.idOf(source, key.getStart(), key.getEnd())
+                : FieldDictionary.NO_ID;
+        if (id >= 0 && id < byId.length && byId[id] != null) {
+            Slot<V> slot = byId[id];
+            increment(slot, 1);
+            return slot.value;
+        }
+        Slot<V> slot = slotFor(id >= 0 ? dictionary.valueOf(id) : key.stringValue(), 1);
+        if (id >= 0 && slot.id == FieldDictionary.NO_ID) {
+            if (id >= byId.length) {
+                byId = Arrays.copyOf(byId, Math.max(byId.length * 2, id + 1));
+            }
+            byId[id] = slot;
+            slot.id = id;
+        }
+        return slot.value;
+    }
+
+    V getOrCreate(String key) {
+        return add(key, 1);
+    }
+
+    /** Counts {@code weight} lookups of {@code key} at once, as when merging. */
+    V add(String key, long weight) {
+        return slotFor(key, weight).value;
+    }
+
+    private Slot<V> slotFor(String key, long weight) {
+        Slot<V> slot = slots.get(key);
+        if (slot != null) {
+            increment(slot, weight);
+            return slot;
+        }
+        long count = weight;
+        slot = new Slot<>(key, factory.apply(key), admitted++);
+        if (size < capacity) {
+            slot.index = size++;
+        } else {
+            Slot<V> least = heap[0];
+            slot.index = 0;
+            slots.remove(least.key);
+            if (least.id != FieldDictionary.NO_ID) {
+                byId[least.id] = null;
+            }
+            count += least.count;
+            evicted.accept(least.key, least.value);
+        }
+        slot.count = count;
+        heap[slot.index] = slot;
+        slots.put(key, slot);
+        siftUp(slot.index);
+        siftDown(slot.index);
+        return slot;
+    }
+
+    private void increment(Slot<V> slot, long weight) {
+        slot.count += weight;
+        siftDown(slot.index);
+    }
+
+    private void siftUp(int index) {
+        Slot<V> slot = heap[index];
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (heap[parent].count <= slot.count) {
+                break;
+            }
+            place(heap[parent], index);
+            index = parent;
+        }
+        place(slot, index);
+    }
+
+    private void siftDown(int index) {
+        Slot<V> slot = heap[index];
+        while (true) {
+            int child = 2 * index + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && heap[child + 1].count < heap[child].count) {
+                child++;
+            }
+            if (slot.count <= heap[child].count) {
+                break;
+            }
+            place(heap[child], index);
+            index = child;
+        }
+        place(slot, index);
+    }
+
+    private void place(Slot<V> slot, int index) {
+        heap[index] = slot;
+        slot.index = index;
+    }
+
+    /** The kept entries in the order they were last admitted. */
+    Map<String, V> asMap() {
+        List<Slot<V>> kept = new ArrayList<>(slots.values());
+        kept.sort(Comparator.comparingLong(slot -> slot.order));
+        Map<String, V> values = new LinkedHashMap<>();
+        for (Slot<V> slot : kept) {
+            values.put(slot.key, slot.value);
+        }
+        return values;
+    }
+
+    int size() {
+        return size;
+    }
+
+    // The dictionary keeps its ids; only the values are dropped
+    void clear() {
+        slots.clear();
+        Arrays.fill(heap, null);
+        Arrays.fill(byId, null);
+        size = 0;
+    }
+}
@@ -1,9 +1,43 @@
 package com.logparser.aggregator;
 
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.logparser.model.LogEntry;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Set;
+
 public interface LogAggregator {
     void aggregate(LogEntry entry);
     Object getResult();
     void reset();
+    void merge(LogAggregator other);
+
+    /**
+     * Writes {@link #getResult()} to {@code generator}, which must have a codec. Aggregators
+     * with many keys override this to write each key's stats as they go rather than build
+     * the whole result first.
+     */
+    default void writeResult(JsonGenerator generator) throws IOException {
+        generator.writeObject(getResult());
+    }
+
+    /** Writes the result as one row per key, by default flattening {@link #getResult()}. */
+    default void writeRows(ResultRows rows) throws IOException {
+        ResultRows.writeFlattened(getResult(), "key", rows);
+    }
+
+    /**
+     * The entry fields {@link #aggregate(LogEntry)} reads, named as in the log line, so that
+     * stored entries can be read back without the others; null if it may read any of them.
+     */
+    default Set<String> getFields() {
+        return null;
+    }
+
+    void writeState(DataOutput out) throws IOException;
+
+    // Replaces the current state with one written by writeState
+    void readState(DataInput in) throws IOException;
 } 
\ No newline at end of file
@@ -1,80 +1,342 @@
 package com.logparser.aggregator;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.logparser.io.StateIO;
 import com.logparser.model.LogEntry;
 import com.logparser.model.RequestLogEntry;
+import com.logparser.parser.DictionaryMap;
+import com.logparser.parser.FieldValue;
 
+import com.logparser.stats.DistributionFactory;
+import com.logparser.stats.IntDistribution;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.*;
 
+/**
+ * Response times and status codes per route. A route is the request URL, or what
+ * {@link UrlNormalizer} makes of it. With {@code maxRoutes}, only that many routes, the
+ * busiest as judged by {@link HeavyHitters}, keep stats of their own and the rest count
+ * towards {@value #OTHER_ROUTE}; memory then stays the same however many distinct URLs
+ * go by. A route that is pushed out and comes back starts over, its earlier entries
+ * staying in {@value #OTHER_ROUTE}, which is kept apart from real routes named {@code OTHER}.
+ */
 public class RequestLogAggregator implements LogAggregator {
-    private Map<String, RouteStats> routeStats = new HashMap<>();
+    static final String[] STATUS_CATEGORIES = {"2XX", "4XX", "5XX", "OTHER"};
+    // Braces do not appear in request URLs, so no route shares this key
+    static final String OTHER_ROUTE = "{other}";
+    private static final List<String> RESPONSE_TIME_STATS = Arrays.asList(
+            "min", "max", "50_percentile", "90_percentile", "95_percentile", "99_percentile");
+    // The orders statsOf's HashMaps have their keys in
+    private static final String[] RESULT_RESPONSE_TIME_STATS =
+            ResultOrder.hashOrder(RESPONSE_TIME_STATS.toArray(new String[0]));
+    private static final String[] RESULT_ROUTE_FIELDS = ResultOrder.hashOrder("response_times", "status_codes");
+
+    private final DistributionFactory distributions;
+    private final UrlNormalizer urls;
+    // Exactly one of the two holds the routes, depending on whether they are capped
+    private final DictionaryMap<RouteStats> routeStats;
+    private final HeavyHitters<RouteStats> topRoutes;
+    private RouteStats otherRoutes;
+    private final StringBuilder normalized = new StringBuilder();
+    private final FieldValue routeKey = new FieldValue();
+
+    public RequestLogAggregator() {
+        this(DistributionFactory.exact());
+    }
+
+    public RequestLogAggregator(DistributionFactory distributions) {
+        this(distributions, null, 0);
+    }
+
+    /**
+     * @param urls      null counts each URL as it is
+     * @param maxRoutes 0 keeps every route
+     */
+    public RequestLogAggregator(DistributionFactory distributions, UrlNormalizer urls, int maxRoutes) {
+        if (maxRoutes < 0) {
+            throw new IllegalArgumentException("Route limit must not be negative: " + maxRoutes);
+        }
+        this.distributions = distributions;
+        this.urls = urls;
+        if (maxRoutes == 0) {
+            this.routeStats = new DictionaryMap<>(route -> newRouteStats());
+            this.topRoutes = null;
+        } else {
+            this.routeStats = null;
+            this.topRoutes = new HeavyHitters<>(maxRoutes, route -> newRouteStats(),
+                    (route, stats) -> otherRoutes().merge(stats));
+        }
+    }
 
     private static class RouteStats {
-        List<Integer> responseTimes = new ArrayList<>();
-        Map<String, Integer> statusCodes = new HashMap<>();
+        final IntDistribution responseTimes;
+        // Counters rather than Integers, so counting a line does not box
+        final Map<String, int[]> statusCodes = new LinkedHashMap<>();
+
+        RouteStats(IntDistribution responseTimes) {
+            this.responseTimes = responseTimes;
+        }
 
         void addResponseTime(int time) {
             responseTimes.add(time);
         }
 
+        void merge(RouteStats other) {
+            responseTimes.merge(other.responseTimes);
+            other.statusCodes.forEach((category, count) -> addStatusCodes(category, count[0]));
+        }
+
         void incrementStatusCode(int statusCode) {
-            String category = getStatusCodeCategory(statusCode);
-            statusCodes.merge(category, 1, Integer::sum);
+            addStatusCodes(STATUS_CATEGORIES[statusCategory(statusCode)], 1);
         }
 
-        private String getStatusCodeCategory(int statusCode) {
-            if (statusCode >= 200 && statusCode < 300) return "2XX";
-            if (statusCode >= 400 && statusCode < 500) return "4XX";
-            if (statusCode >= 500) return "5XX";
-            return "OTHER";
+        long count() {
+            long count = 0;
+            for (int[] counter : statusCodes.values()) {
+                count += counter[0];
+            }
+            return count;
+        }
+
+        void addStatusCodes(String category, int count) {
+            int[] counter = statusCodes.get(category);
+            if (counter == null) {
+                statusCodes.put(category, new int[]{count});
+            } else {
+                counter[0] += count;
+            }
+        }
+
+        Map<String, Integer> statusCounts() {
+            Map<String, Integer> counts = new LinkedHashMap<>();
+            statusCodes.forEach((category, count) -> counts.put(category, count[0]));
+            return counts;
         }
 
         Map<String, Object> getStats() {
-            Map<String, Object> stats = new HashMap<>();
-            
-            // Response time statistics
-            Collections.sort(responseTimes);
-            Map<String, Integer> responseTimeStats = new HashMap<>();
-            responseTimeStats.put("min", responseTimes.get(0));
-            responseTimeStats.put("max", responseTimes.get(responseTimes.size() - 1));
-            responseTimeStats.put("50_percentile", getPercentile(50));
-            responseTimeStats.put("90_percentile", getPercentile(90));
-            responseTimeStats.put("95_percentile", getPercentile(95));
-            responseTimeStats.put("99_percentile", getPercentile(99));
-            
-            stats.put("response_times", responseTimeStats);
-            stats.put("status_codes", new HashMap<>(statusCodes));
-            
-            return stats;
-        }
-
-        private int getPercentile(int percentile) {
-            int index = (int) Math.ceil(percentile / 100.0 * responseTimes.size()) - 1;
-            return responseTimes.get(index);
+            return statsOf(responseTimes, statusCounts());
         }
+
+        // Writes what getStats() would return
+        void writeStats(JsonGenerator generator) throws IOException {
+            generator.writeStartObject();
+            for (String field : RESULT_ROUTE_FIELDS) {
+                generator.writeFieldName(field);
+                generator.writeStartObject();
+                if (field.equals("response_times")) {
+                    for (String stat : RESULT_RESPONSE_TIME_STATS) {
+                        generator.writeNumberField(stat, responseTimeStat(responseTimes, stat));
+                    }
+                } else {
+                    for (Map.Entry<String, Integer> status : new HashMap<>(ResultOrder.of(statusCounts())).entrySet()) {
+                        generator.writeNumberField(status.getKey(), status.getValue());
+                    }
+                }
+                generator.writeEndObject();
+            }
+            generator.writeEndObject();
+        }
+    }
+
+    // The index into STATUS_CATEGORIES
+    static int statusCategory(int statusCode) {
+        if (statusCode >= 200 && statusCode < 300) return 0;
+        if (statusCode >= 400 && statusCode < 500) return 1;
+        if (statusCode >= 500) return 2;
+        return 3;
+    }
+
+    private static int responseTimeStat(IntDistribution responseTimes, String stat) {
+        switch (stat) {
+            case "min":
+                return responseTimes.min();
+            case "max":
+                return responseTimes.max();
+            default:
+                return responseTimes.percentile(Integer.parseInt(stat.substring(0, stat.indexOf('_'))));
+        }
+    }
+
+    // One route's entry in request.json; statusCodes in first-seen order
+    static Map<String, Object> statsOf(IntDistribution responseTimes, Map<String, Integer> statusCodes) {
+        Map<String, Object> stats = new HashMap<>();
+
+        // Response time statistics
+        Map<String, Integer> responseTimeStats = new HashMap<>();
+        responseTimeStats.put("min", responseTimes.min());
+        responseTimeStats.put("max", responseTimes.max());
+        responseTimeStats.put("50_percentile", responseTimes.percentile(50));
+        responseTimeStats.put("90_percentile", responseTimes.percentile(90));
+        responseTimeStats.put("95_percentile", responseTimes.percentile(95));
+        responseTimeStats.put("99_percentile", responseTimes.percentile(99));
+
+        stats.put("response_times", responseTimeStats);
+        stats.put("status_codes", new HashMap<>(ResultOrder.of(statusCodes)));
+
+        return stats;
     }
 
     @Override
     public void aggregate(LogEntry entry) {
         if (entry instanceof RequestLogEntry) {
             RequestLogEntry requestEntry = (RequestLogEntry) entry;
-            RouteStats stats = routeStats.computeIfAbsent(requestEntry.getRequestUrl(), k -> new RouteStats());
-            
+            RouteStats stats = statsFor(requestEntry.getRequestUrlField());
+
             stats.addResponseTime(requestEntry.getResponseTimeMs());
             stats.incrementStatusCode(requestEntry.getResponseStatus());
         }
     }
 
+    @Override
+    public Set<String> getFields() {
+        return Set.of("request_url", "response_status", "response_time_ms");
+    }
+
+    private RouteStats newRouteStats() {
+        return new RouteStats(distributions.newIntDistribution());
+    }
+
+    private RouteStats statsFor(FieldValue url) {
+        FieldValue key = url;
+        if (urls != null) {
+            CharSequence normalizedUrl = urls.routeOf(url.getSource(), url.getStart(), url.getEnd(), normalized);
+            if (normalizedUrl != null) {
+                key = routeKey.set(normalizedUrl, 0, normalizedUrl.length());
+            }
+        }
+        return topRoutes != null ? topRoutes.getOrCreate(key) : routeStats.getOrCreate(key);
+    }
+
+    private RouteStats otherRoutes() {
+        if (otherRoutes == null) {
+            otherRoutes = newRouteStats();
+        }
+        return otherRoutes;
+    }
+
+    // Adds stats counted elsewhere under the same settings, so the route is already normalized
+    private void add(String route, RouteStats stats) {
+        if (topRoutes == null) {
+            routeStats.getOrCreate(route).merge(stats);
+        } else if (route.equals(OTHER_ROUTE)) {
+            otherRoutes().merge(stats);
+        } else {
+            topRoutes.add(route, stats.count()).merge(stats);
+        }
+    }
+
+    // The routes in first-seen order, with OTHER last when some were folded into it
+    private Map<String, RouteStats> routes() {
+        if (topRoutes == null) {
+            return routeStats.asMap();
+        }
+        Map<String, RouteStats> routes = topRoutes.asMap();
+        if (otherRoutes != null) {
+            routes.put(OTHER_ROUTE, otherRoutes);
+        }
+        return routes;
+    }
+
     @Override
     public Object getResult() {
         Map<String, Map<String, Object>> result = new HashMap<>();
-        for (Map.Entry<String, RouteStats> entry : routeStats.entrySet()) {
+        for (Map.Entry<String, RouteStats> entry : ResultOrder.of(routes()).entrySet()) {
             result.put(entry.getKey(), entry.getValue().getStats());
         }
         return result;
     }
 
+    @Override
+    public void writeResult(JsonGenerator generator) throws IOException {
+        generator.writeStartObject();
+        for (Map.Entry<String, RouteStats> entry : ResultOrder.of(routes()).entrySet()) {
+            generator.writeFieldName(entry.getKey());
+            entry.getValue().writeStats(generator);
+        }
+        generator.writeEndObject();
+    }
+
+    // Every status category gets a column, 0 where a route had none
+    @Override
+    public void writeRows(ResultRows rows) throws IOException {
+        List<String> columns = new ArrayList<>();
+        for (String stat : RESPONSE_TIME_STATS) {
+            columns.add("response_times." + stat);
+        }
+        for (String category : STATUS_CATEGORIES) {
+            columns.add("status_codes." + category);
+        }
+        rows.header("route", columns);
+        for (Map.Entry<String, RouteStats> entry : routes().entrySet()) {
+            RouteStats stats = entry.getValue();
+            rows.startRow(entry.getKey());
+            for (String stat : RESPONSE_TIME_STATS) {
+                rows.value(responseTimeStat(stats.responseTimes, stat));
+            }
+            for (String category : STATUS_CATEGORIES) {
+                int[] count = stats.statusCodes.get(category);
+                rows.value(count == null ? 0 : count[0]);
+            }
+            rows.endRow();
+        }
+    }
+
     @Override
     public void reset() {
-        routeStats.clear();
+        if (topRoutes == null) {
+            routeStats.clear();
+        } else {
+            topRoutes.clear();
+            otherRoutes = null;
+        }
+    }
+
+    @Override
+    public void merge(LogAggregator other) {
+        if (!(other instanceof RequestLogAggregator)) {
+            throw new IllegalArgumentException("Cannot merge " + other.getClass().getSimpleName()
+                    + " into RequestLogAggregator");
+        }
+        for (Map.Entry<String, RouteStats> entry : ((RequestLogAggregator) other).routes().entrySet()) {
+            add(entry.getKey(), entry.getValue());
+        }
+    }
+
+    @Override
+    public void writeState(DataOutput out) throws IOException {
+        Map<String, RouteStats> routes = routes();
+        StateIO.writeVarInt(out, routes.size());
+        for (Map.Entry<String, RouteStats> entry : routes.entrySet()) {
+            StateIO.writeString(out, entry.getKey());
+            RouteStats stats = entry.getValue();
+            stats.responseTimes.writeState(out);
+            StateIO.writeVarInt(out, stats.statusCodes.size());
+            for (Map.Entry<String, int[]> status : stats.statusCodes.entrySet()) {
+                StateIO.writeString(out, status.getKey());
+                StateIO.writeVarInt(out, status.getValue()[0]);
+            }
+        }
+    }
+
+    @Override
+    public void readState(DataInput in) throws IOException {
+        reset();
+        int routes = StateIO.readVarInt(in);
+        for (int i = 0; i < routes; i++) {
+            String route = StateIO.readString(in);
+            // Capped routes are admitted by their count, which is only known once read
+            RouteStats stats = topRoutes == null ? routeStats.getOrCreate(route) : newRouteStats();
+            stats.responseTimes.readState(in);
+            int categories = StateIO.readVarInt(in);
+            for (int j = 0; j < categories; j++) {
+                stats.addStatusCodes(StateIO.readString(in), StateIO.readVarInt(in));
+            }
+            if (topRoutes != null) {
+                add(route, stats);
+            }
+        }
     }
-} 
\ No newline at end of file
+}
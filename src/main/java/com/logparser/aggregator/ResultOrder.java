@@ -0,0 +1,33 @@
+package com.logparser.aggregator;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The aggregators keep their keys in first-seen order so that merging parallel workers
+ * is deterministic. Results have always been written in the iteration order of a
+ * HashMap filled through computeIfAbsent/merge, which appends new keys to their bin, so
+ * keys sharing a bin iterate in insertion order; replaying the keys into a HashMap in
+ * first-seen order keeps the JSON output byte-for-byte unchanged.
+ */
+final class ResultOrder {
+    private ResultOrder() {
+    }
+
+    static <V> Map<String, V> of(Map<String, V> firstSeenOrder) {
+        Map<String, V> ordered = new HashMap<>();
+        for (Map.Entry<String, V> entry : firstSeenOrder.entrySet()) {
+            ordered.computeIfAbsent(entry.getKey(), k -> entry.getValue());
+        }
+        return ordered;
+    }
+
+    // The order a HashMap filled by put with these keys, in this order, iterates them in
+    static String[] hashOrder(String... keys) {
+        Map<String, Boolean> map = new HashMap<>();
+        for (String key : keys) {
+            map.put(key, Boolean.TRUE);
+        }
+        return map.keySet().toArray(new String[0]);
+    }
+}
@@ -0,0 +1,71 @@
+package com.logparser.aggregator;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Receives a result as flat rows, for the line-oriented output formats: first the names of
+ * the key column and the value columns, then one row per key with a value or
+ * {@link #empty()} for every column, in order. Nested stats become columns named by their
+ * path, such as {@code response_times.min}.
+ */
+public interface ResultRows {
+    void header(String keyColumn, List<String> columns) throws IOException;
+
+    void startRow(String key) throws IOException;
+
+    void value(long value) throws IOException;
+
+    void value(double value) throws IOException;
+
+    // No value for this column in this row
+    void empty() throws IOException;
+
+    void endRow() throws IOException;
+
+    /**
+     * Writes a result shaped like {@code apm.json}: an object of keys whose values are
+     * numbers or objects of them. It is flattened up front, so this suits small results.
+     */
+    static void writeFlattened(Object result, String keyColumn, ResultRows rows) throws IOException {
+        Map<String, Map<String, Object>> flattened = new LinkedHashMap<>();
+        Set<String> columns = new LinkedHashSet<>();
+        for (Map.Entry<?, ?> entry : ((Map<?, ?>) result).entrySet()) {
+            Map<String, Object> values = new LinkedHashMap<>();
+            flatten(null, entry.getValue(), values);
+            columns.addAll(values.keySet());
+            flattened.put(String.valueOf(entry.getKey()), values);
+        }
+        rows.header(keyColumn, new ArrayList<>(columns));
+        for (Map.Entry<String, Map<String, Object>> row : flattened.entrySet()) {
+            rows.startRow(row.getKey());
+            for (String column : columns) {
+                Object value = row.getValue().get(column);
+                if (value instanceof Integer || value instanceof Long) {
+                    rows.value(((Number) value).longValue());
+                } else if (value instanceof Number) {
+                    rows.value(((Number) value).doubleValue());
+                } else {
+                    rows.empty();
+                }
+            }
+            rows.endRow();
+        }
+    }
+
+    private static void flatten(String path, Object value, Map<String, Object> values) {
+        if (value instanceof Map) {
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                String name = String.valueOf(entry.getKey());
+                flatten(path == null ? name : path + "." + name, entry.getValue(), values);
+            }
+        } else {
+            values.put(path == null ? "value" : path, value);
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package com.logparser.aggregator;
+
+import com.logparser.parser.DictionaryMap;
+import com.logparser.parser.FieldValue;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+/**
+ * String-keyed values shared by threads that aggregate at the same time. Keys are looked
+ * up and inserted through a {@link ConcurrentHashMap} without locking; each thread also
+ * keeps a {@link DictionaryMap} in front of it, so a key it has seen before is found by
+ * its field dictionary id without being decoded. Keys remember the order they were first
+ * added in, so that results can be ordered as the single-threaded aggregators order them.
+ */
+final class SharedKeys<V> {
+    private final Function<String, V> factory;
+    private final AtomicLong added = new AtomicLong();
+    private final ThreadLocal<Front<V>> fronts = new ThreadLocal<>();
+    private volatile Table<V> table = new Table<>();
+
+    private static final class Keyed<V> {
+        final long order;
+        final String key;
+        final V value;
+
+        Keyed(long order, String key, V value) {
+            this.order = order;
+            this.key = key;
+            this.value = value;
+        }
+    }
+
+    // Replaced as a whole by clear(), which is how a thread's front notices it is stale
+    private static final class Table<V> {
+        final ConcurrentHashMap<String, Keyed<V>> values = new ConcurrentHashMap<>();
+        // Entries without the key field; ConcurrentHashMap has no null key
+        final AtomicReference<Keyed<V>> missing = new AtomicReference<>();
+    }
+
+    private static final class Front<V> {
+        final Table<V> table;
+        final DictionaryMap<V> keys;
+
+        Front(Table<V> table, DictionaryMap<V> keys) {
+            this.table = table;
+            this.keys = keys;
+        }
+    }
+
+    SharedKeys(Function<String, V> factory) {
+        this.factory = factory;
+    }
+
+    V getOrCreate(FieldValue key) {
+        Table<V> current = table;
+        Front<V> front = fronts.get();
+        if (front == null || front.table != current) {
+            front = new Front<>(current, new DictionaryMap<>(value -> getOrCreate(current, value)));
+            fronts.set(front);
+        }
+        return front.keys.getOrCreate(key);
+    }
+
+    V getOrCreate(String key) {
+        return getOrCreate(table, key);
+    }
+
+    // A thread that loses the race to insert a key drops its value and uses the winner's
+    private V getOrCreate(Table<V> table, String key) {
+        if (key == null) {
+            Keyed<V> keyed = table.missing.get();
+            if (keyed == null) {
+                table.missing.compareAndSet(null, newKeyed(null));
+                keyed = table.missing.get();
+            }
+            return keyed.value;
+        }
+        Keyed<V> keyed = table.values.get(key);
+        if (keyed == null) {
+            Keyed<V> created = newKeyed(key);
+            keyed = table.values.putIfAbsent(key, created);
+            if (keyed == null) {
+                keyed = created;
+            }
+        }
+        return keyed.value;
+    }
+
+    private Keyed<V> newKeyed(String key) {
+        return new Keyed<>(added.incrementAndGet(), key, factory.apply(key));
+    }
+
+    /** A copy of the entries in the order their keys were first added. */
+    Map<String, V> asMap() {
+        Table<V> current = table;
+        List<Keyed<V>> keys = new ArrayList<>(current.values.values());
+        Keyed<V> missing = current.missing.get();
+        if (missing != null) {
+            keys.add(missing);
+        }
+        keys.sort(Comparator.comparingLong(keyed -> keyed.order));
+        Map<String, V> ordered = new LinkedHashMap<>();
+        for (Keyed<V> keyed : keys) {
+            ordered.put(keyed.key, keyed.value);
+        }
+        return ordered;
+    }
+
+    /** Drops every key. Updates racing with it may still land in the dropped values. */
+    void clear() {
+        table = new Table<>();
+    }
+}
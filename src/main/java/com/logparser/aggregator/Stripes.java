@@ -0,0 +1,53 @@
+package com.logparser.aggregator;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * The state of one key split into cells, in the manner of {@code LongAdder}: a thread
+ * updates the cell its id maps to while holding that cell's monitor, which with enough
+ * cells it rarely shares with another thread, and readers combine all cells. Cells are
+ * created the first time a thread needs one.
+ */
+final class Stripes<C> {
+    static final int CELLS = cellCount(Runtime.getRuntime().availableProcessors());
+
+    private final AtomicReferenceArray<C> cells = new AtomicReferenceArray<>(CELLS);
+    private final Supplier<C> factory;
+
+    Stripes(Supplier<C> factory) {
+        this.factory = factory;
+    }
+
+    // Twice the processors, as a power of two between 4 and 64
+    static int cellCount(int processors) {
+        int cells = 4;
+        while (cells < 2 * processors && cells < 64) {
+            cells <<= 1;
+        }
+        return cells;
+    }
+
+    /** The calling thread's cell; lock it while updating. */
+    C current() {
+        // Thread ids are handed out in sequence, so threads started together get distinct cells
+        int index = (int) Thread.currentThread().getId() & (CELLS - 1);
+        C cell = cells.get(index);
+        if (cell == null) {
+            cells.compareAndSet(index, null, factory.get());
+            cell = cells.get(index);
+        }
+        return cell;
+    }
+
+    /** Hands every cell created so far to {@code action}, which locks it while reading. */
+    void forEach(Consumer<C> action) {
+        for (int i = 0; i < CELLS; i++) {
+            C cell = cells.get(i);
+            if (cell != null) {
+                action.accept(cell);
+            }
+        }
+    }
+}
@@ -0,0 +1,211 @@
+package com.logparser.aggregator;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.logparser.io.StateIO;
+import com.logparser.model.ApplicationLogEntry;
+import com.logparser.model.LogEntry;
+import com.logparser.parser.DictionaryMap;
+import com.logparser.parser.FieldValue;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Application messages clustered into templates per level by a {@link TemplateMiner}, such
+ * as {@code Update process failed for order <*>}. The result lists the most counted
+ * templates of each level with their counts and a few of their messages, followed by
+ * {@value #OTHER_TEMPLATE} for the messages of templates that were pushed out by the cap.
+ * Merged or restored templates are matched again against the ones already kept, so the
+ * templates of a parallel run can come out coarser than those of a single pass.
+ */
+public class TemplateAggregator implements LogAggregator {
+    static final String OTHER_TEMPLATE = "OTHER";
+    private static final String UNKNOWN_LEVEL = "unknown";
+
+    private final int topTemplates;
+    private final DictionaryMap<TemplateMiner> byLevel;
+    private final FieldValue message = new FieldValue();
+
+    /**
+     * @param maxTemplates templates kept per level
+     * @param topTemplates templates reported per level
+     */
+    public TemplateAggregator(int maxTemplates, int topTemplates) {
+        if (maxTemplates < 1 || topTemplates < 1) {
+            throw new IllegalArgumentException("Template counts must be at least 1: " + maxTemplates
+                    + ", " + topTemplates);
+        }
+        this.topTemplates = topTemplates;
+        this.byLevel = new DictionaryMap<>(level -> new TemplateMiner(maxTemplates));
+    }
+
+    @Override
+    public void aggregate(LogEntry entry) {
+        if (entry instanceof ApplicationLogEntry) {
+            FieldValue text = entry.getField("message", message);
+            if (text.isPresent()) {
+                byLevel.getOrCreate(((ApplicationLogEntry) entry).getLevelField())
+                        .add(text.getSource(), text.getStart(), text.getEnd());
+            }
+        }
+    }
+
+    @Override
+    public Set<String> getFields() {
+        return Set.of("level", "message");
+    }
+
+    private List<TemplateMiner.Template> top(TemplateMiner miner) {
+        List<TemplateMiner.Template> templates = miner.templates();
+        return templates.size() > topTemplates ? templates.subList(0, topTemplates) : templates;
+    }
+
+    private static String levelName(String level) {
+        return level == null ? UNKNOWN_LEVEL : level;
+    }
+
+    @Override
+    public Object getResult() {
+        Map<String, List<Map<String, Object>>> result = new LinkedHashMap<>();
+        for (Map.Entry<String, TemplateMiner> level : byLevel.asMap().entrySet()) {
+            TemplateMiner miner = level.getValue();
+            List<Map<String, Object>> templates = new ArrayList<>();
+            for (TemplateMiner.Template template : top(miner)) {
+                templates.add(templateOf(miner.textOf(template), template.getCount(), template.getSamples()));
+            }
+            if (miner.getOtherCount() > 0) {
+                templates.add(templateOf(OTHER_TEMPLATE, miner.getOtherCount(), Collections.emptyList()));
+            }
+            result.put(levelName(level.getKey()), templates);
+        }
+        return result;
+    }
+
+    private static Map<String, Object> templateOf(String text, long count, List<String> samples) {
+        Map<String, Object> template = new LinkedHashMap<>();
+        template.put("template", text);
+        template.put("count", count);
+        template.put("samples", samples);
+        return template;
+    }
+
+    @Override
+    public void writeResult(JsonGenerator generator) throws IOException {
+        generator.writeStartObject();
+        for (Map.Entry<String, TemplateMiner> level : byLevel.asMap().entrySet()) {
+            TemplateMiner miner = level.getValue();
+            generator.writeArrayFieldStart(levelName(level.getKey()));
+            for (TemplateMiner.Template template : top(miner)) {
+                writeTemplate(generator, miner.textOf(template), template.getCount(), template.getSamples());
+            }
+            if (miner.getOtherCount() > 0) {
+                writeTemplate(generator, OTHER_TEMPLATE, miner.getOtherCount(), Collections.emptyList());
+            }
+            generator.writeEndArray();
+        }
+        generator.writeEndObject();
+    }
+
+    private static void writeTemplate(JsonGenerator generator, String text, long count, List<String> samples)
+            throws IOException {
+        generator.writeStartObject();
+        generator.writeStringField("template", text);
+        generator.writeNumberField("count", count);
+        generator.writeArrayFieldStart("samples");
+        for (String sample : samples) {
+            generator.writeString(sample);
+        }
+        generator.writeEndArray();
+        generator.writeEndObject();
+    }
+
+    // Samples do not fit a row of numbers, so rows are keyed by level|template with the count
+    @Override
+    public void writeRows(ResultRows rows) throws IOException {
+        rows.header("level|template", Collections.singletonList("count"));
+        for (Map.Entry<String, TemplateMiner> level : byLevel.asMap().entrySet()) {
+            TemplateMiner miner = level.getValue();
+            String prefix = levelName(level.getKey()) + "|";
+            for (TemplateMiner.Template template : top(miner)) {
+                rows.startRow(prefix + miner.textOf(template));
+                rows.value(template.getCount());
+                rows.endRow();
+            }
+            if (miner.getOtherCount() > 0) {
+                rows.startRow(prefix + OTHER_TEMPLATE);
+                rows.value(miner.getOtherCount());
+                rows.endRow();
+            }
+        }
+    }
+
+    @Override
+    public void reset() {
+        byLevel.clear();
+    }
+
+    @Override
+    public void merge(LogAggregator other) {
+        if (!(other instanceof TemplateAggregator)) {
+            throw new IllegalArgumentException("Cannot merge " + other.getClass().getSimpleName()
+                    + " into TemplateAggregator");
+        }
+        for (Map.Entry<String, TemplateMiner> level : ((TemplateAggregator) other).byLevel.asMap().entrySet()) {
+            TemplateMiner from = level.getValue();
+            TemplateMiner into = byLevel.getOrCreate(level.getKey());
+            for (TemplateMiner.Template template : from.templates()) {
+                into.add(from.textOf(template), template.getCount(), template.getSamples());
+            }
+            into.addOtherCount(from.getOtherCount());
+        }
+    }
+
+    @Override
+    public void writeState(DataOutput out) throws IOException {
+        StateIO.writeVarInt(out, byLevel.size());
+        for (Map.Entry<String, TemplateMiner> level : byLevel.asMap().entrySet()) {
+            TemplateMiner miner = level.getValue();
+            StateIO.writeString(out, level.getKey());
+            StateIO.writeVarLong(out, miner.getOtherCount());
+            List<TemplateMiner.Template> templates = miner.templates();
+            StateIO.writeVarInt(out, templates.size());
+            for (TemplateMiner.Template template : templates) {
+                StateIO.writeString(out, miner.textOf(template));
+                StateIO.writeVarLong(out, template.getCount());
+                List<String> samples = template.getSamples();
+                StateIO.writeVarInt(out, samples.size());
+                for (String sample : samples) {
+                    StateIO.writeString(out, sample);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void readState(DataInput in) throws IOException {
+        reset();
+        int levels = StateIO.readVarInt(in);
+        for (int i = 0; i < levels; i++) {
+            TemplateMiner miner = byLevel.getOrCreate(StateIO.readString(in));
+            miner.addOtherCount(StateIO.readVarLong(in));
+            int templates = StateIO.readVarInt(in);
+            for (int j = 0; j < templates; j++) {
+                String text = StateIO.readString(in);
+                long count = StateIO.readVarLong(in);
+                List<String> samples = new ArrayList<>();
+                int sampleCount = StateIO.readVarInt(in);
+                for (int k = 0; k < sampleCount; k++) {
+                    samples.add(StateIO.readString(in));
+                }
+                miner.add(text, count, samples);
+            }
+        }
+    }
+}
@@ -0,0 +1,329 @@
+package com.logparser.aggregator;
+
+import com.logparser.parser.FieldDictionary;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Clusters messages into templates online, the way Drain does: a message is routed
+ * through a prefix tree by its token count and first {@value #PREFIX_TOKENS} tokens to a
+ * leaf, and joins the leaf's template it shares the most tokens with if at least
+ * {@value #SIMILARITY} of them match; the positions where they differ become
+ * {@value #WILDCARD_TEXT}. Otherwise it starts a template of its own.
+ * <p>
+ * Tokens are the runs of non-space characters. A token with a digit in it is taken to be
+ * a variable and masked up front; any other is resolved to an id in a bounded
+ * {@link FieldDictionary}, so a message is tokenized and matched without creating
+ * Strings or running a regex. At most {@code maxTemplates} templates are kept: a new one
+ * then replaces the least counted, whose count moves to {@link #getOtherCount()}. Each
+ * token node has at most {@value #MAX_CHILDREN} children, the rest sharing a wildcard
+ * child. Not thread-safe.
+ */
+final class TemplateMiner {
+    static final String WILDCARD_TEXT = "<*>";
+    static final int MAX_SAMPLES = 3;
+    private static final int PREFIX_TOKENS = 2;
+    private static final double SIMILARITY = 0.4;
+    private static final int MAX_CHILDREN = 100;
+    private static final int MAX_TOKENS = 1 << 16;
+    private static final int WILDCARD = -2;
+    // A token the dictionary had no room for; it matches nothing
+    private static final int UNKNOWN = -3;
+
+    private final int maxTemplates;
+    private final FieldDictionary tokens = new FieldDictionary(MAX_TOKENS);
+    private final Node root = new Node();
+    // A min-heap on count, so the template to evict next is at the root
+    private Template[] heap = new Template[16];
+    private int size;
+    private long admitted;
+    private long otherCount;
+    private int[] lineTokens = new int[32];
+    private int tokenCount;
+    // Whether the last match made or widened its template
+    private boolean widened;
+
+    /** One template with its count and samples: the message that made it and the first that widened it. */
+    static final class Template {
+        private final int[] tokens;
+        private final List<Template> leaf;
+        private final long order;
+        private final String[] samples = new String[MAX_SAMPLES];
+        private int sampleCount;
+        private long count;
+        private int index;
+        private String text;
+
+        private Template(int[] tokens, List<Template> leaf, long order) {
+            this.tokens = tokens;
+            this.leaf = leaf;
+            this.order = order;
+        }
+
+        long getCount() {
+            return count;
+        }
+
+        List<String> getSamples() {
+            return Arrays.asList(Arrays.copyOf(samples, sampleCount));
+        }
+
+        private void addSample(String sample) {
+            if (sampleCount < MAX_SAMPLES) {
+                samples[sampleCount++] = sample;
+            }
+        }
+    }
+
+    private static final class Node {
+        int[] keys = new int[4];
+        Object[] children = new Object[4];
+        int size;
+
+        Object child(int key) {
+            for (int i = 0; i < size; i++) {
+                if (keys[i] == key) {
+                    return children[i];
+                }
+            }
+            return null;
+        }
+
+        void add(int key, Object child) {
+            if (size == keys.length) {
+                keys = Arrays.copyOf(keys, size * 2);
+                children = Arrays.copyOf(children, size * 2);
+            }
+            keys[size] = key;
+            children[size++] = child;
+        }
+    }
+
+    TemplateMiner(int maxTemplates) {
+        if (maxTemplates < 1) {
+            throw new IllegalArgumentException("Template limit must be at least 1: " + maxTemplates);
+        }
+        this.maxTemplates = maxTemplates;
+    }
+
+    /** Counts the message between {@code start} and {@code end} of {@code source}. */
+    void add(CharSequence source, int start, int end) {
+        tokenize(source, start, end);
+        Template template = match(1);
+        if (widened && template.sampleCount < MAX_SAMPLES) {
+            template.addSample(source.subSequence(start, end).toString());
+        }
+    }
+
+    /**
+     * Counts {@code weight} messages matching {@code text}, as when merging. Its
+     * wildcards stay wildcards.
+     */
+    void add(String text, long weight, List<String> samples) {
+        tokenize(text, 0, text.length());
+        Template template = match(weight);
+        for (String sample : samples) {
+            template.addSample(sample);
+        }
+    }
+
+    long getOtherCount() {
+        return otherCount;
+    }
+
+    void addOtherCount(long count) {
+        otherCount += count;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /** The kept templates, most counted first and ties in the order they were made. */
+    List<Template> templates() {
+        List<Template> templates = new ArrayList<>(Arrays.asList(heap).subList(0, size));
+        templates.sort(Comparator.comparingLong((Template template) -> -template.count)
+                .thenComparingLong(template -> template.order));
+        return templates;
+    }
+
+    String textOf(Template template) {
+        if (template.text == null) {
+            StringBuilder text = new StringBuilder();
+            for (int token : template.tokens) {
+                if (text.length() > 0) {
+                    text.append(' ');
+                }
+                text.append(token == WILDCARD ? WILDCARD_TEXT : tokens.valueOf(token));
+            }
+            template.text = text.toString();
+        }
+        return template.text;
+    }
+
+    private void tokenize(CharSequence source, int start, int end) {
+        tokenCount = 0;
+        int i = start;
+        while (i < end) {
+            while (i < end && source.charAt(i) == ' ') {
+                i++;
+            }
+            int tokenStart = i;
+            boolean variable = false;
+            while (i < end && source.charAt(i) != ' ') {
+                char c = source.charAt(i++);
+                variable |= c >= '0' && c <= '9';
+            }
+            if (i == tokenStart) {
+                break;
+            }
+            int id;
+            if (variable || isWildcard(source, tokenStart, i)) {
+                id = WILDCARD;
+            } else {
+                id = tokens.idOf(source, tokenStart, i);
+                if (id == FieldDictionary.NO_ID) {
+                    id = UNKNOWN;
+                }
+            }
+            if (tokenCount == lineTokens.length) {
+                lineTokens = Arrays.copyOf(lineTokens, tokenCount * 2);
+            }
+            lineTokens[tokenCount++] = id;
+        }
+    }
+
+    private static boolean isWildcard(CharSequence source, int start, int end) {
+        return end - start == 3 && source.charAt(start) == '<' && source.charAt(start + 1) == '*'
+                && source.charAt(start + 2) == '>';
+    }
+
+    // Finds or makes the template for the tokenized message and counts it
+    private Template match(long weight) {
+        List<Template> leaf = leaf();
+        Template best = null;
+        int bestSimilar = -1;
+        int bestWildcards = -1;
+        for (Template template : leaf) {
+            int similar = 0;
+            int wildcards = 0;
+            for (int i = 0; i < tokenCount; i++) {
+                int token = template.tokens[i];
+                if (token == WILDCARD) {
+                    wildcards++;
+                } else if (token == lineTokens[i]) {
+                    similar++;
+                }
+            }
+            if (similar > bestSimilar || similar == bestSimilar && wildcards > bestWildcards) {
+                best = template;
+                bestSimilar = similar;
+                bestWildcards = wildcards;
+            }
+        }
+        if (best != null && (tokenCount == 0 || bestSimilar >= SIMILARITY * tokenCount)) {
+            widened = false;
+            for (int i = 0; i < tokenCount; i++) {
+                if (best.tokens[i] != lineTokens[i] && best.tokens[i] != WILDCARD) {
+                    best.tokens[i] = WILDCARD;
+                    best.text = null;
+                    widened = true;
+                }
+            }
+            best.count += weight;
+            siftDown(best.index);
+            return best;
+        }
+        int[] templateTokens = Arrays.copyOf(lineTokens, tokenCount);
+        for (int i = 0; i < tokenCount; i++) {
+            if (templateTokens[i] == UNKNOWN) {
+                templateTokens[i] = WILDCARD;
+            }
+        }
+        widened = true;
+        Template template = new Template(templateTokens, leaf, admitted++);
+        template.count = weight;
+        if (size == maxTemplates) {
+            Template least = heap[0];
+            least.leaf.remove(least);
+            otherCount += least.count;
+            template.index = 0;
+        } else {
+            if (size == heap.length) {
+                heap = Arrays.copyOf(heap, Math.min(maxTemplates, size * 2));
+            }
+            template.index = size++;
+        }
+        heap[template.index] = template;
+        leaf.add(template);
+        siftUp(template.index);
+        siftDown(template.index);
+        return template;
+    }
+
+    // The first level is the token count, so a leaf's templates all have as many tokens
+    @SuppressWarnings("unchecked")
+    private List<Template> leaf() {
+        int depth = Math.min(PREFIX_TOKENS, tokenCount);
+        Object node = child(root, tokenCount, depth == 0, false);
+        for (int i = 0; i < depth; i++) {
+            int token = lineTokens[i] == UNKNOWN ? WILDCARD : lineTokens[i];
+            node = child((Node) node, token, i == depth - 1, true);
+        }
+        return (List<Template>) node;
+    }
+
+    // Full nodes send new tokens to their wildcard child
+    private static Object child(Node node, int key, boolean leaf, boolean bounded) {
+        Object child = node.child(key);
+        if (child == null && bounded && key != WILDCARD && node.size >= MAX_CHILDREN) {
+            key = WILDCARD;
+            child = node.child(key);
+        }
+        if (child == null) {
+            child = leaf ? new ArrayList<Template>(1) : new Node();
+            node.add(key, child);
+        }
+        return child;
+    }
+
+    private void siftUp(int index) {
+        Template template = heap[index];
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (heap[parent].count <= template.count) {
+                break;
+            }
+            place(heap[parent], index);
+            index = parent;
+        }
+        place(template, index);
+    }
+
+    private void siftDown(int index) {
+        Template template = heap[index];
+        while (true) {
+            int child = 2 * index + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && heap[child + 1].count < heap[child].count) {
+                child++;
+            }
+            if (template.count <= heap[child].count) {
+                break;
+            }
+            place(heap[child], index);
+            index = child;
+        }
+        place(template, index);
+    }
+
+    private void place(Template template, int index) {
+        heap[index] = template;
+        template.index = index;
+    }
+}
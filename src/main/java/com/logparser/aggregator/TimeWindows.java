@@ -0,0 +1,112 @@
+package com.logparser.aggregator;
+
+/**
+ * Epoch-aligned time windows of a fixed size that start every {@code slide} milliseconds.
+ * A slide equal to the size gives tumbling windows, where every timestamp falls into
+ * exactly one window; a smaller slide gives overlapping sliding windows, at most
+ * {@value #MAX_WINDOWS_PER_TIMESTAMP} of which contain any one timestamp, since an entry is
+ * aggregated into each of them.
+ */
+public class TimeWindows {
+    static final int MAX_WINDOWS_PER_TIMESTAMP = 1000;
+
+    private final long sizeMillis;
+    private final long slideMillis;
+    private final long allowedLatenessMillis;
+
+    public TimeWindows(long sizeMillis, long slideMillis, long allowedLatenessMillis) {
+        if (sizeMillis <= 0 || slideMillis <= 0) {
+            throw new IllegalArgumentException("Window size and slide must be positive");
+        }
+        if (slideMillis > sizeMillis || sizeMillis % slideMillis != 0) {
+            throw new IllegalArgumentException("Window size must be a multiple of the slide: "
+                    + sizeMillis + "ms / " + slideMillis + "ms");
+        }
+        if (sizeMillis / slideMillis > MAX_WINDOWS_PER_TIMESTAMP) {
+            throw new IllegalArgumentException("A window may be at most " + MAX_WINDOWS_PER_TIMESTAMP
+                    + " slides long: " + sizeMillis + "ms / " + slideMillis + "ms");
+        }
+        if (allowedLatenessMillis < 0) {
+            throw new IllegalArgumentException("Allowed lateness must not be negative: " + allowedLatenessMillis);
+        }
+        if (allowedLatenessMillis > Long.MAX_VALUE / 4 - sizeMillis) {
+            throw new IllegalArgumentException("Window size plus allowed lateness is out of range: "
+                    + sizeMillis + "ms + " + allowedLatenessMillis + "ms");
+        }
+        this.sizeMillis = sizeMillis;
+        this.slideMillis = slideMillis;
+        this.allowedLatenessMillis = allowedLatenessMillis;
+    }
+
+    public static TimeWindows tumbling(long sizeMillis) {
+        return new TimeWindows(sizeMillis, sizeMillis, 0);
+    }
+
+    /**
+     * Parses durations such as {@code 500ms}, {@code 30s}, {@code 5m}, {@code 1h} or {@code 1d}.
+     *
+     * @throws IllegalArgumentException if the duration is malformed or too long for a long
+     *                                  of milliseconds
+     */
+    public static long parseDuration(String text) {
+        String value = text.trim();
+        int unitStart = 0;
+        while (unitStart < value.length() && Character.isDigit(value.charAt(unitStart))) {
+            unitStart++;
+        }
+        if (unitStart == 0) {
+            throw new IllegalArgumentException("Invalid duration: " + text);
+        }
+        long unitMillis;
+        switch (value.substring(unitStart)) {
+            case "ms":
+                unitMillis = 1;
+                break;
+            case "s":
+                unitMillis = 1000;
+                break;
+            case "m":
+                unitMillis = 60_000;
+                break;
+            case "h":
+                unitMillis = 3_600_000;
+                break;
+            case "d":
+                unitMillis = 86_400_000;
+                break;
+            default:
+                throw new IllegalArgumentException("Invalid duration unit in " + text + " (use ms, s, m, h or d)");
+        }
+        try {
+            return Math.multiplyExact(Long.parseLong(value.substring(0, unitStart)), unitMillis);
+        } catch (NumberFormatException | ArithmeticException e) {
+            throw new IllegalArgumentException("Duration out of range: " + text);
+        }
+    }
+
+    public long getSizeMillis() {
+        return sizeMillis;
+    }
+
+    public long getSlideMillis() {
+        return slideMillis;
+    }
+
+    public long getAllowedLatenessMillis() {
+        return allowedLatenessMillis;
+    }
+
+    // Start of the latest window containing the timestamp; the others start slide, 2 * slide, ... earlier
+    long lastStart(long timestampMillis) {
+        return Math.floorDiv(timestampMillis, slideMillis) * slideMillis;
+    }
+
+    int windowsPerTimestamp() {
+        return (int) (sizeMillis / slideMillis);
+    }
+
+    // A window is closed once the newest timestamp seen is past its end plus the allowed lateness
+    boolean isClosed(long startMillis, long watermarkMillis) {
+        return startMillis + sizeMillis + allowedLatenessMillis <= watermarkMillis;
+    }
+}
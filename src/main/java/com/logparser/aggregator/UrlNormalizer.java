@@ -0,0 +1,194 @@
+package com.logparser.aggregator;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Maps request URLs to the routes {@link RequestLogAggregator} counts them under, so URLs
+ * carrying ids or query strings do not each get an entry of their own.
+ * <p>
+ * A URL whose path matches one of the templates is counted under the template's text: a
+ * {@code {name}} segment matches any one non-empty path segment, and a final {@code *}
+ * matches whatever follows, including nothing. With {@code collapse}, any other URL loses
+ * its query string and fragment, and path segments that are numbers, UUIDs or hex strings
+ * of at least {@value #MIN_HEX_LENGTH} digits become {@code {id}}, {@code {uuid}} and
+ * {@code {hex}}. URLs are read in place; immutable, so one instance serves every thread.
+ */
+public final class UrlNormalizer {
+    private static final int MIN_HEX_LENGTH = 16;
+    private static final int UUID_LENGTH = 36;
+
+    private final boolean collapse;
+    private final String[] templates;
+    private final String[][] templateSegments;
+
+    private UrlNormalizer(boolean collapse, List<String> templates) {
+        this.collapse = collapse;
+        this.templates = templates.toArray(new String[0]);
+        this.templateSegments = new String[this.templates.length][];
+        for (int i = 0; i < this.templates.length; i++) {
+            templateSegments[i] = this.templates[i].split("/", -1);
+        }
+    }
+
+    /**
+     * Templates are tried in the order given.
+     *
+     * @throws IllegalArgumentException if a template is not a path or has {@code *} other
+     *                                  than as its last segment
+     */
+    public static UrlNormalizer of(boolean collapse, List<String> templates) {
+        List<String> checked = new ArrayList<>();
+        for (String template : templates) {
+            String trimmed = template.trim();
+            if (!trimmed.startsWith("/") || trimmed.indexOf('?') >= 0 || trimmed.indexOf('#') >= 0) {
+                throw new IllegalArgumentException("A route template is a path starting with /: " + template);
+            }
+            int star = trimmed.indexOf('*');
+            if (star >= 0 && (star != trimmed.length() - 1 || trimmed.charAt(star - 1) != '/')) {
+                throw new IllegalArgumentException("* may only be the last segment of a route template: " + template);
+            }
+            checked.add(trimmed);
+        }
+        return new UrlNormalizer(collapse, checked);
+    }
+
+    /**
+     * The route for the URL in {@code source[start, end)}: a template, {@code buffer}
+     * holding the collapsed URL, or null to count the URL as it is.
+     */
+    public CharSequence routeOf(CharSequence source, int start, int end, StringBuilder buffer) {
+        if (source == null) {
+            return null;
+        }
+        int pathEnd = start;
+        while (pathEnd < end && source.charAt(pathEnd) != '?' && source.charAt(pathEnd) != '#') {
+            pathEnd++;
+        }
+        for (int i = 0; i < templates.length; i++) {
+            if (matches(templateSegments[i], source, start, pathEnd)) {
+                return templates[i];
+            }
+        }
+        if (!collapse) {
+            return null;
+        }
+
+        buffer.setLength(0);
+        int position = start;
+        while (true) {
+            int segmentEnd = segmentEnd(source, position, pathEnd);
+            String placeholder = placeholderFor(source, position, segmentEnd);
+            if (placeholder != null) {
+                buffer.append(placeholder);
+            } else {
+                buffer.append(source, position, segmentEnd);
+            }
+            if (segmentEnd == pathEnd) {
+                return buffer;
+            }
+            buffer.append('/');
+            position = segmentEnd + 1;
+        }
+    }
+
+    private static boolean matches(String[] segments, CharSequence source, int start, int pathEnd) {
+        int position = start;
+        for (int i = 0; i < segments.length; i++) {
+            String segment = segments[i];
+            if (i == segments.length - 1 && segment.equals("*")) {
+                return true;
+            }
+            if (position > pathEnd) {
+                return false;
+            }
+            int segmentEnd = segmentEnd(source, position, pathEnd);
+            if (isPlaceholder(segment) ? segmentEnd == position
+                    : !regionMatches(segment, source, position, segmentEnd)) {
+                return false;
+            }
+            position = segmentEnd + 1;
+        }
+        return position == pathEnd + 1;
+    }
+
+    private static int segmentEnd(CharSequence source, int position, int pathEnd) {
+        while (position < pathEnd && source.charAt(position) != '/') {
+            position++;
+        }
+        return position;
+    }
+
+    private static boolean isPlaceholder(String segment) {
+        return segment.length() > 2 && segment.charAt(0) == '{' && segment.charAt(segment.length() - 1) == '}';
+    }
+
+    private static boolean regionMatches(String segment, CharSequence source, int start, int end) {
+        if (segment.length() != end - start) {
+            return false;
+        }
+        for (int i = 0; i < segment.length(); i++) {
+            if (segment.charAt(i) != source.charAt(start + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String placeholderFor(CharSequence source, int start, int end) {
+        int length = end - start;
+        if (length == 0) {
+            return null;
+        }
+        boolean digits = true;
+        boolean hex = true;
+        for (int i = start; i < end && hex; i++) {
+            char c = source.charAt(i);
+            if (c < '0' || c > '9') {
+                digits = false;
+                hex = (c >= 'a' && c <= 'f') || (c >= 'A' && c <= 'F');
+            }
+        }
+        if (digits) {
+            return "{id}";
+        }
+        if (hex) {
+            return length >= MIN_HEX_LENGTH && hasDigit(source, start, end) ? "{hex}" : null;
+        }
+        return length == UUID_LENGTH && isUuid(source, start) ? "{uuid}" : null;
+    }
+
+    private static boolean hasDigit(CharSequence source, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (source.charAt(i) >= '0' && source.charAt(i) <= '9') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // 8-4-4-4-12 hex digits
+    private static boolean isUuid(CharSequence source, int start) {
+        for (int i = 0; i < UUID_LENGTH; i++) {
+            char c = source.charAt(start + i);
+            if (i == 8 || i == 13 || i == 18 || i == 23) {
+                if (c != '-') {
+                    return false;
+                }
+            } else if (Character.digit(c, 16) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Describes the settings for checkpoints, which only restore state made with the same
+    @Override
+    public String toString() {
+        StringBuilder description = new StringBuilder(collapse ? "collapse" : "templates");
+        for (String template : templates) {
+            description.append(',').append(template);
+        }
+        return description.toString();
+    }
+}
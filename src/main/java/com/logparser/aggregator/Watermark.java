@@ -0,0 +1,19 @@
+package com.logparser.aggregator;
+
+/**
+ * The newest timestamp seen so far. One instance is shared by the windowed aggregators of
+ * a run, so a window of one log type closes based on time observed in any log type.
+ */
+public class Watermark {
+    private long millis = Long.MIN_VALUE;
+
+    public long get() {
+        return millis;
+    }
+
+    public void advance(long timestampMillis) {
+        if (timestampMillis > millis) {
+            millis = timestampMillis;
+        }
+    }
+}
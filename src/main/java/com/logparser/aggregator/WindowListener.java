@@ -0,0 +1,11 @@
+package com.logparser.aggregator;
+
+import java.time.Instant;
+
+/**
+ * Receives each window's result once the window has closed and its aggregator has been
+ * discarded.
+ */
+public interface WindowListener {
+    void windowClosed(Instant start, Instant end, Object result);
+}
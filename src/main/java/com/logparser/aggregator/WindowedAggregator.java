@@ -0,0 +1,197 @@
+package com.logparser.aggregator;
+
+import com.logparser.io.StateIO;
+import com.logparser.model.LogEntry;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Supplier;
+
+/**
+ * Splits entries by timestamp into {@link TimeWindows} and aggregates each window with its
+ * own delegate aggregator. Once the {@link Watermark} passes a window's end plus the
+ * allowed lateness, the window is closed, its result is handed to the listener and its
+ * aggregator is dropped, so memory only grows with the number of windows still open.
+ * Entries that only belong to closed windows are counted and skipped, as are entries
+ * without a timestamp.
+ * <p>
+ * Without a listener, closed windows are kept as their (small) results so that
+ * {@link #getResult()} still returns the whole series.
+ */
+public class WindowedAggregator implements LogAggregator {
+    private final TimeWindows windows;
+    private final Supplier<LogAggregator> factory;
+    private final TreeMap<Long, LogAggregator> open = new TreeMap<>();
+    private final List<Map<String, Object>> closed = new ArrayList<>();
+    private final Watermark watermark;
+    private WindowListener listener;
+    private long lateEntries;
+    private long untimedEntries;
+
+    public WindowedAggregator(TimeWindows windows, Supplier<LogAggregator> factory) {
+        this(windows, new Watermark(), factory);
+    }
+
+    public WindowedAggregator(TimeWindows windows, Watermark watermark, Supplier<LogAggregator> factory) {
+        this.windows = windows;
+        this.watermark = watermark;
+        this.factory = factory;
+    }
+
+    public void setListener(WindowListener listener) {
+        this.listener = listener;
+    }
+
+    @Override
+    public void aggregate(LogEntry entry) {
+        if (entry.getTimestamp() == null) {
+            untimedEntries++;
+            return;
+        }
+        long timestamp = entry.getTimestamp().toEpochMilli();
+        watermark.advance(timestamp);
+        closeWindows(false);
+        long start = windows.lastStart(timestamp);
+        boolean accepted = false;
+        for (int i = 0; i < windows.windowsPerTimestamp(); i++, start -= windows.getSlideMillis()) {
+            if (windows.isClosed(start, watermark.get())) {
+                break;
+            }
+            LogAggregator window = open.get(start);
+            if (window == null) {
+                window = factory.get();
+                open.put(start, window);
+            }
+            window.aggregate(entry);
+            accepted = true;
+        }
+        if (!accepted) {
+            lateEntries++;
+        }
+    }
+
+    /**
+     * Closes every window that is still open, e.g. at the end of the input.
+     */
+    public void flush() {
+        closeWindows(true);
+    }
+
+    public long getLateEntries() {
+        return lateEntries;
+    }
+
+    public long getUntimedEntries() {
+        return untimedEntries;
+    }
+
+    int getOpenWindowCount() {
+        return open.size();
+    }
+
+    // Windows close in start order, which for equally sized windows is also end order
+    private void closeWindows(boolean all) {
+        while (!open.isEmpty() && (all || windows.isClosed(open.firstKey(), watermark.get()))) {
+            Map.Entry<Long, LogAggregator> window = open.pollFirstEntry();
+            Instant start = Instant.ofEpochMilli(window.getKey());
+            Instant end = Instant.ofEpochMilli(window.getKey() + windows.getSizeMillis());
+            Object result = window.getValue().getResult();
+            if (listener != null) {
+                listener.windowClosed(start, end, result);
+            } else {
+                closed.add(windowResult(start, end, result));
+            }
+        }
+    }
+
+    private static Map<String, Object> windowResult(Instant start, Instant end, Object result) {
+        Map<String, Object> window = new LinkedHashMap<>();
+        window.put("start", start.toString());
+        window.put("end", end.toString());
+        window.put("stats", result);
+        return window;
+    }
+
+    @Override
+    public Set<String> getFields() {
+        Set<String> fields = factory.get().getFields();
+        if (fields == null) {
+            return null;
+        }
+        Set<String> withTimestamp = new HashSet<>(fields);
+        withTimestamp.add("timestamp");
+        return withTimestamp;
+    }
+
+    @Override
+    public Object getResult() {
+        List<Map<String, Object>> result = new ArrayList<>(closed);
+        for (Map.Entry<Long, LogAggregator> window : open.entrySet()) {
+            result.add(windowResult(Instant.ofEpochMilli(window.getKey()),
+                    Instant.ofEpochMilli(window.getKey() + windows.getSizeMillis()), window.getValue().getResult()));
+        }
+        return result;
+    }
+
+    @Override
+    public void reset() {
+        open.clear();
+        closed.clear();
+        lateEntries = 0;
+        untimedEntries = 0;
+    }
+
+    @Override
+    public void merge(LogAggregator other) {
+        if (!(other instanceof WindowedAggregator)) {
+            throw new IllegalArgumentException("Cannot merge " + other.getClass().getSimpleName()
+                    + " into WindowedAggregator");
+        }
+        WindowedAggregator windowed = (WindowedAggregator) other;
+        if (!closed.isEmpty() || !windowed.closed.isEmpty()) {
+            throw new IllegalStateException("Windows that have already closed cannot be merged");
+        }
+        for (Map.Entry<Long, LogAggregator> window : windowed.open.entrySet()) {
+            open.computeIfAbsent(window.getKey(), k -> factory.get()).merge(window.getValue());
+        }
+        watermark.advance(windowed.watermark.get());
+        lateEntries += windowed.lateEntries;
+        untimedEntries += windowed.untimedEntries;
+    }
+
+    // Closed windows are output, not state; only the open ones are saved
+    @Override
+    public void writeState(DataOutput out) throws IOException {
+        out.writeLong(watermark.get());
+        StateIO.writeVarLong(out, lateEntries);
+        StateIO.writeVarLong(out, untimedEntries);
+        StateIO.writeVarInt(out, open.size());
+        for (Map.Entry<Long, LogAggregator> window : open.entrySet()) {
+            out.writeLong(window.getKey());
+            window.getValue().writeState(out);
+        }
+    }
+
+    @Override
+    public void readState(DataInput in) throws IOException {
+        reset();
+        watermark.advance(in.readLong());
+        lateEntries = StateIO.readVarLong(in);
+        untimedEntries = StateIO.readVarLong(in);
+        int count = StateIO.readVarInt(in);
+        for (int i = 0; i < count; i++) {
+            LogAggregator window = factory.get();
+            open.put(in.readLong(), window);
+            window.readState(in);
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.logparser.columnar;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Layout of the columnar entry file written by {@link ColumnarWriter}. After an 8-byte
+ * magic come chunks of up to {@value ColumnarWriter#ROWS_PER_CHUNK} entries of one log
+ * type, stored column by column:
+ * <ul>
+ *   <li>line: the entry's position among all entries written, as the delta to the previous
+ *       row; readers that need the original order across types merge chunks by it</li>
+ *   <li>strings: a dictionary of the chunk's distinct values, then one id per row</li>
+ *   <li>ints: zig-zag variable-length integers</li>
+ *   <li>doubles: 8 bytes each</li>
+ *   <li>timestamps: a presence bitmap, then per present row the delta of its epoch second
+ *       to the previous one and its nanoseconds, both as variable-length integers</li>
+ * </ul>
+ * A footer lists every chunk with the offset and length of each column, so a reader can
+ * map just the columns it needs. The file ends with the footer's offset and the magic again.
+ * Integers and strings are encoded as in {@link com.logparser.io.StateIO}.
+ */
+public final class ColumnarFormat {
+    static final byte[] MAGIC = "LPCOLS\0\1".getBytes(StandardCharsets.ISO_8859_1);
+    static final int TRAILER_LENGTH = Long.BYTES + 8;
+
+    static final byte STRING = 1;
+    static final byte INT = 2;
+    static final byte DOUBLE = 3;
+    static final byte TIME = 4;
+    static final byte SEQUENCE = 5;
+
+    /** The columns stored for each log type, in file order. */
+    static final Map<String, List<String>> COLUMNS = new LinkedHashMap<>();
+
+    static {
+        COLUMNS.put("APM", Arrays.asList("line", "timestamp", "host", "metric", "value"));
+        COLUMNS.put("APPLICATION", Arrays.asList("line", "timestamp", "host", "level"));
+        COLUMNS.put("REQUEST", Arrays.asList("line", "timestamp", "host", "request_method", "request_url",
+                "response_status", "response_time_ms"));
+    }
+
+    private ColumnarFormat() {
+    }
+
+    static byte kindOf(String column) {
+        switch (column) {
+            case "line":
+                return SEQUENCE;
+            case "timestamp":
+                return TIME;
+            case "value":
+                return DOUBLE;
+            case "response_status":
+            case "response_time_ms":
+                return INT;
+            default:
+                return STRING;
+        }
+    }
+
+    /** Whether the file starts like a columnar entry file rather than log text. */
+    public static boolean isColumnar(Path file) throws IOException {
+        ByteBuffer magic = ByteBuffer.allocate(MAGIC.length);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            while (magic.hasRemaining()) {
+                if (channel.read(magic) < 0) {
+                    return false;
+                }
+            }
+        }
+        return Arrays.equals(magic.array(), MAGIC);
+    }
+
+    static long readVarLong(ByteBuffer in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed variable-length integer");
+    }
+
+    static int readVarInt(ByteBuffer in) throws IOException {
+        long value = readVarLong(in);
+        if (value > 0xFFFFFFFFL) {
+            throw new IOException("Variable-length integer out of range: " + value);
+        }
+        return (int) value;
+    }
+
+    static String readString(ByteBuffer in) throws IOException {
+        int length = readVarInt(in);
+        if (length == 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length - 1];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
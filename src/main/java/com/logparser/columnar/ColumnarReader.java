@@ -0,0 +1,336 @@
+package com.logparser.columnar;
+
+import com.logparser.model.ApmLogEntry;
+import com.logparser.model.ApplicationLogEntry;
+import com.logparser.model.LogEntry;
+import com.logparser.model.RequestLogEntry;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Reads a file written by {@link ColumnarWriter} back as entries. Only the columns asked
+ * for are mapped and decoded; the fields of an entry whose column was skipped are null
+ * or 0. Entries are reused per log type and only valid until the consumer returns.
+ */
+public class ColumnarReader implements Closeable {
+    private final FileChannel channel;
+    private final List<ChunkInfo> chunks = new ArrayList<>();
+    private final ApmLogEntry apm = new ApmLogEntry();
+    private final ApplicationLogEntry application = new ApplicationLogEntry();
+    private final RequestLogEntry request = new RequestLogEntry();
+
+    private static final class ChunkInfo {
+        final String type;
+        final int rows;
+        final Map<String, ColumnInfo> columns = new LinkedHashMap<>();
+
+        ChunkInfo(String type, int rows) {
+            this.type = type;
+            this.rows = rows;
+        }
+    }
+
+    private static final class ColumnInfo {
+        final byte kind;
+        final long offset;
+        final long length;
+
+        ColumnInfo(byte kind, long offset, long length) {
+            this.kind = kind;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+
+    public ColumnarReader(Path file) throws IOException {
+        this.channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            readFooter(file);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private void readFooter(Path file) throws IOException {
+        long size = channel.size();
+        if (size < ColumnarFormat.MAGIC.length + ColumnarFormat.TRAILER_LENGTH) {
+            throw new IOException("Truncated columnar file: " + file);
+        }
+        ByteBuffer trailer = channel.map(FileChannel.MapMode.READ_ONLY,
+                size - ColumnarFormat.TRAILER_LENGTH, ColumnarFormat.TRAILER_LENGTH);
+        long footerOffset = trailer.getLong();
+        byte[] magic = new byte[ColumnarFormat.MAGIC.length];
+        trailer.get(magic);
+        if (!Arrays.equals(magic, ColumnarFormat.MAGIC) || footerOffset < ColumnarFormat.MAGIC.length
+                || footerOffset > size - ColumnarFormat.TRAILER_LENGTH) {
+            throw new IOException("Not a complete columnar file: " + file);
+        }
+        ByteBuffer footer = channel.map(FileChannel.MapMode.READ_ONLY, footerOffset,
+                size - ColumnarFormat.TRAILER_LENGTH - footerOffset);
+        int chunkCount = ColumnarFormat.readVarInt(footer);
+        for (int i = 0; i < chunkCount; i++) {
+            ChunkInfo chunk = new ChunkInfo(ColumnarFormat.readString(footer), ColumnarFormat.readVarInt(footer));
+            int columns = ColumnarFormat.readVarInt(footer);
+            for (int j = 0; j < columns; j++) {
+                String name = ColumnarFormat.readString(footer);
+                byte kind = footer.get();
+                long offset = footer.getLong();
+                long length = ColumnarFormat.readVarLong(footer);
+                if (offset < 0 || length < 0 || offset + length > footerOffset) {
+                    throw new IOException("Column " + name + " lies outside the data in " + file);
+                }
+                chunk.columns.put(name, new ColumnInfo(kind, offset, length));
+            }
+            chunks.add(chunk);
+        }
+    }
+
+    /** The number of entries of each type in the file. */
+    public Map<String, Long> countByType() {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        for (ChunkInfo chunk : chunks) {
+            counts.merge(chunk.type, (long) chunk.rows, Long::sum);
+        }
+        return counts;
+    }
+
+    /**
+     * Hands every entry of the types in {@code fieldsByType} to the consumer. Each type
+     * maps to the fields to read, or to null for all of them. With {@code inOrder} the
+     * entries come in the order they were written; otherwise they come type by type, in
+     * written order within each type, which saves merging the chunks.
+     */
+    public void read(Map<String, Set<String>> fieldsByType, boolean inOrder, Consumer<LogEntry> consumer)
+            throws IOException {
+        if (!inOrder) {
+            for (ChunkInfo chunk : chunks) {
+                if (fieldsByType.containsKey(chunk.type)) {
+                    DecodedChunk decoded = decode(chunk, fieldsByType.get(chunk.type), false);
+                    for (int row = 0; row < chunk.rows; row++) {
+                        consumer.accept(decoded.entry(row));
+                    }
+                }
+            }
+            return;
+        }
+
+        // One cursor per type, each walking that type's chunks; the lowest line number goes next
+        Map<String, Cursor> byType = new LinkedHashMap<>();
+        for (ChunkInfo chunk : chunks) {
+            if (fieldsByType.containsKey(chunk.type)) {
+                byType.computeIfAbsent(chunk.type, type -> new Cursor()).chunks.add(chunk);
+            }
+        }
+        List<Cursor> cursors = new ArrayList<>(byType.values());
+        for (Cursor cursor : cursors) {
+            cursor.advance(fieldsByType);
+        }
+        while (true) {
+            Cursor next = null;
+            for (Cursor cursor : cursors) {
+                if (cursor.current != null && (next == null || cursor.line() < next.line())) {
+                    next = cursor;
+                }
+            }
+            if (next == null) {
+                return;
+            }
+            consumer.accept(next.current.entry(next.row));
+            next.advance(fieldsByType);
+        }
+    }
+
+    private final class Cursor {
+        final List<ChunkInfo> chunks = new ArrayList<>();
+        int nextChunk;
+        DecodedChunk current;
+        int row = -1;
+
+        long line() {
+            return current.lines[row];
+        }
+
+        void advance(Map<String, Set<String>> fieldsByType) throws IOException {
+            if (current != null && ++row < current.info.rows) {
+                return;
+            }
+            current = null;
+            if (nextChunk < chunks.size()) {
+                ChunkInfo chunk = chunks.get(nextChunk++);
+                current = decode(chunk, fieldsByType.get(chunk.type), true);
+                row = 0;
+            }
+        }
+    }
+
+    /** The columns of one chunk that were asked for, decoded into arrays. */
+    private final class DecodedChunk {
+        final ChunkInfo info;
+        long[] lines;
+        Instant[] timestamps;
+        String[] hosts;
+        String[] first;
+        String[] second;
+        double[] values;
+        int[] statuses;
+        int[] times;
+
+        DecodedChunk(ChunkInfo info) {
+            this.info = info;
+        }
+
+        LogEntry entry(int row) {
+            switch (info.type) {
+                case "APM":
+                    return apm.reset(at(timestamps, row), at(hosts, row), at(first, row),
+                            values == null ? 0 : values[row]);
+                case "APPLICATION":
+                    return application.reset(at(timestamps, row), at(hosts, row), at(first, row));
+                default:
+                    return request.reset(at(timestamps, row), at(hosts, row), at(first, row), at(second, row),
+                            statuses == null ? 0 : statuses[row], times == null ? 0 : times[row]);
+            }
+        }
+    }
+
+    private DecodedChunk decode(ChunkInfo chunk, Set<String> fields, boolean withLines) throws IOException {
+        DecodedChunk decoded = new DecodedChunk(chunk);
+        if (withLines) {
+            decoded.lines = lines(chunk);
+        }
+        decoded.timestamps = times(chunk, fields);
+        decoded.hosts = strings(chunk, "host", fields);
+        switch (chunk.type) {
+            case "APM":
+                decoded.first = strings(chunk, "metric", fields);
+                decoded.values = doubles(chunk, "value", fields);
+                break;
+            case "APPLICATION":
+                decoded.first = strings(chunk, "level", fields);
+                break;
+            case "REQUEST":
+                decoded.first = strings(chunk, "request_method", fields);
+                decoded.second = strings(chunk, "request_url", fields);
+                decoded.statuses = ints(chunk, "response_status", fields);
+                decoded.times = ints(chunk, "response_time_ms", fields);
+                break;
+            default:
+                throw new IOException("Unknown log type " + chunk.type + " in columnar file");
+        }
+        return decoded;
+    }
+
+    private static <T> T at(T[] values, int row) {
+        return values == null ? null : values[row];
+    }
+
+    private long[] lines(ChunkInfo chunk) throws IOException {
+        ByteBuffer in = map(chunk, "line", null, ColumnarFormat.SEQUENCE);
+        if (in == null) {
+            throw new IOException("Columnar file has no line column for " + chunk.type);
+        }
+        long[] values = new long[chunk.rows];
+        long line = -1;
+        for (int row = 0; row < values.length; row++) {
+            line += ColumnarFormat.readVarLong(in);
+            values[row] = line;
+        }
+        return values;
+    }
+
+    private MappedByteBuffer map(ChunkInfo chunk, String name, Set<String> fields, byte kind) throws IOException {
+        ColumnInfo column = chunk.columns.get(name);
+        if (column == null || fields != null && !fields.contains(name)) {
+            return null;
+        }
+        if (column.kind != kind) {
+            throw new IOException("Column " + name + " has kind " + column.kind + ", expected " + kind);
+        }
+        return channel.map(FileChannel.MapMode.READ_ONLY, column.offset, column.length);
+    }
+
+    private String[] strings(ChunkInfo chunk, String name, Set<String> fields) throws IOException {
+        ByteBuffer in = map(chunk, name, fields, ColumnarFormat.STRING);
+        if (in == null) {
+            return null;
+        }
+        String[] dictionary = new String[ColumnarFormat.readVarInt(in)];
+        for (int i = 0; i < dictionary.length; i++) {
+            dictionary[i] = ColumnarFormat.readString(in);
+        }
+        String[] values = new String[chunk.rows];
+        for (int row = 0; row < values.length; row++) {
+            values[row] = dictionary[ColumnarFormat.readVarInt(in)];
+        }
+        return values;
+    }
+
+    private int[] ints(ChunkInfo chunk, String name, Set<String> fields) throws IOException {
+        ByteBuffer in = map(chunk, name, fields, ColumnarFormat.INT);
+        if (in == null) {
+            return null;
+        }
+        int[] values = new int[chunk.rows];
+        for (int row = 0; row < values.length; row++) {
+            int encoded = ColumnarFormat.readVarInt(in);
+            values[row] = (encoded >>> 1) ^ -(encoded & 1);
+        }
+        return values;
+    }
+
+    private double[] doubles(ChunkInfo chunk, String name, Set<String> fields) throws IOException {
+        ByteBuffer in = map(chunk, name, fields, ColumnarFormat.DOUBLE);
+        if (in == null) {
+            return null;
+        }
+        double[] values = new double[chunk.rows];
+        in.asDoubleBuffer().get(values);
+        return values;
+    }
+
+    // Rows in the same second and nanosecond as the one before share its Instant
+    private Instant[] times(ChunkInfo chunk, Set<String> fields) throws IOException {
+        ByteBuffer in = map(chunk, "timestamp", fields, ColumnarFormat.TIME);
+        if (in == null) {
+            return null;
+        }
+        byte[] present = new byte[(chunk.rows + 7) / 8];
+        in.get(present);
+        Instant[] values = new Instant[chunk.rows];
+        Instant last = null;
+        long second = 0;
+        for (int row = 0; row < values.length; row++) {
+            if ((present[row >>> 3] & (1 << (row & 7))) == 0) {
+                continue;
+            }
+            long encoded = ColumnarFormat.readVarLong(in);
+            second += (encoded >>> 1) ^ -(encoded & 1);
+            int nano = ColumnarFormat.readVarInt(in);
+            if (last == null || last.getEpochSecond() != second || last.getNano() != nano) {
+                last = Instant.ofEpochSecond(second, nano);
+            }
+            values[row] = last;
+        }
+        return values;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
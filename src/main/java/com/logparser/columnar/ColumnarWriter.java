@@ -0,0 +1,248 @@
+package com.logparser.columnar;
+
+import com.logparser.io.StateIO;
+import com.logparser.model.ApmLogEntry;
+import com.logparser.model.ApplicationLogEntry;
+import com.logparser.model.LogEntry;
+import com.logparser.model.RequestLogEntry;
+import com.logparser.parser.DictionaryMap;
+import com.logparser.parser.FieldValue;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes parsed entries to a columnar file (see {@link ColumnarFormat}) so that later runs
+ * can aggregate them again without parsing the text. Entries are buffered per log type
+ * and written out a chunk at a time to a temp file, which only replaces the target once
+ * {@link #commit()} has written the footer; closing without a commit discards it.
+ */
+public class ColumnarWriter implements Closeable {
+    static final int ROWS_PER_CHUNK = 1 << 16;
+    private static final int OUTPUT_BUFFER = 256 * 1024;
+
+    private final Path target;
+    private final Path temp;
+    private final DataOutputStream out;
+    private final Map<String, Chunk> chunks = new LinkedHashMap<>();
+    private final ByteArrayOutputStream footerBytes = new ByteArrayOutputStream();
+    private final DataOutputStream footer = new DataOutputStream(footerBytes);
+    private final FieldValue method = new FieldValue();
+    private long position;
+    private long lines;
+    private int chunkCount;
+    private boolean finished;
+
+    public ColumnarWriter(Path file) throws IOException {
+        this.target = file.toAbsolutePath();
+        Files.createDirectories(target.getParent());
+        this.temp = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".tmp");
+        this.out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp), OUTPUT_BUFFER));
+        for (Map.Entry<String, List<String>> type : ColumnarFormat.COLUMNS.entrySet()) {
+            chunks.put(type.getKey(), new Chunk(type.getValue()));
+        }
+        out.write(ColumnarFormat.MAGIC);
+        position = ColumnarFormat.MAGIC.length;
+    }
+
+    /**
+     * Adds one entry. {@code host} is the line's host field, which flyweight entries only
+     * hold as part of their attribute map.
+     */
+    public void add(LogEntry entry, FieldValue host) throws IOException {
+        Chunk chunk = chunks.get(entry.getType());
+        if (chunk == null) {
+            return;
+        }
+        // Columns are in ColumnarFormat.COLUMNS order
+        Column[] columns = chunk.columns;
+        columns[0].addLine(lines++);
+        columns[1].addTime(chunk.rows, timestampOf(entry));
+        columns[2].addString(host);
+        if (entry instanceof ApmLogEntry) {
+            ApmLogEntry apm = (ApmLogEntry) entry;
+            columns[3].addString(apm.getMetricField());
+            columns[4].addDouble(apm.getValue());
+        } else if (entry instanceof ApplicationLogEntry) {
+            columns[3].addString(((ApplicationLogEntry) entry).getLevelField());
+        } else if (entry instanceof RequestLogEntry) {
+            RequestLogEntry request = (RequestLogEntry) entry;
+            columns[3].addString(method.set(request.getRequestMethod()));
+            columns[4].addString(request.getRequestUrlField());
+            columns[5].addInt(request.getResponseStatus());
+            columns[6].addInt(request.getResponseTimeMs());
+        }
+        if (++chunk.rows == ROWS_PER_CHUNK) {
+            flush(entry.getType(), chunk);
+        }
+    }
+
+    // An unreadable timestamp is stored as missing, as --window would skip such a line anyway
+    private static Instant timestampOf(LogEntry entry) {
+        try {
+            return entry.getTimestamp();
+        } catch (DateTimeException e) {
+            return null;
+        }
+    }
+
+    private void flush(String type, Chunk chunk) throws IOException {
+        if (chunk.rows == 0) {
+            return;
+        }
+        StateIO.writeString(footer, type);
+        StateIO.writeVarInt(footer, chunk.rows);
+        StateIO.writeVarInt(footer, chunk.columns.length);
+        for (Column column : chunk.columns) {
+            StateIO.writeString(footer, column.name);
+            footer.writeByte(column.kind);
+            footer.writeLong(position);
+            long length = column.writeTo(out, chunk.rows);
+            StateIO.writeVarLong(footer, length);
+            position += length;
+            column.reset();
+        }
+        chunk.rows = 0;
+        chunkCount++;
+    }
+
+    /** Writes what is still buffered and the footer, and moves the file into place. */
+    public void commit() throws IOException {
+        for (Map.Entry<String, Chunk> chunk : chunks.entrySet()) {
+            flush(chunk.getKey(), chunk.getValue());
+        }
+        long footerOffset = position;
+        StateIO.writeVarInt(out, chunkCount);
+        footerBytes.writeTo(out);
+        out.writeLong(footerOffset);
+        out.write(ColumnarFormat.MAGIC);
+        out.close();
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        finished = true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (finished) {
+            return;
+        }
+        finished = true;
+        try {
+            out.close();
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private static final class Chunk {
+        final Column[] columns;
+        int rows;
+
+        Chunk(List<String> names) {
+            columns = new Column[names.size()];
+            for (int i = 0; i < columns.length; i++) {
+                columns[i] = new Column(names.get(i));
+            }
+        }
+    }
+
+    /**
+     * One column of the chunk being filled. Values go straight into the column's bytes;
+     * the string dictionary and timestamp bitmap are written in front of them once the
+     * chunk is complete.
+     */
+    private static final class Column {
+        final String name;
+        final byte kind;
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private final DataOutputStream data = new DataOutputStream(bytes);
+        private final ByteArrayOutputStream head = new ByteArrayOutputStream();
+        private final DataOutputStream headData = new DataOutputStream(head);
+        private DictionaryMap<int[]> dictionary;
+        private int nextId;
+        private byte[] present;
+        private long lastSecond;
+        private long lastLine = -1;
+
+        Column(String name) {
+            this.name = name;
+            this.kind = ColumnarFormat.kindOf(name);
+            if (kind == ColumnarFormat.STRING) {
+                dictionary = new DictionaryMap<>(value -> new int[]{nextId++});
+            } else if (kind == ColumnarFormat.TIME) {
+                present = new byte[ROWS_PER_CHUNK / 8];
+            }
+        }
+
+        void addString(FieldValue value) throws IOException {
+            StateIO.writeVarInt(data, dictionary.getOrCreate(value)[0]);
+        }
+
+        void addLine(long line) throws IOException {
+            StateIO.writeVarLong(data, line - lastLine);
+            lastLine = line;
+        }
+
+        void addInt(int value) throws IOException {
+            StateIO.writeSignedVarInt(data, value);
+        }
+
+        void addDouble(double value) throws IOException {
+            data.writeDouble(value);
+        }
+
+        void addTime(int row, Instant timestamp) throws IOException {
+            if (timestamp == null) {
+                return;
+            }
+            present[row >>> 3] |= (byte) (1 << (row & 7));
+            long second = timestamp.getEpochSecond();
+            long delta = second - lastSecond;
+            StateIO.writeVarLong(data, (delta << 1) ^ (delta >> 63));
+            StateIO.writeVarInt(data, timestamp.getNano());
+            lastSecond = second;
+        }
+
+        // Returns the number of bytes written
+        long writeTo(OutputStream out, int rows) throws IOException {
+            if (kind == ColumnarFormat.STRING) {
+                StateIO.writeVarInt(headData, dictionary.size());
+                for (String value : dictionary.asMap().keySet()) {
+                    StateIO.writeString(headData, value);
+                }
+            } else if (kind == ColumnarFormat.TIME) {
+                headData.write(present, 0, (rows + 7) / 8);
+            }
+            head.writeTo(out);
+            bytes.writeTo(out);
+            return (long) head.size() + bytes.size();
+        }
+
+        void reset() {
+            bytes.reset();
+            head.reset();
+            if (dictionary != null) {
+                dictionary.clear();
+                nextId = 0;
+            }
+            if (present != null) {
+                Arrays.fill(present, (byte) 0);
+                lastSecond = 0;
+            }
+            lastLine = -1;
+        }
+    }
+}
@@ -0,0 +1,423 @@
+package com.logparser.filter;
+
+import com.logparser.parser.LineFields;
+import com.logparser.parser.TimestampFormat;
+
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A conjunction of {@code --where} conditions. Field conditions run on the raw line
+ * before it is tokenized: each one scans for its field the way {@link LineFields} would
+ * find it and compares the value's characters in place, usually stopping well before the
+ * end of the line. Type conditions run once the classifier has picked a parser. Either
+ * way a rejected line never gets an attribute map or entry.
+ * <p>
+ * Each expression is a comma-separated list of {@code field op value} conditions, all of
+ * which must hold:
+ * <ul>
+ *   <li>{@code type=request}, {@code type!=apm} - the classified log type</li>
+ *   <li>{@code host=web1|web2}, {@code level!=DEBUG} - equality with any of the alternatives</li>
+ *   <li>{@code url^=/api/} - a prefix; {@code url}, {@code status}, {@code method} and
+ *       {@code time} are short for {@code request_url}, {@code response_status},
+ *       {@code request_method} and {@code timestamp}, any other field is used as named</li>
+ *   <li>{@code status=500-599}, {@code status=5xx}, {@code response_time_ms>=1000} - numbers,
+ *       with inclusive ranges</li>
+ *   <li>{@code time>=2024-02-24T16:00:00Z}, {@code time=2024-02-24T16:00:00Z..2024-02-24T17:00:00Z}
+ *       - instants or dates, with ranges that include their start but not their end</li>
+ * </ul>
+ * A line without the field fails every condition on it except {@code !=}.
+ */
+public final class LineFilter {
+    private static final Pattern CONDITION = Pattern.compile("\\s*([A-Za-z_][\\w.-]*?)\\s*(!=|\\^=|>=|<=|=|>|<)\\s*(.*?)\\s*");
+    private static final Pattern NUMBER_RANGE = Pattern.compile("(-?[\\d.]+)(?:-|\\.\\.)(-?[\\d.]+)");
+    private static final Pattern STATUS_CLASS = Pattern.compile("([1-5])xx", Pattern.CASE_INSENSITIVE);
+
+    private final FieldCondition[] fieldConditions;
+    private final Set<String> types;
+    private final boolean typesNegated;
+    private final String description;
+
+    private LineFilter(List<FieldCondition> fieldConditions, Set<String> types, boolean typesNegated,
+                       String description) {
+        this.fieldConditions = fieldConditions.toArray(new FieldCondition[0]);
+        this.types = types;
+        this.typesNegated = typesNegated;
+        this.description = description;
+    }
+
+    /**
+     * Compiles the expressions. {@code types} are the log types a {@code type} condition
+     * may name, matched without regard to case.
+     *
+     * @throws IllegalArgumentException if an expression is malformed
+     */
+    public static LineFilter parse(List<String> expressions, Collection<String> types) {
+        List<FieldCondition> fieldConditions = new ArrayList<>();
+        Set<String> accepted = null;
+        Set<String> rejected = new LinkedHashSet<>();
+        List<String> parts = new ArrayList<>();
+        for (String expression : expressions) {
+            for (String part : expression.split(",")) {
+                if (part.trim().isEmpty()) {
+                    continue;
+                }
+                Matcher matcher = CONDITION.matcher(part);
+                if (!matcher.matches() || matcher.group(3).isEmpty()) {
+                    throw new IllegalArgumentException("Expected field, operator and value: " + part.trim());
+                }
+                String field = matcher.group(1);
+                String op = matcher.group(2);
+                String value = unquote(matcher.group(3));
+                if (field.equals("type")) {
+                    Set<String> named = typesOf(op, value, types);
+                    if (op.equals("!=")) {
+                        rejected.addAll(named);
+                    } else if (accepted == null) {
+                        accepted = named;
+                    } else {
+                        accepted.retainAll(named);
+                    }
+                } else {
+                    fieldConditions.add(fieldCondition(resolve(field), op, value));
+                }
+                parts.add(field + op + value);
+            }
+        }
+        // Type conditions combine into one set of types, either kept or left out
+        Set<String> typeSet = null;
+        boolean negated = false;
+        if (accepted != null) {
+            accepted.removeAll(rejected);
+            typeSet = accepted;
+        } else if (!rejected.isEmpty()) {
+            typeSet = rejected;
+            negated = true;
+        }
+        return new LineFilter(fieldConditions, typeSet, negated, String.join(",", parts));
+    }
+
+    public boolean isEmpty() {
+        return fieldConditions.length == 0 && types == null;
+    }
+
+    /**
+     * Tests the field conditions against a line that has not been tokenized yet.
+     * {@code timestamps} reads the line's timestamp for time conditions and must belong
+     * to the calling thread.
+     */
+    public boolean matchesFields(CharSequence line, TimestampFormat timestamps) {
+        for (FieldCondition condition : fieldConditions) {
+            if (!condition.test(line, timestamps)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Tests the type conditions against the type the classifier found for a line. */
+    public boolean matchesType(String type) {
+        return types == null || types.contains(type) != typesNegated;
+    }
+
+    /** The conditions in a normalized form, e.g. for recording alongside saved state. */
+    @Override
+    public String toString() {
+        return description;
+    }
+
+    private static String resolve(String field) {
+        switch (field) {
+            case "url":
+                return "request_url";
+            case "status":
+                return "response_status";
+            case "method":
+                return "request_method";
+            case "time":
+                return "timestamp";
+            default:
+                return field;
+        }
+    }
+
+    private static String unquote(String value) {
+        if (value.length() >= 2 && value.startsWith("\"") && value.endsWith("\"")) {
+            return value.substring(1, value.length() - 1);
+        }
+        return value;
+    }
+
+    private static Set<String> typesOf(String op, String value, Collection<String> types) {
+        if (!op.equals("=") && !op.equals("!=")) {
+            throw new IllegalArgumentException("type only supports = and !=: type" + op + value);
+        }
+        Set<String> named = new LinkedHashSet<>();
+        for (String alternative : value.split("\\|")) {
+            String type = alternative.trim().toUpperCase(Locale.ROOT);
+            if (!types.contains(type)) {
+                throw new IllegalArgumentException("Unknown log type " + alternative.trim() + ", expected one of "
+                        + String.join(", ", types).toLowerCase(Locale.ROOT));
+            }
+            named.add(type);
+        }
+        return named;
+    }
+
+    private static FieldCondition fieldCondition(String key, String op, String value) {
+        if (key.equals("timestamp")) {
+            return timeCondition(op, value);
+        }
+        switch (op) {
+            case "=":
+            case "!=":
+                FieldCondition range = numberRange(key, value, op.equals("!="));
+                if (range != null) {
+                    return range;
+                }
+                return new EqualsCondition(key, op.equals("!="), value.split("\\|", -1));
+            case "^=":
+                return new PrefixCondition(key, value);
+            default:
+                double bound = parseNumber(key + op + value, value);
+                return new NumberCondition(key, false, op.startsWith(">") ? bound : Double.NEGATIVE_INFINITY,
+                        op.startsWith("<") ? bound : Double.POSITIVE_INFINITY, op.length() == 1);
+        }
+    }
+
+    // 500-599, 500..599 or 5xx; anything else is compared as text
+    private static FieldCondition numberRange(String key, String value, boolean negated) {
+        Matcher statusClass = STATUS_CLASS.matcher(value);
+        if (statusClass.matches()) {
+            int low = Integer.parseInt(statusClass.group(1)) * 100;
+            return new NumberCondition(key, negated, low, low + 99, false);
+        }
+        Matcher range = NUMBER_RANGE.matcher(value);
+        if (!range.matches()) {
+            return null;
+        }
+        try {
+            double low = Double.parseDouble(range.group(1));
+            double high = Double.parseDouble(range.group(2));
+            if (low > high) {
+                throw new IllegalArgumentException("Empty range: " + key + "=" + value);
+            }
+            return new NumberCondition(key, negated, low, high, false);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static double parseNumber(String condition, String value) {
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Expected a number: " + condition);
+        }
+    }
+
+    private static FieldCondition timeCondition(String op, String value) {
+        switch (op) {
+            case "=":
+            case "!=":
+                int separator = value.indexOf("..");
+                if (separator < 0) {
+                    throw new IllegalArgumentException("Expected a range such as time=<from>..<to>: time" + op + value);
+                }
+                return new TimeCondition(op.equals("!="), parseInstant(value.substring(0, separator)), true,
+                        parseInstant(value.substring(separator + 2)), false);
+            case ">":
+            case ">=":
+                return new TimeCondition(false, parseInstant(value), op.length() == 2, null, false);
+            case "<":
+            case "<=":
+                return new TimeCondition(false, null, false, parseInstant(value), op.length() == 2);
+            default:
+                throw new IllegalArgumentException("time does not support " + op + ": time" + op + value);
+        }
+    }
+
+    private static Instant parseInstant(String value) {
+        String text = value.trim();
+        try {
+            return text.length() == 10 ? LocalDate.parse(text).atStartOfDay(ZoneOffset.UTC).toInstant()
+                    : Instant.parse(text);
+        } catch (DateTimeException e) {
+            throw new IllegalArgumentException("Expected an ISO-8601 instant or date: " + text);
+        }
+    }
+
+    /**
+     * Finds the last {@code key=value} field of the line as {@link LineFields} splits it,
+     * which is the one the parsers read, without the surrounding quotes. Returns the
+     * value's start and end packed into a long so that nothing is allocated, or -1 if the
+     * line has no such field.
+     */
+    static long locate(CharSequence line, String key) {
+        int length = line.length();
+        int keyLength = key.length();
+        boolean inQuotes = false;
+        int partStart = 0;
+        int found = -1;
+        for (int i = 0; i < length; i++) {
+            if (i == partStart && i + keyLength < length && line.charAt(i + keyLength) == '='
+                    && regionMatches(line, i, key)) {
+                found = i;
+            }
+            char c = line.charAt(i);
+            if (c == '"') {
+                inQuotes = !inQuotes;
+            } else if (c == ' ' && !inQuotes) {
+                partStart = i + 1;
+            }
+        }
+        return found < 0 ? -1 : valueRange(line, found + keyLength + 1);
+    }
+
+    private static long valueRange(CharSequence line, int start) {
+        boolean inQuotes = false;
+        int end = start;
+        for (; end < line.length(); end++) {
+            char c = line.charAt(end);
+            if (c == '"') {
+                inQuotes = !inQuotes;
+            } else if (c == ' ' && !inQuotes) {
+                break;
+            }
+        }
+        if (end - start >= 2 && line.charAt(start) == '"' && line.charAt(end - 1) == '"') {
+            return (long) (start + 1) << 32 | (end - 1);
+        }
+        return (long) start << 32 | end;
+    }
+
+    private static boolean regionMatches(CharSequence line, int start, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            if (line.charAt(start + i) != value.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private abstract static class FieldCondition {
+        private final String key;
+        private final boolean negated;
+
+        FieldCondition(String key, boolean negated) {
+            this.key = key;
+            this.negated = negated;
+        }
+
+        final boolean test(CharSequence line, TimestampFormat timestamps) {
+            long range = locate(line, key);
+            boolean matches = range >= 0 && matches(line, (int) (range >>> 32), (int) range, timestamps);
+            return matches != negated;
+        }
+
+        abstract boolean matches(CharSequence line, int start, int end, TimestampFormat timestamps);
+    }
+
+    private static final class EqualsCondition extends FieldCondition {
+        private final String[] values;
+
+        EqualsCondition(String key, boolean negated, String[] values) {
+            super(key, negated);
+            this.values = values;
+        }
+
+        @Override
+        boolean matches(CharSequence line, int start, int end, TimestampFormat timestamps) {
+            for (String value : values) {
+                if (value.length() == end - start && regionMatches(line, start, value)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private static final class PrefixCondition extends FieldCondition {
+        private final String prefix;
+
+        PrefixCondition(String key, String prefix) {
+            super(key, false);
+            this.prefix = prefix;
+        }
+
+        @Override
+        boolean matches(CharSequence line, int start, int end, TimestampFormat timestamps) {
+            return end - start >= prefix.length() && regionMatches(line, start, prefix);
+        }
+    }
+
+    private static final class NumberCondition extends FieldCondition {
+        private final double low;
+        private final double high;
+        private final boolean exclusive;
+
+        NumberCondition(String key, boolean negated, double low, double high, boolean exclusive) {
+            super(key, negated);
+            this.low = low;
+            this.high = high;
+            this.exclusive = exclusive;
+        }
+
+        @Override
+        boolean matches(CharSequence line, int start, int end, TimestampFormat timestamps) {
+            double value;
+            try {
+                value = LineFields.parseDouble(line, start, end);
+            } catch (NumberFormatException e) {
+                return false;
+            }
+            return exclusive ? value > low && value < high : value >= low && value <= high;
+        }
+    }
+
+    private static final class TimeCondition extends FieldCondition {
+        private final Instant from;
+        private final boolean fromInclusive;
+        private final Instant to;
+        private final boolean toInclusive;
+
+        TimeCondition(boolean negated, Instant from, boolean fromInclusive, Instant to, boolean toInclusive) {
+            super("timestamp", negated);
+            this.from = from;
+            this.fromInclusive = fromInclusive;
+            this.to = to;
+            this.toInclusive = toInclusive;
+        }
+
+        @Override
+        boolean matches(CharSequence line, int start, int end, TimestampFormat timestamps) {
+            Instant time;
+            try {
+                time = timestamps.parse(line, start, end);
+            } catch (DateTimeException e) {
+                return false;
+            }
+            if (from != null) {
+                int compared = time.compareTo(from);
+                if (compared < 0 || compared == 0 && !fromInclusive) {
+                    return false;
+                }
+            }
+            if (to != null) {
+                int compared = time.compareTo(to);
+                return compared < 0 || compared == 0 && toInclusive;
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.logparser.io;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A {@link CharSequence} over a range of bytes in a buffer. Characters are read one byte
+ * at a time, which is exact for ASCII and keeps every ASCII delimiter in place for UTF-8
+ * input; {@link #toString()} decodes the range as UTF-8.
+ */
+public class ByteSlice implements CharSequence {
+    private ByteBuffer buffer;
+    private int offset;
+    private int length;
+
+    public ByteSlice() {
+    }
+
+    public ByteSlice(ByteBuffer buffer, int offset, int length) {
+        reset(buffer, offset, length);
+    }
+
+    public ByteSlice reset(ByteBuffer buffer, int offset, int length) {
+        this.buffer = buffer;
+        this.offset = offset;
+        this.length = length;
+        return this;
+    }
+
+    public ByteBuffer getBuffer() {
+        return buffer;
+    }
+
+    public int getOffset() {
+        return offset;
+    }
+
+    public byte byteAt(int index) {
+        return buffer.get(offset + index);
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (index < 0 || index >= length) {
+            throw new IndexOutOfBoundsException("index " + index + ", length " + length);
+        }
+        return (char) (buffer.get(offset + index) & 0xff);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        if (start < 0 || end > length || start > end) {
+            throw new IndexOutOfBoundsException("start " + start + ", end " + end + ", length " + length);
+        }
+        return new ByteSlice(buffer, offset + start, end - start);
+    }
+
+    @Override
+    public String toString() {
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = buffer.get(offset + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,56 @@
+package com.logparser.io;
+
+import io.airlift.compress.zstd.ZstdInputStream;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Input compression formats, recognised by their magic bytes rather than the file name so
+ * a rotated {@code app.log.1} that happens to be gzipped is still read correctly.
+ */
+public enum Compression {
+    NONE,
+    GZIP,
+    ZSTD;
+
+    private static final int DECOMPRESS_BUFFER = 64 * 1024;
+
+    public static Compression detect(Path file) throws IOException {
+        ByteBuffer magic = ByteBuffer.allocate(4);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            while (magic.hasRemaining()) {
+                if (channel.read(magic) < 0) {
+                    break;
+                }
+            }
+        }
+        if (magic.position() >= 2 && (magic.get(0) & 0xff) == 0x1f && (magic.get(1) & 0xff) == 0x8b) {
+            return GZIP;
+        }
+        if (magic.position() == 4 && magic.getInt(0) == 0x28b52ffd) {
+            return ZSTD;
+        }
+        return NONE;
+    }
+
+    /**
+     * Wraps {@code raw} in a decompressing stream. Concatenated gzip members and zstd frames
+     * are read one after another as a single stream.
+     */
+    public InputStream decompress(InputStream raw) throws IOException {
+        switch (this) {
+            case GZIP:
+                return new GZIPInputStream(raw, DECOMPRESS_BUFFER);
+            case ZSTD:
+                return new ZstdInputStream(raw);
+            default:
+                return raw;
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package com.logparser.io;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.function.LongConsumer;
+
+/**
+ * Passes every read through and reports how many bytes it returned, so input can be
+ * measured in bytes even when it is consumed as decoded lines.
+ */
+public class CountingInputStream extends FilterInputStream {
+    private final LongConsumer bytesRead;
+
+    public CountingInputStream(InputStream in, LongConsumer bytesRead) {
+        super(in);
+        this.bytesRead = bytesRead;
+    }
+
+    @Override
+    public int read() throws IOException {
+        int b = in.read();
+        if (b >= 0) {
+            bytesRead.accept(1);
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        int n = in.read(b, off, len);
+        if (n > 0) {
+            bytesRead.accept(n);
+        }
+        return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long skipped = in.skip(n);
+        if (skipped > 0) {
+            bytesRead.accept(skipped);
+        }
+        return skipped;
+    }
+
+    // Counting cannot be rewound
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+}
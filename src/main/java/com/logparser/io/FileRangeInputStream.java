@@ -0,0 +1,132 @@
+package com.logparser.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+public class FileRangeInputStream extends InputStream {
+    private final FileChannel channel;
+    private long position;
+    private final long end;
+
+    public FileRangeInputStream(Path file, long start, long end) throws IOException {
+        this.channel = FileChannel.open(file, StandardOpenOption.READ);
+        this.position = start;
+        this.end = end;
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] single = new byte[1];
+        int n = read(single, 0, 1);
+        return n == -1 ? -1 : single[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        long remaining = end - position;
+        if (remaining <= 0) {
+            return -1;
+        }
+        int toRead = (int) Math.min(len, remaining);
+        int n = channel.read(ByteBuffer.wrap(b, off, toRead), position);
+        if (n > 0) {
+            position += n;
+        }
+        return n;
+    }
+
+    // GZIPInputStream only looks for a further member when bytes are reported as available
+    @Override
+    public int available() {
+        return (int) Math.min(Integer.MAX_VALUE, Math.max(0, end - position));
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Splits the file into at most {@code parts} byte ranges that each start at the
+     * beginning of a line. Returns the range boundaries, including 0 and the file size.
+     */
+    public static long[] splitAtLines(Path file, int parts) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return splitAtLines(channel, 0, channel.size(), parts);
+        }
+    }
+
+    /**
+     * Splits {@code [start, end)}, where {@code start} is the beginning of a line, the same
+     * way {@link #splitAtLines(Path, int)} splits a whole file.
+     */
+    public static long[] splitAtLines(Path file, long start, long end, int parts) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return splitAtLines(channel, start, end, parts);
+        }
+    }
+
+    private static long[] splitAtLines(FileChannel channel, long start, long end, int parts) throws IOException {
+        long[] boundaries = new long[parts + 1];
+        boundaries[0] = start;
+        boundaries[parts] = end;
+        ByteBuffer buffer = ByteBuffer.allocate(8192);
+        for (int i = 1; i < parts; i++) {
+            long candidate = Math.max(start + (end - start) * i / parts, boundaries[i - 1]);
+            boundaries[i] = nextLineStart(channel, candidate, end, buffer);
+        }
+        return boundaries;
+    }
+
+    /**
+     * Returns the position just after the last newline in the file, or 0 if it has none.
+     * Everything before it is complete lines; anything after is a line still being written.
+     */
+    public static long completeLinesEnd(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(8192);
+            long end = channel.size();
+            while (end > 0) {
+                long from = Math.max(0, end - buffer.capacity());
+                buffer.clear().limit((int) (end - from));
+                int n = 0;
+                while (buffer.hasRemaining() && n >= 0) {
+                    n = channel.read(buffer, from + buffer.position());
+                }
+                for (int i = buffer.position() - 1; i >= 0; i--) {
+                    if (buffer.get(i) == '\n') {
+                        return from + i + 1;
+                    }
+                }
+                end = from;
+            }
+            return 0;
+        }
+    }
+
+    private static long nextLineStart(FileChannel channel, long candidate, long size, ByteBuffer buffer)
+            throws IOException {
+        if (candidate == 0) {
+            return 0;
+        }
+        long position = candidate - 1;
+        while (position < size) {
+            buffer.clear();
+            int n = channel.read(buffer, position);
+            if (n <= 0) {
+                break;
+            }
+            for (int i = 0; i < n; i++) {
+                if (buffer.get(i) == '\n') {
+                    return position + i + 1;
+                }
+            }
+            position += n;
+        }
+        return size;
+    }
+}
@@ -0,0 +1,154 @@
+package com.logparser.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.function.Consumer;
+
+/**
+ * Follows a growing file and hands each newly completed line to a consumer exactly once.
+ * The tailer remembers its byte position, so a poll only reads what was appended since
+ * the previous one. When the file is truncated it starts again from the beginning; when
+ * the path is rotated to a new file (a different file key, i.e. inode) it first drains
+ * the old file to its end and then switches over.
+ */
+public class FileTailer implements Closeable {
+    private static final int READ_SIZE = 64 * 1024;
+
+    private final Path path;
+    private final ByteSlice line = new ByteSlice();
+    private FileChannel channel;
+    private Object fileKey;
+    private long position;
+    private long bytesRead;
+    private byte[] pending = new byte[READ_SIZE];
+    private int pendingLength;
+
+    public FileTailer(Path path) {
+        this.path = path;
+    }
+
+    public long getPosition() {
+        return position;
+    }
+
+    // Every byte read since the tailer was created, across truncations and rotations
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+    /**
+     * Reads whatever was appended since the last poll and returns the number of lines
+     * passed to the consumer.
+     */
+    public int poll(Consumer<CharSequence> consumer) throws IOException {
+        if (channel == null && !open()) {
+            return 0;
+        }
+        int lines = drain(consumer);
+
+        BasicFileAttributes attributes = readAttributes();
+        if (attributes == null) {
+            // Moved away and not yet recreated; keep reading the old file until it is
+            return lines;
+        }
+        if (fileKey != null && attributes.fileKey() != null && !Objects.equals(fileKey, attributes.fileKey())) {
+            lines += drain(consumer);
+            lines += flushPending(consumer);
+            channel.close();
+            channel = null;
+            if (open()) {
+                lines += drain(consumer);
+            }
+        } else if (channel.size() < position) {
+            // Truncated in place: whatever follows is new data
+            position = 0;
+            pendingLength = 0;
+            lines += drain(consumer);
+        }
+        return lines;
+    }
+
+    private boolean open() throws IOException {
+        try {
+            channel = FileChannel.open(path, StandardOpenOption.READ);
+        } catch (NoSuchFileException e) {
+            return false;
+        }
+        BasicFileAttributes attributes = readAttributes();
+        fileKey = attributes == null ? null : attributes.fileKey();
+        position = 0;
+        pendingLength = 0;
+        return true;
+    }
+
+    private BasicFileAttributes readAttributes() throws IOException {
+        try {
+            return Files.readAttributes(path, BasicFileAttributes.class);
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    private int drain(Consumer<CharSequence> consumer) throws IOException {
+        int lines = 0;
+        while (true) {
+            if (pending.length - pendingLength < READ_SIZE) {
+                pending = Arrays.copyOf(pending, Math.max(pending.length * 2, pendingLength + READ_SIZE));
+            }
+            int n = channel.read(ByteBuffer.wrap(pending, pendingLength, READ_SIZE), position);
+            if (n <= 0) {
+                return lines;
+            }
+            int scanFrom = pendingLength;
+            pendingLength += n;
+            position += n;
+            bytesRead += n;
+            lines += emitCompleteLines(scanFrom, consumer);
+        }
+    }
+
+    private int emitCompleteLines(int scanFrom, Consumer<CharSequence> consumer) {
+        ByteBuffer buffer = ByteBuffer.wrap(pending);
+        int lines = 0;
+        int lineStart = 0;
+        for (int i = scanFrom; i < pendingLength; i++) {
+            if (pending[i] == '\n') {
+                int end = i > lineStart && pending[i - 1] == '\r' ? i - 1 : i;
+                consumer.accept(line.reset(buffer, lineStart, end - lineStart));
+                lines++;
+                lineStart = i + 1;
+            }
+        }
+        if (lineStart > 0) {
+            System.arraycopy(pending, lineStart, pending, 0, pendingLength - lineStart);
+            pendingLength -= lineStart;
+        }
+        return lines;
+    }
+
+    private int flushPending(Consumer<CharSequence> consumer) {
+        if (pendingLength == 0) {
+            return 0;
+        }
+        consumer.accept(line.reset(ByteBuffer.wrap(pending), 0, pendingLength));
+        pendingLength = 0;
+        return 1;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package com.logparser.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Finds member boundaries in a multi-member gzip file (as written by bgzip, or by
+ * concatenating compressed files) so that members can be decompressed in parallel.
+ * A single-member file cannot be split and yields one range.
+ */
+public final class GzipMembers {
+    private static final int SCAN_BLOCK = 64 * 1024;
+    private static final int HEADER_LENGTH = 10;
+    private static final int PROBE_BYTES = 4096;
+
+    private GzipMembers() {
+    }
+
+    /**
+     * Splits the file into at most {@code parts} ranges that each start at a gzip member
+     * header. Returns the range boundaries, including 0 and the file size.
+     */
+    public static long[] splitAtMembers(Path file, int parts) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long[] boundaries = new long[parts + 1];
+            int count = 1;
+            for (int i = 1; i < parts; i++) {
+                long from = Math.max(size * i / parts, boundaries[count - 1] + 1);
+                long to = size * (i + 1) / parts;
+                long member = findMember(file, channel, from, to);
+                if (member >= 0) {
+                    boundaries[count++] = member;
+                }
+            }
+            boundaries[count++] = size;
+            return Arrays.copyOf(boundaries, count);
+        }
+    }
+
+    private static long findMember(Path file, FileChannel channel, long from, long to) throws IOException {
+        ByteBuffer block = ByteBuffer.allocate(SCAN_BLOCK + HEADER_LENGTH);
+        for (long position = from; position < to; position += SCAN_BLOCK) {
+            block.clear();
+            while (block.hasRemaining() && channel.read(block, position + block.position()) > 0) {
+                // Keep reading until the block is full or the file ends
+            }
+            int scanEnd = (int) Math.min(SCAN_BLOCK, to - position);
+            for (int i = 0; i < scanEnd && i + HEADER_LENGTH <= block.position(); i++) {
+                if (looksLikeHeader(block, i) && inflates(file, position + i, channel.size())) {
+                    return position + i;
+                }
+            }
+        }
+        return -1;
+    }
+
+    // Magic, deflate method, no reserved flag bits, and a known extra-flags value
+    private static boolean looksLikeHeader(ByteBuffer block, int at) {
+        if ((block.get(at) & 0xff) != 0x1f || (block.get(at + 1) & 0xff) != 0x8b || block.get(at + 2) != 8) {
+            return false;
+        }
+        int flags = block.get(at + 3) & 0xff;
+        int extraFlags = block.get(at + 8) & 0xff;
+        return (flags & 0xe0) == 0 && (extraFlags == 0 || extraFlags == 2 || extraFlags == 4);
+    }
+
+    // The header bytes also occur by chance in compressed data; real members inflate cleanly
+    private static boolean inflates(Path file, long start, long size) throws IOException {
+        try (InputStream in = new GZIPInputStream(new FileRangeInputStream(file, start, size))) {
+            byte[] probe = new byte[PROBE_BYTES];
+            int total = 0;
+            int read;
+            while (total < PROBE_BYTES && (read = in.read(probe, total, PROBE_BYTES - total)) > 0) {
+                total += read;
+            }
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+}
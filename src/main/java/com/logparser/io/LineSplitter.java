@@ -0,0 +1,63 @@
+package com.logparser.io;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * Splits a stream of byte chunks into lines, handing each to the consumer as a reused
+ * {@link ByteSlice}. Lines that lie within one chunk are not copied; only a line that
+ * crosses a chunk boundary is assembled in an internal buffer.
+ */
+public class LineSplitter {
+    private final Consumer<CharSequence> consumer;
+    private final ByteSlice line = new ByteSlice();
+    private byte[] pending = new byte[256];
+    private ByteBuffer pendingBuffer = ByteBuffer.wrap(pending);
+    private int pendingLength;
+
+    public LineSplitter(Consumer<CharSequence> consumer) {
+        this.consumer = consumer;
+    }
+
+    public void feed(byte[] data, int offset, int length) {
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        int lineStart = offset;
+        int end = offset + length;
+        for (int i = offset; i < end; i++) {
+            if (data[i] != '\n') {
+                continue;
+            }
+            if (pendingLength > 0) {
+                append(data, lineStart, i - lineStart);
+                emit(pendingBuffer, 0, pendingLength);
+                pendingLength = 0;
+            } else {
+                emit(buffer, lineStart, i);
+            }
+            lineStart = i + 1;
+        }
+        append(data, lineStart, end - lineStart);
+    }
+
+    /** The bytes after the last newline fed so far. */
+    public byte[] remaining() {
+        return Arrays.copyOf(pending, pendingLength);
+    }
+
+    private void append(byte[] data, int offset, int length) {
+        if (pendingLength + length > pending.length) {
+            pending = Arrays.copyOf(pending, Math.max(pending.length * 2, pendingLength + length));
+            pendingBuffer = ByteBuffer.wrap(pending);
+        }
+        System.arraycopy(data, offset, pending, pendingLength, length);
+        pendingLength += length;
+    }
+
+    private void emit(ByteBuffer buffer, int start, int end) {
+        if (end > start && buffer.get(end - 1) == '\r') {
+            end--;
+        }
+        consumer.accept(line.reset(buffer, start, end - start));
+    }
+}
@@ -0,0 +1,93 @@
+package com.logparser.io;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
+
+/**
+ * Reads lines from a memory-mapped file without decoding them. Each line is handed to the
+ * consumer as a reused {@link ByteSlice}, so consumers must copy anything they keep.
+ */
+public class MappedLineReader {
+    private static final long DEFAULT_WINDOW_SIZE = 256L * 1024 * 1024;
+
+    private final long windowSize;
+
+    public MappedLineReader() {
+        this(DEFAULT_WINDOW_SIZE);
+    }
+
+    public MappedLineReader(long windowSize) {
+        if (windowSize <= 0 || windowSize > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Window size must be between 1 and " + Integer.MAX_VALUE);
+        }
+        this.windowSize = windowSize;
+    }
+
+    public void readLines(Path file, Consumer<CharSequence> consumer) throws IOException {
+        readLines(file, consumer, bytes -> { });
+    }
+
+    /** Also reports the bytes read, line terminators included, after each mapping window. */
+    public void readLines(Path file, Consumer<CharSequence> consumer, LongConsumer bytesRead) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            readLines(channel, 0, channel.size(), consumer, bytesRead);
+        }
+    }
+
+    public void readLines(Path file, long start, long end, Consumer<CharSequence> consumer) throws IOException {
+        readLines(file, start, end, consumer, bytes -> { });
+    }
+
+    public void readLines(Path file, long start, long end, Consumer<CharSequence> consumer, LongConsumer bytesRead)
+            throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            readLines(channel, start, Math.min(end, channel.size()), consumer, bytesRead);
+        }
+    }
+
+    private void readLines(FileChannel channel, long start, long end, Consumer<CharSequence> consumer,
+                           LongConsumer bytesRead) throws IOException {
+        ByteSlice line = new ByteSlice();
+        long windowStart = start;
+        while (windowStart < end) {
+            int windowLength = (int) Math.min(windowSize, end - windowStart);
+            boolean lastWindow = windowStart + windowLength == end;
+            MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, windowStart, windowLength);
+
+            int lineStart = 0;
+            for (int i = 0; i < windowLength; i++) {
+                if (window.get(i) == '\n') {
+                    emit(window, lineStart, i, line, consumer);
+                    lineStart = i + 1;
+                }
+            }
+            if (lastWindow) {
+                if (lineStart < windowLength) {
+                    emit(window, lineStart, windowLength, line, consumer);
+                }
+                bytesRead.accept(windowLength);
+                return;
+            }
+            if (lineStart == 0) {
+                throw new IOException("Line at offset " + windowStart + " is longer than the mapping window of "
+                        + windowSize + " bytes");
+            }
+            // Remap from the start of the line that crosses the window boundary
+            bytesRead.accept(lineStart);
+            windowStart += lineStart;
+        }
+    }
+
+    private static void emit(MappedByteBuffer window, int start, int end, ByteSlice line,
+                             Consumer<CharSequence> consumer) {
+        if (end > start && window.get(end - 1) == '\r') {
+            end--;
+        }
+        consumer.accept(line.reset(window, start, end - start));
+    }
+}
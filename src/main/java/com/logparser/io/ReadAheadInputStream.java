@@ -0,0 +1,165 @@
+package com.logparser.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Reads an underlying stream on a background thread into a small ring of recycled
+ * buffers, so that decompressing the input overlaps with parsing it. At most
+ * {@code buffers} chunks are ever in flight, which bounds memory and makes the reader
+ * wait when parsing falls behind.
+ */
+public class ReadAheadInputStream extends InputStream {
+    private static final int DEFAULT_BUFFER_SIZE = 256 * 1024;
+    private static final int DEFAULT_BUFFERS = 4;
+
+    private static final class Chunk {
+        final byte[] data;
+        int length;
+        IOException error;
+
+        Chunk(int size) {
+            data = new byte[size];
+        }
+    }
+
+    private static final Chunk END = new Chunk(0);
+
+    private final InputStream in;
+    private final BlockingQueue<Chunk> filled;
+    private final BlockingQueue<Chunk> free;
+    private final Thread reader;
+    private Chunk current;
+    private int position;
+    private boolean finished;
+    private volatile boolean closed;
+
+    public ReadAheadInputStream(InputStream in, String threadName) {
+        this(in, threadName, DEFAULT_BUFFER_SIZE, DEFAULT_BUFFERS);
+    }
+
+    public ReadAheadInputStream(InputStream in, String threadName, int bufferSize, int buffers) {
+        if (bufferSize <= 0 || buffers < 2) {
+            throw new IllegalArgumentException("Need at least two buffers of a positive size");
+        }
+        this.in = in;
+        // One extra slot so the end marker always fits
+        this.filled = new ArrayBlockingQueue<>(buffers + 1);
+        this.free = new ArrayBlockingQueue<>(buffers);
+        for (int i = 0; i < buffers; i++) {
+            free.add(new Chunk(bufferSize));
+        }
+        this.reader = new Thread(this::readAhead, threadName);
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    private void readAhead() {
+        try {
+            while (!closed) {
+                Chunk chunk = free.take();
+                int length = fill(chunk.data);
+                if (length <= 0) {
+                    free.add(chunk);
+                    break;
+                }
+                chunk.length = length;
+                filled.put(chunk);
+            }
+            filled.put(END);
+        } catch (IOException e) {
+            fail(e);
+        } catch (RuntimeException e) {
+            // Decompressors such as aircompressor's report corrupt input unchecked; the
+            // reader has to hear about it rather than wait for a chunk that never comes
+            fail(new IOException("Could not read input: " + e, e));
+        } catch (InterruptedException e) {
+            // Closed while waiting for a free buffer
+        }
+    }
+
+    // Every chunk in flight holds a buffer, so with the extra slot there is always room
+    private void fail(IOException error) {
+        Chunk failure = new Chunk(0);
+        failure.error = error;
+        filled.offer(failure);
+    }
+
+    // Reads until the buffer is full or the stream ends, so chunks stay large
+    private int fill(byte[] buffer) throws IOException {
+        int length = 0;
+        while (length < buffer.length) {
+            int read = in.read(buffer, length, buffer.length - length);
+            if (read < 0) {
+                break;
+            }
+            length += read;
+        }
+        return length;
+    }
+
+    private boolean nextChunk() throws IOException {
+        if (finished) {
+            return false;
+        }
+        if (current != null) {
+            free.add(current);
+            current = null;
+        }
+        Chunk chunk;
+        try {
+            chunk = filled.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for input");
+        }
+        if (chunk == END) {
+            finished = true;
+            return false;
+        }
+        if (chunk.error != null) {
+            finished = true;
+            throw chunk.error;
+        }
+        current = chunk;
+        position = 0;
+        return true;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if ((current == null || position == current.length) && !nextChunk()) {
+            return -1;
+        }
+        return current.data[position++] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+        if ((current == null || position == current.length) && !nextChunk()) {
+            return -1;
+        }
+        int count = Math.min(length, current.length - position);
+        System.arraycopy(current.data, position, buffer, offset, count);
+        position += count;
+        return count;
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        reader.interrupt();
+        try {
+            reader.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        in.close();
+    }
+}
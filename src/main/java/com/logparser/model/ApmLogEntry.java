@@ -1,23 +1,53 @@
 package com.logparser.model;
 
+import com.logparser.parser.FieldValue;
+import com.logparser.parser.TimestampFormat;
+
 import java.time.Instant;
 import java.util.Map;
 
 public class ApmLogEntry extends LogEntry {
-    private String metric;
+    private final FieldValue metric = new FieldValue();
     private double value;
 
     public ApmLogEntry(Instant timestamp, String host, Map<String, String> attributes) {
         super(timestamp, host, attributes);
-        this.metric = attributes.get("metric");
+        this.metric.set(attributes.get("metric"));
         String valueStr = attributes.get("value");
         if (valueStr != null) {
-            valueStr = valueStr.replaceAll("\"", "");
-            this.value = Double.parseDouble(valueStr);
+            this.value = Double.parseDouble(stripQuotes(valueStr));
         }
     }
 
+    public ApmLogEntry(Instant timestamp, String host, Map<String, String> attributes, String metric, double value) {
+        super(timestamp, host, attributes);
+        this.metric.set(metric);
+        this.value = value;
+    }
+
+    public ApmLogEntry() {
+    }
+
+    // The metric and timestamp are set through getMetricField() and getTimestampField()
+    public ApmLogEntry reset(TimestampFormat format, Map<String, String> attributes, double value) {
+        resetLazily(format, attributes);
+        this.value = value;
+        return this;
+    }
+
+    // Fills the entry from stored values, e.g. a columnar file, rather than from a line
+    public ApmLogEntry reset(Instant timestamp, String host, String metric, double value) {
+        reset(timestamp, host, null);
+        this.metric.set(metric);
+        this.value = value;
+        return this;
+    }
+
     public String getMetric() {
+        return metric.stringValue();
+    }
+
+    public FieldValue getMetricField() {
         return metric;
     }
 
@@ -25,6 +55,11 @@ public class ApmLogEntry extends LogEntry {
         return value;
     }
 
+    @Override
+    public FieldValue getField(String name, FieldValue target) {
+        return name.equals("metric") ? metric : super.getField(name, target);
+    }
+
     @Override
     public String getType() {
         return "APM";
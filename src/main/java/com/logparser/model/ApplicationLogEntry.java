@@ -1,26 +1,66 @@
 package com.logparser.model;
 
+import com.logparser.parser.FieldValue;
+import com.logparser.parser.TimestampFormat;
+
 import java.time.Instant;
 import java.util.Map;
 
 public class ApplicationLogEntry extends LogEntry {
-    private String level;
+    private final FieldValue level = new FieldValue();
     private String message;
 
     public ApplicationLogEntry(Instant timestamp, String host, Map<String, String> attributes) {
         super(timestamp, host, attributes);
-        this.level = attributes.get("level");
+        this.level.set(attributes.get("level"));
         this.message = attributes.get("message");
     }
 
+    public ApplicationLogEntry(Instant timestamp, String host, Map<String, String> attributes,
+                               String level, String message) {
+        super(timestamp, host, attributes);
+        this.level.set(level);
+        this.message = message;
+    }
+
+    public ApplicationLogEntry() {
+    }
+
+    // The level and timestamp are set through getLevelField() and getTimestampField()
+    public ApplicationLogEntry reset(TimestampFormat format, Map<String, String> attributes) {
+        resetLazily(format, attributes);
+        this.message = null;
+        return this;
+    }
+
+    // Fills the entry from stored values, e.g. a columnar file, rather than from a line
+    public ApplicationLogEntry reset(Instant timestamp, String host, String level) {
+        reset(timestamp, host, (Map<String, String>) null);
+        this.level.set(level);
+        this.message = null;
+        return this;
+    }
+
     public String getLevel() {
+        return level.stringValue();
+    }
+
+    public FieldValue getLevelField() {
         return level;
     }
 
     public String getMessage() {
+        if (message == null && getAttributes() != null) {
+            message = getAttributes().get("message");
+        }
         return message;
     }
 
+    @Override
+    public FieldValue getField(String name, FieldValue target) {
+        return name.equals("level") ? level : super.getField(name, target);
+    }
+
     @Override
     public String getType() {
         return "APPLICATION";
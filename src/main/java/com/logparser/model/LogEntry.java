@@ -1,5 +1,9 @@
 package com.logparser.model;
 
+import com.logparser.parser.FieldValue;
+import com.logparser.parser.LineFields;
+import com.logparser.parser.TimestampFormat;
+
 import java.time.Instant;
 import java.util.Map;
 
@@ -7,6 +11,8 @@ public abstract class LogEntry {
     private Instant timestamp;
     private String host;
     private Map<String, String> attributes;
+    private final FieldValue timestampText = new FieldValue();
+    private TimestampFormat timestampFormat;
 
     public LogEntry(Instant timestamp, String host, Map<String, String> attributes) {
         this.timestamp = timestamp;
@@ -14,17 +20,75 @@ public abstract class LogEntry {
         this.attributes = attributes;
     }
 
+    protected LogEntry() {
+    }
+
+    // Used by parsers that reuse one entry per thread instead of allocating one per line
+    protected void reset(Instant timestamp, String host, Map<String, String> attributes) {
+        this.timestamp = timestamp;
+        this.host = host;
+        this.attributes = attributes;
+        this.timestampFormat = null;
+    }
+
+    /**
+     * Like {@link #reset(Instant, String, Map)}, but the timestamp is only parsed from the
+     * text set through {@link #getTimestampField()} if {@link #getTimestamp()} is called.
+     */
+    protected void resetLazily(TimestampFormat format, Map<String, String> attributes) {
+        reset(null, null, attributes);
+        this.timestampFormat = format;
+    }
+
+    public FieldValue getTimestampField() {
+        return timestampText;
+    }
+
+    // Null when the line has no timestamp
     public Instant getTimestamp() {
+        if (timestamp == null && timestampFormat != null && timestampText.isPresent()) {
+            timestamp = timestampFormat.parse(timestampText.getSource(), timestampText.getStart(),
+                    timestampText.getEnd());
+        }
         return timestamp;
     }
 
     public String getHost() {
+        if (host == null && attributes != null) {
+            host = attributes.get("host");
+        }
         return host;
     }
 
+    /**
+     * Points {@code target} at the value of the named field, without copying it when the
+     * entry was parsed from a line. Entries filled from stored values only have the
+     * fields they store; any other field is absent.
+     */
+    public FieldValue getField(String name, FieldValue target) {
+        if (attributes == null) {
+            return target.set(name.equals("host") ? host : null);
+        }
+        return LineFields.getValue(attributes, name, target);
+    }
+
     public Map<String, String> getAttributes() {
         return attributes;
     }
 
     public abstract String getType();
+
+    protected static String stripQuotes(String value) {
+        if (value == null || value.indexOf('"') < 0) {
+            return value;
+        }
+        StringBuilder stripped = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c != '"') {
+                stripped.append(c);
+            }
+        }
+        return stripped.toString();
+    }
 } 
\ No newline at end of file
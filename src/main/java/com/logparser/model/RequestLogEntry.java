@@ -1,27 +1,70 @@
 package com.logparser.model;
 
+import com.logparser.parser.FieldValue;
+import com.logparser.parser.TimestampFormat;
+
 import java.time.Instant;
 import java.util.Map;
 
 public class RequestLogEntry extends LogEntry {
     private String requestMethod;
-    private String requestUrl;
+    private final FieldValue requestUrl = new FieldValue();
     private int responseStatus;
     private int responseTimeMs;
 
     public RequestLogEntry(Instant timestamp, String host, Map<String, String> attributes) {
         super(timestamp, host, attributes);
-        this.requestMethod = attributes.get("request_method").replaceAll("\"", "");
-        this.requestUrl = attributes.get("request_url").replaceAll("\"", "");
-        this.responseStatus = Integer.parseInt(attributes.get("response_status").replaceAll("\"", ""));
-        this.responseTimeMs = Integer.parseInt(attributes.get("response_time_ms").replaceAll("\"", ""));
+        this.requestMethod = stripQuotes(attributes.get("request_method"));
+        this.requestUrl.set(stripQuotes(attributes.get("request_url")));
+        this.responseStatus = Integer.parseInt(stripQuotes(attributes.get("response_status")));
+        this.responseTimeMs = Integer.parseInt(stripQuotes(attributes.get("response_time_ms")));
+    }
+
+    public RequestLogEntry(Instant timestamp, String host, Map<String, String> attributes, String requestMethod,
+                           String requestUrl, int responseStatus, int responseTimeMs) {
+        super(timestamp, host, attributes);
+        this.requestMethod = requestMethod;
+        this.requestUrl.set(requestUrl);
+        this.responseStatus = responseStatus;
+        this.responseTimeMs = responseTimeMs;
+    }
+
+    public RequestLogEntry() {
+    }
+
+    // The URL and timestamp are set through getRequestUrlField() and getTimestampField()
+    public RequestLogEntry reset(TimestampFormat format, Map<String, String> attributes,
+                                 int responseStatus, int responseTimeMs) {
+        resetLazily(format, attributes);
+        this.requestMethod = null;
+        this.responseStatus = responseStatus;
+        this.responseTimeMs = responseTimeMs;
+        return this;
+    }
+
+    // Fills the entry from stored values, e.g. a columnar file, rather than from a line
+    public RequestLogEntry reset(Instant timestamp, String host, String requestMethod, String requestUrl,
+                                 int responseStatus, int responseTimeMs) {
+        reset(timestamp, host, null);
+        this.requestMethod = requestMethod;
+        this.requestUrl.set(requestUrl);
+        this.responseStatus = responseStatus;
+        this.responseTimeMs = responseTimeMs;
+        return this;
     }
 
     public String getRequestMethod() {
+        if (requestMethod == null && getAttributes() != null) {
+            requestMethod = getAttributes().get("request_method");
+        }
         return requestMethod;
     }
 
     public String getRequestUrl() {
+        return requestUrl.stringValue();
+    }
+
+    public FieldValue getRequestUrlField() {
         return requestUrl;
     }
 
@@ -33,6 +76,21 @@ public class RequestLogEntry extends LogEntry {
         return responseTimeMs;
     }
 
+    @Override
+    public FieldValue getField(String name, FieldValue target) {
+        if (getAttributes() == null) {
+            switch (name) {
+                case "request_method":
+                    return target.set(requestMethod);
+                case "response_status":
+                    return target.set(Integer.toString(responseStatus));
+                default:
+                    break;
+            }
+        }
+        return name.equals("request_url") ? requestUrl : super.getField(name, target);
+    }
+
     @Override
     public String getType() {
         return "REQUEST";
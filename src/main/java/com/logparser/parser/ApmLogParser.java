@@ -4,17 +4,29 @@ import com.logparser.model.ApmLogEntry;
 import com.logparser.model.LogEntry;
 
 import java.time.Instant;
-import java.time.format.DateTimeFormatter;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
 
 public class ApmLogParser implements LogParser {
-    private static final DateTimeFormatter formatter = DateTimeFormatter.ISO_INSTANT;
+    private static final Set<String> SIGNATURE_KEYS = Set.of("metric", "value");
+
+    // Entries returned by parse(LineFields) are reused per thread and only valid until the next line
+    private final ThreadLocal<ParseState> parseState;
+
+    public ApmLogParser() {
+        this(IsoTimestampFormat::new);
+    }
+
+    public ApmLogParser(Supplier<TimestampFormat> timestampFormats) {
+        this.parseState = ThreadLocal.withInitial(() -> new ParseState(timestampFormats.get()));
+    }
 
     @Override
     public LogEntry parse(String logLine) {
         Map<String, String> attributes = parseAttributes(logLine);
-        Instant timestamp = Instant.parse(attributes.get("timestamp"));
+        Instant timestamp = parseState.get().timestamps.parse(attributes.get("timestamp"));
         String host = attributes.get("host");
         return new ApmLogEntry(timestamp, host, attributes);
     }
@@ -24,6 +36,21 @@ public class ApmLogParser implements LogParser {
         return logLine.contains("metric=") && logLine.contains("value=");
     }
 
+    @Override
+    public LogEntry parse(LineFields fields) {
+        ParseState state = parseState.get();
+        int value = fields.indexOf("value");
+        ApmLogEntry entry = state.entry.reset(state.timestamps, fields.asMap(), value < 0 ? 0 : fields.doubleValue(value));
+        fields.getValue("metric", entry.getMetricField());
+        fields.getValue("timestamp", entry.getTimestampField());
+        return entry;
+    }
+
+    @Override
+    public Set<String> getSignatureKeys() {
+        return SIGNATURE_KEYS;
+    }
+
     private Map<String, String> parseAttributes(String logLine) {
         Map<String, String> attributes = new HashMap<>();
         StringBuilder currentPart = new StringBuilder();
@@ -49,6 +76,15 @@ public class ApmLogParser implements LogParser {
         return attributes;
     }
 
+    private static class ParseState {
+        final ApmLogEntry entry = new ApmLogEntry();
+        final TimestampFormat timestamps;
+
+        ParseState(TimestampFormat timestamps) {
+            this.timestamps = timestamps;
+        }
+    }
+
     private void processPart(String part, Map<String, String> attributes) {
         if (!part.trim().isEmpty()) {
             String[] keyValue = part.split("=", 2);
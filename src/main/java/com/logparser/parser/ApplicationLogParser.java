@@ -6,12 +6,27 @@ import com.logparser.model.LogEntry;
 import java.time.Instant;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
 
 public class ApplicationLogParser implements LogParser {
+    private static final Set<String> SIGNATURE_KEYS = Set.of("level", "message");
+
+    // Entries returned by parse(LineFields) are reused per thread and only valid until the next line
+    private final ThreadLocal<ParseState> parseState;
+
+    public ApplicationLogParser() {
+        this(IsoTimestampFormat::new);
+    }
+
+    public ApplicationLogParser(Supplier<TimestampFormat> timestampFormats) {
+        this.parseState = ThreadLocal.withInitial(() -> new ParseState(timestampFormats.get()));
+    }
+
     @Override
     public LogEntry parse(String logLine) {
         Map<String, String> attributes = parseAttributes(logLine);
-        Instant timestamp = Instant.parse(attributes.get("timestamp"));
+        Instant timestamp = parseState.get().timestamps.parse(attributes.get("timestamp"));
         String host = attributes.get("host");
         return new ApplicationLogEntry(timestamp, host, attributes);
     }
@@ -21,6 +36,29 @@ public class ApplicationLogParser implements LogParser {
         return logLine.contains("level=") && logLine.contains("message=");
     }
 
+    @Override
+    public LogEntry parse(LineFields fields) {
+        ParseState state = parseState.get();
+        ApplicationLogEntry entry = state.entry.reset(state.timestamps, fields.asMap());
+        fields.getValue("level", entry.getLevelField());
+        fields.getValue("timestamp", entry.getTimestampField());
+        return entry;
+    }
+
+    @Override
+    public Set<String> getSignatureKeys() {
+        return SIGNATURE_KEYS;
+    }
+
+    private static class ParseState {
+        final ApplicationLogEntry entry = new ApplicationLogEntry();
+        final TimestampFormat timestamps;
+
+        ParseState(TimestampFormat timestamps) {
+            this.timestamps = timestamps;
+        }
+    }
+
     private Map<String, String> parseAttributes(String logLine) {
         Map<String, String> attributes = new HashMap<>();
         String[] parts = logLine.split(" ");
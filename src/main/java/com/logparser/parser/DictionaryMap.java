@@ -0,0 +1,77 @@
+package com.logparser.parser;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * A String-keyed map in first-seen order with an id-indexed front for the per-line path:
+ * {@link #getOrCreate(FieldValue)} resolves the key to a {@link FieldDictionary} id and
+ * reads the value from an array, so repeated keys are never decoded or hashed as Strings.
+ * Merging and state go through the String keys as before.
+ */
+public class DictionaryMap<V> {
+    private static final int DEFAULT_MAX_IDS = 1 << 16;
+
+    private final FieldDictionary dictionary;
+    private final Function<String, V> factory;
+    private final Map<String, V> values = new LinkedHashMap<>();
+    private Object[] byId = new Object[16];
+
+    public DictionaryMap(Function<String, V> factory) {
+        this(DEFAULT_MAX_IDS, factory);
+    }
+
+    public DictionaryMap(int maxIds, Function<String, V> factory) {
+        this.dictionary = new FieldDictionary(maxIds);
+        this.factory = factory;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V getOrCreate(FieldValue key) {
+        CharSequence source = key.getSource();
+        if (source instanceof String && key.getStart() == 0 && key.getEnd() == source.length()) {
+            // A whole String already caches its hash; the dictionary would only hash it again
+            return getOrCreate((String) source);
+        }
+        int id = key.isPresent() ? dictionary.idOf(source, key.getStart(), key.getEnd())
+                : FieldDictionary.NO_ID;
+        if (id >= 0 && id < byId.length && byId[id] != null) {
+            return (V) byId[id];
+        }
+        V value = getOrCreate(id >= 0 ? dictionary.valueOf(id) : key.stringValue());
+        if (id >= 0) {
+            if (id >= byId.length) {
+                byId = Arrays.copyOf(byId, Math.max(byId.length * 2, id + 1));
+            }
+            byId[id] = value;
+        }
+        return value;
+    }
+
+    public V getOrCreate(String key) {
+        V value = values.get(key);
+        if (value == null) {
+            value = factory.apply(key);
+            values.put(key, value);
+        }
+        return value;
+    }
+
+    /** The entries in first-seen order. */
+    public Map<String, V> asMap() {
+        return Collections.unmodifiableMap(values);
+    }
+
+    public int size() {
+        return values.size();
+    }
+
+    // The dictionary keeps its ids; only the values are dropped
+    public void clear() {
+        values.clear();
+        Arrays.fill(byId, null);
+    }
+}
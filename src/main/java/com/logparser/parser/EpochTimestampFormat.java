@@ -0,0 +1,53 @@
+package com.logparser.parser;
+
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+
+/**
+ * Unix timestamps: seconds with an optional fraction of up to nine digits, or whole
+ * milliseconds.
+ */
+class EpochTimestampFormat implements TimestampFormat {
+    private final boolean millis;
+
+    EpochTimestampFormat(boolean millis) {
+        this.millis = millis;
+    }
+
+    @Override
+    public Instant parse(CharSequence text, int start, int end) {
+        int i = start;
+        boolean negative = i < end && text.charAt(i) == '-';
+        if (negative) {
+            i++;
+        }
+        long whole = 0;
+        int digits = 0;
+        for (; i < end && text.charAt(i) >= '0' && text.charAt(i) <= '9'; i++, digits++) {
+            if (digits == 18) {
+                throw invalid(text, start, end);
+            }
+            whole = whole * 10 + (text.charAt(i) - '0');
+        }
+        long nanos = 0;
+        if (!millis && i < end && text.charAt(i) == '.') {
+            int scale = 100_000_000;
+            for (i++; i < end && text.charAt(i) >= '0' && text.charAt(i) <= '9' && scale > 0; i++, scale /= 10) {
+                nanos += (text.charAt(i) - '0') * (long) scale;
+            }
+        }
+        if (digits == 0 || i != end) {
+            throw invalid(text, start, end);
+        }
+        if (millis) {
+            return Instant.ofEpochMilli(negative ? -whole : whole);
+        }
+        return negative ? Instant.ofEpochSecond(-whole, -nanos) : Instant.ofEpochSecond(whole, nanos);
+    }
+
+    private DateTimeParseException invalid(CharSequence text, int start, int end) {
+        String value = text.subSequence(start, end).toString();
+        return new DateTimeParseException("Not an epoch " + (millis ? "millisecond" : "second") + " timestamp: "
+                + value, value, 0);
+    }
+}
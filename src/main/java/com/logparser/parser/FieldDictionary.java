@@ -0,0 +1,125 @@
+package com.logparser.parser;
+
+import java.util.Arrays;
+
+/**
+ * Assigns dense int ids to repeated field values such as metric names, levels, URLs and
+ * hosts. Lookups hash and compare the characters of the source range in place, so a
+ * value that has been seen before costs no allocation; only a new value is copied, once.
+ * <p>
+ * Values are compared by their characters as given. A {@link com.logparser.io.ByteSlice}
+ * presents each byte as one character, so non-ASCII text read from bytes and the same
+ * text read as a String get different ids; {@link #valueOf(int)} decodes both to the
+ * same String. The dictionary is bounded: once {@code maxSize} values are known, or for
+ * values longer than {@value #MAX_LENGTH} characters, {@link #idOf} returns
+ * {@link #NO_ID} and callers fall back to Strings. Not thread-safe.
+ */
+public class FieldDictionary {
+    public static final int NO_ID = -1;
+    static final int MAX_LENGTH = 1024;
+
+    private final int maxSize;
+    private int[] table = new int[32];
+    private int[] hashes = new int[16];
+    private String[] keys = new String[16];
+    private String[] values = new String[16];
+    private int size;
+
+    public FieldDictionary(int maxSize) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("Dictionary size must be positive: " + maxSize);
+        }
+        this.maxSize = maxSize;
+    }
+
+    public int idOf(CharSequence source, int start, int end) {
+        int length = end - start;
+        if (length > MAX_LENGTH) {
+            return NO_ID;
+        }
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + source.charAt(i);
+        }
+        int mask = table.length - 1;
+        int slot = mix(hash) & mask;
+        for (int entry = table[slot]; entry != 0; entry = table[slot]) {
+            int id = entry - 1;
+            if (hashes[id] == hash && matches(keys[id], source, start, length)) {
+                return id;
+            }
+            slot = (slot + 1) & mask;
+        }
+        if (size == maxSize) {
+            return NO_ID;
+        }
+        return add(source, start, end, hash, slot);
+    }
+
+    public String valueOf(int id) {
+        if (id < 0 || id >= size) {
+            throw new IndexOutOfBoundsException("Unknown id " + id);
+        }
+        return values[id];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private int add(CharSequence source, int start, int end, int hash, int slot) {
+        int id = size++;
+        if (id == keys.length) {
+            int capacity = keys.length * 2;
+            hashes = Arrays.copyOf(hashes, capacity);
+            keys = Arrays.copyOf(keys, capacity);
+            values = Arrays.copyOf(values, capacity);
+        }
+        String value = source.subSequence(start, end).toString();
+        hashes[id] = hash;
+        values[id] = value;
+        keys[id] = matches(value, source, start, end - start) ? value : rawCharacters(source, start, end);
+        table[slot] = id + 1;
+        // Keep the table at most half full so probe sequences stay short
+        if (size * 2 > table.length) {
+            rehash(table.length * 2);
+        }
+        return id;
+    }
+
+    private void rehash(int capacity) {
+        table = new int[capacity];
+        int mask = capacity - 1;
+        for (int id = 0; id < size; id++) {
+            int slot = mix(hashes[id]) & mask;
+            while (table[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = id + 1;
+        }
+    }
+
+    private static int mix(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    private static boolean matches(String key, CharSequence source, int start, int length) {
+        if (key.length() != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (key.charAt(i) != source.charAt(start + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String rawCharacters(CharSequence source, int start, int end) {
+        char[] raw = new char[end - start];
+        for (int i = start; i < end; i++) {
+            raw[i - start] = source.charAt(i);
+        }
+        return new String(raw);
+    }
+}
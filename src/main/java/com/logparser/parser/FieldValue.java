@@ -0,0 +1,73 @@
+package com.logparser.parser;
+
+/**
+ * A field value as a range of a source line, reused from line to line by flyweight
+ * entries. The String is only decoded when asked for; aggregators look the range up in a
+ * {@link FieldDictionary} instead.
+ */
+public final class FieldValue implements CharSequence {
+    private CharSequence source;
+    private int start;
+    private int end;
+    private String string;
+
+    public FieldValue set(CharSequence source, int start, int end) {
+        this.source = source;
+        this.start = start;
+        this.end = end;
+        this.string = null;
+        return this;
+    }
+
+    public FieldValue set(String value) {
+        this.source = value;
+        this.start = 0;
+        this.end = value == null ? 0 : value.length();
+        this.string = value;
+        return this;
+    }
+
+    public boolean isPresent() {
+        return source != null;
+    }
+
+    public CharSequence getSource() {
+        return source;
+    }
+
+    public int getStart() {
+        return start;
+    }
+
+    public int getEnd() {
+        return end;
+    }
+
+    // Null when the field is absent
+    public String stringValue() {
+        if (string == null && source != null) {
+            string = source.subSequence(start, end).toString();
+        }
+        return string;
+    }
+
+    @Override
+    public int length() {
+        return end - start;
+    }
+
+    @Override
+    public char charAt(int index) {
+        return source.charAt(start + index);
+    }
+
+    @Override
+    public CharSequence subSequence(int from, int to) {
+        return source.subSequence(start + from, start + to);
+    }
+
+    @Override
+    public String toString() {
+        return String.valueOf(stringValue());
+    }
+}
@@ -0,0 +1,119 @@
+package com.logparser.parser;
+
+import java.time.Instant;
+import java.time.LocalDate;
+
+/**
+ * Parses ISO-8601 UTC instants such as {@code 2024-02-24T16:22:15Z} or
+ * {@code 2024-02-24T16:22:15.250Z} by reading the fixed-width digits directly. Two caches
+ * make the common cases cheap: a repeat of the last text returns the same Instant, and a
+ * repeat of the last {@code yyyy-MM-ddTHH:mm:ss} prefix reuses its epoch second, so only
+ * the fraction is parsed. Anything else (offsets, lower case, leap seconds, out-of-range
+ * fields) goes to {@link Instant#parse(CharSequence)}, which also produces its errors.
+ */
+public class IsoTimestampFormat implements TimestampFormat {
+    private static final int PREFIX_LENGTH = 19;
+    private static final int MAX_LENGTH = 64;
+
+    private final char[] lastText = new char[MAX_LENGTH];
+    private int lastLength = -1;
+    private Instant lastInstant;
+    private final char[] lastPrefix = new char[PREFIX_LENGTH];
+    private boolean hasPrefix;
+    private long lastEpochSecond;
+
+    @Override
+    public Instant parse(CharSequence text, int start, int end) {
+        int length = end - start;
+        if (length == lastLength && matches(lastText, text, start, length)) {
+            return lastInstant;
+        }
+        Instant instant = parseFast(text, start, end);
+        if (instant == null) {
+            instant = Instant.parse(text.subSequence(start, end));
+        }
+        if (length <= MAX_LENGTH) {
+            for (int i = 0; i < length; i++) {
+                lastText[i] = text.charAt(start + i);
+            }
+            lastLength = length;
+            lastInstant = instant;
+        }
+        return instant;
+    }
+
+    // Returns null when the text needs the general parser
+    private Instant parseFast(CharSequence text, int start, int end) {
+        int length = end - start;
+        if (length < PREFIX_LENGTH + 1 || text.charAt(end - 1) != 'Z'
+                || text.charAt(start + 4) != '-' || text.charAt(start + 7) != '-' || text.charAt(start + 10) != 'T'
+                || text.charAt(start + 13) != ':' || text.charAt(start + 16) != ':') {
+            return null;
+        }
+        int nanos = 0;
+        if (length > PREFIX_LENGTH + 1) {
+            int fractionDigits = length - PREFIX_LENGTH - 2;
+            if (text.charAt(start + PREFIX_LENGTH) != '.' || fractionDigits < 1 || fractionDigits > 9) {
+                return null;
+            }
+            for (int i = 0; i < 9; i++) {
+                int digit = i < fractionDigits ? digit(text, start + PREFIX_LENGTH + 1 + i) : 0;
+                if (digit < 0) {
+                    return null;
+                }
+                nanos = nanos * 10 + digit;
+            }
+        }
+
+        if (hasPrefix && matches(lastPrefix, text, start, PREFIX_LENGTH)) {
+            return Instant.ofEpochSecond(lastEpochSecond, nanos);
+        }
+        int year = number(text, start, 4);
+        int month = number(text, start + 5, 2);
+        int day = number(text, start + 8, 2);
+        int hour = number(text, start + 11, 2);
+        int minute = number(text, start + 14, 2);
+        int second = number(text, start + 17, 2);
+        if (year < 0 || month < 1 || month > 12 || day < 1 || hour < 0 || hour > 23
+                || minute < 0 || minute > 59 || second < 0 || second > 59) {
+            return null;
+        }
+        LocalDate firstOfMonth = LocalDate.of(year, month, 1);
+        if (day > firstOfMonth.lengthOfMonth()) {
+            return null;
+        }
+        long epochDay = firstOfMonth.toEpochDay() + day - 1;
+        lastEpochSecond = epochDay * 86400 + hour * 3600 + minute * 60 + second;
+        for (int i = 0; i < PREFIX_LENGTH; i++) {
+            lastPrefix[i] = text.charAt(start + i);
+        }
+        hasPrefix = true;
+        return Instant.ofEpochSecond(lastEpochSecond, nanos);
+    }
+
+    private static int number(CharSequence text, int start, int digits) {
+        int value = 0;
+        for (int i = 0; i < digits; i++) {
+            int digit = digit(text, start + i);
+            if (digit < 0) {
+                return -1;
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    private static int digit(CharSequence text, int index) {
+        char c = text.charAt(index);
+        return c >= '0' && c <= '9' ? c - '0' : -1;
+    }
+
+    private static boolean matches(char[] cached, CharSequence text, int start, int length) {
+        for (int i = length - 1; i >= 0; i--) {
+            if (cached[i] != text.charAt(start + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
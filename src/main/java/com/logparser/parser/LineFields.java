@@ -0,0 +1,322 @@
+package com.logparser.parser;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Splits a log line into {@code key=value} fields in a single pass, recording each field
+ * as offsets into the line rather than copying it. Values are only turned into Strings
+ * when asked for. One instance is meant to be reused for every line read by a worker,
+ * so anything obtained from it (including {@link #asMap()}) is only valid until the next
+ * call to {@link #reset(CharSequence)}. When a key appears more than once, the last field
+ * with it is the one looked up, as it was when lines were parsed into a map.
+ */
+public class LineFields {
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+    private static final long MAX_EXACT_MANTISSA = 1L << 53;
+
+    private CharSequence line;
+    private int size;
+    private int[] keyStart = new int[16];
+    private int[] keyEnd = new int[16];
+    private int[] valueStart = new int[16];
+    private int[] valueEnd = new int[16];
+    private final Map<String, String> mapView = new FieldMap();
+
+    public LineFields reset(CharSequence line) {
+        this.line = line;
+        this.size = 0;
+        int length = line.length();
+        int partStart = 0;
+        int equals = -1;
+        boolean inQuotes = false;
+        for (int i = 0; i < length; i++) {
+            char c = line.charAt(i);
+            if (c == '"') {
+                inQuotes = !inQuotes;
+            } else if (c == ' ' && !inQuotes) {
+                addField(partStart, equals, i);
+                partStart = i + 1;
+                equals = -1;
+            } else if (c == '=' && equals < 0) {
+                equals = i;
+            }
+        }
+        addField(partStart, equals, length);
+        return this;
+    }
+
+    private void addField(int start, int equals, int end) {
+        if (equals <= start) {
+            return;
+        }
+        if (size == keyStart.length) {
+            int capacity = size * 2;
+            keyStart = Arrays.copyOf(keyStart, capacity);
+            keyEnd = Arrays.copyOf(keyEnd, capacity);
+            valueStart = Arrays.copyOf(valueStart, capacity);
+            valueEnd = Arrays.copyOf(valueEnd, capacity);
+        }
+        int from = equals + 1;
+        int to = end;
+        // Strip surrounding quotes without going through a regex; quotes inside the value stay
+        if (to - from >= 2 && line.charAt(from) == '"' && line.charAt(to - 1) == '"') {
+            from++;
+            to--;
+        }
+        keyStart[size] = start;
+        keyEnd[size] = equals;
+        valueStart[size] = from;
+        valueEnd[size] = to;
+        size++;
+    }
+
+    public CharSequence getLine() {
+        return line;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int indexOf(String key) {
+        for (int i = size - 1; i >= 0; i--) {
+            if (keyEquals(i, key)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    public boolean hasKey(String key) {
+        return indexOf(key) >= 0;
+    }
+
+    public boolean keyEquals(int index, String key) {
+        int start = keyStart[index];
+        int length = keyEnd[index] - start;
+        if (length != key.length()) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (line.charAt(start + i) != key.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public int keyStart(int index) {
+        return keyStart[index];
+    }
+
+    public int keyEnd(int index) {
+        return keyEnd[index];
+    }
+
+    public String key(int index) {
+        return line.subSequence(keyStart[index], keyEnd[index]).toString();
+    }
+
+    public int valueStart(int index) {
+        return valueStart[index];
+    }
+
+    public int valueEnd(int index) {
+        return valueEnd[index];
+    }
+
+    public CharSequence valueSequence(int index) {
+        return line.subSequence(valueStart[index], valueEnd[index]);
+    }
+
+    public String value(int index) {
+        return valueSequence(index).toString();
+    }
+
+    public String getValue(String key) {
+        int index = indexOf(key);
+        return index < 0 ? null : value(index);
+    }
+
+    // Points target at the value's characters in the line, without copying them
+    public FieldValue getValue(String key, FieldValue target) {
+        int index = indexOf(key);
+        return index < 0 ? target.set(null) : target.set(line, valueStart[index], valueEnd[index]);
+    }
+
+    /**
+     * Like {@link #getValue(String, FieldValue)} for a map of attributes, which is only
+     * read through when it is not a view from {@link #asMap()}.
+     */
+    public static FieldValue getValue(Map<String, String> attributes, String key, FieldValue target) {
+        if (attributes instanceof FieldMap) {
+            return ((FieldMap) attributes).fields().getValue(key, target);
+        }
+        return target.set(attributes == null ? null : attributes.get(key));
+    }
+
+    public int intValue(int index) {
+        int start = valueStart[index];
+        int end = valueEnd[index];
+        if (start == end) {
+            throw new NumberFormatException("Empty value for " + key(index));
+        }
+        boolean negative = line.charAt(start) == '-';
+        int i = negative || line.charAt(start) == '+' ? start + 1 : start;
+        if (i == end || end - i > 9) {
+            return Integer.parseInt(value(index));
+        }
+        int result = 0;
+        for (; i < end; i++) {
+            int digit = line.charAt(i) - '0';
+            if (digit < 0 || digit > 9) {
+                throw new NumberFormatException("For input string: \"" + value(index) + "\"");
+            }
+            result = result * 10 + digit;
+        }
+        return negative ? -result : result;
+    }
+
+    public double doubleValue(int index) {
+        return parseDouble(line, valueStart[index], valueEnd[index]);
+    }
+
+    /**
+     * Parses a decimal number from the characters between {@code start} and {@code end},
+     * without creating a String unless the value needs more than the fast path handles.
+     */
+    public static double parseDouble(CharSequence line, int start, int end) {
+        int i = start;
+        boolean negative = false;
+        if (i < end && (line.charAt(i) == '-' || line.charAt(i) == '+')) {
+            negative = line.charAt(i) == '-';
+            i++;
+        }
+        long mantissa = 0;
+        int fractionDigits = 0;
+        boolean seenDigit = false;
+        boolean seenPoint = false;
+        for (; i < end; i++) {
+            char c = line.charAt(i);
+            if (c >= '0' && c <= '9') {
+                mantissa = mantissa * 10 + (c - '0');
+                seenDigit = true;
+                if (seenPoint) {
+                    fractionDigits++;
+                }
+                if (mantissa > MAX_EXACT_MANTISSA) {
+                    break;
+                }
+            } else if (c == '.' && !seenPoint) {
+                seenPoint = true;
+            } else {
+                break;
+            }
+        }
+        // Both the mantissa and the power of ten are exact here, so a single division
+        // rounds the same way Double.parseDouble does
+        if (i == end && seenDigit && mantissa <= MAX_EXACT_MANTISSA && fractionDigits < POWERS_OF_TEN.length) {
+            double result = mantissa / POWERS_OF_TEN[fractionDigits];
+            return negative ? -result : result;
+        }
+        return Double.parseDouble(line.subSequence(start, end).toString());
+    }
+
+    /**
+     * Returns a read-only map view of the fields that creates value Strings on demand.
+     */
+    public Map<String, String> asMap() {
+        return mapView;
+    }
+
+    // The first field from index on that no later field with the same key replaces
+    private int nextShown(int index) {
+        for (; index < size; index++) {
+            if (!isReplaced(index)) {
+                return index;
+            }
+        }
+        return size;
+    }
+
+    private boolean isReplaced(int index) {
+        int start = keyStart[index];
+        int length = keyEnd[index] - start;
+        for (int later = index + 1; later < size; later++) {
+            if (keyEnd[later] - keyStart[later] == length && regionEquals(start, keyStart[later], length)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean regionEquals(int first, int second, int length) {
+        for (int i = 0; i < length; i++) {
+            if (line.charAt(first + i) != line.charAt(second + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private class FieldMap extends AbstractMap<String, String> {
+        LineFields fields() {
+            return LineFields.this;
+        }
+
+        @Override
+        public String get(Object key) {
+            return key instanceof String ? getValue((String) key) : null;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return key instanceof String && hasKey((String) key);
+        }
+
+        @Override
+        public Set<Entry<String, String>> entrySet() {
+            return new AbstractSet<Entry<String, String>>() {
+                @Override
+                public Iterator<Entry<String, String>> iterator() {
+                    return new Iterator<Entry<String, String>>() {
+                        private int next = nextShown(0);
+
+                        @Override
+                        public boolean hasNext() {
+                            return next < size;
+                        }
+
+                        @Override
+                        public Entry<String, String> next() {
+                            if (next >= size) {
+                                throw new NoSuchElementException();
+                            }
+                            int index = next;
+                            next = nextShown(next + 1);
+                            return new SimpleImmutableEntry<>(key(index), value(index));
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    int shown = 0;
+                    for (int i = nextShown(0); i < size; i = nextShown(i + 1)) {
+                        shown++;
+                    }
+                    return shown;
+                }
+            };
+        }
+    }
+}
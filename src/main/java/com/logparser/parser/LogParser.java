@@ -2,7 +2,36 @@ package com.logparser.parser;
 
 import com.logparser.model.LogEntry;
 
+import java.util.Collections;
+import java.util.Set;
+
 public interface LogParser {
     LogEntry parse(String logLine);
     boolean canParse(String logLine);
-} 
\ No newline at end of file
+
+    /**
+     * Keys that must all be present for a line to belong to this parser. Parsers that
+     * declare them are routed by {@link LogTypeClassifier} without any extra scans;
+     * parsers that return an empty set fall back to {@link #canParse(String)}.
+     */
+    default Set<String> getSignatureKeys() {
+        return Collections.emptySet();
+    }
+
+    default LogEntry parse(LineFields fields) {
+        return parse(fields.getLine().toString());
+    }
+
+    default boolean canParse(LineFields fields) {
+        Set<String> signatureKeys = getSignatureKeys();
+        if (signatureKeys.isEmpty()) {
+            return canParse(fields.getLine().toString());
+        }
+        for (String key : signatureKeys) {
+            if (!fields.hasKey(key)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,100 @@
+package com.logparser.parser;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Routes a tokenized line to its parser by looking at each field key once. Every
+ * signature key declared by the parsers gets one bit; keys are matched by length and
+ * first character before the remaining characters are compared, and the first parser
+ * (in registration order) whose bits are all set wins.
+ */
+public class LogTypeClassifier {
+    private final LogParser[] parsers;
+    private final long[] requiredKeys;
+    private final SignatureKey[][] keysByLength;
+
+    public LogTypeClassifier(List<LogParser> parsers) {
+        this.parsers = parsers.toArray(new LogParser[0]);
+        this.requiredKeys = new long[parsers.size()];
+
+        List<String> keys = new ArrayList<>();
+        int maxLength = 0;
+        for (int i = 0; i < parsers.size(); i++) {
+            for (String key : parsers.get(i).getSignatureKeys()) {
+                int bit = keys.indexOf(key);
+                if (bit < 0) {
+                    bit = keys.size();
+                    if (bit == Long.SIZE) {
+                        throw new IllegalArgumentException(
+                                "At most " + Long.SIZE + " distinct signature keys are supported");
+                    }
+                    keys.add(key);
+                    maxLength = Math.max(maxLength, key.length());
+                }
+                requiredKeys[i] |= 1L << bit;
+            }
+        }
+
+        List<List<SignatureKey>> byLength = new ArrayList<>();
+        for (int i = 0; i <= maxLength; i++) {
+            byLength.add(new ArrayList<>());
+        }
+        for (int bit = 0; bit < keys.size(); bit++) {
+            String key = keys.get(bit);
+            byLength.get(key.length()).add(new SignatureKey(key, 1L << bit));
+        }
+        keysByLength = new SignatureKey[maxLength + 1][];
+        for (int i = 0; i <= maxLength; i++) {
+            keysByLength[i] = byLength.get(i).toArray(new SignatureKey[0]);
+        }
+    }
+
+    public LogParser classify(LineFields fields) {
+        CharSequence line = fields.getLine();
+        long seen = 0;
+        for (int field = 0; field < fields.size(); field++) {
+            int start = fields.keyStart(field);
+            int length = fields.keyEnd(field) - start;
+            if (length < keysByLength.length) {
+                for (SignatureKey candidate : keysByLength[length]) {
+                    if (candidate.matches(line, start)) {
+                        seen |= candidate.bit;
+                        break;
+                    }
+                }
+            }
+        }
+
+        for (int i = 0; i < parsers.length; i++) {
+            if (requiredKeys[i] == 0) {
+                // Parsers without signature keys still get to inspect the line themselves
+                if (parsers[i].canParse(fields)) {
+                    return parsers[i];
+                }
+            } else if ((seen & requiredKeys[i]) == requiredKeys[i]) {
+                return parsers[i];
+            }
+        }
+        return null;
+    }
+
+    private static class SignatureKey {
+        final String key;
+        final long bit;
+
+        SignatureKey(String key, long bit) {
+            this.key = key;
+            this.bit = bit;
+        }
+
+        boolean matches(CharSequence line, int start) {
+            for (int i = 0; i < key.length(); i++) {
+                if (line.charAt(start + i) != key.charAt(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
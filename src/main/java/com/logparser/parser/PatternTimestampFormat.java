@@ -0,0 +1,51 @@
+package com.logparser.parser;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.TemporalAccessor;
+
+/**
+ * Timestamps in a {@link DateTimeFormatter} pattern such as {@code dd/MMM/yyyy:HH:mm:ss Z}.
+ * Only a repeat of the last text is cached; there is no fixed layout to find the second in.
+ */
+class PatternTimestampFormat implements TimestampFormat {
+    private static final int MAX_LENGTH = 64;
+
+    private final DateTimeFormatter formatter;
+    private final char[] lastText = new char[MAX_LENGTH];
+    private int lastLength = -1;
+    private Instant lastInstant;
+
+    PatternTimestampFormat(String pattern, ZoneId zone) {
+        this.formatter = DateTimeFormatter.ofPattern(pattern).withZone(zone);
+    }
+
+    @Override
+    public Instant parse(CharSequence text, int start, int end) {
+        int length = end - start;
+        if (length == lastLength && matchesLast(text, start)) {
+            return lastInstant;
+        }
+        TemporalAccessor parsed = formatter.parse(text.subSequence(start, end));
+        Instant instant = ZonedDateTime.from(parsed).toInstant();
+        if (length <= MAX_LENGTH) {
+            for (int i = 0; i < length; i++) {
+                lastText[i] = text.charAt(start + i);
+            }
+            lastLength = length;
+            lastInstant = instant;
+        }
+        return instant;
+    }
+
+    private boolean matchesLast(CharSequence text, int start) {
+        for (int i = lastLength - 1; i >= 0; i--) {
+            if (lastText[i] != text.charAt(start + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -6,12 +6,28 @@ import com.logparser.model.RequestLogEntry;
 import java.time.Instant;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
 
 public class RequestLogParser implements LogParser {
+    private static final Set<String> SIGNATURE_KEYS = Set.of(
+            "request_method", "request_url", "response_status", "response_time_ms");
+
+    // Entries returned by parse(LineFields) are reused per thread and only valid until the next line
+    private final ThreadLocal<ParseState> parseState;
+
+    public RequestLogParser() {
+        this(IsoTimestampFormat::new);
+    }
+
+    public RequestLogParser(Supplier<TimestampFormat> timestampFormats) {
+        this.parseState = ThreadLocal.withInitial(() -> new ParseState(timestampFormats.get()));
+    }
+
     @Override
     public LogEntry parse(String logLine) {
         Map<String, String> attributes = parseAttributes(logLine);
-        Instant timestamp = Instant.parse(attributes.get("timestamp"));
+        Instant timestamp = parseState.get().timestamps.parse(attributes.get("timestamp"));
         String host = attributes.get("host");
         return new RequestLogEntry(timestamp, host, attributes);
     }
@@ -22,6 +38,22 @@ public class RequestLogParser implements LogParser {
                && logLine.contains("response_status=") && logLine.contains("response_time_ms=");
     }
 
+    @Override
+    public LogEntry parse(LineFields fields) {
+        ParseState state = parseState.get();
+        RequestLogEntry entry = state.entry.reset(state.timestamps, fields.asMap(),
+                fields.intValue(fields.indexOf("response_status")),
+                fields.intValue(fields.indexOf("response_time_ms")));
+        fields.getValue("request_url", entry.getRequestUrlField());
+        fields.getValue("timestamp", entry.getTimestampField());
+        return entry;
+    }
+
+    @Override
+    public Set<String> getSignatureKeys() {
+        return SIGNATURE_KEYS;
+    }
+
     private Map<String, String> parseAttributes(String logLine) {
         Map<String, String> attributes = new HashMap<>();
         StringBuilder currentPart = new StringBuilder();
@@ -47,6 +79,15 @@ public class RequestLogParser implements LogParser {
         return attributes;
     }
 
+    private static class ParseState {
+        final RequestLogEntry entry = new RequestLogEntry();
+        final TimestampFormat timestamps;
+
+        ParseState(TimestampFormat timestamps) {
+            this.timestamps = timestamps;
+        }
+    }
+
     private void processPart(String part, Map<String, String> attributes) {
         if (!part.trim().isEmpty()) {
             String[] keyValue = part.split("=", 2);
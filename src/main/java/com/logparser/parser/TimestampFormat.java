@@ -0,0 +1,42 @@
+package com.logparser.parser;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.function.Supplier;
+
+/**
+ * Turns the text of a {@code timestamp} field into an {@link Instant}. Implementations
+ * cache recent results and are therefore not thread-safe; every parsing thread gets its
+ * own instance from the factory returned by {@link #factory(String, ZoneId)}.
+ */
+public interface TimestampFormat {
+    /** @throws java.time.format.DateTimeParseException if the text is not in this format */
+    Instant parse(CharSequence text, int start, int end);
+
+    default Instant parse(CharSequence text) {
+        return parse(text, 0, text.length());
+    }
+
+    /**
+     * Resolves a format name: {@code iso} (ISO-8601 instants, the default), {@code epoch}
+     * (seconds, optionally with a fraction), {@code epoch_millis}, or otherwise a
+     * {@link java.time.format.DateTimeFormatter} pattern read in {@code zone} unless it
+     * carries its own offset.
+     *
+     * @throws IllegalArgumentException if the pattern is invalid
+     */
+    static Supplier<TimestampFormat> factory(String name, ZoneId zone) {
+        switch (name) {
+            case "iso":
+                return IsoTimestampFormat::new;
+            case "epoch":
+                return () -> new EpochTimestampFormat(false);
+            case "epoch_millis":
+                return () -> new EpochTimestampFormat(true);
+            default:
+                // Fail on a bad pattern before any line is read
+                new PatternTimestampFormat(name, zone);
+                return () -> new PatternTimestampFormat(name, zone);
+        }
+    }
+}
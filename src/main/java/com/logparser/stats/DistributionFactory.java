@@ -0,0 +1,57 @@
+package com.logparser.stats;
+
+/**
+ * Creates the sample collections used by the aggregators, so one setting switches every
+ * aggregator between exact percentiles and bounded-memory sketches. Exact distributions
+ * can share a {@link MemoryBudget} to spill samples to disk past it.
+ */
+public class DistributionFactory {
+    public static final double DEFAULT_RELATIVE_ERROR = 0.01;
+
+    private final PercentileMode mode;
+    private final double relativeError;
+    private final MemoryBudget memoryBudget;
+
+    public DistributionFactory(PercentileMode mode, double relativeError) {
+        this(mode, relativeError, null);
+    }
+
+    private DistributionFactory(PercentileMode mode, double relativeError, MemoryBudget memoryBudget) {
+        if (!(relativeError > 0 && relativeError < 1)) {
+            throw new IllegalArgumentException("Relative error must be between 0 and 1: " + relativeError);
+        }
+        this.mode = mode;
+        this.relativeError = relativeError;
+        this.memoryBudget = memoryBudget;
+    }
+
+    /** The same settings, with exact distributions spilling past {@code budget}; null for none. */
+    public DistributionFactory withMemoryBudget(MemoryBudget budget) {
+        return new DistributionFactory(mode, relativeError, budget);
+    }
+
+    public static DistributionFactory exact() {
+        return new DistributionFactory(PercentileMode.EXACT, DEFAULT_RELATIVE_ERROR);
+    }
+
+    public PercentileMode getMode() {
+        return mode;
+    }
+
+    public double getRelativeError() {
+        return relativeError;
+    }
+
+    // Null when exact distributions keep every sample in memory
+    public MemoryBudget getMemoryBudget() {
+        return memoryBudget;
+    }
+
+    public IntDistribution newIntDistribution() {
+        return mode == PercentileMode.SKETCH ? new IntHistogram(relativeError) : new ExactIntDistribution(memoryBudget);
+    }
+
+    public DoubleDistribution newDoubleDistribution() {
+        return mode == PercentileMode.SKETCH ? new DoubleSketch(relativeError) : new ExactDoubleDistribution(memoryBudget);
+    }
+}
@@ -0,0 +1,17 @@
+package com.logparser.stats;
+
+import java.io.DataInput;
+import java.io.IOException;
+
+final class DistributionStates {
+    private DistributionStates() {
+    }
+
+    static void expectTag(DataInput in, byte expected) throws IOException {
+        byte tag = in.readByte();
+        if (tag != expected) {
+            throw new IOException("Distribution state has type " + tag + " but " + expected
+                    + " was expected; was it written with different percentile settings?");
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package com.logparser.stats;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Collects double samples (such as APM metric values) and answers the statistics
+ * reported in {@code apm.json}.
+ */
+public interface DoubleDistribution {
+    void add(double value);
+    void merge(DoubleDistribution other);
+    long count();
+    double min();
+    double max();
+    double median();
+    double average();
+
+    // Nearest-rank, as for IntDistribution
+    double percentile(int percentile);
+
+    void writeState(DataOutput out) throws IOException;
+
+    // Adds the samples from a state written by writeState to this distribution
+    void readState(DataInput in) throws IOException;
+}
@@ -0,0 +1,290 @@
+package com.logparser.stats;
+
+import com.logparser.io.StateIO;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * A DDSketch-style quantile sketch for doubles. Positive and negative values fall into
+ * logarithmic buckets {@code ceil(log_gamma(|v|))} with {@code gamma = (1 + a) / (1 - a)},
+ * so any reported quantile is within relative error {@code a} of a sample at the
+ * requested rank. If a store would exceed {@code maxBuckets}, its smallest-magnitude
+ * buckets are collapsed together, which only affects accuracy for the lowest quantiles.
+ * Count, sum, min and max are exact, so the reported average is exact too.
+ */
+public class DoubleSketch implements DoubleDistribution {
+    static final byte STATE_TAG = 4;
+    private static final int DEFAULT_MAX_BUCKETS = 2048;
+    // Magnitudes below this are counted as zero
+    private static final double MIN_INDEXABLE = 1e-9;
+
+    private final double relativeError;
+    private final double gamma;
+    private final double logGamma;
+    private final int maxBuckets;
+    private final BucketStore positive;
+    private final BucketStore negative;
+    private long zeroCount;
+    private long count;
+    private double sum;
+    private double min = Double.POSITIVE_INFINITY;
+    private double max = Double.NEGATIVE_INFINITY;
+
+    public DoubleSketch(double relativeError) {
+        this(relativeError, DEFAULT_MAX_BUCKETS);
+    }
+
+    public DoubleSketch(double relativeError, int maxBuckets) {
+        if (!(relativeError > 0 && relativeError < 1)) {
+            throw new IllegalArgumentException("Relative error must be between 0 and 1: " + relativeError);
+        }
+        this.relativeError = relativeError;
+        this.gamma = (1 + relativeError) / (1 - relativeError);
+        this.logGamma = Math.log(gamma);
+        this.maxBuckets = maxBuckets;
+        this.positive = new BucketStore(maxBuckets);
+        this.negative = new BucketStore(maxBuckets);
+    }
+
+    public double getRelativeError() {
+        return relativeError;
+    }
+
+    @Override
+    public void add(double value) {
+        if (value > MIN_INDEXABLE) {
+            positive.add(indexOf(value), 1);
+        } else if (value < -MIN_INDEXABLE) {
+            negative.add(indexOf(-value), 1);
+        } else {
+            zeroCount++;
+        }
+        count++;
+        sum += value;
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+    }
+
+    @Override
+    public void merge(DoubleDistribution other) {
+        if (!(other instanceof DoubleSketch) || ((DoubleSketch) other).gamma != gamma
+                || ((DoubleSketch) other).maxBuckets != maxBuckets) {
+            throw new IllegalArgumentException("Can only merge sketches with the same precision");
+        }
+        DoubleSketch sketch = (DoubleSketch) other;
+        positive.merge(sketch.positive);
+        negative.merge(sketch.negative);
+        zeroCount += sketch.zeroCount;
+        count += sketch.count;
+        sum += sketch.sum;
+        min = Math.min(min, sketch.min);
+        max = Math.max(max, sketch.max);
+    }
+
+    @Override
+    public long count() {
+        return count;
+    }
+
+    @Override
+    public double min() {
+        checkNotEmpty();
+        return min;
+    }
+
+    @Override
+    public double max() {
+        checkNotEmpty();
+        return max;
+    }
+
+    @Override
+    public double median() {
+        checkNotEmpty();
+        if (count % 2 == 0) {
+            return (valueAtRank(count / 2) + valueAtRank(count / 2 + 1)) / 2.0;
+        }
+        return valueAtRank(count / 2 + 1);
+    }
+
+    @Override
+    public double average() {
+        checkNotEmpty();
+        return sum / count;
+    }
+
+    @Override
+    public double percentile(int percentile) {
+        return quantile(percentile / 100.0);
+    }
+
+    public double quantile(double quantile) {
+        checkNotEmpty();
+        return valueAtRank(Math.max(1, (long) Math.ceil(quantile * count)));
+    }
+
+    @Override
+    public void writeState(DataOutput out) throws IOException {
+        out.writeByte(STATE_TAG);
+        out.writeDouble(relativeError);
+        StateIO.writeVarInt(out, maxBuckets);
+        StateIO.writeVarLong(out, count);
+        StateIO.writeVarLong(out, zeroCount);
+        out.writeDouble(sum);
+        out.writeDouble(min);
+        out.writeDouble(max);
+        positive.writeState(out);
+        negative.writeState(out);
+    }
+
+    @Override
+    public void readState(DataInput in) throws IOException {
+        DistributionStates.expectTag(in, STATE_TAG);
+        if (in.readDouble() != relativeError || StateIO.readVarInt(in) != maxBuckets) {
+            throw new IOException("Sketch state was written with a different precision");
+        }
+        count += StateIO.readVarLong(in);
+        zeroCount += StateIO.readVarLong(in);
+        sum += in.readDouble();
+        min = Math.min(min, in.readDouble());
+        max = Math.max(max, in.readDouble());
+        positive.readState(in);
+        negative.readState(in);
+    }
+
+    // Rank is 1-based over the samples in ascending order
+    private double valueAtRank(long rank) {
+        if (rank <= 1) {
+            return min;
+        }
+        if (rank >= count) {
+            return max;
+        }
+        long seen = 0;
+        // Negative values: largest magnitude first
+        for (int i = negative.counts.length - 1; i >= 0; i--) {
+            seen += negative.counts[i];
+            if (seen >= rank) {
+                return clamp(-valueOf(negative.offset + i));
+            }
+        }
+        seen += zeroCount;
+        if (seen >= rank) {
+            return clamp(0);
+        }
+        for (int i = 0; i < positive.counts.length; i++) {
+            seen += positive.counts[i];
+            if (seen >= rank) {
+                return clamp(valueOf(positive.offset + i));
+            }
+        }
+        return max;
+    }
+
+    private double clamp(double value) {
+        return Math.max(min, Math.min(max, value));
+    }
+
+    private int indexOf(double magnitude) {
+        return (int) Math.ceil(Math.log(magnitude) / logGamma);
+    }
+
+    private double valueOf(int index) {
+        return 2 * Math.pow(gamma, index) / (gamma + 1);
+    }
+
+    private void checkNotEmpty() {
+        if (count == 0) {
+            throw new IllegalStateException("No samples recorded");
+        }
+    }
+
+    private static class BucketStore {
+        private final int maxBuckets;
+        private long[] counts = new long[0];
+        private int offset;
+
+        BucketStore(int maxBuckets) {
+            this.maxBuckets = maxBuckets;
+        }
+
+        void add(int index, long n) {
+            if (counts.length == 0) {
+                counts = new long[8];
+                offset = index;
+            }
+            if (index < offset) {
+                growDown(index);
+            } else if (index >= offset + counts.length) {
+                growUp(index);
+            }
+            counts[Math.max(0, index - offset)] += n;
+        }
+
+        void merge(BucketStore other) {
+            for (int i = 0; i < other.counts.length; i++) {
+                if (other.counts[i] != 0) {
+                    add(other.offset + i, other.counts[i]);
+                }
+            }
+        }
+
+        void writeState(DataOutput out) throws IOException {
+            StateIO.writeSignedVarInt(out, offset);
+            StateIO.writeVarInt(out, counts.length);
+            for (long bucket : counts) {
+                StateIO.writeVarLong(out, bucket);
+            }
+        }
+
+        void readState(DataInput in) throws IOException {
+            int stateOffset = StateIO.readSignedVarInt(in);
+            int length = StateIO.readVarInt(in);
+            if (length > maxBuckets) {
+                throw new IOException("Sketch store has too many buckets: " + length);
+            }
+            for (int i = 0; i < length; i++) {
+                long bucket = StateIO.readVarLong(in);
+                if (bucket != 0) {
+                    add(stateOffset + i, bucket);
+                }
+            }
+        }
+
+        private void growDown(int index) {
+            int newLength = offset + counts.length - index;
+            if (newLength > maxBuckets) {
+                // Lowest buckets are collapsed into the first one we can keep
+                newLength = Math.max(counts.length, maxBuckets);
+                index = offset + counts.length - newLength;
+            }
+            long[] grown = new long[newLength];
+            System.arraycopy(counts, 0, grown, offset - index, counts.length);
+            counts = grown;
+            offset = index;
+        }
+
+        private void growUp(int index) {
+            int newLength = index - offset + 1;
+            if (newLength > maxBuckets) {
+                int drop = newLength - maxBuckets;
+                long collapsed = 0;
+                for (int i = 0; i < Math.min(drop + 1, counts.length); i++) {
+                    collapsed += counts[i];
+                }
+                long[] shifted = new long[maxBuckets];
+                if (drop < counts.length) {
+                    System.arraycopy(counts, drop, shifted, 0, counts.length - drop);
+                }
+                shifted[0] = collapsed;
+                counts = shifted;
+                offset += drop;
+                return;
+            }
+            counts = Arrays.copyOf(counts, Math.max(newLength, Math.min(counts.length * 2, maxBuckets)));
+        }
+    }
+}
@@ -0,0 +1,234 @@
+package com.logparser.stats;
+
+import com.logparser.io.StateIO;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.PrimitiveIterator;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.StreamSupport;
+
+/**
+ * Keeps every sample in a growable {@code double[]}. The samples are sorted once when a
+ * statistic is first requested: the average is summed in sorted order so it does not
+ * depend on the order samples arrived in (and matches across parallel runs), which needs
+ * the full ordering anyway.
+ * <p>
+ * Under a {@link MemoryBudget}, the array is spilled as a sorted run instead of grown
+ * once the budget is used up; statistics then merge the runs with the samples left, in
+ * the same order, so they come out the same to the last bit.
+ */
+public class ExactDoubleDistribution implements DoubleDistribution {
+    static final byte STATE_TAG = 3;
+    private double[] values = new double[16];
+    private int size;
+    private boolean sorted = true;
+    private final SortedRuns spilled;
+    private MemoryBudget.Reservation reservation;
+
+    public ExactDoubleDistribution() {
+        this(null);
+    }
+
+    /** @param budget null keeps every sample in memory */
+    public ExactDoubleDistribution(MemoryBudget budget) {
+        this.spilled = budget == null ? null : new SortedRuns(budget, Long.BYTES);
+    }
+
+    @Override
+    public void add(double value) {
+        if (size == values.length) {
+            grow(size + 1);
+        }
+        values[size++] = value;
+        sorted = false;
+    }
+
+    private void grow(int needed) {
+        if (spilled != null && size >= ExactIntDistribution.MIN_SPILL_SIZE && spilled.getBudget().isExceeded()) {
+            sort();
+            double[] sortedValues = values;
+            spilled.spill(index -> SortedRuns.sortableBits(sortedValues[index]), size);
+            size = 0;
+            values = new double[Math.min(values.length, ExactIntDistribution.MIN_SPILL_SIZE)];
+            if (needed <= values.length) {
+                reserve();
+                return;
+            }
+        }
+        values = Arrays.copyOf(values, Math.max(needed, values.length * 2));
+        reserve();
+    }
+
+    private void reserve() {
+        if (spilled != null) {
+            if (reservation == null) {
+                reservation = spilled.getBudget().newReservation(this);
+            }
+            reservation.resize((long) values.length * Double.BYTES);
+        }
+    }
+
+    private boolean hasSpilled() {
+        return spilled != null && !spilled.isEmpty();
+    }
+
+    // Every sample in order, as sortable bits
+    private SortedRuns.Merge merge() {
+        if (size > 0) {
+            sort();
+        }
+        double[] sortedValues = values;
+        return spilled.merge(index -> SortedRuns.sortableBits(sortedValues[index]), size);
+    }
+
+    @Override
+    public void merge(DoubleDistribution other) {
+        if (!(other instanceof ExactDoubleDistribution)) {
+            throw new IllegalArgumentException("Cannot merge " + other.getClass().getSimpleName()
+                    + " into ExactDoubleDistribution");
+        }
+        ExactDoubleDistribution distribution = (ExactDoubleDistribution) other;
+        if (distribution.hasSpilled()) {
+            if (spilled != null && spilled.getBudget() == distribution.spilled.getBudget()) {
+                spilled.addAll(distribution.spilled);
+            } else {
+                SortedRuns.Merge merge = distribution.spilled.merge(index -> 0, 0);
+                while (merge.hasNext()) {
+                    add(SortedRuns.fromSortableBits(merge.next()));
+                }
+            }
+        }
+        if (size + distribution.size > values.length) {
+            grow(size + distribution.size);
+        }
+        System.arraycopy(distribution.values, 0, values, size, distribution.size);
+        size += distribution.size;
+        sorted = false;
+    }
+
+    @Override
+    public long count() {
+        return spilled == null ? size : size + spilled.count();
+    }
+
+    @Override
+    public double min() {
+        if (hasSpilled()) {
+            long min = spilled.minKey();
+            if (size > 0) {
+                sort();
+                min = Math.min(min, SortedRuns.sortableBits(values[0]));
+            }
+            return SortedRuns.fromSortableBits(min);
+        }
+        sort();
+        return values[0];
+    }
+
+    @Override
+    public double max() {
+        if (hasSpilled()) {
+            long max = spilled.maxKey();
+            if (size > 0) {
+                sort();
+                max = Math.max(max, SortedRuns.sortableBits(values[size - 1]));
+            }
+            return SortedRuns.fromSortableBits(max);
+        }
+        sort();
+        return values[size - 1];
+    }
+
+    @Override
+    public double median() {
+        if (hasSpilled()) {
+            long count = count();
+            SortedRuns.Merge merge = merge();
+            if (count % 2 == 0) {
+                double lower = SortedRuns.fromSortableBits(merge.skipThenNext(count / 2 - 1));
+                return (lower + SortedRuns.fromSortableBits(merge.next())) / 2.0;
+            }
+            return SortedRuns.fromSortableBits(merge.skipThenNext(count / 2));
+        }
+        sort();
+        int middle = size / 2;
+        if (size % 2 == 0) {
+            return (values[middle - 1] + values[middle]) / 2.0;
+        }
+        return values[middle];
+    }
+
+    @Override
+    public double percentile(int percentile) {
+        if (hasSpilled()) {
+            long index = Math.max(0, (long) Math.ceil(percentile / 100.0 * count()) - 1);
+            return SortedRuns.fromSortableBits(merge().skipThenNext(index));
+        }
+        sort();
+        return values[Math.max(0, (int) Math.ceil(percentile / 100.0 * size) - 1)];
+    }
+
+    @Override
+    public double average() {
+        if (hasSpilled()) {
+            // Summed by a stream as below, so the compensated sum is the same
+            SortedRuns.Merge merge = merge();
+            PrimitiveIterator.OfDouble samples = new PrimitiveIterator.OfDouble() {
+                @Override
+                public boolean hasNext() {
+                    return merge.hasNext();
+                }
+
+                @Override
+                public double nextDouble() {
+                    return SortedRuns.fromSortableBits(merge.next());
+                }
+            };
+            long count = count();
+            return StreamSupport.doubleStream(Spliterators.spliterator(samples, count, Spliterator.ORDERED), false)
+                    .sum() / count;
+        }
+        sort();
+        return Arrays.stream(values, 0, size).sum() / size;
+    }
+
+    @Override
+    public void writeState(DataOutput out) throws IOException {
+        out.writeByte(STATE_TAG);
+        if (hasSpilled()) {
+            StateIO.writeVarInt(out, Math.toIntExact(count()));
+            SortedRuns.Merge merge = merge();
+            while (merge.hasNext()) {
+                out.writeDouble(SortedRuns.fromSortableBits(merge.next()));
+            }
+            return;
+        }
+        StateIO.writeVarInt(out, size);
+        for (int i = 0; i < size; i++) {
+            out.writeDouble(values[i]);
+        }
+    }
+
+    @Override
+    public void readState(DataInput in) throws IOException {
+        DistributionStates.expectTag(in, STATE_TAG);
+        int count = StateIO.readVarInt(in);
+        for (int i = 0; i < count; i++) {
+            add(in.readDouble());
+        }
+    }
+
+    private void sort() {
+        if (size == 0) {
+            throw new IllegalStateException("No samples recorded");
+        }
+        if (!sorted) {
+            Arrays.sort(values, 0, size);
+            sorted = true;
+        }
+    }
+}
@@ -0,0 +1,231 @@
+package com.logparser.stats;
+
+import com.logparser.io.StateIO;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Keeps every sample in a growable {@code int[]}. Percentiles come from a counting pass
+ * when the samples span a small range, which is the usual case for latencies, and from
+ * quickselect otherwise, so the samples are never fully sorted.
+ * <p>
+ * Under a {@link MemoryBudget}, the array is spilled as a sorted run instead of grown
+ * once the budget is used up, and percentiles merge the runs with the samples left.
+ */
+public class ExactIntDistribution implements IntDistribution {
+    static final byte STATE_TAG = 1;
+    private static final int MAX_COUNTING_RANGE = 1 << 20;
+    // Smaller arrays are not worth a run of their own; low enough that many routes of
+    // moderate size still spill once the budget is used up
+    static final int MIN_SPILL_SIZE = 1 << 10;
+
+    private int[] values = new int[16];
+    private int size;
+    private int min = Integer.MAX_VALUE;
+    private int max = Integer.MIN_VALUE;
+    private int[] counts;
+    private final SortedRuns spilled;
+    private MemoryBudget.Reservation reservation;
+
+    public ExactIntDistribution() {
+        this(null);
+    }
+
+    /** @param budget null keeps every sample in memory */
+    public ExactIntDistribution(MemoryBudget budget) {
+        this.spilled = budget == null ? null : new SortedRuns(budget, Integer.BYTES);
+    }
+
+    @Override
+    public void add(int value) {
+        if (size == values.length) {
+            grow(size + 1);
+        }
+        values[size++] = value;
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+        counts = null;
+    }
+
+    private void grow(int needed) {
+        if (spilled != null && size >= MIN_SPILL_SIZE && spilled.getBudget().isExceeded()) {
+            Arrays.sort(values, 0, size);
+            int[] sorted = values;
+            spilled.spill(index -> sorted[index], size);
+            size = 0;
+            values = new int[Math.min(values.length, MIN_SPILL_SIZE)];
+            if (needed <= values.length) {
+                reserve();
+                return;
+            }
+        }
+        values = Arrays.copyOf(values, Math.max(needed, values.length * 2));
+        reserve();
+    }
+
+    private void reserve() {
+        if (spilled != null) {
+            if (reservation == null) {
+                reservation = spilled.getBudget().newReservation(this);
+            }
+            reservation.resize((long) values.length * Integer.BYTES);
+        }
+    }
+
+    @Override
+    public void merge(IntDistribution other) {
+        if (!(other instanceof ExactIntDistribution)) {
+            throw new IllegalArgumentException("Cannot merge " + other.getClass().getSimpleName()
+                    + " into ExactIntDistribution");
+        }
+        ExactIntDistribution distribution = (ExactIntDistribution) other;
+        if (distribution.spilled != null && !distribution.spilled.isEmpty()) {
+            if (spilled != null && spilled.getBudget() == distribution.spilled.getBudget()) {
+                spilled.addAll(distribution.spilled);
+            } else {
+                SortedRuns.Merge merge = distribution.spilled.merge(index -> 0, 0);
+                while (merge.hasNext()) {
+                    add((int) merge.next());
+                }
+            }
+        }
+        if (size + distribution.size > values.length) {
+            grow(size + distribution.size);
+        }
+        System.arraycopy(distribution.values, 0, values, size, distribution.size);
+        size += distribution.size;
+        min = Math.min(min, distribution.min);
+        max = Math.max(max, distribution.max);
+        counts = null;
+    }
+
+    @Override
+    public long count() {
+        return spilled == null ? size : size + spilled.count();
+    }
+
+    @Override
+    public int min() {
+        checkNotEmpty();
+        return min;
+    }
+
+    @Override
+    public int max() {
+        checkNotEmpty();
+        return max;
+    }
+
+    @Override
+    public int percentile(int percentile) {
+        checkNotEmpty();
+        if (spilled != null && !spilled.isEmpty()) {
+            long index = (long) Math.ceil(percentile / 100.0 * count()) - 1;
+            return (int) merge().skipThenNext(index);
+        }
+        int index = (int) Math.ceil(percentile / 100.0 * size) - 1;
+        long range = (long) max - min + 1;
+        if (range <= MAX_COUNTING_RANGE && range <= Math.max(1024, size)) {
+            return countingSelect(index);
+        }
+        return select(values, size, index);
+    }
+
+    @Override
+    public void writeState(DataOutput out) throws IOException {
+        out.writeByte(STATE_TAG);
+        if (spilled != null && !spilled.isEmpty()) {
+            StateIO.writeVarInt(out, Math.toIntExact(count()));
+            SortedRuns.Merge merge = merge();
+            while (merge.hasNext()) {
+                StateIO.writeSignedVarInt(out, (int) merge.next());
+            }
+            return;
+        }
+        StateIO.writeVarInt(out, size);
+        for (int i = 0; i < size; i++) {
+            StateIO.writeSignedVarInt(out, values[i]);
+        }
+    }
+
+    // Sorting the samples still in memory is harmless: nothing else relies on their order
+    private SortedRuns.Merge merge() {
+        Arrays.sort(values, 0, size);
+        int[] sorted = values;
+        return spilled.merge(index -> sorted[index], size);
+    }
+
+    @Override
+    public void readState(DataInput in) throws IOException {
+        DistributionStates.expectTag(in, STATE_TAG);
+        int count = StateIO.readVarInt(in);
+        for (int i = 0; i < count; i++) {
+            add(StateIO.readSignedVarInt(in));
+        }
+    }
+
+    private int countingSelect(int index) {
+        if (counts == null) {
+            counts = new int[max - min + 1];
+            for (int i = 0; i < size; i++) {
+                counts[values[i] - min]++;
+            }
+        }
+        int seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen > index) {
+                return min + i;
+            }
+        }
+        return max;
+    }
+
+    // Hoare-style quickselect; leaves the array partially ordered, which later calls reuse
+    private static int select(int[] values, int size, int index) {
+        int left = 0;
+        int right = size - 1;
+        while (left < right) {
+            int middle = (left + right) >>> 1;
+            int pivot = medianOfThree(values[left], values[middle], values[right]);
+            int i = left;
+            int j = right;
+            while (i <= j) {
+                while (values[i] < pivot) {
+                    i++;
+                }
+                while (values[j] > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    int swap = values[i];
+                    values[i] = values[j];
+                    values[j] = swap;
+                    i++;
+                    j--;
+                }
+            }
+            if (index <= j) {
+                right = j;
+            } else if (index >= i) {
+                left = i;
+            } else {
+                return values[index];
+            }
+        }
+        return values[index];
+    }
+
+    private static int medianOfThree(int a, int b, int c) {
+        return Math.max(Math.min(a, b), Math.min(Math.max(a, b), c));
+    }
+
+    private void checkNotEmpty() {
+        if (count() == 0) {
+            throw new IllegalStateException("No samples recorded");
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package com.logparser.stats;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Collects integer samples (such as response times) and answers min/max/percentile
+ * queries. Percentiles use the nearest-rank definition: the value at rank
+ * {@code ceil(p / 100 * count)} of the sorted samples.
+ */
+public interface IntDistribution {
+    void add(int value);
+    void merge(IntDistribution other);
+    long count();
+    int min();
+    int max();
+    int percentile(int percentile);
+
+    void writeState(DataOutput out) throws IOException;
+
+    // Adds the samples from a state written by writeState to this distribution
+    void readState(DataInput in) throws IOException;
+}
@@ -0,0 +1,188 @@
+package com.logparser.stats;
+
+import com.logparser.io.StateIO;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * An HDR-style log-linear histogram for non-negative integers. Values below
+ * {@code 2^subBucketBits} get a bucket each; above that, every power-of-two range is split
+ * into {@code 2^(subBucketBits - 1)} equal buckets. Reporting the middle of a bucket keeps
+ * every percentile within a relative error of {@code 2^-subBucketBits} of a sample at the
+ * requested rank, while memory stays bounded by the number of buckets (at most a few
+ * thousand longs) no matter how many samples are added. Min and max are tracked exactly,
+ * and negative values are counted in the zero bucket.
+ */
+public class IntHistogram implements IntDistribution {
+    static final byte STATE_TAG = 2;
+    private final int subBucketBits;
+    private final int subBucketCount;
+    private final int subBucketHalfCount;
+    private long[] counts = new long[0];
+    private long count;
+    private int min = Integer.MAX_VALUE;
+    private int max = Integer.MIN_VALUE;
+
+    public IntHistogram(double relativeError) {
+        if (!(relativeError > 0 && relativeError < 1)) {
+            throw new IllegalArgumentException("Relative error must be between 0 and 1: " + relativeError);
+        }
+        this.subBucketBits = Math.max(1, (int) Math.ceil(Math.log(1 / relativeError) / Math.log(2)));
+        this.subBucketCount = 1 << subBucketBits;
+        this.subBucketHalfCount = subBucketCount / 2;
+    }
+
+    public double getRelativeError() {
+        return 1.0 / subBucketCount;
+    }
+
+    @Override
+    public void add(int value) {
+        int index = indexOf(Math.max(0, value));
+        if (index >= counts.length) {
+            counts = Arrays.copyOf(counts, Math.max(index + 1, Math.min(counts.length * 2, maxIndex() + 1)));
+        }
+        counts[index]++;
+        count++;
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+    }
+
+    @Override
+    public void merge(IntDistribution other) {
+        if (!(other instanceof IntHistogram) || ((IntHistogram) other).subBucketBits != subBucketBits) {
+            throw new IllegalArgumentException("Can only merge histograms with the same precision");
+        }
+        IntHistogram histogram = (IntHistogram) other;
+        if (histogram.counts.length > counts.length) {
+            counts = Arrays.copyOf(counts, histogram.counts.length);
+        }
+        for (int i = 0; i < histogram.counts.length; i++) {
+            counts[i] += histogram.counts[i];
+        }
+        count += histogram.count;
+        min = Math.min(min, histogram.min);
+        max = Math.max(max, histogram.max);
+    }
+
+    @Override
+    public long count() {
+        return count;
+    }
+
+    @Override
+    public int min() {
+        checkNotEmpty();
+        return min;
+    }
+
+    @Override
+    public int max() {
+        checkNotEmpty();
+        return max;
+    }
+
+    @Override
+    public int percentile(int percentile) {
+        checkNotEmpty();
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * count));
+        if (rank >= count) {
+            return max;
+        }
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return (int) Math.max(min, Math.min(max, middleOf(i)));
+            }
+        }
+        return max;
+    }
+
+    @Override
+    public void writeState(DataOutput out) throws IOException {
+        out.writeByte(STATE_TAG);
+        out.writeByte(subBucketBits);
+        StateIO.writeVarLong(out, count);
+        if (count == 0) {
+            return;
+        }
+        StateIO.writeSignedVarInt(out, min);
+        StateIO.writeSignedVarInt(out, max);
+        int nonEmpty = 0;
+        for (long bucket : counts) {
+            if (bucket != 0) {
+                nonEmpty++;
+            }
+        }
+        // Sparse: gap to the previous non-empty bucket, then its count
+        StateIO.writeVarInt(out, nonEmpty);
+        int previous = 0;
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] != 0) {
+                StateIO.writeVarInt(out, i - previous);
+                StateIO.writeVarLong(out, counts[i]);
+                previous = i;
+            }
+        }
+    }
+
+    @Override
+    public void readState(DataInput in) throws IOException {
+        DistributionStates.expectTag(in, STATE_TAG);
+        if (in.readByte() != subBucketBits) {
+            throw new IOException("Histogram state was written with a different precision");
+        }
+        long stateCount = StateIO.readVarLong(in);
+        if (stateCount == 0) {
+            return;
+        }
+        min = Math.min(min, StateIO.readSignedVarInt(in));
+        max = Math.max(max, StateIO.readSignedVarInt(in));
+        int nonEmpty = StateIO.readVarInt(in);
+        int index = 0;
+        for (int i = 0; i < nonEmpty; i++) {
+            index += StateIO.readVarInt(in);
+            if (index > maxIndex()) {
+                throw new IOException("Histogram bucket out of range: " + index);
+            }
+            if (index >= counts.length) {
+                counts = Arrays.copyOf(counts, index + 1);
+            }
+            counts[index] += StateIO.readVarLong(in);
+        }
+        count += stateCount;
+    }
+
+    int indexOf(int value) {
+        if (value < subBucketCount) {
+            return value;
+        }
+        int shift = (31 - Integer.numberOfLeadingZeros(value)) - (subBucketBits - 1);
+        int subBucket = value >>> shift;
+        return subBucketCount + (shift - 1) * subBucketHalfCount + (subBucket - subBucketHalfCount);
+    }
+
+    long middleOf(int index) {
+        if (index < subBucketCount) {
+            return index;
+        }
+        int shift = (index - subBucketCount) / subBucketHalfCount + 1;
+        long subBucket = (index - subBucketCount) % subBucketHalfCount + subBucketHalfCount;
+        long lowest = subBucket << shift;
+        return lowest + (1L << (shift - 1));
+    }
+
+    private int maxIndex() {
+        return indexOf(Integer.MAX_VALUE);
+    }
+
+    private void checkNotEmpty() {
+        if (count == 0) {
+            throw new IllegalStateException("No samples recorded");
+        }
+    }
+}
@@ -0,0 +1,195 @@
+package com.logparser.stats;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.ref.Cleaner;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/**
+ * A cap on the bytes exact distributions keep samples in, shared by every distribution of
+ * a run. A distribution that needs more room while the budget is used up sorts its samples
+ * into a run on a spill file and frees them; its statistics then merge the runs with what
+ * is still in memory, and stay exact. Thread-safe.
+ * <p>
+ * The spill file is created on the first spill and unlinked as soon as it is open, so it
+ * never outlives the process; {@link #close()} frees its space. Runs are never rewritten,
+ * so space spilled by distributions that are later dropped is only freed then.
+ */
+public final class MemoryBudget implements Closeable {
+    private static final Logger LOG = Logger.getLogger(MemoryBudget.class.getName());
+    private static final Cleaner CLEANER = Cleaner.create();
+    private static final int WRITE_BUFFER_BYTES = 64 * 1024;
+
+    private final long limit;
+    private final Path directory;
+    private final AtomicLong used = new AtomicLong();
+    private final ByteBuffer writeBuffer = ByteBuffer.allocate(WRITE_BUFFER_BYTES);
+    private FileChannel spill;
+    private volatile long spilled;
+
+    public MemoryBudget(long limit, Path directory) {
+        if (limit <= 0) {
+            throw new IllegalArgumentException("Memory budget must be positive: " + limit);
+        }
+        this.limit = limit;
+        this.directory = directory;
+    }
+
+    /**
+     * Parses a byte count with an optional {@code k}, {@code m} or {@code g} suffix,
+     * e.g. {@code 512m}.
+     *
+     * @throws IllegalArgumentException if the size is malformed or not positive
+     */
+    public static long parseSize(String size) {
+        String value = size.trim().toLowerCase(Locale.ROOT);
+        if (value.endsWith("b")) {
+            value = value.substring(0, value.length() - 1);
+        }
+        int shift = 0;
+        if (!value.isEmpty()) {
+            switch (value.charAt(value.length() - 1)) {
+                case 'k':
+                    shift = 10;
+                    break;
+                case 'm':
+                    shift = 20;
+                    break;
+                case 'g':
+                    shift = 30;
+                    break;
+                default:
+                    break;
+            }
+        }
+        try {
+            long number = Long.parseLong(shift == 0 ? value : value.substring(0, value.length() - 1));
+            if (number <= 0 || number > Long.MAX_VALUE >> shift) {
+                throw new IllegalArgumentException("Size must be positive: " + size);
+            }
+            return number << shift;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Expected a size such as 512m or 2g: " + size);
+        }
+    }
+
+    public long getLimit() {
+        return limit;
+    }
+
+    /** Bytes of samples currently held in memory by distributions under this budget. */
+    public long getUsed() {
+        return used.get();
+    }
+
+    /** Bytes written to the spill file so far. */
+    public long getSpilled() {
+        return spilled;
+    }
+
+    boolean isExceeded() {
+        return used.get() > limit;
+    }
+
+    /**
+     * The bytes one distribution holds. They are given back when the distribution is
+     * garbage collected, so dropped aggregators do not use up the budget.
+     */
+    Reservation newReservation(Object owner) {
+        Reservation reservation = new Reservation();
+        CLEANER.register(owner, reservation);
+        return reservation;
+    }
+
+    final class Reservation implements Runnable {
+        // Written by the owner; read by the cleaner once the owner is unreachable
+        private volatile long bytes;
+
+        void resize(long newBytes) {
+            used.addAndGet(newBytes - bytes);
+            bytes = newBytes;
+        }
+
+        @Override
+        public void run() {
+            used.addAndGet(-bytes);
+            bytes = 0;
+        }
+    }
+
+    /** Values by index, as sortable longs. */
+    interface Keys {
+        long key(int index);
+    }
+
+    /**
+     * Appends {@code count} keys as one contiguous run of {@code width}-byte values
+     * (4 writes each key as an int) and returns where it starts.
+     */
+    synchronized long append(Keys keys, int count, int width) throws IOException {
+        if (spill == null) {
+            Files.createDirectories(directory);
+            Path file = Files.createTempFile(directory, "log-parser-spill", ".runs");
+            spill = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                    StandardOpenOption.DELETE_ON_CLOSE);
+            LOG.info("Memory budget of " + limit + " bytes reached; spilling samples to " + file);
+        }
+        long start = spilled;
+        long position = start;
+        writeBuffer.clear();
+        for (int i = 0; i < count; i++) {
+            if (writeBuffer.remaining() < width) {
+                position += flush(position);
+            }
+            if (width == Integer.BYTES) {
+                writeBuffer.putInt((int) keys.key(i));
+            } else {
+                writeBuffer.putLong(keys.key(i));
+            }
+        }
+        position += flush(position);
+        spilled = position;
+        return start;
+    }
+
+    private int flush(long position) throws IOException {
+        writeBuffer.flip();
+        int bytes = writeBuffer.remaining();
+        while (writeBuffer.hasRemaining()) {
+            position += spill.write(writeBuffer, position);
+        }
+        writeBuffer.clear();
+        return bytes;
+    }
+
+    // Positional reads never move a shared file position, so any thread may read at once
+    void read(long position, ByteBuffer into) throws IOException {
+        FileChannel channel;
+        synchronized (this) {
+            channel = spill;
+        }
+        while (into.hasRemaining()) {
+            int read = channel.read(into, position);
+            if (read < 0) {
+                throw new IOException("Spill file ended at " + position);
+            }
+            position += read;
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (spill != null) {
+            LOG.info("Spilled " + spilled + " bytes of samples");
+            spill.close();
+            spill = null;
+        }
+    }
+}
@@ -0,0 +1,6 @@
+package com.logparser.stats;
+
+public enum PercentileMode {
+    EXACT,
+    SKETCH
+}
@@ -0,0 +1,273 @@
+package com.logparser.stats;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * The sorted runs one exact distribution has spilled to its {@link MemoryBudget}, and a
+ * k-way merge of them with the samples still in memory. Values are kept as longs that
+ * sort like the values themselves: ints as they are, doubles through
+ * {@link #sortableBits(double)}.
+ */
+final class SortedRuns {
+    private static final int READ_BUFFER_BYTES = 16 * 1024;
+    // Past this many runs they are merged into one, so a merge holds few read buffers
+    static final int MAX_RUNS = 64;
+
+    private final MemoryBudget budget;
+    private final int width;
+    private long[] offsets = new long[4];
+    private int[] counts = new int[4];
+    private long[] firstKeys = new long[4];
+    private long[] lastKeys = new long[4];
+    private int runs;
+    private long count;
+
+    SortedRuns(MemoryBudget budget, int width) {
+        this.budget = budget;
+        this.width = width;
+    }
+
+    static long sortableBits(double value) {
+        long bits = Double.doubleToLongBits(value);
+        return bits ^ ((bits >> 63) & Long.MAX_VALUE);
+    }
+
+    // The same flip undoes itself
+    static double fromSortableBits(long key) {
+        return Double.longBitsToDouble(key ^ ((key >> 63) & Long.MAX_VALUE));
+    }
+
+    MemoryBudget getBudget() {
+        return budget;
+    }
+
+    boolean isEmpty() {
+        return runs == 0;
+    }
+
+    long count() {
+        return count;
+    }
+
+    long minKey() {
+        long min = firstKeys[0];
+        for (int i = 1; i < runs; i++) {
+            min = Math.min(min, firstKeys[i]);
+        }
+        return min;
+    }
+
+    long maxKey() {
+        long max = lastKeys[0];
+        for (int i = 1; i < runs; i++) {
+            max = Math.max(max, lastKeys[i]);
+        }
+        return max;
+    }
+
+    /** Writes {@code size} keys, which must already be sorted, as a new run. */
+    void spill(MemoryBudget.Keys sorted, int size) {
+        if (size == 0) {
+            return;
+        }
+        try {
+            long offset = budget.append(sorted, size, width);
+            addRun(offset, size, sorted.key(0), sorted.key(size - 1));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not spill samples", e);
+        }
+        compactIfNeeded();
+    }
+
+    int runs() {
+        return runs;
+    }
+
+    // Rewrites every run as one; the old runs stay in the file, which is never rewritten
+    private void compactIfNeeded() {
+        if (runs < MAX_RUNS) {
+            return;
+        }
+        long first = minKey();
+        long last = maxKey();
+        int total = Math.toIntExact(count);
+        Merge merge = merge(index -> 0, 0);
+        try {
+            // append asks for the keys in index order, which is the order the merge gives them
+            long offset = budget.append(index -> merge.next(), total, width);
+            runs = 0;
+            count = 0;
+            addRun(offset, total, first, last);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not spill samples", e);
+        }
+    }
+
+    /** Shares the runs of {@code other}, which must spill to the same budget. */
+    void addAll(SortedRuns other) {
+        for (int i = 0; i < other.runs; i++) {
+            addRun(other.offsets[i], other.counts[i], other.firstKeys[i], other.lastKeys[i]);
+        }
+        compactIfNeeded();
+    }
+
+    private void addRun(long offset, int size, long firstKey, long lastKey) {
+        if (runs == offsets.length) {
+            offsets = Arrays.copyOf(offsets, runs * 2);
+            counts = Arrays.copyOf(counts, runs * 2);
+            firstKeys = Arrays.copyOf(firstKeys, runs * 2);
+            lastKeys = Arrays.copyOf(lastKeys, runs * 2);
+        }
+        offsets[runs] = offset;
+        counts[runs] = size;
+        firstKeys[runs] = firstKey;
+        lastKeys[runs] = lastKey;
+        runs++;
+        count += size;
+    }
+
+    /**
+     * All keys in order: the runs merged with {@code size} sorted in-memory keys. Each run
+     * is read through a small buffer, so a merge holds little more than one buffer per run.
+     */
+    Merge merge(MemoryBudget.Keys inMemory, int size) {
+        Merge merge = new Merge(runs + 1);
+        for (int i = 0; i < runs; i++) {
+            merge.add(new RunCursor(offsets[i], counts[i]));
+        }
+        if (size > 0) {
+            merge.add(new ArrayCursor(inMemory, size));
+        }
+        return merge;
+    }
+
+    private abstract static class Cursor {
+        long key;
+
+        // Moves to the next key; false once there is none
+        abstract boolean advance();
+    }
+
+    private final class RunCursor extends Cursor {
+        private final ByteBuffer buffer;
+        private long position;
+        private long remaining;
+
+        RunCursor(long offset, int count) {
+            this.position = offset;
+            this.remaining = count;
+            this.buffer = ByteBuffer.allocate((int) Math.min(READ_BUFFER_BYTES, (long) count * width));
+            buffer.limit(0);
+        }
+
+        @Override
+        boolean advance() {
+            if (remaining == 0) {
+                return false;
+            }
+            if (!buffer.hasRemaining()) {
+                buffer.clear();
+                buffer.limit((int) Math.min(buffer.capacity(), remaining * width));
+                try {
+                    budget.read(position, buffer);
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Could not read spilled samples", e);
+                }
+                position += buffer.limit();
+                buffer.flip();
+            }
+            remaining--;
+            key = width == Integer.BYTES ? buffer.getInt() : buffer.getLong();
+            return true;
+        }
+    }
+
+    private static final class ArrayCursor extends Cursor {
+        private final MemoryBudget.Keys keys;
+        private final int size;
+        private int index;
+
+        ArrayCursor(MemoryBudget.Keys keys, int size) {
+            this.keys = keys;
+            this.size = size;
+        }
+
+        @Override
+        boolean advance() {
+            if (index == size) {
+                return false;
+            }
+            key = keys.key(index++);
+            return true;
+        }
+    }
+
+    /** A min-heap of cursors on their current keys. */
+    static final class Merge {
+        private final Cursor[] heap;
+        private int size;
+
+        private Merge(int capacity) {
+            this.heap = new Cursor[capacity];
+        }
+
+        private void add(Cursor cursor) {
+            if (cursor.advance()) {
+                heap[size] = cursor;
+                int index = size++;
+                while (index > 0 && heap[(index - 1) >>> 1].key > cursor.key) {
+                    heap[index] = heap[(index - 1) >>> 1];
+                    index = (index - 1) >>> 1;
+                }
+                heap[index] = cursor;
+            }
+        }
+
+        boolean hasNext() {
+            return size > 0;
+        }
+
+        long next() {
+            Cursor top = heap[0];
+            long key = top.key;
+            if (!top.advance()) {
+                top = heap[--size];
+                heap[size] = null;
+            }
+            if (size > 0) {
+                siftDown(top);
+            }
+            return key;
+        }
+
+        /** Skips {@code count} keys and returns the one after them. */
+        long skipThenNext(long count) {
+            for (long i = 0; i < count; i++) {
+                next();
+            }
+            return next();
+        }
+
+        private void siftDown(Cursor cursor) {
+            int index = 0;
+            while (true) {
+                int child = 2 * index + 1;
+                if (child >= size) {
+                    break;
+                }
+                if (child + 1 < size && heap[child + 1].key < heap[child].key) {
+                    child++;
+                }
+                if (cursor.key <= heap[child].key) {
+                    break;
+                }
+                heap[index] = heap[child];
+                index = child;
+            }
+            heap[index] = cursor;
+        }
+    }
+}
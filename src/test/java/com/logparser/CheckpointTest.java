@@ -0,0 +1,148 @@
+package com.logparser;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CheckpointTest {
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testResumedRunMatchesFullRun() throws IOException {
+        assertResumedRunMatchesFullRun();
+    }
+
+    @Test
+    void testResumedParallelRunMatchesFullRun() throws IOException {
+        assertResumedRunMatchesFullRun("--threads", "3", "--mmap");
+    }
+
+    @Test
+    void testResumedSketchRunMatchesFullRun() throws IOException {
+        assertResumedRunMatchesFullRun("--percentiles", "sketch");
+    }
+
+    @Test
+    void testRewrittenInputIsProcessedFromTheStart() throws IOException {
+        Path input = tempDir.resolve("input.log");
+        Path checkpoint = tempDir.resolve("state.ckpt");
+        Files.write(input, generateLog(new Random(1), 500).getBytes(StandardCharsets.UTF_8));
+        run(input, tempDir.resolve("first"), "--checkpoint", checkpoint.toString());
+
+        // Same length, different content: offsets from the old file mean nothing here
+        Files.write(input, generateLog(new Random(2), 600).getBytes(StandardCharsets.UTF_8));
+        run(input, tempDir.resolve("resumed"), "--checkpoint", checkpoint.toString());
+        run(input, tempDir.resolve("full"));
+        assertSameOutput(tempDir.resolve("full"), tempDir.resolve("resumed"));
+    }
+
+    @Test
+    void testCorruptCheckpointIsIgnoredBeforeItIsDecoded() throws IOException {
+        Path input = tempDir.resolve("input.log");
+        Path checkpoint = tempDir.resolve("state.ckpt");
+        Files.write(input, generateLog(new Random(3), 500).getBytes(StandardCharsets.UTF_8));
+        run(input, tempDir.resolve("first"), "--checkpoint", checkpoint.toString());
+        byte[] saved = Files.readAllBytes(checkpoint);
+        Files.write(input, generateLog(new Random(4), 200).getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+        run(input, tempDir.resolve("full"));
+
+        // A flipped bit near the end of the state, and a checkpoint cut off halfway
+        byte[] corrupt = saved.clone();
+        corrupt[corrupt.length - 20] ^= 0x40;
+        byte[] truncated = Arrays.copyOf(saved, saved.length / 2);
+        for (byte[] bytes : new byte[][]{corrupt, truncated}) {
+            Files.write(checkpoint, bytes);
+            ProcessingConfig config = new ProcessingConfig();
+            LogProcessor processor = new LogProcessor(config);
+            assertEquals(0, new Checkpoint(checkpoint).restore(input, config, processor));
+            assertEquals(0, processor.getMetrics().getLines());
+            assertTrue(((Map<?, ?>) processor.getResults().get("REQUEST")).isEmpty());
+
+            Files.write(checkpoint, bytes);
+            run(input, tempDir.resolve("resumed"), "--checkpoint", checkpoint.toString());
+            assertSameOutput(tempDir.resolve("full"), tempDir.resolve("resumed"));
+        }
+    }
+
+    private void assertResumedRunMatchesFullRun(String... extraArgs) throws IOException {
+        Random random = new Random(11);
+        Path input = tempDir.resolve("input.log");
+        Path checkpoint = tempDir.resolve("state.ckpt");
+        String log = generateLog(random, 3000);
+
+        // Cut the first write in the middle of a line, as a writer flushing mid-line would
+        int cut = log.indexOf('\n', log.length() / 3) + 10;
+        Files.write(input, log.substring(0, cut).getBytes(StandardCharsets.UTF_8));
+        run(input, tempDir.resolve("partial"), withCheckpoint(checkpoint, extraArgs));
+
+        int secondCut = log.indexOf('\n', 2 * log.length() / 3) + 1;
+        Files.write(input, log.substring(cut, secondCut).getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+        run(input, tempDir.resolve("middle"), withCheckpoint(checkpoint, extraArgs));
+
+        Files.write(input, log.substring(secondCut).getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+        run(input, tempDir.resolve("resumed"), withCheckpoint(checkpoint, extraArgs));
+        run(input, tempDir.resolve("full"), extraArgs);
+        assertSameOutput(tempDir.resolve("full"), tempDir.resolve("resumed"));
+
+        // Nothing new: the checkpoint alone reproduces the output
+        run(input, tempDir.resolve("unchanged"), withCheckpoint(checkpoint, extraArgs));
+        assertSameOutput(tempDir.resolve("full"), tempDir.resolve("unchanged"));
+    }
+
+    private static String[] withCheckpoint(Path checkpoint, String... extraArgs) {
+        String[] args = new String[extraArgs.length + 2];
+        System.arraycopy(extraArgs, 0, args, 0, extraArgs.length);
+        args[extraArgs.length] = "--checkpoint";
+        args[extraArgs.length + 1] = checkpoint.toString();
+        return args;
+    }
+
+    private static void run(Path input, Path outputDir, String... extraArgs) {
+        String[] args = new String[4 + extraArgs.length];
+        args[0] = "--file";
+        args[1] = input.toString();
+        args[2] = "--output-dir";
+        args[3] = outputDir.toString();
+        System.arraycopy(extraArgs, 0, args, 4, extraArgs.length);
+        Main.main(args);
+    }
+
+    private static void assertSameOutput(Path expectedDir, Path actualDir) throws IOException {
+        for (String name : new String[]{"apm.json", "application.json", "request.json"}) {
+            assertEquals(new String(Files.readAllBytes(expectedDir.resolve(name)), StandardCharsets.UTF_8),
+                    new String(Files.readAllBytes(actualDir.resolve(name)), StandardCharsets.UTF_8), name);
+        }
+    }
+
+    private static String generateLog(Random random, int lines) {
+        StringBuilder log = new StringBuilder();
+        for (int i = 0; i < lines; i++) {
+            switch (random.nextInt(3)) {
+                case 0:
+                    log.append("timestamp=2024-02-24T16:22:15Z metric=metric_").append(random.nextInt(20))
+                            .append(" host=webserver1 value=").append(random.nextInt(10000) / 100.0).append('\n');
+                    break;
+                case 1:
+                    log.append("timestamp=2024-02-24T16:22:20Z level=").append(random.nextBoolean() ? "INFO" : "WARN")
+                            .append(" message=\"Scheduled maintenance starting\" host=webserver1\n");
+                    break;
+                default:
+                    log.append("timestamp=2024-02-24T16:22:25Z request_method=GET request_url=\"/api/route")
+                            .append(random.nextInt(50)).append("\" response_status=").append(200 + random.nextInt(4) * 100)
+                            .append(" response_time_ms=").append(random.nextInt(500)).append(" host=webserver1\n");
+            }
+        }
+        return log.toString();
+    }
+}
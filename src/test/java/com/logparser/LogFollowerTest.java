@@ -0,0 +1,58 @@
+package com.logparser;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LogFollowerTest {
+    @TempDir
+    Path tempDir;
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testBadLineDoesNotStopFollowing() throws Exception {
+        Path input = tempDir.resolve("app.log");
+        Files.write(input, List.of(
+                "timestamp=2024-02-24T16:22:25Z request_method=GET request_url=\"/api/status\" response_status=abc response_time_ms=5",
+                "timestamp=2024-02-24T16:22:25Z request_method=GET request_url=\"/api/status\" response_status=200 response_time_ms=7",
+                "timestamp=2024-02-24T16:22:20Z level=INFO message=\"Scheduled maintenance starting\" host=webserver1"));
+        Path output = tempDir.resolve("output");
+        Files.createDirectories(output);
+
+        LogFollower follower = new LogFollower(new ProcessingConfig(), input, output, 50, 0);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<?> run = executor.submit(() -> {
+                follower.run();
+                return null;
+            });
+            long deadline = System.currentTimeMillis() + 10_000;
+            while (follower.getProcessor().getMetrics().getLines() < 3 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(20);
+            }
+            follower.stop();
+            run.get(10, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(1, follower.getProcessor().getMetrics().getUnparseable());
+        ObjectMapper objectMapper = new ObjectMapper();
+        Map<String, Integer> application = objectMapper.readValue(output.resolve("application.json").toFile(), Map.class);
+        assertEquals(1, application.get("INFO"));
+        Map<String, Map<String, Map<String, Integer>>> request =
+                objectMapper.readValue(output.resolve("request.json").toFile(), Map.class);
+        assertEquals(1, request.get("/api/status").get("status_codes").get("2XX"));
+    }
+}
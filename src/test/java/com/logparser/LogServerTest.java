@@ -0,0 +1,184 @@
+package com.logparser;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.logparser.benchmark.SyntheticLogGenerator;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LogServerTest {
+    @TempDir
+    Path tempDir;
+    private LogServer server;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @BeforeEach
+    void setUp() throws IOException {
+        InetAddress loopback = InetAddress.getLoopbackAddress();
+        server = new LogServer(new ProcessingConfig(), new InetSocketAddress(loopback, 0),
+                new InetSocketAddress(loopback, 0));
+        server.start();
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        server.close();
+    }
+
+    private static String generate(long seed, int lines) {
+        SyntheticLogGenerator generator = new SyntheticLogGenerator(seed, "1:1:1", 20);
+        StringBuilder log = new StringBuilder();
+        for (int i = 0; i < lines; i++) {
+            log.append(generator.nextLine()).append('\n');
+        }
+        return log.toString();
+    }
+
+    // Writes in pieces that end mid-line, so batches have to be cut at the last newline
+    private void send(byte[] data, int pieceSize) throws IOException {
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.getIngestPort());
+             OutputStream out = socket.getOutputStream()) {
+            for (int start = 0; start < data.length; start += pieceSize) {
+                out.write(data, start, Math.min(pieceSize, data.length - start));
+                out.flush();
+            }
+        }
+    }
+
+    private Object get(String path) throws IOException {
+        URL url = new URL("http://" + InetAddress.getLoopbackAddress().getHostAddress() + ":"
+                + server.getHttpPort() + path);
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        try (InputStream in = connection.getInputStream()) {
+            return objectMapper.readValue(in, Object.class);
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    private void awaitLines(long lines) throws IOException, InterruptedException {
+        for (int attempt = 0; attempt < 500; attempt++) {
+            Map<String, Object> metrics = (Map<String, Object>) get("/metrics");
+            if (((Number) metrics.get("lines")).longValue() >= lines) {
+                return;
+            }
+            Thread.sleep(20);
+        }
+        fail("Lines were not aggregated in time");
+    }
+
+    @Test
+    void testQueriesMatchFileOutput() throws Exception {
+        // The last line has no newline and only counts once the connection closes
+        String log = generate(1, 20_000) + "timestamp=2024-02-24T16:22:15Z metric=late host=web1 value=1";
+        Path input = tempDir.resolve("input.log");
+        Files.write(input, log.getBytes(StandardCharsets.UTF_8));
+        Path expected = tempDir.resolve("expected");
+        Main.main(new String[]{"--file", input.toString(), "--output-dir", expected.toString()});
+
+        send(log.getBytes(StandardCharsets.UTF_8), 7919);
+        awaitLines(20_001);
+        for (String name : new String[]{"apm", "application", "request"}) {
+            assertEquals(objectMapper.readValue(expected.resolve(name + ".json").toFile(), Object.class),
+                    get("/" + name), name);
+        }
+        Map<String, Object> all = (Map<String, Object>) get("/results");
+        assertEquals(get("/request"), all.get("request"));
+
+        Path output = tempDir.resolve("output");
+        server.writeResults(output);
+        assertArrayEquals(Files.readAllBytes(expected.resolve("apm.json")), Files.readAllBytes(output.resolve("apm.json")));
+    }
+
+    @Test
+    void testConcurrentWritersAreAllCounted() throws Exception {
+        List<Thread> writers = new ArrayList<>();
+        List<Throwable> failures = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            byte[] data = generate(i, 5_000).getBytes(StandardCharsets.UTF_8);
+            int pieceSize = 100 + i * 997;
+            Thread writer = new Thread(() -> {
+                try {
+                    send(data, pieceSize);
+                } catch (IOException e) {
+                    synchronized (failures) {
+                        failures.add(e);
+                    }
+                }
+            });
+            writer.start();
+            writers.add(writer);
+        }
+        for (Thread writer : writers) {
+            writer.join();
+        }
+        assertTrue(failures.isEmpty(), failures.toString());
+        awaitLines(40_000);
+
+        Map<String, Object> metrics = (Map<String, Object>) get("/metrics");
+        assertEquals(40_000, ((Number) metrics.get("lines")).intValue());
+        assertEquals(0, ((Number) metrics.get("unparseable_lines")).intValue());
+        assertEquals(8, ((Number) metrics.get("connections")).intValue());
+        Map<String, Map<String, Object>> requests = (Map<String, Map<String, Object>>) get("/request");
+        Map<String, Integer> entries = (Map<String, Integer>) metrics.get("entries");
+        long statusCodes = 0;
+        for (Map<String, Object> route : requests.values()) {
+            for (Object count : ((Map<String, Object>) route.get("status_codes")).values()) {
+                statusCodes += ((Number) count).longValue();
+            }
+        }
+        assertEquals((long) entries.get("REQUEST"), statusCodes);
+    }
+
+    @Test
+    void testBadAndOversizedLinesAreSkipped() throws Exception {
+        StringBuilder log = new StringBuilder();
+        log.append("timestamp=2024-02-24T16:22:25Z request_method=GET request_url=\"/api/status\" ")
+                .append("response_status=abc response_time_ms=5\n");
+        log.append("timestamp=2024-02-24T16:22:15Z metric=cpu host=web1 value=");
+        for (int i = 0; i < LogServer.MAX_LINE_BYTES; i++) {
+            log.append('7');
+        }
+        log.append('\n');
+        log.append("timestamp=2024-02-24T16:22:25Z request_method=GET request_url=\"/api/status\" ")
+                .append("response_status=200 response_time_ms=7\n");
+        send(log.toString().getBytes(StandardCharsets.UTF_8), 4096);
+        awaitLines(2);
+
+        Map<String, Object> metrics = (Map<String, Object>) get("/metrics");
+        assertEquals(2, ((Number) metrics.get("lines")).intValue());
+        assertEquals(1, ((Number) metrics.get("unparseable_lines")).intValue());
+        assertEquals(1, ((Number) metrics.get("oversized_lines")).intValue());
+        Map<String, Map<String, Map<String, Object>>> requests =
+                (Map<String, Map<String, Map<String, Object>>>) get("/request");
+        assertEquals(1, ((Number) requests.get("/api/status").get("status_codes").get("2XX")).intValue());
+        assertTrue(((Map<?, ?>) get("/apm")).isEmpty());
+    }
+
+    @Test
+    void testUnknownQueriesAreRejected() throws IOException {
+        URL url = new URL("http://" + InetAddress.getLoopbackAddress().getHostAddress() + ":"
+                + server.getHttpPort() + "/nothing");
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        assertEquals(404, connection.getResponseCode());
+        connection.disconnect();
+    }
+}
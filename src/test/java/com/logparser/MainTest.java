@@ -1,15 +1,28 @@
 package com.logparser;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.airlift.compress.zstd.ZstdOutputStream;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -77,4 +90,378 @@ class MainTest {
         appFile.delete();
         requestFile.delete();
     }
-} 
\ No newline at end of file
+
+    @Test
+    void testOutputDoesNotDependOnInputMode() throws IOException {
+        writeRandomLog();
+
+        Path singleDir = tempDir.resolve("single");
+        Main.main(new String[]{"--file", inputFile.getAbsolutePath(), "--output-dir", singleDir.toString()});
+        assertSameOutput(singleDir, "--threads", "4");
+        assertSameOutput(singleDir, "--mmap");
+        assertSameOutput(singleDir, "--mmap", "--threads", "3");
+    }
+
+    @Test
+    void testCompressedInputMatchesPlainInput() throws IOException {
+        writeRandomLog();
+        byte[] plain = Files.readAllBytes(inputFile.toPath());
+        Path plainDir = tempDir.resolve("plain");
+        Main.main(new String[]{"--file", inputFile.getAbsolutePath(), "--output-dir", plainDir.toString()});
+
+        // Members end mid-line, so lines have to be stitched across member boundaries
+        ByteArrayOutputStream gzip = new ByteArrayOutputStream();
+        for (int start = 0; start < plain.length; start += 7919) {
+            try (GZIPOutputStream member = new GZIPOutputStream(gzip) {
+                @Override
+                public void close() throws IOException {
+                    finish();
+                }
+            }) {
+                member.write(plain, start, Math.min(7919, plain.length - start));
+            }
+        }
+        ByteArrayOutputStream zstd = new ByteArrayOutputStream();
+        try (ZstdOutputStream out = new ZstdOutputStream(zstd)) {
+            out.write(plain);
+        }
+
+        Files.write(inputFile.toPath(), gzip.toByteArray());
+        assertSameOutput(plainDir);
+        assertSameOutput(plainDir, "--threads", "4");
+        assertSameOutput(plainDir, "--threads", "3", "--mmap");
+        Files.write(inputFile.toPath(), zstd.toByteArray());
+        assertSameOutput(plainDir, "--threads", "2");
+    }
+
+    @Test
+    void testCorruptCompressedInputFailsInsteadOfHanging() throws IOException {
+        writeRandomLog();
+        byte[] plain = Files.readAllBytes(inputFile.toPath());
+        ByteArrayOutputStream gzip = new ByteArrayOutputStream();
+        try (GZIPOutputStream out = new GZIPOutputStream(gzip)) {
+            out.write(plain);
+        }
+        byte[] corruptGzip = gzip.toByteArray();
+        for (int i = 20; i < corruptGzip.length - 8; i += 7) {
+            corruptGzip[i] ^= 0x5a;
+        }
+        byte[] corruptZstd = new byte[4096];
+        new Random(7).nextBytes(corruptZstd);
+        System.arraycopy(new byte[]{0x28, (byte) 0xb5, 0x2f, (byte) 0xfd}, 0, corruptZstd, 0, 4);
+
+        ProcessingConfig parallel = new ProcessingConfig();
+        parallel.setThreads(2);
+        for (byte[] corrupt : Arrays.asList(corruptGzip, corruptZstd)) {
+            Files.write(inputFile.toPath(), corrupt);
+            assertTimeoutPreemptively(Duration.ofSeconds(30), () -> {
+                assertThrows(IOException.class, () -> new LogProcessor().processFile(inputFile.toPath()));
+                assertThrows(IOException.class,
+                        () -> new ParallelFileProcessor(parallel).processFile(inputFile.toPath()));
+            });
+        }
+    }
+
+    @Test
+    void testMultipleFilesMatchConcatenatedInput() throws IOException {
+        writeRandomLog();
+        byte[] all = Files.readAllBytes(inputFile.toPath());
+        Path concatenatedDir = tempDir.resolve("concatenated");
+        Main.main(new String[]{"--file", inputFile.getAbsolutePath(), "--output-dir", concatenatedDir.toString()});
+
+        // Parts sorted by name, in two directories and with one part compressed
+        Path logs = Files.createDirectories(tempDir.resolve("logs"));
+        Path nested = Files.createDirectories(logs.resolve("rotated"));
+        int[] cuts = {0, all.length / 5, all.length / 2, all.length * 4 / 5, all.length};
+        for (int i = 0; i < 4; i++) {
+            int start = lineStart(all, cuts[i]);
+            int end = lineStart(all, cuts[i + 1]);
+            Path part = (i < 2 ? logs : nested).resolve("part" + i + ".log");
+            if (i == 3) {
+                try (GZIPOutputStream out = new GZIPOutputStream(Files.newOutputStream(part))) {
+                    out.write(all, start, end - start);
+                }
+            } else {
+                Files.write(part, Arrays.copyOfRange(all, start, end));
+            }
+        }
+
+        for (String[] inputs : new String[][]{
+                {logs.toString()},
+                {logs.resolve("*.log").toString(), nested.resolve("part*").toString()},
+                {logs.resolve("**.log").toString(), logs.resolve("part0.log").toString()}}) {
+            for (String threads : new String[]{"1", "3"}) {
+                Path outputDir = Files.createTempDirectory(tempDir, "files");
+                String[] args = new String[inputs.length + 5];
+                args[0] = "--output-dir";
+                args[1] = outputDir.toString();
+                args[2] = "--threads";
+                args[3] = threads;
+                args[4] = "--file";
+                System.arraycopy(inputs, 0, args, 5, inputs.length);
+                Main.main(args);
+                for (String name : new String[]{"apm.json", "application.json", "request.json"}) {
+                    assertArrayEquals(Files.readAllBytes(concatenatedDir.resolve(name)),
+                            Files.readAllBytes(outputDir.resolve(name)), name + " for " + String.join(" ", inputs));
+                }
+            }
+        }
+    }
+
+    @Test
+    void testManyFilesAreMergedInArgumentOrder() throws IOException {
+        writeRandomLog();
+        byte[] all = Files.readAllBytes(inputFile.toPath());
+        Path concatenatedDir = tempDir.resolve("concatenated");
+        Main.main(new String[]{"--file", inputFile.getAbsolutePath(), "--output-dir", concatenatedDir.toString()});
+
+        // Far more files than the units let in at a time, given in an order unlike their sizes
+        List<String> args = new ArrayList<>(List.of("--threads", "2", "--file"));
+        Random random = new Random(9);
+        int start = 0;
+        for (int i = 0; start < all.length; i++) {
+            int end = lineStart(all, Math.min(all.length, start + 1 + random.nextInt(all.length / 20)));
+            Path part = tempDir.resolve("part" + i + ".log");
+            Files.write(part, Arrays.copyOfRange(all, start, end));
+            args.add(part.toString());
+            start = end;
+        }
+        assertTrue(args.size() > 20);
+        Path outputDir = tempDir.resolve("parts");
+        args.addAll(List.of("--output-dir", outputDir.toString()));
+        Main.main(args.toArray(new String[0]));
+        for (String name : new String[]{"apm.json", "application.json", "request.json"}) {
+            assertArrayEquals(Files.readAllBytes(concatenatedDir.resolve(name)),
+                    Files.readAllBytes(outputDir.resolve(name)), name);
+        }
+    }
+
+    @Test
+    void testBreakdownByHostAndFile() throws IOException {
+        Path other = tempDir.resolve("other.log");
+        Files.write(other, ("timestamp=2024-02-24T16:23:15Z metric=cpu_usage_percent host=webserver2 value=40\n"
+                + "timestamp=2024-02-24T16:23:20Z level=INFO message=\"Started\" host=webserver2\n"
+                + "timestamp=2024-02-24T16:23:25Z level=INFO message=\"Started\"\n").getBytes());
+
+        Main.main(new String[]{"--file", inputFile.getAbsolutePath(), other.toString(),
+                "--output-dir", tempDir.resolve("hosts").toString(), "--breakdown", "host"});
+        Map<String, Map<String, Integer>> levelsByHost = objectMapper.readValue(
+                tempDir.resolve("hosts").resolve("application_by_host.json").toFile(), Map.class);
+        assertEquals(Arrays.asList("webserver1", "webserver2", "unknown"), Arrays.asList(levelsByHost.keySet().toArray()));
+        assertEquals(1, levelsByHost.get("webserver1").get("ERROR"));
+        assertEquals(1, levelsByHost.get("webserver2").get("INFO"));
+        assertEquals(1, levelsByHost.get("unknown").get("INFO"));
+
+        Main.main(new String[]{"--file", inputFile.getAbsolutePath(), other.toString(),
+                "--output-dir", tempDir.resolve("files").toString(), "--breakdown", "file", "--threads", "2"});
+        Map<String, Map<String, Map<String, Object>>> apmByFile = objectMapper.readValue(
+                tempDir.resolve("files").resolve("apm_by_file.json").toFile(), Map.class);
+        assertEquals(72.0, apmByFile.get(inputFile.toPath().toString()).get("cpu_usage_percent").get("max"));
+        assertEquals(40.0, apmByFile.get(other.toString()).get("cpu_usage_percent").get("max"));
+        Map<String, Map<String, Object>> apm = objectMapper.readValue(
+                tempDir.resolve("files").resolve("apm.json").toFile(), Map.class);
+        assertEquals(56.0, apm.get("cpu_usage_percent").get("average"));
+    }
+
+    @Test
+    void testWhereMatchesPreFilteredInput() throws IOException {
+        writeRandomLog();
+        StringBuilder kept = new StringBuilder();
+        for (String line : Files.readAllLines(inputFile.toPath())) {
+            if (line.contains("request_url=\"/api/route1") && !line.contains("response_status=200")) {
+                kept.append(line).append('\n');
+            }
+        }
+        Path filtered = tempDir.resolve("filtered.log");
+        Files.write(filtered, kept.toString().getBytes());
+        Path expected = tempDir.resolve("expected");
+        Main.main(new String[]{"--file", filtered.toString(), "--output-dir", expected.toString()});
+
+        String where = "type=request,url^=/api/route1";
+        assertSameOutput(expected, "--where", where, "--where", "status=300-599");
+        assertSameOutput(expected, "--where", where + ",status!=2xx", "--threads", "3", "--mmap");
+
+        Path metricsFile = tempDir.resolve("metrics.json");
+        Main.main(new String[]{"--file", inputFile.getAbsolutePath(), "--output-dir", tempDir.resolve("all").toString(),
+                "--where", "type=apm|application", "--metrics-out", metricsFile.toString()});
+        Map<String, Object> metrics = objectMapper.readValue(metricsFile.toFile(), Map.class);
+        Map<String, Integer> entries = (Map<String, Integer>) metrics.get("entries");
+        assertEquals(0, entries.get("REQUEST"));
+        assertEquals(5000, entries.get("APM") + entries.get("APPLICATION") + (Integer) metrics.get("filtered_lines"));
+    }
+
+    @Test
+    void testSavedColumnsAggregateLikeText() throws IOException {
+        writeRandomLog();
+        Files.write(inputFile.toPath(), ("timestamp=2024-02-24T16:40:00Z metric=metric_1 host=webserver2 value=3\n"
+                + "timestamp=2024-02-24T16:41:00Z level=ERROR message=\"Failed\"\n"
+                + "not a log line\n"
+                + "timestamp=2024-02-24T16:50:00Z request_method=PUT request_url=\"/api/route1\" response_status=500 "
+                + "response_time_ms=900 host=webserver3\n").getBytes(), StandardOpenOption.APPEND);
+        Path columns = tempDir.resolve("saved.cols");
+        Path saved = tempDir.resolve("saved");
+        Main.main(new String[]{"--file", inputFile.getAbsolutePath(), "--output-dir", saved.toString(),
+                "--save-columns", columns.toString()});
+        assertSameOutput(saved);
+
+        String[][] variants = {{}, {"--breakdown", "host"}, {"--window", "5m"}, {"--percentiles", "sketch"},
+                {"--threads", "3"}};
+        for (String[] variant : variants) {
+            Path expected = Files.createTempDirectory(tempDir, "text");
+            Path actual = Files.createTempDirectory(tempDir, "columns");
+            Main.main(withInput(inputFile.toPath(), expected, variant));
+            Main.main(withInput(columns, actual, variant));
+            try (Stream<Path> files = Files.list(expected)) {
+                for (Path file : files.collect(Collectors.toList())) {
+                    assertArrayEquals(Files.readAllBytes(file), Files.readAllBytes(actual.resolve(file.getFileName())),
+                            file.getFileName() + " should not change with " + String.join(" ", variant));
+                }
+            }
+        }
+    }
+
+    private static String[] withInput(Path input, Path outputDir, String... extraArgs) {
+        String[] args = new String[4 + extraArgs.length];
+        args[0] = "--file";
+        args[1] = input.toString();
+        args[2] = "--output-dir";
+        args[3] = outputDir.toString();
+        System.arraycopy(extraArgs, 0, args, 4, extraArgs.length);
+        return args;
+    }
+
+    private static int lineStart(byte[] data, int offset) {
+        while (offset > 0 && offset < data.length && data[offset - 1] != '\n') {
+            offset++;
+        }
+        return offset;
+    }
+
+    private void writeRandomLog() throws IOException {
+        StringBuilder log = new StringBuilder();
+        java.util.Random random = new Random(7);
+        for (int i = 0; i < 5000; i++) {
+            switch (random.nextInt(3)) {
+                case 0:
+                    log.append("timestamp=2024-02-24T16:22:15Z metric=metric_").append(random.nextInt(20))
+                            .append(" host=webserver1 value=").append(random.nextDouble() * 100).append('\n');
+                    break;
+                case 1:
+                    log.append("timestamp=2024-02-24T16:22:20Z level=").append(random.nextBoolean() ? "INFO" : "WARN")
+                            .append(" message=\"Scheduled maintenance starting\" host=webserver1\n");
+                    break;
+                default:
+                    log.append("timestamp=2024-02-24T16:22:25Z request_method=GET request_url=\"/api/route")
+                            .append(random.nextInt(50)).append("\" response_status=").append(200 + random.nextInt(4) * 100)
+                            .append(" response_time_ms=").append(random.nextInt(500)).append(" host=webserver1\n");
+            }
+        }
+        Files.write(inputFile.toPath(), log.toString().getBytes());
+    }
+
+    @Test
+    void testMetricsAreReportedWithoutPerLineOutput() throws IOException {
+        // Multi-byte characters and a CRLF ending, so chars and bytes differ
+        Files.write(inputFile.toPath(), "this line has no known fields: café\r\n".getBytes(StandardCharsets.UTF_8),
+                StandardOpenOption.APPEND);
+        Path metricsFile = tempDir.resolve("metrics.json");
+
+        PrintStream originalOut = System.out;
+        ByteArrayOutputStream stdout = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(stdout));
+        try {
+            Main.main(new String[]{"--file", inputFile.getAbsolutePath(), "--output-dir", tempDir.toString(),
+                    "--metrics-out", metricsFile.toString()});
+        } finally {
+            System.setOut(originalOut);
+        }
+        assertEquals(0, stdout.size(), "Nothing should be printed per line by default");
+
+        Map<String, Object> metrics = objectMapper.readValue(metricsFile.toFile(), Map.class);
+        assertEquals(7, metrics.get("lines"));
+        assertEquals((int) Files.size(inputFile.toPath()), metrics.get("bytes"));
+        for (List<String> mode : List.of(List.of("--mmap"), List.of("--threads", "2"))) {
+            List<String> args = new ArrayList<>(List.of("--file", inputFile.getAbsolutePath(),
+                    "--output-dir", tempDir.toString(), "--metrics-out", metricsFile.toString()));
+            args.addAll(mode);
+            Main.main(args.toArray(new String[0]));
+            Map<String, Object> modeMetrics = objectMapper.readValue(metricsFile.toFile(), Map.class);
+            assertEquals((int) Files.size(inputFile.toPath()), modeMetrics.get("bytes"), mode.toString());
+        }
+        assertEquals(1, metrics.get("unparseable_lines"));
+        Map<String, Integer> entries = (Map<String, Integer>) metrics.get("entries");
+        assertEquals(2, entries.get("APM"));
+        assertEquals(2, entries.get("APPLICATION"));
+        assertEquals(2, entries.get("REQUEST"));
+        Map<String, Integer> phases = (Map<String, Integer>) metrics.get("phase_ms");
+        assertTrue(phases.keySet().containsAll(Arrays.asList("read", "parse", "aggregate", "write")));
+    }
+
+    @Test
+    void testOutputFormats() throws IOException {
+        writeRandomLog();
+        Path jsonDir = tempDir.resolve("json");
+        Main.main(new String[]{"--file", inputFile.getAbsolutePath(), "--output-dir", jsonDir.toString()});
+
+        // The streamed output is what writing the whole result object gave
+        LogProcessor processor = new LogProcessor(new ProcessingConfig());
+        processor.processFile(inputFile.toPath());
+        Map<String, Object> results = processor.getResults();
+        for (Map.Entry<String, String> file : LogProcessor.OUTPUT_FILES.entrySet()) {
+            assertEquals(objectMapper.writerWithDefaultPrettyPrinter().writeValueAsString(results.get(file.getKey())),
+                    Files.readString(jsonDir.resolve(file.getValue())), file.getValue());
+        }
+
+        // --output is still short for --output-dir, as it was before any other option started with it
+        Path compactDir = tempDir.resolve("compact");
+        Main.main(new String[]{"--file", inputFile.getAbsolutePath(), "--output", compactDir.toString(), "--compact"});
+        for (String name : LogProcessor.OUTPUT_FILES.values()) {
+            String compact = Files.readString(compactDir.resolve(name));
+            assertFalse(compact.contains("\n"), name);
+            assertEquals(objectMapper.readTree(jsonDir.resolve(name).toFile()), objectMapper.readTree(compact), name);
+        }
+
+        Map<String, Map<String, Object>> requests =
+                objectMapper.readValue(jsonDir.resolve("request.json").toFile(), Map.class);
+        Path ndjsonDir = tempDir.resolve("ndjson");
+        Main.main(new String[]{"--file", inputFile.getAbsolutePath(), "--output-dir", ndjsonDir.toString(),
+                "--format", "ndjson"});
+        String[] rows = Files.readString(ndjsonDir.resolve("request.ndjson")).split("\n");
+        assertEquals(requests.size(), rows.length);
+        for (String row : rows) {
+            Map<String, Object> fields = objectMapper.readValue(row, Map.class);
+            Map<String, Object> route = requests.get((String) fields.get("route"));
+            Map<String, Object> times = (Map<String, Object>) route.get("response_times");
+            assertEquals(times.get("90_percentile"), fields.get("response_times.90_percentile"));
+            Map<String, Object> statuses = (Map<String, Object>) route.get("status_codes");
+            assertEquals(statuses.getOrDefault("2XX", 0), fields.get("status_codes.2XX"));
+        }
+
+        Path csvDir = tempDir.resolve("csv");
+        Main.main(new String[]{"--file", inputFile.getAbsolutePath(), "--output-dir", csvDir.toString(),
+                "--format", "csv"});
+        Map<String, Integer> levels = objectMapper.readValue(jsonDir.resolve("application.json").toFile(), Map.class);
+        String expected = "level,count\n" + levels.entrySet().stream()
+                .map(level -> level.getKey() + "," + level.getValue() + "\n").collect(Collectors.joining());
+        assertEquals(expected, Files.readString(csvDir.resolve("application.csv")));
+        assertEquals("metric,minimum,max,average,median",
+                Files.readAllLines(csvDir.resolve("apm.csv")).get(0));
+        assertFalse(Files.exists(csvDir.resolve("request.json")));
+    }
+
+    private void assertSameOutput(Path expectedDir, String... extraArgs) throws IOException {
+        Path outputDir = Files.createTempDirectory(tempDir, "run");
+        String[] args = new String[4 + extraArgs.length];
+        args[0] = "--file";
+        args[1] = inputFile.getAbsolutePath();
+        args[2] = "--output-dir";
+        args[3] = outputDir.toString();
+        System.arraycopy(extraArgs, 0, args, 4, extraArgs.length);
+        Main.main(args);
+
+        for (String name : new String[]{"apm.json", "application.json", "request.json"}) {
+            assertArrayEquals(Files.readAllBytes(expectedDir.resolve(name)), Files.readAllBytes(outputDir.resolve(name)),
+                    name + " should not change with " + String.join(" ", extraArgs));
+        }
+    }
+}
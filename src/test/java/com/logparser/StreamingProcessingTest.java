@@ -0,0 +1,101 @@
+package com.logparser;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StreamingProcessingTest {
+    private static final int CHILD_HEAP_MB = 32;
+    private static final long INPUT_SIZE = 3L * CHILD_HEAP_MB * 1024 * 1024;
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testFileLargerThanHeapIsProcessed() throws Exception {
+        Path inputFile = tempDir.resolve("large.log");
+        long[] lineCounts = writeLargeLog(inputFile);
+        assertTrue(Files.size(inputFile) > INPUT_SIZE);
+
+        // Run in a separate JVM so the heap limit is smaller than the input
+        String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+        List<String> command = Arrays.asList(java, "-Xmx" + CHILD_HEAP_MB + "m",
+                "-cp", System.getProperty("java.class.path"), Main.class.getName(),
+                "--file", inputFile.toString(), "--output-dir", tempDir.toString());
+        Process process = new ProcessBuilder(command)
+                .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                .redirectError(tempDir.resolve("stderr.txt").toFile())
+                .start();
+        assertTrue(process.waitFor(5, TimeUnit.MINUTES), "Processing should finish");
+        assertEquals(0, process.exitValue(),
+                () -> "Processing failed: " + readQuietly(tempDir.resolve("stderr.txt")));
+
+        ObjectMapper objectMapper = new ObjectMapper();
+        Map<String, Integer> appResults = objectMapper.readValue(
+                tempDir.resolve("application.json").toFile(), Map.class);
+        assertEquals(lineCounts[0], appResults.get("INFO").longValue());
+        assertEquals(lineCounts[1], appResults.get("ERROR").longValue());
+
+        File requestFile = tempDir.resolve("request.json").toFile();
+        Map<String, Map<String, Map<String, Integer>>> requestResults = objectMapper.readValue(requestFile, Map.class);
+        long requests = 0;
+        for (Map<String, Map<String, Integer>> route : requestResults.values()) {
+            for (Integer count : route.get("status_codes").values()) {
+                requests += count;
+            }
+        }
+        assertEquals(lineCounts[2], requests);
+        assertTrue(tempDir.resolve("apm.json").toFile().exists());
+    }
+
+    private long[] writeLargeLog(Path file) throws IOException {
+        Random random = new Random(42);
+        long[] counts = new long[3];
+        try (BufferedWriter writer = Files.newBufferedWriter(file)) {
+            long written = 0;
+            while (written <= INPUT_SIZE) {
+                String line;
+                int kind = random.nextInt(10);
+                if (kind < 7) {
+                    line = "timestamp=2024-02-24T16:22:20Z level=INFO message=\"Scheduled maintenance starting\" host=webserver1";
+                    counts[0]++;
+                } else if (kind < 8) {
+                    line = "timestamp=2024-02-24T16:22:35Z level=ERROR message=\"Update process failed\" error_code=5012 host=webserver1";
+                    counts[1]++;
+                } else if (kind < 9) {
+                    line = "timestamp=2024-02-24T16:22:25Z request_method=POST request_url=\"/api/update\" response_status=202 response_time_ms="
+                            + random.nextInt(1000) + " host=webserver1";
+                    counts[2]++;
+                } else {
+                    line = "timestamp=2024-02-24T16:22:15Z metric=cpu_usage_percent host=webserver1 value=" + random.nextInt(100);
+                }
+                writer.write(line);
+                writer.newLine();
+                written += line.length() + 1;
+            }
+        }
+        return counts;
+    }
+
+    private static String readQuietly(Path file) {
+        try {
+            return new String(Files.readAllBytes(file));
+        } catch (IOException e) {
+            return e.getMessage();
+        }
+    }
+}
@@ -0,0 +1,258 @@
+package com.logparser.aggregator;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.logparser.benchmark.SyntheticLogGenerator;
+import com.logparser.model.LogEntry;
+import com.logparser.parser.ApmLogParser;
+import com.logparser.parser.ApplicationLogParser;
+import com.logparser.parser.LineFields;
+import com.logparser.parser.LogParser;
+import com.logparser.parser.RequestLogParser;
+import com.logparser.stats.DistributionFactory;
+import com.logparser.stats.PercentileMode;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConcurrentAggregatorTest {
+    private static final LogParser APM = new ApmLogParser();
+    private static final LogParser APPLICATION = new ApplicationLogParser();
+    private static final LogParser REQUEST = new RequestLogParser();
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private static String[] lines(long seed, int count) {
+        return new SyntheticLogGenerator(seed, "1:1:1", 30).nextLines(count);
+    }
+
+    private static void aggregate(String[] lines, LogAggregator... aggregators) {
+        LineFields fields = new LineFields();
+        for (String line : lines) {
+            LogParser parser = line.contains("metric=") ? APM : line.contains("level=") ? APPLICATION : REQUEST;
+            LogEntry entry = parser.parse(fields.reset(line));
+            for (LogAggregator aggregator : aggregators) {
+                aggregator.aggregate(entry);
+            }
+        }
+    }
+
+    private static List<LogAggregator> plain(DistributionFactory distributions) {
+        return Arrays.asList(new ApmLogAggregator(distributions), new ApplicationLogAggregator(),
+                new RequestLogAggregator(distributions));
+    }
+
+    private static List<LogAggregator> concurrent(DistributionFactory distributions) {
+        return Arrays.asList(new ConcurrentApmLogAggregator(distributions), new ConcurrentApplicationLogAggregator(),
+                new ConcurrentRequestLogAggregator(distributions));
+    }
+
+    private static DataInputStream stateIn(LogAggregator aggregator) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        aggregator.writeState(new DataOutputStream(bytes));
+        return new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+    }
+
+    @Test
+    void testOneThreadMatchesPlainAggregators() throws IOException {
+        String[] lines = lines(3, 30_000);
+        for (PercentileMode mode : PercentileMode.values()) {
+            DistributionFactory distributions = new DistributionFactory(mode, 0.01);
+            List<LogAggregator> plain = plain(distributions);
+            List<LogAggregator> concurrent = concurrent(distributions);
+            for (int i = 0; i < plain.size(); i++) {
+                aggregate(lines, plain.get(i), concurrent.get(i));
+                String expected = objectMapper.writeValueAsString(plain.get(i).getResult());
+                assertEquals(expected, objectMapper.writeValueAsString(concurrent.get(i).getResult()), mode + " " + i);
+
+                // The state format is shared, so checkpoints move between the two either way
+                LogAggregator fromConcurrent = plain(distributions).get(i);
+                fromConcurrent.readState(stateIn(concurrent.get(i)));
+                assertEquals(expected, objectMapper.writeValueAsString(fromConcurrent.getResult()));
+                LogAggregator fromPlain = concurrent(distributions).get(i);
+                fromPlain.readState(stateIn(plain.get(i)));
+                assertEquals(expected, objectMapper.writeValueAsString(fromPlain.getResult()));
+            }
+        }
+    }
+
+    @Test
+    void testConcurrentProducersCountEveryEntry() throws Exception {
+        List<LogAggregator> concurrent = concurrent(DistributionFactory.exact());
+        LogAggregator[] shared = concurrent.toArray(new LogAggregator[0]);
+        List<LogAggregator> plain = plain(DistributionFactory.exact());
+        LogAggregator[] expected = plain.toArray(new LogAggregator[0]);
+
+        int threads = 8;
+        String[][] slices = new String[threads][];
+        for (int i = 0; i < threads; i++) {
+            slices[i] = lines(i, 20_000);
+            aggregate(slices[i], expected);
+        }
+
+        // Results taken while producers run must never go backwards
+        AtomicBoolean running = new AtomicBoolean(true);
+        List<Throwable> failures = new ArrayList<>();
+        Thread reader = new Thread(() -> {
+            long lastInfo = 0;
+            while (running.get()) {
+                Map<String, Integer> levels = (Map<String, Integer>) shared[1].getResult();
+                long info = levels.getOrDefault("INFO", 0);
+                if (info < lastInfo) {
+                    failures.add(new AssertionError("INFO went from " + lastInfo + " to " + info));
+                }
+                lastInfo = info;
+                shared[2].getResult();
+            }
+        });
+        reader.start();
+
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> producers = new ArrayList<>();
+        for (String[] slice : slices) {
+            Thread producer = new Thread(() -> {
+                try {
+                    start.await();
+                    aggregate(slice, shared);
+                } catch (Throwable e) {
+                    synchronized (failures) {
+                        failures.add(e);
+                    }
+                }
+            });
+            producer.start();
+            producers.add(producer);
+        }
+        start.countDown();
+        for (Thread producer : producers) {
+            producer.join();
+        }
+        running.set(false);
+        reader.join();
+        assertTrue(failures.isEmpty(), failures.toString());
+
+        // Key order depends on the interleaving, and APM averages on the order of the sums
+        assertEquals(objectMapper.readTree(objectMapper.writeValueAsString(expected[1].getResult())),
+                objectMapper.readTree(objectMapper.writeValueAsString(shared[1].getResult())));
+        assertEquals(objectMapper.readTree(objectMapper.writeValueAsString(expected[2].getResult())),
+                objectMapper.readTree(objectMapper.writeValueAsString(shared[2].getResult())));
+        Map<String, Map<String, Double>> expectedApm = (Map<String, Map<String, Double>>) expected[0].getResult();
+        Map<String, Map<String, Double>> actualApm = (Map<String, Map<String, Double>>) shared[0].getResult();
+        assertEquals(expectedApm.keySet(), actualApm.keySet());
+        for (Map.Entry<String, Map<String, Double>> metric : expectedApm.entrySet()) {
+            Map<String, Double> actual = actualApm.get(metric.getKey());
+            assertEquals(metric.getValue().get("median"), actual.get("median"));
+            assertEquals(metric.getValue().get("max"), actual.get("max"));
+            assertEquals(metric.getValue().get("average"), actual.get("average"), 1e-9);
+        }
+    }
+
+    private static String[] requestLines(long seed, int count) {
+        Random random = new Random(seed);
+        String[] lines = new String[count];
+        for (int i = 0; i < count; i++) {
+            String url = random.nextBoolean()
+                    ? "/api/users/" + random.nextInt(1000) + "/orders?page=" + random.nextInt(5)
+                    : "/api/route" + random.nextInt(20) + "/" + random.nextInt(3);
+            lines[i] = "timestamp=2024-02-24T16:22:25Z request_method=GET request_url=\"" + url
+                    + "\" response_status=" + (200 + 100 * random.nextInt(4)) + " response_time_ms=" + random.nextInt(500);
+        }
+        return lines;
+    }
+
+    @Test
+    void testNormalizedAndCappedRoutesMatchPlainAggregator() throws Exception {
+        DistributionFactory distributions = DistributionFactory.exact();
+        UrlNormalizer urls = UrlNormalizer.of(true, List.of("/api/route1/*"));
+        for (int maxRoutes : new int[]{0, 5}) {
+            String[] lines = requestLines(maxRoutes, 20_000);
+            RequestLogAggregator plain = new RequestLogAggregator(distributions, urls, maxRoutes);
+            ConcurrentRequestLogAggregator concurrent = new ConcurrentRequestLogAggregator(distributions, urls, maxRoutes);
+            aggregate(lines, plain, concurrent);
+            String expected = objectMapper.writeValueAsString(plain.getResult());
+            assertEquals(expected, objectMapper.writeValueAsString(concurrent.getResult()), "maxRoutes " + maxRoutes);
+
+            ConcurrentRequestLogAggregator restored = new ConcurrentRequestLogAggregator(distributions, urls, maxRoutes);
+            restored.readState(stateIn(concurrent));
+            assertEquals(expected, objectMapper.writeValueAsString(restored.getResult()));
+        }
+
+        // Uncapped routes do not depend on the order, so several threads count the same
+        ConcurrentRequestLogAggregator shared = new ConcurrentRequestLogAggregator(distributions, urls, 0);
+        RequestLogAggregator expected = new RequestLogAggregator(distributions, urls, 0);
+        List<Thread> producers = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            String[] slice = requestLines(10 + i, 10_000);
+            aggregate(slice, expected);
+            Thread producer = new Thread(() -> aggregate(slice, shared));
+            producer.start();
+            producers.add(producer);
+        }
+        for (Thread producer : producers) {
+            producer.join();
+        }
+        assertEquals(objectMapper.readTree(objectMapper.writeValueAsString(expected.getResult())),
+                objectMapper.readTree(objectMapper.writeValueAsString(shared.getResult())));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testCappedRoutesFromSeveralThreadsCountEveryEntry() throws Exception {
+        int maxRoutes = 5;
+        ConcurrentRequestLogAggregator shared = new ConcurrentRequestLogAggregator(DistributionFactory.exact(),
+                UrlNormalizer.of(true, List.of()), maxRoutes);
+        List<Thread> producers = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            String[] slice = requestLines(20 + i, 10_000);
+            Thread producer = new Thread(() -> aggregate(slice, shared));
+            producer.start();
+            producers.add(producer);
+        }
+        for (Thread producer : producers) {
+            producer.join();
+        }
+
+        // Each cell keeps its busiest routes; merged, they are capped again
+        Map<String, Map<String, Map<String, Integer>>> routes =
+                (Map<String, Map<String, Map<String, Integer>>>) shared.getResult();
+        assertTrue(routes.size() <= maxRoutes + 1, routes.keySet().toString());
+        assertTrue(routes.containsKey("/api/users/{id}/orders"), "The busiest route is kept");
+        long counted = 0;
+        for (Map<String, Map<String, Integer>> route : routes.values()) {
+            for (int count : route.get("status_codes").values()) {
+                counted += count;
+            }
+        }
+        assertEquals(40_000, counted);
+
+        ConcurrentRequestLogAggregator restored = new ConcurrentRequestLogAggregator(DistributionFactory.exact(),
+                UrlNormalizer.of(true, List.of()), maxRoutes);
+        restored.readState(stateIn(shared));
+        assertEquals(objectMapper.writeValueAsString(shared.getResult()),
+                objectMapper.writeValueAsString(restored.getResult()));
+    }
+
+    @Test
+    void testResetDropsKeysSeenThroughThreadCaches() {
+        ConcurrentApplicationLogAggregator aggregator = new ConcurrentApplicationLogAggregator();
+        aggregate(lines(1, 1000), aggregator);
+        aggregator.reset();
+        assertTrue(((Map<?, ?>) aggregator.getResult()).isEmpty());
+
+        String[] lines = lines(2, 1000);
+        ApplicationLogAggregator expected = new ApplicationLogAggregator();
+        aggregate(lines, aggregator, expected);
+        assertEquals(expected.getResult(), aggregator.getResult());
+    }
+}
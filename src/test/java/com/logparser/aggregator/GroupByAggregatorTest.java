@@ -0,0 +1,166 @@
+package com.logparser.aggregator;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.logparser.LogProcessor;
+import com.logparser.ProcessingConfig;
+import com.logparser.columnar.ColumnarWriter;
+import com.logparser.model.LogEntry;
+import com.logparser.parser.LineFields;
+import com.logparser.parser.LogParser;
+import com.logparser.parser.RequestLogParser;
+import com.logparser.stats.DistributionFactory;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GroupByAggregatorTest {
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @TempDir
+    Path tempDir;
+
+    private static String line(String host, String url, int status, int time) {
+        return "timestamp=2024-02-24T16:22:25Z request_method=GET request_url=\"" + url
+                + "\" response_status=" + status + " response_time_ms=" + time
+                + (host == null ? "" : " host=" + host);
+    }
+
+    private static void aggregate(LogAggregator aggregator, List<String> lines) {
+        LogParser parser = new RequestLogParser();
+        LineFields fields = new LineFields();
+        for (String line : lines) {
+            LogEntry entry = parser.parse(fields.reset(line));
+            aggregator.aggregate(entry);
+        }
+    }
+
+    @Test
+    void testParse() {
+        GroupBy groupBy = GroupBy.parse("request:host,request_url", "p50, p99,count");
+        assertEquals("REQUEST", groupBy.getType());
+        assertEquals(List.of("host", "request_url"), groupBy.getFields());
+        assertEquals("request_by_host_request_url.json", groupBy.fileName());
+        assertEquals("request:host,request_url=p50,p99,count", groupBy.toString());
+
+        assertThrows(IllegalArgumentException.class, () -> GroupBy.parse("host,request_url", "count"));
+        assertThrows(IllegalArgumentException.class, () -> GroupBy.parse("trace:host", "count"));
+        assertThrows(IllegalArgumentException.class, () -> GroupBy.parse("request:host,", "count"));
+        assertThrows(IllegalArgumentException.class, () -> GroupBy.parse("request:host", "p0"));
+        assertThrows(IllegalArgumentException.class, () -> GroupBy.parse("request:host", "median"));
+        assertThrows(IllegalArgumentException.class, () -> GroupBy.parse("application:level", "count,avg"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testGroupsByCompositeKey() throws IOException {
+        List<String> lines = List.of(
+                line("web1", "/api/status", 200, 100),
+                line("web1", "/api/status", 200, 300),
+                line("web2", "/api/status", 500, 50),
+                line("web1", "/api/update", 200, 20),
+                line(null, "/api/status", 200, 7));
+        GroupByAggregator aggregator = new GroupByAggregator(
+                GroupBy.parse("request:host,request_url", "count,min,max,avg,sum,p50"), DistributionFactory.exact());
+        aggregate(aggregator, lines);
+
+        Map<String, Map<String, Object>> result = (Map<String, Map<String, Object>>) aggregator.getResult();
+        assertEquals(List.of("web1|/api/status", "web1|/api/update", "web2|/api/status", "unknown|/api/status"),
+                new ArrayList<>(result.keySet()));
+        Map<String, Object> busiest = result.get("web1|/api/status");
+        assertEquals(List.of("count", "min", "max", "avg", "sum", "p50"), new ArrayList<>(busiest.keySet()));
+        assertEquals(2L, busiest.get("count"));
+        assertEquals(100L, busiest.get("min"));
+        assertEquals(300L, busiest.get("max"));
+        assertEquals(200.0, busiest.get("avg"));
+        assertEquals(400L, busiest.get("sum"));
+        assertEquals(100L, busiest.get("p50"));
+
+        // Without percentiles no samples are kept, but the other stats are the same
+        GroupByAggregator moments = new GroupByAggregator(
+                GroupBy.parse("request:host,request_url", "count,min,max,avg,sum"), DistributionFactory.exact());
+        aggregate(moments, lines);
+        Map<String, Map<String, Object>> momentsResult = (Map<String, Map<String, Object>>) moments.getResult();
+        busiest.remove("p50");
+        assertEquals(busiest, momentsResult.get("web1|/api/status"));
+    }
+
+    @Test
+    void testStateAndMergeMatchOneAggregator() throws IOException {
+        Random random = new Random(11);
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < 20_000; i++) {
+            lines.add(line("web" + random.nextInt(4), "/api/r" + random.nextInt(30), 200 + random.nextInt(4) * 100,
+                    random.nextInt(2000)));
+        }
+        for (String stats : new String[]{"count", "count,avg,max", "p50,p99,count"}) {
+            GroupBy groupBy = GroupBy.parse("request:request_url,host,response_status", stats);
+            GroupByAggregator whole = new GroupByAggregator(groupBy, DistributionFactory.exact());
+            aggregate(whole, lines);
+            String expected = objectMapper.writeValueAsString(whole.getResult());
+
+            GroupByAggregator first = new GroupByAggregator(groupBy, DistributionFactory.exact());
+            GroupByAggregator second = new GroupByAggregator(groupBy, DistributionFactory.exact());
+            aggregate(first, lines.subList(0, lines.size() / 2));
+            aggregate(second, lines.subList(lines.size() / 2, lines.size()));
+            first.merge(second);
+            assertEquals(expected, objectMapper.writeValueAsString(first.getResult()), stats);
+
+            ByteArrayOutputStream state = new ByteArrayOutputStream();
+            whole.writeState(new DataOutputStream(state));
+            GroupByAggregator restored = new GroupByAggregator(groupBy, DistributionFactory.exact());
+            restored.readState(new DataInputStream(new ByteArrayInputStream(state.toByteArray())));
+            assertEquals(expected, objectMapper.writeValueAsString(restored.getResult()), stats);
+        }
+    }
+
+    @Test
+    void testSavedColumnsGroupLikeText() throws IOException {
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < 3000; i++) {
+            lines.add(line("web" + i % 3, "/api/r" + i % 7, i % 5 == 0 ? 503 : 200, i % 400));
+            lines.add("timestamp=2024-02-24T16:22:30Z metric=cpu host=web" + i % 2 + " value=" + (i % 100) / 4.0);
+        }
+        Path input = tempDir.resolve("input.log");
+        Files.write(input, lines);
+        Path columns = tempDir.resolve("input.cols");
+
+        ProcessingConfig config = new ProcessingConfig();
+        config.setGroupBys(List.of(GroupBy.parse("request:host,response_status", "count,p90"),
+                GroupBy.parse("apm:metric,host", "avg,p50,max")));
+        LogProcessor fromText = new LogProcessor(config);
+        try (ColumnarWriter writer = new ColumnarWriter(columns)) {
+            fromText.setColumnOutput(writer);
+            fromText.processFile(input);
+            writer.commit();
+        }
+        LogProcessor fromColumns = new LogProcessor(config);
+        fromColumns.processFile(columns);
+        assertEquals(objectMapper.writeValueAsString(fromText.getExtraResults()),
+                objectMapper.writeValueAsString(fromColumns.getExtraResults()));
+    }
+
+    @Test
+    void testOutputsWithTheSameFileNameAreRejected() {
+        ProcessingConfig sameFields = new ProcessingConfig();
+        sameFields.setGroupBys(List.of(GroupBy.parse("request:host", "count"), GroupBy.parse("request:host", "p99")));
+        assertThrows(IllegalArgumentException.class, () -> new LogProcessor(sameFields));
+
+        ProcessingConfig sameJoin = new ProcessingConfig();
+        sameJoin.setGroupBys(List.of(GroupBy.parse("request:host,request_url", "count"),
+                GroupBy.parse("request:host_request,url", "count")));
+        assertThrows(IllegalArgumentException.class, () -> new LogProcessor(sameJoin));
+    }
+}
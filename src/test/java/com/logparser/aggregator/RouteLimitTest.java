@@ -0,0 +1,179 @@
+package com.logparser.aggregator;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.logparser.LogProcessor;
+import com.logparser.ProcessingConfig;
+import com.logparser.model.LogEntry;
+import com.logparser.parser.LineFields;
+import com.logparser.parser.RequestLogParser;
+import com.logparser.stats.DistributionFactory;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RouteLimitTest {
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @TempDir
+    Path tempDir;
+
+    private static String line(String url, int status, int time) {
+        return "timestamp=2024-02-24T16:22:25Z request_method=GET request_url=\"" + url
+                + "\" response_status=" + status + " response_time_ms=" + time + " host=webserver1";
+    }
+
+    private static void aggregate(LogAggregator aggregator, List<String> lines) {
+        RequestLogParser parser = new RequestLogParser();
+        LineFields fields = new LineFields();
+        for (String line : lines) {
+            LogEntry entry = parser.parse(fields.reset(line));
+            aggregator.aggregate(entry);
+        }
+    }
+
+    private static String route(UrlNormalizer urls, String url) {
+        CharSequence route = urls.routeOf(url, 0, url.length(), new StringBuilder());
+        return route == null ? null : route.toString();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static long count(Map<String, Object> stats) {
+        return ((Map<String, Integer>) stats.get("status_codes")).values().stream().mapToLong(Integer::longValue).sum();
+    }
+
+    @Test
+    void testUrlNormalization() {
+        UrlNormalizer urls = UrlNormalizer.of(true, Arrays.asList("/api/users/{id}/orders", "/static/*"));
+        assertEquals("/api/users/{id}/orders", route(urls, "/api/users/alice/orders?page=2"));
+        assertEquals("/static/*", route(urls, "/static/css/site.css"));
+        assertEquals("/static/*", route(urls, "/static"));
+        assertEquals("/api/user/{id}", route(urls, "/api/user/81723?x=1"));
+        assertEquals("/api/users/{id}/orders/{id}", route(urls, "/api/users/7/orders/9"));
+        assertEquals("/doc/{uuid}", route(urls, "/doc/123e4567-e89b-12d3-a456-426614174000#top"));
+        assertEquals("/blob/{hex}/raw", route(urls, "/blob/5d41402abc4b2a76b9719d911017c592/raw"));
+        assertEquals("/api/update/", route(urls, "/api/update/"));
+        assertEquals("/api/deadbeef", route(urls, "/api/deadbeef"));
+
+        UrlNormalizer templatesOnly = UrlNormalizer.of(false, List.of("/api/users/{id}"));
+        assertEquals("/api/users/{id}", route(templatesOnly, "/api/users/1?x=1"));
+        assertNull(route(templatesOnly, "/api/users/"), "A placeholder needs a segment");
+        assertNull(route(templatesOnly, "/api/users/1/orders"));
+
+        assertThrows(IllegalArgumentException.class, () -> UrlNormalizer.of(false, List.of("api/users")));
+        assertThrows(IllegalArgumentException.class, () -> UrlNormalizer.of(false, List.of("/static/*/x")));
+    }
+
+    @Test
+    void testCapKeepsBusiestRoutesAndFoldsTheRest() throws IOException {
+        Random random = new Random(7);
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < 50_000; i++) {
+            int pick = random.nextInt(10);
+            String url = pick < 4 ? "/api/status" : pick < 6 ? "/api/update" : "/page/" + random.nextInt(1_000_000) + "x";
+            lines.add(line(url, pick == 5 ? 503 : 200, random.nextInt(1000)));
+        }
+
+        RequestLogAggregator capped = new RequestLogAggregator(DistributionFactory.exact(), null, 10);
+        aggregate(capped, lines);
+        Map<String, Map<String, Object>> result = (Map<String, Map<String, Object>>) capped.getResult();
+        assertTrue(result.size() <= 11, "At most 10 routes and OTHER: " + result.size());
+        assertTrue(result.containsKey(RequestLogAggregator.OTHER_ROUTE));
+
+        // Routes busy from the start are never evicted, so their stats are exact
+        RequestLogAggregator uncapped = new RequestLogAggregator();
+        aggregate(uncapped, lines);
+        Map<String, Map<String, Object>> exact = (Map<String, Map<String, Object>>) uncapped.getResult();
+        assertEquals(exact.get("/api/status"), result.get("/api/status"));
+        assertEquals(exact.get("/api/update"), result.get("/api/update"));
+        assertEquals(lines.size(), result.values().stream().mapToLong(RouteLimitTest::count).sum());
+
+        ByteArrayOutputStream state = new ByteArrayOutputStream();
+        capped.writeState(new DataOutputStream(state));
+        RequestLogAggregator restored = new RequestLogAggregator(DistributionFactory.exact(), null, 10);
+        restored.readState(new DataInputStream(new ByteArrayInputStream(state.toByteArray())));
+        assertEquals(objectMapper.writeValueAsString(result), objectMapper.writeValueAsString(restored.getResult()));
+
+        // Merged halves keep the busy routes too and lose no entries
+        RequestLogAggregator first = new RequestLogAggregator(DistributionFactory.exact(), null, 10);
+        RequestLogAggregator second = new RequestLogAggregator(DistributionFactory.exact(), null, 10);
+        aggregate(first, lines.subList(0, lines.size() / 2));
+        aggregate(second, lines.subList(lines.size() / 2, lines.size()));
+        first.merge(second);
+        Map<String, Map<String, Object>> merged = (Map<String, Map<String, Object>>) first.getResult();
+        assertTrue(merged.size() <= 11);
+        assertEquals(exact.get("/api/status"), merged.get("/api/status"));
+        assertEquals(lines.size(), merged.values().stream().mapToLong(RouteLimitTest::count).sum());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testRoutesNamedOtherAreNotFolded() throws IOException {
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            lines.add(line("OTHER", 200, 10));
+            lines.add(line("/OTHER", 404, 20));
+            lines.add(line("/page/" + i, 500, 30));
+        }
+        RequestLogAggregator capped = new RequestLogAggregator(DistributionFactory.exact(), null, 3);
+        aggregate(capped, lines);
+        Map<String, Map<String, Object>> result = (Map<String, Map<String, Object>>) capped.getResult();
+        assertEquals(100, count(result.get("OTHER")));
+        assertEquals(100, count(result.get("/OTHER")));
+        assertEquals(99, count(result.get(RequestLogAggregator.OTHER_ROUTE)));
+
+        // Merging and restoring keep the real route apart from the folded ones
+        RequestLogAggregator merged = new RequestLogAggregator(DistributionFactory.exact(), null, 3);
+        merged.merge(capped);
+        ByteArrayOutputStream state = new ByteArrayOutputStream();
+        merged.writeState(new DataOutputStream(state));
+        RequestLogAggregator restored = new RequestLogAggregator(DistributionFactory.exact(), null, 3);
+        restored.readState(new DataInputStream(new ByteArrayInputStream(state.toByteArray())));
+        assertEquals(objectMapper.writeValueAsString(result), objectMapper.writeValueAsString(restored.getResult()));
+    }
+
+    @Test
+    void testNormalizedRoutesMatchAcrossInputModes() throws IOException {
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            lines.add(line("/api/user/" + i + "?session=" + (i * 31), 200, i % 300));
+            lines.add(line("/api/orders/" + (i % 7) + "/items", 404, i % 50));
+        }
+        Path input = tempDir.resolve("routes.log");
+        Files.write(input, lines);
+
+        String expected = null;
+        for (boolean memoryMapped : new boolean[]{false, true}) {
+            ProcessingConfig config = new ProcessingConfig();
+            config.setMemoryMapped(memoryMapped);
+            config.setUrlNormalizer(UrlNormalizer.of(true, List.of("/api/orders/{id}/items")));
+            config.setMaxRoutes(5);
+            LogProcessor processor = new LogProcessor(config);
+            processor.processFile(input);
+            Map<String, Map<String, Object>> result =
+                    (Map<String, Map<String, Object>>) processor.getResults().get("REQUEST");
+            assertEquals(Set.of("/api/orders/{id}/items", "/api/user/{id}"), result.keySet());
+            assertEquals(2000, count(result.get("/api/user/{id}")));
+            String json = objectMapper.writeValueAsString(result);
+            if (expected == null) {
+                expected = json;
+            } else {
+                assertEquals(expected, json);
+            }
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package com.logparser.aggregator;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.logparser.model.LogEntry;
+import com.logparser.parser.ApplicationLogParser;
+import com.logparser.parser.LineFields;
+import com.logparser.parser.LogParser;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TemplateAggregatorTest {
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private static String line(String level, String message) {
+        return "timestamp=2024-02-24T16:22:20Z level=" + level + " message=\"" + message + "\" host=webserver1";
+    }
+
+    private static void aggregate(LogAggregator aggregator, List<String> lines) {
+        LogParser parser = new ApplicationLogParser();
+        LineFields fields = new LineFields();
+        for (String line : lines) {
+            LogEntry entry = parser.parse(fields.reset(line));
+            aggregator.aggregate(entry);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, List<Map<String, Object>>> result(LogAggregator aggregator) {
+        return (Map<String, List<Map<String, Object>>>) aggregator.getResult();
+    }
+
+    private static long total(Map<String, List<Map<String, Object>>> result) {
+        return result.values().stream().flatMap(List::stream)
+                .mapToLong(template -> ((Number) template.get("count")).longValue()).sum();
+    }
+
+    @Test
+    void testClustersMessagesIntoTemplates() {
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < 30; i++) {
+            lines.add(line("ERROR", "Update process failed for order " + (1000 + i)));
+        }
+        for (String user : new String[]{"alice", "bob", "carol"}) {
+            lines.add(line("INFO", "Session opened for " + user + " on primary"));
+        }
+        lines.add(line("INFO", "Scheduled maintenance starting"));
+        lines.add(line("INFO", "Scheduled maintenance starting"));
+
+        TemplateAggregator aggregator = new TemplateAggregator(100, 10);
+        aggregate(aggregator, lines);
+        Map<String, List<Map<String, Object>>> result = result(aggregator);
+
+        Map<String, Object> failed = result.get("ERROR").get(0);
+        assertEquals("Update process failed for order <*>", failed.get("template"));
+        assertEquals(30L, failed.get("count"));
+        assertEquals(List.of("Update process failed for order 1000"), failed.get("samples"));
+
+        List<Map<String, Object>> info = result.get("INFO");
+        assertEquals("Session opened for <*> on primary", info.get(0).get("template"));
+        assertEquals(3L, info.get(0).get("count"));
+        assertEquals(List.of("Session opened for alice on primary", "Session opened for bob on primary"),
+                info.get(0).get("samples"));
+        assertEquals("Scheduled maintenance starting", info.get(1).get("template"));
+        assertEquals(2L, info.get(1).get("count"));
+    }
+
+    @Test
+    void testCapFoldsTheLeastCountedIntoOther() {
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            lines.add(line("WARN", "Disk almost full on volume data"));
+            lines.add(line("WARN", "Event " + Long.toString(i * 7919L, 36).replaceAll("[0-9]", "x")
+                    + " has no handler registered anywhere"));
+        }
+        TemplateAggregator aggregator = new TemplateAggregator(2, 1);
+        aggregate(aggregator, lines);
+        List<Map<String, Object>> warn = result(aggregator).get("WARN");
+        assertEquals("Disk almost full on volume data", warn.get(0).get("template"));
+        assertEquals(1000L, warn.get(0).get("count"));
+        assertEquals(TemplateAggregator.OTHER_TEMPLATE, warn.get(warn.size() - 1).get("template"));
+        assertTrue(((Number) warn.get(warn.size() - 1).get("count")).longValue() > 0);
+    }
+
+    @Test
+    void testStateAndMergeKeepEveryMessage() throws IOException {
+        Random random = new Random(5);
+        String[] formats = {"Job %d finished", "Retrying request to %s", "Cache for %s rebuilt in time",
+                "Worker %s lost its lease"};
+        String[] names = {"orders", "users", "billing", "search", "audit"};
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            String format = formats[random.nextInt(formats.length)];
+            String message = format.contains("%d") ? String.format(format, random.nextInt(1000))
+                    : String.format(format, names[random.nextInt(names.length)]);
+            lines.add(line(random.nextBoolean() ? "INFO" : "ERROR", message));
+        }
+
+        TemplateAggregator whole = new TemplateAggregator(3, 100);
+        aggregate(whole, lines);
+        assertEquals(lines.size(), total(result(whole)));
+
+        ByteArrayOutputStream state = new ByteArrayOutputStream();
+        whole.writeState(new DataOutputStream(state));
+        TemplateAggregator restored = new TemplateAggregator(3, 100);
+        restored.readState(new DataInputStream(new ByteArrayInputStream(state.toByteArray())));
+        assertEquals(objectMapper.writeValueAsString(whole.getResult()),
+                objectMapper.writeValueAsString(restored.getResult()));
+
+        TemplateAggregator first = new TemplateAggregator(3, 100);
+        TemplateAggregator second = new TemplateAggregator(3, 100);
+        aggregate(first, lines.subList(0, lines.size() / 2));
+        aggregate(second, lines.subList(lines.size() / 2, lines.size()));
+        first.merge(second);
+        assertEquals(lines.size(), total(result(first)));
+    }
+}
@@ -0,0 +1,118 @@
+package com.logparser.aggregator;
+
+import com.logparser.model.ApplicationLogEntry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WindowedAggregatorTest {
+    private static final long MINUTE = 60_000;
+
+    @Test
+    void testTumblingWindowsAreClosedInOrderAndEvicted() {
+        List<String> closedStarts = new ArrayList<>();
+        List<Object> closedResults = new ArrayList<>();
+        WindowedAggregator aggregator = new WindowedAggregator(TimeWindows.tumbling(MINUTE), ApplicationLogAggregator::new);
+        aggregator.setListener((start, end, result) -> {
+            assertEquals(start.plusMillis(MINUTE), end);
+            closedStarts.add(start.toString());
+            closedResults.add(result);
+        });
+
+        for (int minute = 0; minute < 1000; minute++) {
+            aggregator.aggregate(entry("2024-02-24T00:00:00Z", minute * MINUTE + 10_000, "INFO"));
+            aggregator.aggregate(entry("2024-02-24T00:00:00Z", minute * MINUTE + 20_000, "ERROR"));
+            assertTrue(aggregator.getOpenWindowCount() <= 1, "Closed windows should be dropped");
+        }
+        aggregator.flush();
+
+        assertEquals(1000, closedStarts.size());
+        assertEquals("2024-02-24T00:00:00Z", closedStarts.get(0));
+        assertEquals("2024-02-24T00:01:00Z", closedStarts.get(1));
+        Map<String, Integer> first = (Map<String, Integer>) closedResults.get(0);
+        assertEquals(1, first.get("INFO"));
+        assertEquals(1, first.get("ERROR"));
+        assertEquals(0, aggregator.getOpenWindowCount());
+    }
+
+    @Test
+    void testSlidingWindowsCountEachEntryInEveryOverlappingWindow() {
+        WindowedAggregator aggregator = new WindowedAggregator(
+                new TimeWindows(2 * MINUTE, MINUTE, 0), ApplicationLogAggregator::new);
+        aggregator.aggregate(entry("2024-02-24T16:22:00Z", 30_000, "INFO"));
+        aggregator.aggregate(entry("2024-02-24T16:22:00Z", 90_000, "WARN"));
+
+        List<Map<String, Object>> series = (List<Map<String, Object>>) aggregator.getResult();
+        assertEquals(3, series.size());
+        assertEquals("2024-02-24T16:21:00Z", series.get(0).get("start"));
+        assertEquals(Collections.singletonMap("INFO", 1), series.get(0).get("stats"));
+        assertEquals("2024-02-24T16:22:00Z", series.get(1).get("start"));
+        assertEquals(2, ((Map<?, ?>) series.get(1).get("stats")).size());
+        assertEquals("2024-02-24T16:23:00Z", series.get(2).get("start"));
+        assertEquals(Collections.singletonMap("WARN", 1), series.get(2).get("stats"));
+    }
+
+    @Test
+    void testLateEntriesAreCountedWithinAllowedLatenessOnly() {
+        WindowedAggregator strict = new WindowedAggregator(TimeWindows.tumbling(MINUTE), ApplicationLogAggregator::new);
+        WindowedAggregator lenient = new WindowedAggregator(
+                new TimeWindows(MINUTE, MINUTE, 30_000), ApplicationLogAggregator::new);
+        for (WindowedAggregator aggregator : new WindowedAggregator[]{strict, lenient}) {
+            aggregator.aggregate(entry("2024-02-24T16:22:00Z", 10_000, "INFO"));
+            aggregator.aggregate(entry("2024-02-24T16:22:00Z", 80_000, "INFO"));
+            // 20 seconds after the first window ended
+            aggregator.aggregate(entry("2024-02-24T16:22:00Z", 50_000, "ERROR"));
+        }
+
+        strict.aggregate(new ApplicationLogEntry(null, "webserver1", Collections.emptyMap(), "INFO", "message"));
+
+        assertEquals(1, strict.getLateEntries());
+        assertEquals(1, strict.getUntimedEntries());
+        assertEquals(0, lenient.getLateEntries());
+        assertEquals(0, lenient.getUntimedEntries());
+        List<Map<String, Object>> series = (List<Map<String, Object>>) lenient.getResult();
+        assertEquals(1, ((Map<?, ?>) series.get(0).get("stats")).get("ERROR"));
+    }
+
+    @Test
+    void testSharedWatermarkClosesWindowsOfEveryType() {
+        Watermark watermark = new Watermark();
+        WindowedAggregator application = new WindowedAggregator(
+                TimeWindows.tumbling(MINUTE), watermark, ApplicationLogAggregator::new);
+        WindowedAggregator other = new WindowedAggregator(
+                TimeWindows.tumbling(MINUTE), watermark, ApplicationLogAggregator::new);
+        application.aggregate(entry("2024-02-24T16:22:00Z", 0, "INFO"));
+        other.aggregate(entry("2024-02-24T16:22:00Z", 5 * MINUTE, "INFO"));
+        application.aggregate(entry("2024-02-24T16:22:00Z", 30_000, "ERROR"));
+
+        assertEquals(1, application.getLateEntries());
+    }
+
+    @Test
+    void testDurationsAreParsedWithUnits() {
+        assertEquals(MINUTE, TimeWindows.parseDuration("1m"));
+        assertEquals(5 * MINUTE, TimeWindows.parseDuration("5m"));
+        assertEquals(60 * MINUTE, TimeWindows.parseDuration("1h"));
+        assertEquals(250, TimeWindows.parseDuration("250ms"));
+        assertThrows(IllegalArgumentException.class, () -> TimeWindows.parseDuration("5 minutes"));
+        assertThrows(IllegalArgumentException.class, () -> new TimeWindows(5 * MINUTE, 2 * MINUTE, 0));
+        assertThrows(IllegalArgumentException.class, () -> TimeWindows.parseDuration("200000000000000d"));
+        assertThrows(IllegalArgumentException.class, () -> TimeWindows.parseDuration("99999999999999999999ms"));
+        // Every entry goes into each window containing it, so their number is bounded
+        assertEquals(1000, new TimeWindows(1000 * MINUTE, MINUTE, 0).windowsPerTimestamp());
+        assertThrows(IllegalArgumentException.class,
+                () -> new TimeWindows(TimeWindows.parseDuration("1d"), TimeWindows.parseDuration("1ms"), 0));
+        assertThrows(IllegalArgumentException.class, () -> new TimeWindows(MINUTE, MINUTE, Long.MAX_VALUE));
+    }
+
+    private static ApplicationLogEntry entry(String base, long offsetMillis, String level) {
+        return new ApplicationLogEntry(Instant.parse(base).plusMillis(offsetMillis), "webserver1",
+                Collections.emptyMap(), level, "message");
+    }
+}
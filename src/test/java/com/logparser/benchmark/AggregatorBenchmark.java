@@ -0,0 +1,146 @@
+package com.logparser.benchmark;
+
+import com.logparser.aggregator.ApmLogAggregator;
+import com.logparser.aggregator.ApplicationLogAggregator;
+import com.logparser.aggregator.LogAggregator;
+import com.logparser.aggregator.RequestLogAggregator;
+import com.logparser.model.LogEntry;
+import com.logparser.parser.ApmLogParser;
+import com.logparser.parser.ApplicationLogParser;
+import com.logparser.parser.LineFields;
+import com.logparser.parser.LogParser;
+import com.logparser.parser.RequestLogParser;
+import com.logparser.stats.DistributionFactory;
+import com.logparser.stats.PercentileMode;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of {@code aggregate} and {@code getResult} for each aggregator once it already
+ * holds {@code samples} entries. Each iteration starts again from the same pre-filled
+ * state, restored through the checkpoint encoding, so the sample count does not drift.
+ * {@code getResult} adds one entry before each call so cached sort orders are not reused,
+ * which is what a periodic snapshot of a growing aggregator costs.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class AggregatorBenchmark {
+    private static final int ENTRY_RING = 1024;
+
+    @Param({"APM", "APPLICATION", "REQUEST"})
+    public String type;
+
+    @Param({"1000", "10000", "100000", "1000000", "10000000"})
+    public int samples;
+
+    @Param({"EXACT", "SKETCH"})
+    public String percentiles;
+
+    @Param({"50"})
+    public int cardinality;
+
+    private LogParser parser;
+    private String mix;
+    private byte[] state;
+    private LogEntry[] entries;
+    private LogAggregator aggregator;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void fill() throws IOException {
+        switch (type) {
+            case "APM":
+                parser = new ApmLogParser();
+                mix = "1:0:0";
+                break;
+            case "APPLICATION":
+                parser = new ApplicationLogParser();
+                mix = "0:1:0";
+                break;
+            case "REQUEST":
+                parser = new RequestLogParser();
+                mix = "0:0:1";
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown log type " + type);
+        }
+
+        // The flyweight path keeps filling fast at ten million samples
+        SyntheticLogGenerator generator = new SyntheticLogGenerator(3, mix, cardinality);
+        LogAggregator filled = newAggregator();
+        LineFields fields = new LineFields();
+        for (int i = 0; i < samples; i++) {
+            filled.aggregate(parser.parse(fields.reset(generator.nextLine())));
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            filled.writeState(out);
+        }
+        state = bytes.toByteArray();
+
+        entries = new LogEntry[ENTRY_RING];
+        for (int i = 0; i < ENTRY_RING; i++) {
+            entries[i] = parser.parse(generator.nextLine());
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void restore() throws IOException {
+        aggregator = newAggregator();
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(state))) {
+            aggregator.readState(in);
+        }
+    }
+
+    private LogAggregator newAggregator() {
+        DistributionFactory distributions = new DistributionFactory(
+                PercentileMode.valueOf(percentiles), DistributionFactory.DEFAULT_RELATIVE_ERROR);
+        switch (type) {
+            case "APM":
+                return new ApmLogAggregator(distributions);
+            case "APPLICATION":
+                return new ApplicationLogAggregator();
+            default:
+                return new RequestLogAggregator(distributions);
+        }
+    }
+
+    private LogEntry nextEntry() {
+        LogEntry entry = entries[next];
+        next = (next + 1) & (ENTRY_RING - 1);
+        return entry;
+    }
+
+    @Benchmark
+    public LogAggregator aggregate() {
+        aggregator.aggregate(nextEntry());
+        return aggregator;
+    }
+
+    @Benchmark
+    public Object getResult() {
+        aggregator.aggregate(nextEntry());
+        return aggregator.getResult();
+    }
+}
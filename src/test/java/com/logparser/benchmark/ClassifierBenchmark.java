@@ -0,0 +1,95 @@
+package com.logparser.benchmark;
+
+import com.logparser.parser.ApmLogParser;
+import com.logparser.parser.ApplicationLogParser;
+import com.logparser.parser.LineFields;
+import com.logparser.parser.LogParser;
+import com.logparser.parser.LogTypeClassifier;
+import com.logparser.parser.RequestLogParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares routing a mixed-type batch of lines through the sequential canParse chain
+ * against tokenizing each line once and classifying it by its keys, both on its own and
+ * followed by parsing the entry.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class ClassifierBenchmark {
+    private static final int BATCH_SIZE = 3000;
+
+    private final List<LogParser> parsers = Arrays.asList(
+            new ApmLogParser(), new ApplicationLogParser(), new RequestLogParser());
+    private final LogTypeClassifier classifier = new LogTypeClassifier(parsers);
+    private final LineFields fields = new LineFields();
+    private String[] lines;
+
+    @Setup
+    public void setUp() {
+        String[] templates = {
+                "timestamp=2024-02-24T16:22:15Z metric=cpu_usage_percent host=webserver1 value=72",
+                "timestamp=2024-02-24T16:22:20Z level=INFO message=\"Scheduled maintenance starting\" host=webserver1",
+                "timestamp=2024-02-24T16:22:25Z request_method=POST request_url=\"/api/update\" response_status=202 response_time_ms=200 host=webserver1"
+        };
+        lines = new String[BATCH_SIZE];
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            lines[i] = templates[i % templates.length];
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public void sequentialCanParse(Blackhole blackhole) {
+        for (String line : lines) {
+            for (LogParser parser : parsers) {
+                if (parser.canParse(line)) {
+                    blackhole.consume(parser);
+                    break;
+                }
+            }
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public void singlePassClassifier(Blackhole blackhole) {
+        for (String line : lines) {
+            blackhole.consume(classifier.classify(fields.reset(line)));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public void sequentialCanParseAndParse(Blackhole blackhole) {
+        for (String line : lines) {
+            for (LogParser parser : parsers) {
+                if (parser.canParse(line)) {
+                    blackhole.consume(parser.parse(line));
+                    break;
+                }
+            }
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public void singlePassClassifierAndParse(Blackhole blackhole) {
+        for (String line : lines) {
+            LogParser parser = classifier.classify(fields.reset(line));
+            blackhole.consume(parser.parse(fields));
+        }
+    }
+}
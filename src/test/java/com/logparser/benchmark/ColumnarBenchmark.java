@@ -0,0 +1,82 @@
+package com.logparser.benchmark;
+
+import com.logparser.Main;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Whole runs of {@link Main} over a generated text file against runs over the columnar
+ * file saved from it with {@code --save-columns}. Both report the {@code megabytes}
+ * counter in MB/s of the original text, so the two are directly comparable.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class ColumnarBenchmark {
+    @Param({"64"})
+    public int sizeMb;
+
+    @Param({"exact", "sketch"})
+    public String percentiles;
+
+    @Param({"text", "columns"})
+    public String input;
+
+    private Path workDir;
+    private double megabytes;
+    private String[] args;
+    private PrintStream originalOut;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        workDir = Files.createTempDirectory("log-parser-bench");
+        Path text = workDir.resolve("input.log");
+        Path columns = workDir.resolve("input.cols");
+        new SyntheticLogGenerator(42, "1:1:1", 50).writeFile(text, (long) sizeMb * 1024 * 1024);
+        megabytes = Files.size(text) / (1024.0 * 1024.0);
+
+        originalOut = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        Main.main(new String[]{"--file", text.toString(), "--output-dir", workDir.resolve("output").toString(),
+                "--save-columns", columns.toString()});
+        args = new String[]{"--file", (input.equals("text") ? text : columns).toString(),
+                "--output-dir", workDir.resolve("output").toString(), "--percentiles", percentiles};
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        System.setOut(originalOut);
+        try (Stream<Path> files = Files.walk(workDir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public void main(EndToEndBenchmark.Throughput throughput) {
+        Main.main(args);
+        throughput.megabytes += megabytes;
+    }
+}
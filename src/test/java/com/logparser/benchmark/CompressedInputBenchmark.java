@@ -0,0 +1,115 @@
+package com.logparser.benchmark;
+
+import com.logparser.Main;
+import io.airlift.compress.zstd.ZstdOutputStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Whole runs of {@link Main} over the same generated log stored plain, as one gzip
+ * member, as 1 MB gzip members (like bgzip writes) and as zstd. The {@code megabytes}
+ * counter is the uncompressed throughput in MB/s, so the modes compare directly.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class CompressedInputBenchmark {
+    private static final int MEMBER_SIZE = 1024 * 1024;
+
+    @Param({"64"})
+    public int sizeMb;
+
+    @Param({"none", "gzip", "gzip-members", "zstd"})
+    public String compression;
+
+    @Param({"1", "4"})
+    public int threads;
+
+    private Path workDir;
+    private double megabytes;
+    private String[] args;
+    private PrintStream originalOut;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        workDir = Files.createTempDirectory("log-parser-bench");
+        Path plain = workDir.resolve("input.log");
+        new SyntheticLogGenerator(42, "1:1:1", 50).writeFile(plain, (long) sizeMb * 1024 * 1024);
+        megabytes = Files.size(plain) / (1024.0 * 1024.0);
+        Path input = compress(plain, workDir.resolve("input." + compression));
+
+        args = new String[]{"--file", input.toString(), "--output-dir", workDir.resolve("output").toString(),
+                "--threads", String.valueOf(threads)};
+        originalOut = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+    }
+
+    private Path compress(Path plain, Path target) throws IOException {
+        switch (compression) {
+            case "none":
+                return plain;
+            case "gzip":
+                try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(target), 64 * 1024)) {
+                    Files.copy(plain, out);
+                }
+                return target;
+            case "gzip-members":
+                try (InputStream in = Files.newInputStream(plain); OutputStream out = Files.newOutputStream(target)) {
+                    byte[] member = new byte[MEMBER_SIZE];
+                    int read;
+                    while ((read = in.readNBytes(member, 0, MEMBER_SIZE)) > 0) {
+                        GZIPOutputStream gzip = new GZIPOutputStream(out, 64 * 1024);
+                        gzip.write(member, 0, read);
+                        gzip.finish();
+                    }
+                }
+                return target;
+            case "zstd":
+                try (OutputStream out = new ZstdOutputStream(Files.newOutputStream(target))) {
+                    Files.copy(plain, out);
+                }
+                return target;
+            default:
+                throw new IllegalArgumentException("Unknown compression: " + compression);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        System.setOut(originalOut);
+        try (Stream<Path> files = Files.walk(workDir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public void main(EndToEndBenchmark.Throughput throughput) {
+        Main.main(args);
+        throughput.megabytes += megabytes;
+    }
+}
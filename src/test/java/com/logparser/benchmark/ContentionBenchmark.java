@@ -0,0 +1,170 @@
+package com.logparser.benchmark;
+
+import com.logparser.aggregator.ApmLogAggregator;
+import com.logparser.aggregator.ApplicationLogAggregator;
+import com.logparser.aggregator.ConcurrentApmLogAggregator;
+import com.logparser.aggregator.ConcurrentApplicationLogAggregator;
+import com.logparser.aggregator.ConcurrentRequestLogAggregator;
+import com.logparser.aggregator.LogAggregator;
+import com.logparser.aggregator.RequestLogAggregator;
+import com.logparser.model.ApmLogEntry;
+import com.logparser.model.ApplicationLogEntry;
+import com.logparser.model.LogEntry;
+import com.logparser.model.RequestLogEntry;
+import com.logparser.parser.ApmLogParser;
+import com.logparser.parser.ApplicationLogParser;
+import com.logparser.parser.LineFields;
+import com.logparser.parser.RequestLogParser;
+import com.logparser.stats.DistributionFactory;
+import com.logparser.stats.PercentileMode;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Many threads aggregating into one shared aggregator: the concurrent aggregators against
+ * the single-threaded ones behind one lock. Each operation has every one of
+ * {@code threads} workers aggregate its own batch of entries, and the {@code entries}
+ * counter is the total aggregated per second. Sketch percentiles keep memory flat however
+ * many entries a run aggregates. {@code maxRoutes} caps the request routes below
+ * {@code cardinality}, so routes keep being evicted; it does not apply to the other types.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class ContentionBenchmark {
+    private static final int BATCH = 16 * 1024;
+
+    @Param({"APM", "APPLICATION", "REQUEST"})
+    public String type;
+
+    @Param({"locked", "concurrent"})
+    public String sharing;
+
+    @Param({"1", "2", "4", "8", "16", "32", "64"})
+    public int threads;
+
+    @Param({"50"})
+    public int cardinality;
+
+    @Param({"0", "10"})
+    public int maxRoutes;
+
+    private ExecutorService workers;
+    private List<Runnable> batches;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Throughput {
+        public double entries;
+
+        @Setup(Level.Iteration)
+        public void clear() {
+            entries = 0;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        DistributionFactory sketches = new DistributionFactory(PercentileMode.SKETCH, DistributionFactory.DEFAULT_RELATIVE_ERROR);
+        LogAggregator aggregator;
+        String mix;
+        switch (type) {
+            case "APM":
+                aggregator = sharing.equals("locked") ? new ApmLogAggregator(sketches) : new ConcurrentApmLogAggregator(sketches);
+                mix = "1:0:0";
+                break;
+            case "APPLICATION":
+                aggregator = sharing.equals("locked") ? new ApplicationLogAggregator() : new ConcurrentApplicationLogAggregator();
+                mix = "0:1:0";
+                break;
+            default:
+                aggregator = sharing.equals("locked") ? new RequestLogAggregator(sketches, null, maxRoutes)
+                        : new ConcurrentRequestLogAggregator(sketches, null, maxRoutes);
+                mix = "0:0:1";
+        }
+
+        batches = new ArrayList<>();
+        for (int worker = 0; worker < threads; worker++) {
+            LogEntry[] entries = entries(new SyntheticLogGenerator(worker, mix, cardinality).nextLines(BATCH));
+            if (sharing.equals("locked")) {
+                batches.add(() -> {
+                    for (LogEntry entry : entries) {
+                        synchronized (aggregator) {
+                            aggregator.aggregate(entry);
+                        }
+                    }
+                });
+            } else {
+                batches.add(() -> {
+                    for (LogEntry entry : entries) {
+                        aggregator.aggregate(entry);
+                    }
+                });
+            }
+        }
+        workers = Executors.newFixedThreadPool(threads);
+    }
+
+    // Parsed entries are reused from line to line, so each is copied into one of its own
+    private static LogEntry[] entries(String[] lines) {
+        LineFields fields = new LineFields();
+        ApmLogParser apm = new ApmLogParser();
+        ApplicationLogParser application = new ApplicationLogParser();
+        RequestLogParser request = new RequestLogParser();
+        LogEntry[] entries = new LogEntry[lines.length];
+        for (int i = 0; i < lines.length; i++) {
+            fields.reset(lines[i]);
+            if (lines[i].contains("metric=")) {
+                ApmLogEntry parsed = (ApmLogEntry) apm.parse(fields);
+                entries[i] = new ApmLogEntry().reset(null, parsed.getHost(), parsed.getMetric(), parsed.getValue());
+            } else if (lines[i].contains("level=")) {
+                ApplicationLogEntry parsed = (ApplicationLogEntry) application.parse(fields);
+                entries[i] = new ApplicationLogEntry().reset(null, parsed.getHost(), parsed.getLevel());
+            } else {
+                RequestLogEntry parsed = (RequestLogEntry) request.parse(fields);
+                entries[i] = new RequestLogEntry().reset(null, parsed.getHost(), parsed.getRequestMethod(),
+                        parsed.getRequestUrl(), parsed.getResponseStatus(), parsed.getResponseTimeMs());
+            }
+        }
+        return entries;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        workers.shutdownNow();
+    }
+
+    @Benchmark
+    public void aggregate(Throughput throughput) throws Exception {
+        List<Future<?>> running = new ArrayList<>(batches.size());
+        for (Runnable batch : batches) {
+            running.add(workers.submit(batch));
+        }
+        for (Future<?> batch : running) {
+            batch.get();
+        }
+        throughput.entries += (double) BATCH * batches.size();
+    }
+}
@@ -0,0 +1,107 @@
+package com.logparser.benchmark;
+
+import com.logparser.Main;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Whole runs of {@link Main} over a generated file, from reading the input to writing the
+ * JSON output. The {@code megabytes} counter is the input throughput in MB/s.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class EndToEndBenchmark {
+    @Param({"64"})
+    public int sizeMb;
+
+    @Param({"1:1:1"})
+    public String mix;
+
+    @Param({"50"})
+    public int cardinality;
+
+    @Param({"1", "4"})
+    public int threads;
+
+    @Param({"false", "true"})
+    public boolean mmap;
+
+    private Path workDir;
+    private double megabytes;
+    private String[] args;
+    private PrintStream originalOut;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Throughput {
+        public double megabytes;
+
+        @Setup(Level.Iteration)
+        public void clear() {
+            megabytes = 0;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        workDir = Files.createTempDirectory("log-parser-bench");
+        Path input = workDir.resolve("input.log");
+        new SyntheticLogGenerator(42, mix, cardinality).writeFile(input, (long) sizeMb * 1024 * 1024);
+        megabytes = Files.size(input) / (1024.0 * 1024.0);
+
+        List<String> arguments = new ArrayList<>(Arrays.asList(
+                "--file", input.toString(),
+                "--output-dir", workDir.resolve("output").toString(),
+                "--threads", String.valueOf(threads)));
+        if (mmap) {
+            arguments.add("--mmap");
+        }
+        args = arguments.toArray(new String[0]);
+
+        // Keep any console output out of the measurement's way
+        originalOut = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        System.setOut(originalOut);
+        try (Stream<Path> files = Files.walk(workDir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public void main(Throughput throughput) {
+        Main.main(args);
+        throughput.megabytes += megabytes;
+    }
+}
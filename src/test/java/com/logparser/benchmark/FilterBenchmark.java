@@ -0,0 +1,108 @@
+package com.logparser.benchmark;
+
+import com.logparser.Main;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Whole runs with a {@code --where} filter against {@code readLines}, which only reads
+ * the same file line by line. The closer a selective query gets to {@code readLines},
+ * the less the lines it rejects cost. {@code none} runs without a filter.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class FilterBenchmark {
+    @State(Scope.Benchmark)
+    public static class Input {
+        @Param({"64"})
+        public int sizeMb;
+
+        Path workDir;
+        Path file;
+        double megabytes;
+        private PrintStream originalOut;
+
+        @Setup(Level.Trial)
+        public void setUp() throws IOException {
+            workDir = Files.createTempDirectory("log-parser-bench");
+            file = workDir.resolve("input.log");
+            new SyntheticLogGenerator(42, "1:1:1", 50).writeFile(file, (long) sizeMb * 1024 * 1024);
+            megabytes = Files.size(file) / (1024.0 * 1024.0);
+            originalOut = System.out;
+            System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws IOException {
+            System.setOut(originalOut);
+            try (Stream<Path> files = Files.walk(workDir)) {
+                files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+            }
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Query {
+        @Param({"none", "type=request", "host=webserver7", "type=request,url^=/api/route7,status=5xx",
+                "time>=2024-02-24T23:00:00Z"})
+        public String where;
+
+        String[] args;
+
+        @Setup(Level.Trial)
+        public void setUp(Input input) {
+            List<String> arguments = new ArrayList<>(Arrays.asList(
+                    "--file", input.file.toString(), "--output-dir", input.workDir.resolve("output").toString()));
+            if (!where.equals("none")) {
+                arguments.add("--where");
+                arguments.add(where);
+            }
+            args = arguments.toArray(new String[0]);
+        }
+    }
+
+    @Benchmark
+    public long readLines(Input input, EndToEndBenchmark.Throughput throughput) throws IOException {
+        long lines = 0;
+        try (BufferedReader reader = Files.newBufferedReader(input.file)) {
+            while (reader.readLine() != null) {
+                lines++;
+            }
+        }
+        throughput.megabytes += input.megabytes;
+        return lines;
+    }
+
+    @Benchmark
+    public void main(Input input, Query query, EndToEndBenchmark.Throughput throughput) {
+        Main.main(query.args);
+        throughput.megabytes += input.megabytes;
+    }
+}
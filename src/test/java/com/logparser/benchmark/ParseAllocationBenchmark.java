@@ -0,0 +1,102 @@
+package com.logparser.benchmark;
+
+import com.logparser.parser.ApmLogParser;
+import com.logparser.filter.LineFilter;
+import com.logparser.parser.ApplicationLogParser;
+import com.logparser.parser.IsoTimestampFormat;
+import com.logparser.parser.LineFields;
+import com.logparser.parser.LogParser;
+import com.logparser.parser.LogTypeClassifier;
+import com.logparser.parser.RequestLogParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-line allocation of the String-based parse path against the flyweight path that
+ * reuses one entry and one attribute buffer per thread. Run with {@code -prof gc} and
+ * compare {@code gc.alloc.rate.norm}, which is reported per line. {@code filteredOut}
+ * checks lines against a {@code --where} filter that rejects all of them.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class ParseAllocationBenchmark {
+    static final int BATCH_SIZE = 3000;
+
+    private final List<LogParser> parsers = Arrays.asList(
+            new ApmLogParser(), new ApplicationLogParser(), new RequestLogParser());
+    private final LogTypeClassifier classifier = new LogTypeClassifier(parsers);
+    private final LineFields fields = new LineFields();
+    private final LineFilter filter = LineFilter.parse(
+            Collections.singletonList("time>=2024-02-24,url^=/api/route1,status=5xx,host=webserver2"),
+            Arrays.asList("APM", "APPLICATION", "REQUEST"));
+    private final IsoTimestampFormat timestamps = new IsoTimestampFormat();
+    private String[] lines;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(11);
+        lines = new String[BATCH_SIZE];
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            // Real logs carry many lines per second, so timestamps repeat in runs
+            String timestamp = String.format("timestamp=2024-02-24T16:22:%02dZ", i / 1000);
+            switch (i % 3) {
+                case 0:
+                    lines[i] = timestamp + " metric=metric_" + random.nextInt(5)
+                            + " host=webserver1 value=" + random.nextInt(100) + "." + random.nextInt(10);
+                    break;
+                case 1:
+                    lines[i] = timestamp + " level=" + (random.nextBoolean() ? "INFO" : "ERROR")
+                            + " message=\"Scheduled maintenance starting\" host=webserver1";
+                    break;
+                default:
+                    lines[i] = timestamp + " request_method=GET request_url=\"/api/route" + random.nextInt(20)
+                            + "\" response_status=" + (200 + random.nextInt(4) * 100)
+                            + " response_time_ms=" + random.nextInt(1000) + " host=webserver1";
+            }
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public void stringParse(Blackhole blackhole) {
+        for (String line : lines) {
+            for (LogParser parser : parsers) {
+                if (parser.canParse(line)) {
+                    blackhole.consume(parser.parse(line));
+                    break;
+                }
+            }
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public void flyweightParse(Blackhole blackhole) {
+        for (String line : lines) {
+            LogParser parser = classifier.classify(fields.reset(line));
+            blackhole.consume(parser.parse(fields));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public void filteredOut(Blackhole blackhole) {
+        for (String line : lines) {
+            blackhole.consume(filter.matchesFields(line, timestamps));
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package com.logparser.benchmark;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+
+import java.util.Collection;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks {@link ParseAllocationBenchmark} against allocation limits. Each test forks a JMH
+ * run, so the class is tagged {@code benchmark} and only runs with the benchmarks profile.
+ */
+@Tag("benchmark")
+class ParseAllocationTest {
+    @Test
+    void testFlyweightParseDoesNotAllocatePerLine() throws RunnerException {
+        // The timestamp changes every 1000 lines, which accounts for the few bytes per line left
+        double allocated = allocationPerLine("flyweightParse");
+        assertTrue(allocated < 8, "Allocated " + allocated + " bytes per line");
+    }
+
+    @Test
+    void testFilteredLinesDoNotAllocate() throws RunnerException {
+        double allocated = allocationPerLine("filteredOut");
+        assertTrue(allocated < 1, "Allocated " + allocated + " bytes per filtered line");
+    }
+
+    private static double allocationPerLine(String benchmark) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(ParseAllocationBenchmark.class.getName() + "." + benchmark + "$")
+                .addProfiler(GCProfiler.class)
+                .forks(1)
+                .warmupIterations(3)
+                .warmupTime(TimeValue.milliseconds(500))
+                .measurementIterations(3)
+                .measurementTime(TimeValue.milliseconds(500))
+                .shouldFailOnError(true)
+                .build();
+        Collection<RunResult> results = new Runner(options).run();
+
+        assertEquals(1, results.size());
+        Result<?> allocation = results.iterator().next().getSecondaryResults().get("gc.alloc.rate.norm");
+        assertNotNull(allocation, "GC profiler should report normalized allocation");
+        return allocation.getScore();
+    }
+}
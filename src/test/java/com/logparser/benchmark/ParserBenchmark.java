@@ -0,0 +1,97 @@
+package com.logparser.benchmark;
+
+import com.logparser.parser.ApmLogParser;
+import com.logparser.parser.ApplicationLogParser;
+import com.logparser.parser.LineFields;
+import com.logparser.parser.LogParser;
+import com.logparser.parser.RequestLogParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lines per second for each parser's {@code parse} and {@code canParse}, through both the
+ * String API and the tokenized {@link LineFields} API. {@code canParse} is fed a batch
+ * from every log type, since most calls in a sequential chain are rejections.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class ParserBenchmark {
+    private static final int BATCH_SIZE = 3000;
+
+    @Param({"APM", "APPLICATION", "REQUEST"})
+    public String type;
+
+    @Param({"50"})
+    public int cardinality;
+
+    private final LineFields fields = new LineFields();
+    private LogParser parser;
+    private String[] ownLines;
+    private String[] mixedLines;
+
+    @Setup
+    public void setUp() {
+        String mix;
+        switch (type) {
+            case "APM":
+                parser = new ApmLogParser();
+                mix = "1:0:0";
+                break;
+            case "APPLICATION":
+                parser = new ApplicationLogParser();
+                mix = "0:1:0";
+                break;
+            case "REQUEST":
+                parser = new RequestLogParser();
+                mix = "0:0:1";
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown log type " + type);
+        }
+        ownLines = new SyntheticLogGenerator(7, mix, cardinality).nextLines(BATCH_SIZE);
+        mixedLines = new SyntheticLogGenerator(7, "1:1:1", cardinality).nextLines(BATCH_SIZE);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public void parseString(Blackhole blackhole) {
+        for (String line : ownLines) {
+            blackhole.consume(parser.parse(line));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public void parseFields(Blackhole blackhole) {
+        for (String line : ownLines) {
+            blackhole.consume(parser.parse(fields.reset(line)));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public void canParseString(Blackhole blackhole) {
+        for (String line : mixedLines) {
+            blackhole.consume(parser.canParse(line));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public void canParseFields(Blackhole blackhole) {
+        for (String line : mixedLines) {
+            blackhole.consume(parser.canParse(fields.reset(line)));
+        }
+    }
+}
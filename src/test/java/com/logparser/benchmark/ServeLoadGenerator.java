@@ -0,0 +1,148 @@
+package com.logparser.benchmark;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.logparser.LogServer;
+import com.logparser.ProcessingConfig;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Load test for {@code --serve}: several writers stream generated lines over their own
+ * connections while one client queries {@code /request} in a loop, then reports the ingest
+ * rate (up to the moment the server has aggregated every line sent) and the query latency.
+ * Without a host it starts a server in this JVM:
+ * {@code ServeLoadGenerator <writers> <seconds> [host] [ingest-port] [http-port]}.
+ */
+public class ServeLoadGenerator {
+    private static final int LINES_PER_BLOCK = 10_000;
+    private static final long QUERY_INTERVAL_MILLIS = 50;
+
+    private final String host;
+    private final int ingestPort;
+    private final int httpPort;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    public ServeLoadGenerator(String host, int ingestPort, int httpPort) {
+        this.host = host;
+        this.ingestPort = ingestPort;
+        this.httpPort = httpPort;
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.err.println("Usage: ServeLoadGenerator <writers> <seconds> [host] [ingest-port] [http-port]");
+            System.exit(1);
+        }
+        int writers = Integer.parseInt(args[0]);
+        long seconds = Long.parseLong(args[1]);
+        if (args.length > 2) {
+            int ingestPort = args.length > 3 ? Integer.parseInt(args[3]) : 9400;
+            int httpPort = args.length > 4 ? Integer.parseInt(args[4]) : 9401;
+            new ServeLoadGenerator(args[2], ingestPort, httpPort).run(writers, seconds);
+            return;
+        }
+        InetAddress loopback = InetAddress.getLoopbackAddress();
+        try (LogServer server = new LogServer(new ProcessingConfig(), new InetSocketAddress(loopback, 0),
+                new InetSocketAddress(loopback, 0))) {
+            server.start();
+            new ServeLoadGenerator(loopback.getHostAddress(), server.getIngestPort(), server.getHttpPort())
+                    .run(writers, seconds);
+        }
+    }
+
+    public void run(int writers, long seconds) throws Exception {
+        long linesBefore = aggregatedLines();
+        AtomicLong linesSent = new AtomicLong();
+        AtomicLong bytesSent = new AtomicLong();
+        long started = System.nanoTime();
+        long deadline = started + seconds * 1_000_000_000L;
+
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < writers; i++) {
+            byte[] block = block(i);
+            Thread writer = new Thread(() -> {
+                try (Socket socket = new Socket(host, ingestPort); OutputStream out = socket.getOutputStream()) {
+                    while (System.nanoTime() < deadline) {
+                        out.write(block);
+                        linesSent.addAndGet(LINES_PER_BLOCK);
+                        bytesSent.addAndGet(block.length);
+                    }
+                } catch (IOException e) {
+                    System.err.println("Writer failed: " + e);
+                }
+            }, "writer-" + i);
+            writer.start();
+            threads.add(writer);
+        }
+
+        List<Long> latencies = new ArrayList<>();
+        while (System.nanoTime() < deadline) {
+            long queryStarted = System.nanoTime();
+            get("/request");
+            latencies.add(System.nanoTime() - queryStarted);
+            Thread.sleep(QUERY_INTERVAL_MILLIS);
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        // Lines still queued on the server count towards the time taken
+        long target = linesBefore + linesSent.get();
+        while (aggregatedLines() < target) {
+            Thread.sleep(10);
+        }
+        double elapsed = (System.nanoTime() - started) / 1e9;
+
+        long[] sorted = latencies.stream().mapToLong(Long::longValue).sorted().toArray();
+        System.out.printf("writers=%d lines=%d ingest=%.0f lines/s %.1f MB/s%n", writers, linesSent.get(),
+                linesSent.get() / elapsed, bytesSent.get() / elapsed / (1024 * 1024));
+        System.out.printf("queries=%d latency p50=%.2f ms p99=%.2f ms max=%.2f ms%n", sorted.length,
+                percentile(sorted, 50), percentile(sorted, 99), percentile(sorted, 100));
+    }
+
+    private static byte[] block(int writer) {
+        SyntheticLogGenerator generator = new SyntheticLogGenerator(writer, "1:1:1", 50);
+        ByteArrayOutputStream block = new ByteArrayOutputStream();
+        for (int i = 0; i < LINES_PER_BLOCK; i++) {
+            byte[] line = generator.nextLine().getBytes(StandardCharsets.UTF_8);
+            block.write(line, 0, line.length);
+            block.write('\n');
+        }
+        return block.toByteArray();
+    }
+
+    private static double percentile(long[] sorted, int percentile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(percentile / 100.0 * sorted.length) - 1;
+        return sorted[Math.max(0, index)] / 1e6;
+    }
+
+    private long aggregatedLines() throws IOException {
+        return get("/metrics").path("lines").asLong();
+    }
+
+    private JsonNode get(String path) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL("http://" + host + ":" + httpPort + path)
+                .openConnection();
+        try (InputStream in = connection.getInputStream()) {
+            return objectMapper.readTree(in);
+        } finally {
+            connection.disconnect();
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package com.logparser.benchmark;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.Random;
+
+/**
+ * Produces reproducible log lines for benchmarks. The type mix is given as relative
+ * weights {@code apm:application:request} (e.g. {@code 1:1:1} or {@code 0:0:1}) and the
+ * cardinality bounds the number of distinct metrics, routes and hosts. The same seed
+ * always yields the same lines.
+ * <p>
+ * Can also be run on its own to write a test file:
+ * {@code SyntheticLogGenerator <file> <megabytes> [seed] [mix] [cardinality]}.
+ */
+public class SyntheticLogGenerator {
+    private static final String[] LEVELS = {"INFO", "INFO", "INFO", "DEBUG", "WARN", "ERROR"};
+    private static final String[] MESSAGES = {
+            "\"Scheduled maintenance starting\"", "\"Update process failed\"", "\"Cache refreshed\"",
+            "\"User login succeeded\"", "\"Connection pool exhausted\""
+    };
+    private static final String[] METHODS = {"GET", "GET", "GET", "POST", "PUT", "DELETE"};
+    private static final int LINES_PER_SECOND = 1000;
+
+    private final Random random;
+    private final int[] cumulativeWeights = new int[3];
+    private final int cardinality;
+    private long epochSecond = Instant.parse("2024-02-24T16:00:00Z").getEpochSecond();
+    private String timestamp = "timestamp=" + Instant.ofEpochSecond(epochSecond);
+    private int linesThisSecond;
+
+    public SyntheticLogGenerator(long seed, String typeMix, int cardinality) {
+        String[] weights = typeMix.split(":");
+        if (weights.length != 3) {
+            throw new IllegalArgumentException("Type mix must be apm:application:request weights: " + typeMix);
+        }
+        int total = 0;
+        for (int i = 0; i < 3; i++) {
+            total += Integer.parseInt(weights[i].trim());
+            cumulativeWeights[i] = total;
+        }
+        if (total <= 0 || cardinality < 1) {
+            throw new IllegalArgumentException("Need a positive type weight and cardinality");
+        }
+        this.random = new Random(seed);
+        this.cardinality = cardinality;
+    }
+
+    public String nextLine() {
+        if (++linesThisSecond > LINES_PER_SECOND) {
+            linesThisSecond = 1;
+            timestamp = "timestamp=" + Instant.ofEpochSecond(++epochSecond);
+        }
+        String host = " host=webserver" + random.nextInt(cardinality);
+        int pick = random.nextInt(cumulativeWeights[2]);
+        if (pick < cumulativeWeights[0]) {
+            return timestamp + " metric=metric_" + random.nextInt(cardinality) + host
+                    + " value=" + random.nextInt(10000) / 100.0;
+        }
+        if (pick < cumulativeWeights[1]) {
+            return timestamp + " level=" + LEVELS[random.nextInt(LEVELS.length)]
+                    + " message=" + MESSAGES[random.nextInt(MESSAGES.length)] + host;
+        }
+        return timestamp + " request_method=" + METHODS[random.nextInt(METHODS.length)]
+                + " request_url=\"/api/route" + random.nextInt(cardinality) + "\""
+                + " response_status=" + (200 + random.nextInt(4) * 100)
+                + " response_time_ms=" + (int) Math.min(60_000, -Math.log(1 - random.nextDouble()) * 150)
+                + host;
+    }
+
+    public String[] nextLines(int count) {
+        String[] lines = new String[count];
+        for (int i = 0; i < count; i++) {
+            lines[i] = nextLine();
+        }
+        return lines;
+    }
+
+    /**
+     * Writes lines until the file is at least {@code bytes} long.
+     */
+    public void writeFile(Path file, long bytes) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            long written = 0;
+            while (written < bytes) {
+                String line = nextLine();
+                writer.write(line);
+                writer.write('\n');
+                written += line.length() + 1;
+            }
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: SyntheticLogGenerator <file> <megabytes> [seed] [apm:application:request] [cardinality]");
+            System.exit(1);
+        }
+        long seed = args.length > 2 ? Long.parseLong(args[2]) : 42;
+        String mix = args.length > 3 ? args[3] : "1:1:1";
+        int cardinality = args.length > 4 ? Integer.parseInt(args[4]) : 50;
+        new SyntheticLogGenerator(seed, mix, cardinality)
+                .writeFile(Paths.get(args[0]), Long.parseLong(args[1]) * 1024 * 1024);
+    }
+}
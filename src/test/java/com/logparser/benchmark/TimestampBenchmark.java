@@ -0,0 +1,70 @@
+package com.logparser.benchmark;
+
+import com.logparser.parser.IsoTimestampFormat;
+import com.logparser.parser.TimestampFormat;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Timestamps/s for {@link Instant#parse(CharSequence)} against {@link IsoTimestampFormat},
+ * with the timestamp changing every {@code linesPerSecond} lines: 1 defeats both of its
+ * caches, 1000 is close to a busy log.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TimestampBenchmark {
+    private static final int BATCH_SIZE = 4096;
+
+    @Param({"1", "1000"})
+    public int linesPerSecond;
+
+    @Param({"false", "true"})
+    public boolean millis;
+
+    private final TimestampFormat iso = new IsoTimestampFormat();
+    private String[] timestamps;
+
+    @Setup
+    public void setUp() {
+        timestamps = new String[BATCH_SIZE];
+        long epochSecond = Instant.parse("2024-02-24T16:00:00Z").getEpochSecond();
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            Instant instant = Instant.ofEpochSecond(epochSecond + i / linesPerSecond, millis ? (i % 1000) * 1_000_000L : 0);
+            timestamps[i] = instant.toString();
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public void instantParse(Blackhole blackhole) {
+        for (String timestamp : timestamps) {
+            blackhole.consume(Instant.parse(timestamp));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public void isoFormat(Blackhole blackhole) {
+        for (String timestamp : timestamps) {
+            blackhole.consume(iso.parse(timestamp));
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package com.logparser.columnar;
+
+import com.logparser.model.ApmLogEntry;
+import com.logparser.model.ApplicationLogEntry;
+import com.logparser.model.LogEntry;
+import com.logparser.model.RequestLogEntry;
+import com.logparser.parser.FieldValue;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ColumnarFileTest {
+    @TempDir
+    Path tempDir;
+
+    // More rows than fit in one chunk, with the types interleaved and some hosts and timestamps missing
+    private List<String> writeEntries(Path file) throws IOException {
+        List<String> expected = new ArrayList<>();
+        ApmLogEntry apm = new ApmLogEntry();
+        ApplicationLogEntry application = new ApplicationLogEntry();
+        RequestLogEntry request = new RequestLogEntry();
+        FieldValue host = new FieldValue();
+        try (ColumnarWriter writer = new ColumnarWriter(file)) {
+            for (int i = 0; i < ColumnarWriter.ROWS_PER_CHUNK + 1000; i++) {
+                Instant timestamp = i % 97 == 0 ? null : Instant.ofEpochSecond(1_700_000_000L + i / 3, i % 2 * 500);
+                String hostName = i % 11 == 0 ? null : "web" + i % 5;
+                LogEntry entry;
+                switch (i % 3) {
+                    case 0:
+                        entry = apm.reset(timestamp, hostName, "metric_" + i % 7, i * 0.5);
+                        break;
+                    case 1:
+                        entry = application.reset(timestamp, hostName, i % 2 == 0 ? "INFO" : "ERROR");
+                        break;
+                    default:
+                        entry = request.reset(timestamp, hostName, "GET", "/api/" + i % 13, 200 + i % 4 * 100, i % 900);
+                }
+                writer.add(entry, host.set(hostName));
+                expected.add(describe(entry));
+            }
+            writer.commit();
+        }
+        return expected;
+    }
+
+    private static String describe(LogEntry entry) {
+        String common = entry.getType() + " " + entry.getTimestamp() + " " + entry.getHost();
+        if (entry instanceof ApmLogEntry) {
+            ApmLogEntry apm = (ApmLogEntry) entry;
+            return common + " " + apm.getMetric() + " " + apm.getValue();
+        } else if (entry instanceof ApplicationLogEntry) {
+            return common + " " + ((ApplicationLogEntry) entry).getLevel();
+        }
+        RequestLogEntry request = (RequestLogEntry) entry;
+        return common + " " + request.getRequestMethod() + " " + request.getRequestUrl() + " "
+                + request.getResponseStatus() + " " + request.getResponseTimeMs();
+    }
+
+    @Test
+    void testRoundTripInWrittenOrder() throws IOException {
+        Path file = tempDir.resolve("entries.cols");
+        List<String> expected = writeEntries(file);
+        assertTrue(ColumnarFormat.isColumnar(file));
+
+        Map<String, Set<String>> all = new HashMap<>();
+        for (String type : ColumnarFormat.COLUMNS.keySet()) {
+            all.put(type, null);
+        }
+        List<String> read = new ArrayList<>();
+        try (ColumnarReader reader = new ColumnarReader(file)) {
+            assertEquals(expected.size(), reader.countByType().values().stream().mapToLong(Long::longValue).sum());
+            reader.read(all, true, entry -> read.add(describe(entry)));
+        }
+        assertEquals(expected, read);
+    }
+
+    @Test
+    void testOnlyRequestedTypesAndColumnsAreRead() throws IOException {
+        Path file = tempDir.resolve("entries.cols");
+        writeEntries(file);
+
+        Map<String, Set<String>> fields = new HashMap<>();
+        fields.put("REQUEST", new HashSet<>(Arrays.asList("request_url", "response_status")));
+        List<LogEntry> read = new ArrayList<>();
+        Set<String> urls = new HashSet<>();
+        try (ColumnarReader reader = new ColumnarReader(file)) {
+            reader.read(fields, false, entry -> {
+                RequestLogEntry request = (RequestLogEntry) entry;
+                assertNull(request.getHost());
+                assertNull(request.getTimestamp());
+                assertEquals(0, request.getResponseTimeMs());
+                assertTrue(request.getResponseStatus() >= 200);
+                urls.add(request.getRequestUrl());
+                read.add(entry);
+            });
+        }
+        assertEquals((ColumnarWriter.ROWS_PER_CHUNK + 1000) / 3, read.size());
+        assertEquals(13, urls.size());
+    }
+
+    @Test
+    void testIncompleteFilesAreRejected() throws IOException {
+        Path file = tempDir.resolve("entries.cols");
+        writeEntries(file);
+        byte[] bytes = Files.readAllBytes(file);
+        Files.write(file, Arrays.copyOf(bytes, bytes.length - 3));
+        assertThrows(IOException.class, () -> new ColumnarReader(file).close());
+
+        Path abandoned = tempDir.resolve("abandoned.cols");
+        try (ColumnarWriter writer = new ColumnarWriter(abandoned)) {
+            writer.add(new ApplicationLogEntry().reset(null, "web1", "INFO"), new FieldValue().set("web1"));
+        }
+        assertFalse(Files.exists(abandoned));
+        try (Stream<Path> files = Files.list(tempDir)) {
+            assertEquals(Collections.singletonList(file), files.collect(Collectors.toList()));
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.logparser.filter;
+
+import com.logparser.parser.IsoTimestampFormat;
+import com.logparser.parser.LineFields;
+import com.logparser.parser.TimestampFormat;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LineFilterTest {
+    private static final List<String> TYPES = Arrays.asList("APM", "APPLICATION", "REQUEST");
+    private static final String REQUEST = "timestamp=2024-02-24T16:22:25Z request_method=POST "
+            + "request_url=\"/api/update\" response_status=503 response_time_ms=200 host=webserver1";
+    private static final String APPLICATION = "timestamp=2024-02-24T16:22:20Z level=INFO "
+            + "message=\"Scheduled maintenance starting\" host=webserver2";
+
+    private final TimestampFormat timestamps = new IsoTimestampFormat();
+
+    private boolean matches(String expression, String line, String type) {
+        LineFilter filter = LineFilter.parse(Collections.singletonList(expression), TYPES);
+        return filter.matchesFields(line, timestamps) && filter.matchesType(type);
+    }
+
+    @Test
+    void testConditions() {
+        assertTrue(matches("type=request", REQUEST, "REQUEST"));
+        assertFalse(matches("type=apm|application", REQUEST, "REQUEST"));
+        assertTrue(matches("host=webserver3|webserver1", REQUEST, "REQUEST"));
+        assertFalse(matches("host=webserver", REQUEST, "REQUEST"));
+        assertTrue(matches("level!=DEBUG", REQUEST, "REQUEST"), "A missing field is never equal");
+        assertFalse(matches("level=INFO", REQUEST, "REQUEST"));
+        assertTrue(matches("url^=/api/", REQUEST, "REQUEST"));
+        assertFalse(matches("url^=/api/updates", REQUEST, "REQUEST"));
+        assertTrue(matches("status=5xx", REQUEST, "REQUEST"));
+        assertTrue(matches("status=500-503", REQUEST, "REQUEST"));
+        assertFalse(matches("status!=500..599", REQUEST, "REQUEST"));
+        assertTrue(matches("response_time_ms>=200", REQUEST, "REQUEST"));
+        assertFalse(matches("response_time_ms>200", REQUEST, "REQUEST"));
+        assertFalse(matches("status>=500", APPLICATION, "APPLICATION"));
+        assertTrue(matches("method=\"POST\"", REQUEST, "REQUEST"));
+        assertTrue(matches("level=ERROR", "level=INFO message=x level=ERROR", "APPLICATION"), "The last field wins");
+        assertFalse(matches("level=INFO", "level=INFO message=x level=ERROR", "APPLICATION"));
+    }
+
+    @Test
+    void testTimeRanges() {
+        assertTrue(matches("time>=2024-02-24T16:22:25Z", REQUEST, "REQUEST"));
+        assertFalse(matches("time>2024-02-24T16:22:25Z", REQUEST, "REQUEST"));
+        assertTrue(matches("time=2024-02-24T16:22:00Z..2024-02-24T16:22:26Z", REQUEST, "REQUEST"));
+        assertFalse(matches("time=2024-02-24T16:22:00Z..2024-02-24T16:22:25Z", REQUEST, "REQUEST"),
+                "Ranges exclude their end");
+        assertTrue(matches("time<2024-02-25", REQUEST, "REQUEST"));
+        assertFalse(matches("time>=2024-02-24T00:00:00Z", "timestamp=yesterday host=a", "APM"));
+    }
+
+    @Test
+    void testFieldsAreFoundLikeLineFields() {
+        String[] lines = {REQUEST, APPLICATION, "host=\"a b\" level=x", "message=\"host=webserver1\" host=web",
+                "xhost=webserver1 host=webserver1", "host= level=INFO", "host=\"unterminated host=webserver1", "",
+                "host=web1 level=INFO host=\"web 2\" level=ERROR"};
+        for (String line : lines) {
+            LineFields fields = new LineFields().reset(line);
+            for (String key : new String[]{"host", "level", "timestamp", "request_url"}) {
+                long range = LineFilter.locate(line, key);
+                int index = fields.indexOf(key);
+                assertEquals(index < 0 ? -1 : (long) fields.valueStart(index) << 32 | fields.valueEnd(index), range,
+                        key + " in " + line);
+            }
+        }
+    }
+
+    @Test
+    void testConditionsAreCombinedAndValidated() {
+        LineFilter filter = LineFilter.parse(Arrays.asList("type=request, status=5xx", "host=webserver1"), TYPES);
+        assertEquals("type=request,status=5xx,host=webserver1", filter.toString());
+        assertTrue(filter.matchesFields(REQUEST, timestamps) && filter.matchesType("REQUEST"));
+        assertFalse(filter.matchesFields(REQUEST.replace("503", "200"), timestamps));
+        assertFalse(LineFilter.parse(Collections.singletonList("type=apm|request,type!=request"), TYPES)
+                .matchesType("REQUEST"));
+        assertTrue(LineFilter.parse(Collections.singletonList(" , "), TYPES).isEmpty());
+
+        for (String invalid : new String[]{"host", "type=metrics", "type^=req", "status>=high",
+                "time=2024-02-24T16:00:00Z", "time>=yesterday", "status=599-500"}) {
+            assertThrows(IllegalArgumentException.class,
+                    () -> LineFilter.parse(Collections.singletonList(invalid), TYPES), invalid);
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.logparser.io;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FileTailerTest {
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testReadsOnlyAppendedCompleteLines() throws IOException {
+        Path file = tempDir.resolve("app.log");
+        List<String> lines = new ArrayList<>();
+        try (FileTailer tailer = new FileTailer(file)) {
+            assertEquals(0, tailer.poll(line -> lines.add(line.toString())), "Missing file yields nothing");
+
+            append(file, "first\nsec");
+            assertEquals(1, tailer.poll(line -> lines.add(line.toString())));
+            append(file, "ond\nthird\n");
+            assertEquals(2, tailer.poll(line -> lines.add(line.toString())));
+            assertEquals(0, tailer.poll(line -> lines.add(line.toString())));
+            assertEquals(Files.size(file), tailer.getPosition());
+        }
+        assertEquals(Arrays.asList("first", "second", "third"), lines);
+    }
+
+    @Test
+    void testRestartsAfterTruncation() throws IOException {
+        Path file = tempDir.resolve("app.log");
+        List<String> lines = new ArrayList<>();
+        append(file, "one\ntwo\n");
+        try (FileTailer tailer = new FileTailer(file)) {
+            tailer.poll(line -> lines.add(line.toString()));
+            Files.write(file, "new\n".getBytes(), StandardOpenOption.TRUNCATE_EXISTING);
+            tailer.poll(line -> lines.add(line.toString()));
+        }
+        assertEquals(Arrays.asList("one", "two", "new"), lines);
+    }
+
+    @Test
+    void testDrainsRotatedFileBeforeSwitching() throws IOException {
+        Path file = tempDir.resolve("app.log");
+        List<String> lines = new ArrayList<>();
+        append(file, "a\n");
+        try (FileTailer tailer = new FileTailer(file)) {
+            tailer.poll(line -> lines.add(line.toString()));
+            // Written after the last poll but before rotation, including an unterminated line
+            append(file, "b\nc");
+            Files.move(file, tempDir.resolve("app.log.1"));
+            append(file, "d\n");
+            tailer.poll(line -> lines.add(line.toString()));
+            append(file, "e\n");
+            tailer.poll(line -> lines.add(line.toString()));
+        }
+        assertEquals(Arrays.asList("a", "b", "c", "d", "e"), lines);
+    }
+
+    private static void append(Path file, String text) throws IOException {
+        Files.write(file, text.getBytes(), StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+}
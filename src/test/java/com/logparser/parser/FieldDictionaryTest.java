@@ -0,0 +1,69 @@
+package com.logparser.parser;
+
+import com.logparser.io.ByteSlice;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FieldDictionaryTest {
+    @Test
+    void testAssignsDenseIdsAndFindsThemFromSlices() {
+        FieldDictionary dictionary = new FieldDictionary(100);
+        String line = "request_url=\"/api/status\" host=webserver1 request_url=/api/update";
+        assertEquals(0, dictionary.idOf(line, 13, 24));
+        assertEquals(1, dictionary.idOf(line, 31, 41));
+        assertEquals(0, dictionary.idOf("/api/status", 0, 11));
+        assertEquals(2, dictionary.idOf(line, 54, line.length()));
+        assertEquals("webserver1", dictionary.valueOf(1));
+        assertEquals(3, dictionary.size());
+
+        for (int i = 0; i < 1000; i++) {
+            dictionary.idOf("/route" + i, 0, ("/route" + i).length());
+        }
+        assertEquals(100, dictionary.size());
+        assertEquals(FieldDictionary.NO_ID, dictionary.idOf("/new", 0, 4));
+        assertEquals(2, dictionary.idOf(line, 54, line.length()), "Known values keep their ids when full");
+    }
+
+    @Test
+    void testDecodesBytesButKeepsThemApartFromStrings() {
+        FieldDictionary dictionary = new FieldDictionary(10);
+        byte[] bytes = "/café".getBytes(StandardCharsets.UTF_8);
+        ByteSlice slice = new ByteSlice(ByteBuffer.wrap(bytes), 0, bytes.length);
+
+        int fromBytes = dictionary.idOf(slice, 0, slice.length());
+        int fromString = dictionary.idOf("/café", 0, 5);
+        assertNotEquals(fromBytes, fromString);
+        assertEquals("/café", dictionary.valueOf(fromBytes));
+        assertEquals("/café", dictionary.valueOf(fromString));
+        assertEquals(fromBytes, dictionary.idOf(new ByteSlice(ByteBuffer.wrap(bytes.clone()), 0, bytes.length), 0,
+                bytes.length));
+    }
+
+    @Test
+    void testMapKeepsFirstSeenOrderPastTheDictionaryBound() {
+        DictionaryMap<int[]> counts = new DictionaryMap<>(2, key -> new int[1]);
+        FieldValue key = new FieldValue();
+        String line = "a b c a c d";
+        for (int i = 0; i < line.length(); i += 2) {
+            counts.getOrCreate(key.set(line, i, i + 1))[0]++;
+        }
+        counts.getOrCreate("b")[0] += 5;
+        counts.getOrCreate(key.set(null))[0]++;
+
+        assertEquals(Arrays.asList("a", "b", "c", "d", null), Arrays.asList(counts.asMap().keySet().toArray()));
+        assertEquals(2, counts.asMap().get("a")[0]);
+        assertEquals(6, counts.asMap().get("b")[0]);
+        assertEquals(2, counts.asMap().get("c")[0]);
+        assertEquals(1, counts.asMap().get(null)[0]);
+
+        counts.clear();
+        counts.getOrCreate(key.set(line, 0, 1))[0]++;
+        assertEquals(1, counts.asMap().get("a")[0]);
+        assertEquals(1, counts.size());
+    }
+}
@@ -0,0 +1,85 @@
+package com.logparser.parser;
+
+import com.logparser.io.ByteSlice;
+import com.logparser.model.ApmLogEntry;
+import com.logparser.model.ApplicationLogEntry;
+import com.logparser.model.RequestLogEntry;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LineFieldsTest {
+    @Test
+    void testTokenizesQuotedValues() {
+        LineFields fields = new LineFields().reset(
+                "timestamp=2024-02-24T16:22:20Z level=INFO message=\"Scheduled maintenance starting\" host=webserver1");
+
+        assertEquals(4, fields.size());
+        assertEquals("INFO", fields.getValue("level"));
+        assertEquals("Scheduled maintenance starting", fields.getValue("message"));
+        assertEquals("webserver1", fields.asMap().get("host"));
+        assertNull(fields.getValue("metric"));
+    }
+
+    @Test
+    void testKeepsQuotesInsideValues() {
+        LineFields fields = new LineFields().reset(
+                "request_url=\"/api/\"v2\"\" message=\"say \"hi\" twice\" method=\"GET host=web1");
+
+        assertEquals("/api/\"v2\"", fields.getValue("request_url"));
+        assertEquals("say \"hi\" twice", fields.getValue("message"));
+        // An unbalanced quote keeps the rest of the line in the value, as a space inside quotes does
+        assertEquals("\"GET host=web1", fields.getValue("method"));
+        assertNull(fields.getValue("host"));
+    }
+
+    @Test
+    void testLastRepeatedKeyWins() {
+        LineFields fields = new LineFields();
+        ApmLogEntry apm = (ApmLogEntry) new ApmLogParser().parse(fields.reset(
+                "timestamp=2024-02-24T16:22:15Z metric=cpu_usage_percent host=webserver1 value=72 value=10"));
+        assertEquals(10.0, apm.getValue());
+        ApplicationLogEntry application = (ApplicationLogEntry) new ApplicationLogParser().parse(fields.reset(
+                "timestamp=2024-02-24T16:22:20Z level=INFO message=\"Disk full\" host=webserver1 level=ERROR"));
+        assertEquals("ERROR", application.getLevel());
+        RequestLogEntry request = (RequestLogEntry) new RequestLogParser().parse(fields.reset(
+                "timestamp=2024-02-24T16:22:25Z request_method=GET request_url=\"/api/a\" response_status=200 "
+                        + "response_time_ms=5 request_url=\"/api/b\""));
+        assertEquals("/api/b", request.getRequestUrl());
+
+        // The map view holds each key once, with its last value, like the map lines were parsed into
+        Map<String, String> map = fields.reset("a=1 b=2 a=3").asMap();
+        assertEquals(Map.of("a", "3", "b", "2"), new HashMap<>(map));
+        assertEquals(2, map.size());
+    }
+
+    @Test
+    void testParsesNumbersLikeTheJdk() {
+        LineFields fields = new LineFields();
+        Random random = new Random(3);
+        for (int i = 0; i < 10000; i++) {
+            String value = i % 2 == 0 ? Double.toString(random.nextDouble() * 1000) : Integer.toString(random.nextInt(100));
+            fields.reset("value=\"" + value + "\" status=" + random.nextInt(600));
+            assertEquals(Double.parseDouble(value), fields.doubleValue(0), value);
+            assertEquals(Integer.parseInt(fields.value(1)), fields.intValue(1));
+        }
+        fields.reset("value=1.5E3 status=abc");
+        assertEquals(1500.0, fields.doubleValue(0));
+        assertThrows(NumberFormatException.class, () -> fields.intValue(1));
+    }
+
+    @Test
+    void testReadsUtf8ByteSlices() {
+        byte[] bytes = "level=WARN message=\"Temperatur über Grenzwert\"".getBytes(StandardCharsets.UTF_8);
+        LineFields fields = new LineFields().reset(new ByteSlice(ByteBuffer.wrap(bytes), 0, bytes.length));
+
+        assertEquals("WARN", fields.getValue("level"));
+        assertEquals("Temperatur über Grenzwert", fields.getValue("message"));
+    }
+}
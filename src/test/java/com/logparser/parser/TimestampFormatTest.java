@@ -0,0 +1,68 @@
+package com.logparser.parser;
+
+import com.logparser.model.ApplicationLogEntry;
+import com.logparser.model.LogEntry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TimestampFormatTest {
+    @Test
+    void testIsoFastPathAgreesWithInstantParse() {
+        TimestampFormat format = new IsoTimestampFormat();
+        Random random = new Random(11);
+        for (int i = 0; i < 20000; i++) {
+            Instant expected = Instant.ofEpochSecond(random.nextInt(2_000_000_000), random.nextInt(1_000_000_000));
+            if (i % 3 == 0) {
+                expected = Instant.ofEpochSecond(expected.getEpochSecond());
+            }
+            String text = expected.toString();
+            // Same second and same text again, to go through both caches
+            assertEquals(expected, format.parse(text), text);
+            assertEquals(expected, format.parse(text), text);
+            assertEquals(Instant.ofEpochSecond(expected.getEpochSecond()), format.parse(text.substring(0, 19) + "Z"), text);
+        }
+
+        String line = "timestamp=2024-02-29T23:59:59.5Z host=a";
+        assertEquals(Instant.parse("2024-02-29T23:59:59.5Z"), format.parse(line, 10, 32));
+        for (String text : new String[]{"2024-02-24T16:22:15+02:00", "2024-02-24t16:22:15z", "2024-12-31T23:59:60Z"}) {
+            assertEquals(Instant.parse(text), format.parse(text), text);
+        }
+        for (String text : new String[]{"2023-02-29T10:00:00Z", "2024-02-24T16:22Z", "2024-02-24T16:22:15,5Z", ""}) {
+            assertThrows(DateTimeParseException.class, () -> format.parse(text), text);
+        }
+    }
+
+    @Test
+    void testConfiguredFormats() {
+        ZoneId utc = ZoneId.of("UTC");
+        assertEquals(Instant.parse("2024-02-24T16:22:15.250Z"),
+                TimestampFormat.factory("epoch", utc).get().parse("1708791735.25"));
+        assertEquals(Instant.parse("2024-02-24T16:22:15.250Z"),
+                TimestampFormat.factory("epoch_millis", utc).get().parse("1708791735250"));
+        assertThrows(DateTimeParseException.class, () -> TimestampFormat.factory("epoch", utc).get().parse("17087x"));
+
+        TimestampFormat pattern = TimestampFormat.factory("dd/MMM/yyyy:HH:mm:ss", ZoneId.of("Europe/Berlin")).get();
+        assertEquals(Instant.parse("2024-02-24T15:22:15Z"), pattern.parse("24/Feb/2024:16:22:15"));
+        TimestampFormat withOffset = TimestampFormat.factory("dd/MMM/yyyy:HH:mm:ss Z", utc).get();
+        assertEquals(Instant.parse("2024-02-24T14:22:15Z"), withOffset.parse("24/Feb/2024:16:22:15 +0200"));
+        assertThrows(IllegalArgumentException.class, () -> TimestampFormat.factory("yyyy-MM-dd'T", utc));
+    }
+
+    @Test
+    void testTimestampIsOnlyParsedWhenRead() {
+        LogEntry entry = new ApplicationLogParser().parse(new LineFields().reset(
+                "timestamp=yesterday level=INFO message=\"Started\" host=webserver1"));
+        assertEquals("INFO", ((ApplicationLogEntry) entry).getLevel());
+        assertThrows(DateTimeParseException.class, entry::getTimestamp);
+
+        entry = new ApmLogParser(TimestampFormat.factory("epoch", ZoneId.of("UTC"))).parse(new LineFields().reset(
+                "timestamp=1708791735 metric=cpu_usage_percent host=webserver1 value=72"));
+        assertEquals(Instant.parse("2024-02-24T16:22:15Z"), entry.getTimestamp());
+    }
+}
@@ -0,0 +1,149 @@
+package com.logparser.stats;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ExactDistributionTest {
+    @Test
+    void testIntPercentilesMatchSortedSamples() {
+        Random random = new Random(4);
+        // Narrow latencies use the counting pass, wide ones use quickselect
+        for (int bound : new int[]{1, 50, 2000, Integer.MAX_VALUE}) {
+            for (int n : new int[]{1, 2, 7, 1000, 50_000}) {
+                ExactIntDistribution distribution = new ExactIntDistribution();
+                List<Integer> reference = new ArrayList<>();
+                for (int i = 0; i < n; i++) {
+                    int value = random.nextInt(bound) - (bound == Integer.MAX_VALUE ? bound / 2 : 0);
+                    distribution.add(value);
+                    reference.add(value);
+                }
+                Collections.sort(reference);
+
+                assertEquals(reference.get(0), distribution.min());
+                assertEquals(reference.get(n - 1), distribution.max());
+                for (int p : new int[]{50, 90, 95, 99, 100}) {
+                    int index = (int) Math.ceil(p / 100.0 * n) - 1;
+                    assertEquals(reference.get(index), distribution.percentile(p), "p" + p + " of " + n);
+                }
+            }
+        }
+    }
+
+    @Test
+    void testDoubleStatisticsMatchBoxedComputation() {
+        Random random = new Random(5);
+        ExactDoubleDistribution distribution = new ExactDoubleDistribution();
+        ExactDoubleDistribution other = new ExactDoubleDistribution();
+        List<Double> reference = new ArrayList<>();
+        for (int i = 0; i < 10_001; i++) {
+            double value = random.nextDouble() * 1000 - 100;
+            (i % 3 == 0 ? other : distribution).add(value);
+            reference.add(value);
+        }
+        distribution.merge(other);
+        Collections.sort(reference);
+
+        double sum = reference.stream().mapToDouble(Double::doubleValue).sum();
+        assertEquals(sum / reference.size(), distribution.average());
+        assertEquals(reference.get(reference.size() / 2), distribution.median());
+        assertEquals(reference.get(0), distribution.min());
+        assertEquals(reference.get(reference.size() - 1), distribution.max());
+    }
+
+    @Test
+    void testSpilledSamplesGiveTheSameStatistics(@TempDir Path spillDir) throws IOException {
+        Random random = new Random(6);
+        try (MemoryBudget budget = new MemoryBudget(1, spillDir)) {
+            ExactIntDistribution ints = new ExactIntDistribution();
+            ExactIntDistribution spilledInts = new ExactIntDistribution(budget);
+            ExactIntDistribution otherInts = new ExactIntDistribution(budget);
+            ExactDoubleDistribution doubles = new ExactDoubleDistribution();
+            ExactDoubleDistribution spilledDoubles = new ExactDoubleDistribution(budget);
+            ExactDoubleDistribution otherDoubles = new ExactDoubleDistribution(budget);
+            for (int i = 0; i < 200_001; i++) {
+                int value = random.nextInt(Integer.MAX_VALUE) - Integer.MAX_VALUE / 2;
+                double sample = random.nextGaussian() * 1000;
+                ints.add(value);
+                doubles.add(sample);
+                (i % 4 == 0 ? otherInts : spilledInts).add(value);
+                (i % 4 == 0 ? otherDoubles : spilledDoubles).add(sample);
+            }
+            spilledInts.merge(otherInts);
+            spilledDoubles.merge(otherDoubles);
+            assertTrue(budget.getSpilled() > 0);
+
+            assertEquals(ints.count(), spilledInts.count());
+            assertEquals(ints.min(), spilledInts.min());
+            assertEquals(ints.max(), spilledInts.max());
+            for (int p : new int[]{1, 50, 90, 95, 99, 100}) {
+                assertEquals(ints.percentile(p), spilledInts.percentile(p), "p" + p);
+            }
+            assertEquals(doubles.count(), spilledDoubles.count());
+            assertEquals(doubles.min(), spilledDoubles.min());
+            assertEquals(doubles.max(), spilledDoubles.max());
+            assertEquals(doubles.median(), spilledDoubles.median());
+            assertEquals(doubles.average(), spilledDoubles.average(), "Summed in the same order");
+
+            // State holds every sample, spilled or not
+            ByteArrayOutputStream state = new ByteArrayOutputStream();
+            spilledInts.writeState(new DataOutputStream(state));
+            ExactIntDistribution restored = new ExactIntDistribution();
+            restored.readState(new DataInputStream(new ByteArrayInputStream(state.toByteArray())));
+            assertEquals(ints.percentile(90), restored.percentile(90));
+            assertEquals(ints.count(), restored.count());
+        }
+    }
+
+    @Test
+    void testManyModerateDistributionsStayNearTheBudget(@TempDir Path spillDir) throws IOException {
+        Random random = new Random(7);
+        try (MemoryBudget budget = new MemoryBudget(1 << 20, spillDir)) {
+            ExactIntDistribution[] spilled = new ExactIntDistribution[500];
+            ExactIntDistribution[] inMemory = new ExactIntDistribution[spilled.length];
+            for (int i = 0; i < spilled.length; i++) {
+                spilled[i] = new ExactIntDistribution(budget);
+                inMemory[i] = new ExactIntDistribution();
+            }
+            for (int n = 0; n < 10_000; n++) {
+                for (int i = 0; i < spilled.length; i++) {
+                    int value = random.nextInt(5000);
+                    spilled[i].add(value);
+                    inMemory[i].add(value);
+                }
+            }
+            assertTrue(budget.getSpilled() > 0);
+            // Past the budget, an array that grew beyond MIN_SPILL_SIZE is spilled on its next growth
+            assertTrue(budget.getUsed() <= budget.getLimit()
+                    + 2L * spilled.length * ExactIntDistribution.MIN_SPILL_SIZE * Integer.BYTES, "" + budget.getUsed());
+            for (int i = 0; i < spilled.length; i += 50) {
+                assertEquals(inMemory[i].count(), spilled[i].count());
+                for (int p : new int[]{1, 50, 99, 100}) {
+                    assertEquals(inMemory[i].percentile(p), spilled[i].percentile(p), i + " p" + p);
+                }
+            }
+        }
+    }
+
+    @Test
+    void testMemoryBudgetSizes() {
+        assertEquals(512L << 20, MemoryBudget.parseSize("512m"));
+        assertEquals(2L << 30, MemoryBudget.parseSize("2G"));
+        assertEquals(64L << 10, MemoryBudget.parseSize("64kb"));
+        assertEquals(1000, MemoryBudget.parseSize("1000"));
+        assertThrows(IllegalArgumentException.class, () -> MemoryBudget.parseSize("0m"));
+        assertThrows(IllegalArgumentException.class, () -> MemoryBudget.parseSize("lots"));
+    }
+}
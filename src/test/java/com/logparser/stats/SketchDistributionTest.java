@@ -0,0 +1,82 @@
+package com.logparser.stats;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SketchDistributionTest {
+    private static final double ERROR = 0.01;
+
+    @Test
+    void testHistogramPercentilesStayWithinErrorBound() {
+        Random random = new Random(1);
+        IntHistogram histogram = new IntHistogram(ERROR);
+        int[] samples = new int[100_000];
+        for (int i = 0; i < samples.length; i++) {
+            samples[i] = (int) Math.exp(random.nextGaussian() * 2 + 5);
+            histogram.add(samples[i]);
+        }
+        Arrays.sort(samples);
+
+        assertEquals(samples[0], histogram.min());
+        assertEquals(samples[samples.length - 1], histogram.max());
+        for (int p : new int[]{1, 25, 50, 90, 95, 99}) {
+            int expected = samples[(int) Math.ceil(p / 100.0 * samples.length) - 1];
+            assertEquals(expected, histogram.percentile(p), Math.max(1, expected * ERROR), "p" + p);
+        }
+    }
+
+    @Test
+    void testSketchQuantilesStayWithinErrorBound() {
+        Random random = new Random(2);
+        DoubleSketch sketch = new DoubleSketch(ERROR);
+        double[] samples = new double[100_000];
+        double sum = 0;
+        for (int i = 0; i < samples.length; i++) {
+            samples[i] = random.nextGaussian() * 40 + 10;
+            sketch.add(samples[i]);
+            sum += samples[i];
+        }
+        Arrays.sort(samples);
+
+        assertEquals(samples[0], sketch.min());
+        assertEquals(samples[samples.length - 1], sketch.max());
+        assertEquals(sum / samples.length, sketch.average(), 1e-9);
+        for (double q : new double[]{0.05, 0.25, 0.5, 0.75, 0.99}) {
+            double expected = samples[(int) Math.ceil(q * samples.length) - 1];
+            assertEquals(expected, sketch.quantile(q), Math.abs(expected) * ERROR + 1e-9, "q" + q);
+        }
+        double median = (samples[samples.length / 2 - 1] + samples[samples.length / 2]) / 2;
+        assertEquals(median, sketch.median(), Math.abs(median) * ERROR * 2);
+    }
+
+    @Test
+    void testMergedSketchesMatchSingleSketch() {
+        Random random = new Random(3);
+        IntHistogram whole = new IntHistogram(ERROR);
+        IntHistogram left = new IntHistogram(ERROR);
+        IntHistogram right = new IntHistogram(ERROR);
+        DoubleSketch wholeValues = new DoubleSketch(ERROR);
+        DoubleSketch leftValues = new DoubleSketch(ERROR);
+        DoubleSketch rightValues = new DoubleSketch(ERROR);
+        for (int i = 0; i < 10_000; i++) {
+            int latency = random.nextInt(5000);
+            double value = random.nextDouble() * 100;
+            whole.add(latency);
+            wholeValues.add(value);
+            (i % 2 == 0 ? left : right).add(latency);
+            (i % 2 == 0 ? leftValues : rightValues).add(value);
+        }
+        left.merge(right);
+        leftValues.merge(rightValues);
+
+        for (int p : new int[]{50, 90, 95, 99}) {
+            assertEquals(whole.percentile(p), left.percentile(p));
+        }
+        assertEquals(wholeValues.median(), leftValues.median());
+        assertThrows(IllegalArgumentException.class, () -> left.merge(new IntHistogram(0.1)));
+    }
+}